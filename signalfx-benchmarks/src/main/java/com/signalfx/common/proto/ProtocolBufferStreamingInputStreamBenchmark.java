@@ -0,0 +1,80 @@
+package com.signalfx.common.proto;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.signalfx.metrics.protobuf.SignalFxProtocolBuffers;
+
+/**
+ * Cost of streaming length-delimited point values through a
+ * {@link ProtocolBufferStreamingInputStream}, as done for {@code /v1/backfill} request bodies,
+ * read with a buffer of the given size (1 reading byte by byte).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ProtocolBufferStreamingInputStreamBenchmark {
+
+    @Param({ "100", "10000" })
+    public int valueCount;
+
+    @Param({ "1", "8192" })
+    public int readSize;
+
+    private List<SignalFxProtocolBuffers.PointValue> values;
+    private byte[] buffer;
+
+    @Setup
+    public void setUp() {
+        values = new ArrayList<SignalFxProtocolBuffers.PointValue>(valueCount);
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < valueCount; i++) {
+            values.add(SignalFxProtocolBuffers.PointValue.newBuilder()
+                    .setTimestamp(timestamp + i * 1000L)
+                    .setValue(SignalFxProtocolBuffers.Datum.newBuilder().setDoubleValue(i * 0.5))
+                    .build());
+        }
+        buffer = new byte[readSize];
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        ProtocolBufferStreamingInputStream<SignalFxProtocolBuffers.PointValue> in =
+                new ProtocolBufferStreamingInputStream<SignalFxProtocolBuffers.PointValue>(
+                        values.iterator());
+        long total = 0;
+        try {
+            if (readSize == 1) {
+                int b;
+                while ((b = in.read()) != -1) {
+                    total += b;
+                }
+            } else {
+                int read;
+                while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+                    total += read;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,104 @@
+package com.signalfx.metrics.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.signalfx.connection.CompressionStrategy;
+import com.signalfx.endpoint.SignalFxEndpoint;
+
+/**
+ * CPU and size tradeoff of the compression strategies of datapoint payloads.
+ *
+ * Each operation compresses a serialized batch of datapoints with a strategy. Besides the time
+ * per operation, the {@code ratio} counter reports the size of the compressed body relative to
+ * the uncompressed body, in percent (100 when the body is sent as-is).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CompressionBenchmark {
+
+    @Param({ "none", "gzip-1", "gzip-6", "gzip-9", "deflate-1", "deflate-6" })
+    public String strategy;
+
+    @Param({ "1", "100", "10000" })
+    public int batchSize;
+
+    private CompressionStrategy compression;
+    private HttpEntity entity;
+    private long uncompressedSize;
+
+    @Setup
+    public void setUp() {
+        if ("none".equals(strategy)) {
+            compression = CompressionStrategy.NONE;
+        } else {
+            String[] codec = strategy.split("-");
+            int level = Integer.parseInt(codec[1]);
+            compression = "gzip".equals(codec[0])
+                    ? CompressionStrategy.gzip(level) : CompressionStrategy.deflate(level);
+        }
+        HttpDataPointProtobufReceiverConnectionV2 connection =
+                new HttpDataPointProtobufReceiverConnectionV2(
+                        new SignalFxEndpoint("http", "localhost", 8080), 1000,
+                        HttpClientConnectionManagerFactory.withTimeoutMs(1000));
+        entity = connection.getEntityForVersion(DataPointEntityBenchmark.dataPoints(batchSize));
+        uncompressedSize = entity.getContentLength();
+    }
+
+    /**
+     * Size of the bodies written, relative to their uncompressed size.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+
+        private long written;
+        private long uncompressed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            written = 0;
+            uncompressed = 0;
+        }
+
+        public double ratio() {
+            return uncompressed == 0 ? 0 : 100.0 * written / uncompressed;
+        }
+    }
+
+    @Benchmark
+    public void compress(final Sizes sizes) throws IOException {
+        compression.apply(entity).writeTo(new OutputStream() {
+            @Override
+            public void write(int b) {
+                sizes.written++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                sizes.written += len;
+            }
+        });
+        sizes.uncompressed += uncompressedSize;
+    }
+}
@@ -0,0 +1,121 @@
+package com.signalfx.metrics.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.signalfx.endpoint.SignalFxEndpoint;
+import com.signalfx.metrics.protobuf.SignalFxProtocolBuffers;
+
+/**
+ * Cost of turning a batch of datapoints into the body of a {@code /v2/datapoint} request, with
+ * {@link HttpDataPointProtobufReceiverConnectionV2#getEntityForVersion(List)}, and of gzip
+ * encoding that body with {@link GzipCompressingEntity} as done before sending it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DataPointEntityBenchmark {
+
+    @Param({ "1", "100", "1000", "10000" })
+    public int batchSize;
+
+    private HttpDataPointProtobufReceiverConnectionV2 connection;
+    private List<SignalFxProtocolBuffers.DataPoint> dataPoints;
+    private HttpEntity entity;
+
+    @Setup
+    public void setUp() {
+        connection = new HttpDataPointProtobufReceiverConnectionV2(
+                new SignalFxEndpoint("http", "localhost", 8080), 1000,
+                HttpClientConnectionManagerFactory.withTimeoutMs(1000));
+        dataPoints = dataPoints(batchSize);
+        entity = connection.getEntityForVersion(dataPoints);
+    }
+
+    @Benchmark
+    public HttpEntity serialize() {
+        return connection.getEntityForVersion(dataPoints);
+    }
+
+    @Benchmark
+    public void serializeAndCompress(Blackhole blackhole) throws IOException {
+        HttpEntity compressed = new GzipCompressingEntity(
+                connection.getEntityForVersion(dataPoints));
+        compressed.writeTo(new DiscardingOutputStream(blackhole));
+    }
+
+    @Benchmark
+    public void compress(Blackhole blackhole) throws IOException {
+        new GzipCompressingEntity(entity).writeTo(new DiscardingOutputStream(blackhole));
+    }
+
+    /**
+     * @return datapoints shaped like typical application metrics: a handful of dimensions, most
+     *         of them shared across the batch
+     */
+    static List<SignalFxProtocolBuffers.DataPoint> dataPoints(int count) {
+        List<SignalFxProtocolBuffers.DataPoint> dataPoints =
+                new ArrayList<SignalFxProtocolBuffers.DataPoint>(count);
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            dataPoints.add(SignalFxProtocolBuffers.DataPoint.newBuilder()
+                    .setMetric("jvm.request.latency." + (i % 50))
+                    .setMetricType(SignalFxProtocolBuffers.MetricType.GAUGE)
+                    .setTimestamp(timestamp)
+                    .setValue(SignalFxProtocolBuffers.Datum.newBuilder().setDoubleValue(i * 0.25))
+                    .addDimensions(dimension("host", "host-" + (i % 20)))
+                    .addDimensions(dimension("service", "checkout"))
+                    .addDimensions(dimension("environment", "production"))
+                    .addDimensions(dimension("endpoint", "/api/v1/resource/" + (i % 100)))
+                    .build());
+        }
+        return dataPoints;
+    }
+
+    private static SignalFxProtocolBuffers.Dimension dimension(String key, String value) {
+        return SignalFxProtocolBuffers.Dimension.newBuilder().setKey(key).setValue(value).build();
+    }
+
+    /**
+     * Output stream consuming, and otherwise discarding, what is written to it.
+     */
+    static final class DiscardingOutputStream extends OutputStream {
+
+        private final Blackhole blackhole;
+
+        DiscardingOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+        }
+    }
+}
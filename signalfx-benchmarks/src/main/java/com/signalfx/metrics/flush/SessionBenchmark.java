@@ -0,0 +1,148 @@
+package com.signalfx.metrics.flush;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.signalfx.metrics.auth.StaticAuthToken;
+import com.signalfx.metrics.connection.DataPointReceiver;
+import com.signalfx.metrics.connection.DataPointReceiverFactory;
+import com.signalfx.metrics.errorhandler.OnSendErrorHandler;
+import com.signalfx.metrics.protobuf.SignalFxProtocolBuffers;
+
+/**
+ * Throughput of recording datapoints into sessions of a sender shared by several threads, each
+ * thread using its own session as sessions are not thread-safe.
+ *
+ * Sessions are closed, and their datapoints flushed to a receiver discarding them, every
+ * {@code sessionSize} datapoints, so the cost of flushing is amortized over a realistic session.
+ * Run with {@code -t} to vary contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SessionBenchmark {
+
+    @Param({ "16", "1024" })
+    public int metricCount;
+
+    @Param({ "100", "1000" })
+    public int sessionSize;
+
+    private AggregateMetricSender sender;
+    private String[] metrics;
+
+    @Setup
+    public void setUp() throws Exception {
+        sender = new AggregateMetricSender("benchmark", new DiscardingReceiverFactory(),
+                new StaticAuthToken("token"), Collections.<OnSendErrorHandler>emptyList());
+        metrics = new String[metricCount];
+        AggregateMetricSender.Session session = sender.createSession();
+        for (int i = 0; i < metricCount; i++) {
+            metrics[i] = "benchmark.metric." + i;
+            session.setGauge(metrics[i], 0);
+        }
+        // register all metrics up front: the sender's registry is not safe for concurrent
+        // registrations, only for concurrent lookups
+        session.close();
+    }
+
+    /**
+     * Session of a benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadSession {
+
+        private AggregateMetricSender.Session session;
+        private int recorded;
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void open(SessionBenchmark benchmark) {
+            session = benchmark.sender.createSession();
+            recorded = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() throws Exception {
+            session.close();
+        }
+
+        AggregateMetricSender.Session next(SessionBenchmark benchmark) throws Exception {
+            if (++recorded > benchmark.sessionSize) {
+                session.close();
+                session = benchmark.sender.createSession();
+                recorded = 1;
+            }
+            return session;
+        }
+
+        String metric(SessionBenchmark benchmark) {
+            next = next + 1 == benchmark.metrics.length ? 0 : next + 1;
+            return benchmark.metrics[next];
+        }
+    }
+
+    @Benchmark
+    public AggregateMetricSender.Session setGauge(ThreadSession thread) throws Exception {
+        return thread.next(this).setGauge(thread.metric(this), 42.5);
+    }
+
+    @Benchmark
+    public AggregateMetricSender.Session incrementCounter(ThreadSession thread) throws Exception {
+        return thread.next(this).incrementCounter(thread.metric(this), 1);
+    }
+
+    /**
+     * Factory of receivers accepting all metrics and discarding all datapoints.
+     */
+    private static final class DiscardingReceiverFactory
+            implements DataPointReceiverFactory, DataPointReceiver {
+
+        @Override
+        public DataPointReceiver createDataPointReceiver() {
+            return this;
+        }
+
+        @Override
+        public void addDataPoints(String auth, List<SignalFxProtocolBuffers.DataPoint> dataPoints) {
+        }
+
+        @Override
+        public void backfillDataPoints(String auth, String metric, String metricType,
+                                       String orgId, Map<String, String> dimensions,
+                                       List<SignalFxProtocolBuffers.PointValue> datumPoints) {
+        }
+
+        @Override
+        public Map<String, Boolean> registerMetrics(String auth,
+                Map<String, SignalFxProtocolBuffers.MetricType> metricTypes) {
+            Map<String, Boolean> registered = new HashMap<String, Boolean>();
+            for (String metric : metricTypes.keySet()) {
+                registered.put(metric, true);
+            }
+            return registered;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.signalfx.signalflow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of decoding a binary data frame received by the WebSocket transport, into a stream message
+ * and then into the data message handed over to the computation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BinaryFrameBenchmark {
+
+    @Param({ "1", "2" })
+    public int version;
+
+    @Param({ "false", "true" })
+    public boolean compressed;
+
+    @Param({ "10", "1000" })
+    public int seriesCount;
+
+    private byte[] frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        frame = dataFrame(version, compressed, seriesCount);
+    }
+
+    @Benchmark
+    public StreamMessage decodeFrame() {
+        return WebSocketTransport.TransportConnection.decodeBinaryFrame(frame);
+    }
+
+    @Benchmark
+    public ChannelMessage decodeDataMessage() {
+        return ChannelMessage.decodeStreamMessage(
+                WebSocketTransport.TransportConnection.decodeBinaryFrame(frame));
+    }
+
+    /**
+     * @return a binary data frame of the given encoding version, with a double value per series
+     */
+    static byte[] dataFrame(int version, boolean compressed, int seriesCount)
+            throws IOException {
+        ByteBuffer body = ByteBuffer.allocate(8 + (version == 2 ? 8 : 0) + 4 + seriesCount * 17);
+        body.putLong(System.currentTimeMillis());
+        if (version == 2) {
+            body.putLong(2000);
+        }
+        body.putInt(seriesCount);
+        for (int series = 0; series < seriesCount; series++) {
+            body.put((byte) 0x02);
+            body.putLong(series * 7919L);
+            body.putDouble(series * 0.5);
+        }
+        byte[] payload = body.array();
+        if (compressed) {
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream(payload.length);
+            GZIPOutputStream out = new GZIPOutputStream(gzipped);
+            out.write(payload);
+            out.close();
+            payload = gzipped.toByteArray();
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(20 + payload.length);
+        byte flags = (byte) (compressed ? 1 : 0);
+        if (version == 2) {
+            frame.put(new byte[] { 2, 0, 5, flags });
+        } else {
+            frame.put(new byte[] { 1, 5, flags, 0 });
+        }
+        frame.put("benchmark-chann".getBytes(StandardCharsets.US_ASCII));
+        frame.position(20);
+        frame.put(payload);
+        return frame.array();
+    }
+}
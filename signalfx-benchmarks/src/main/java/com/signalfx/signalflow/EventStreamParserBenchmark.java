@@ -0,0 +1,95 @@
+package com.signalfx.signalflow;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.signalfx.signalflow.ServerSentEventsTransport.TransportEventStreamParser;
+
+/**
+ * Cost of parsing a Server-Sent Events stream of data messages, alone and followed by the JSON
+ * decoding of each message, with the byte-level parser of the transport and with the line-based
+ * parser it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EventStreamParserBenchmark {
+
+    private static final int MESSAGE_COUNT = 100;
+
+    @Param({ "10", "1000" })
+    public int seriesPerMessage;
+
+    private byte[] stream;
+
+    @Setup
+    public void setUp() {
+        StringBuilder events = new StringBuilder();
+        long timestamp = System.currentTimeMillis();
+        for (int message = 0; message < MESSAGE_COUNT; message++) {
+            events.append("event: data\nid: ").append(message).append("\ndata: {")
+                    .append("\"logicalTimestampMs\":").append(timestamp + message * 1000L)
+                    .append(",\"data\":[");
+            for (int series = 0; series < seriesPerMessage; series++) {
+                if (series > 0) {
+                    events.append(',');
+                }
+                events.append("{\"tsId\":\"AAAAAAAA").append(series % 1000)
+                        .append("\",\"value\":").append(series * 0.5).append('}');
+            }
+            events.append("]}\n\n");
+        }
+        stream = events.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        TransportEventStreamParser parser =
+                new TransportEventStreamParser(new ByteArrayInputStream(stream));
+        while (parser.hasNext()) {
+            blackhole.consume(parser.next());
+        }
+    }
+
+    @Benchmark
+    public void parseAndDecode(Blackhole blackhole) {
+        TransportEventStreamParser parser =
+                new TransportEventStreamParser(new ByteArrayInputStream(stream));
+        while (parser.hasNext()) {
+            blackhole.consume(ChannelMessage.decodeStreamMessage(parser.next()));
+        }
+    }
+
+    @Benchmark
+    public void parseLines(Blackhole blackhole) {
+        LineEventStreamParser parser = new LineEventStreamParser(new ByteArrayInputStream(stream));
+        while (parser.hasNext()) {
+            blackhole.consume(parser.next());
+        }
+    }
+
+    @Benchmark
+    public void parseLinesAndDecode(Blackhole blackhole) {
+        LineEventStreamParser parser = new LineEventStreamParser(new ByteArrayInputStream(stream));
+        while (parser.hasNext()) {
+            blackhole.consume(ChannelMessage.decodeStreamMessage(parser.next()));
+        }
+    }
+}
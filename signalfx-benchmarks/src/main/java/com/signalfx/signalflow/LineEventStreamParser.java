@@ -0,0 +1,140 @@
+package com.signalfx.signalflow;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copy of the line-based Server-Sent Events parser that
+ * {@link ServerSentEventsTransport.TransportEventStreamParser} replaced, kept as the baseline of
+ * {@link EventStreamParserBenchmark}: lines are read with {@link BufferedReader#readLine()},
+ * split with {@code substring}/{@code replaceFirst} and data accumulated into a string.
+ */
+class LineEventStreamParser implements Iterator<StreamMessage> {
+
+    private static final Logger log = LoggerFactory.getLogger(LineEventStreamParser.class);
+
+    private static final String EVENT = "event";
+    private static final String ID = "id";
+    private static final String DATA = "data";
+    private static final String RETRY = "retry";
+    private static final String DEFAULT_EVENT = "message";
+    private static final String EMPTY_STRING = "";
+    private static final Pattern DIGITS_ONLY = Pattern.compile("^[\\d]+$");
+
+    private BufferedReader eventStreamReader;
+    private boolean endOfStreamReached = false;
+
+    private int reconnectionTimeoutMs = 1000;
+    private StreamMessage nextMessage;
+    private String lastEventId;
+    private String eventNameBuffer = DEFAULT_EVENT;
+    private StringBuilder dataBuffer = new StringBuilder();
+
+    LineEventStreamParser(InputStream eventStream) {
+        this.eventStreamReader = new BufferedReader(
+                new InputStreamReader(eventStream, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean hasNext() {
+        while ((endOfStreamReached == false) && (eventStreamReader != null)
+                && (nextMessage == null)) {
+            parseNext();
+        }
+        return nextMessage != null;
+    }
+
+    @Override
+    public StreamMessage next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more stream messages");
+        }
+        StreamMessage message = this.nextMessage;
+        this.nextMessage = null;
+        return message;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove from stream not supported");
+    }
+
+    private void close() {
+        try {
+            this.eventStreamReader.close();
+            this.eventStreamReader = null;
+        } catch (IOException ex) {
+            log.error("failed to close event stream", ex);
+        }
+    }
+
+    private void parseNext() {
+        try {
+            long startTime = System.currentTimeMillis();
+            dataBuffer.setLength(0);
+
+            String line;
+            while ((line = eventStreamReader.readLine()) != null) {
+                int colonIndex;
+                if (line.trim().isEmpty()) {
+                    // message ready for dispatch
+                    break;
+                } else if (line.startsWith(":")) {
+                    // ignore the line
+                } else if ((colonIndex = line.indexOf(":")) != -1) {
+                    String field = line.substring(0, colonIndex);
+                    String value = line.substring(colonIndex + 1).replaceFirst(" ",
+                            EMPTY_STRING);
+                    processField(field, value);
+                } else {
+                    processField(line.trim(), EMPTY_STRING);
+                }
+            }
+
+            if (line == null) {
+                endOfStreamReached = true;
+                close();
+            }
+
+            if (dataBuffer.length() > 0) {
+                String data = dataBuffer.toString();
+                if (data.endsWith("\n")) {
+                    data = data.substring(0, data.length() - 1);
+                }
+                nextMessage = new StreamMessage(eventNameBuffer, lastEventId, data);
+            } else {
+                log.debug(eventNameBuffer);
+                eventNameBuffer = EMPTY_STRING;
+                nextMessage = null;
+            }
+
+            log.debug("total stream message read/parse time (ms): {}",
+                    (System.currentTimeMillis() - startTime));
+        } catch (IOException ex) {
+            throw new SignalFlowException("failed to parse next stream event", ex);
+        }
+    }
+
+    private void processField(String field, String value) {
+        if (DATA.equals(field)) {
+            dataBuffer.append(value).append("\n");
+        } else if (ID.equals(field)) {
+            lastEventId = value;
+        } else if (EVENT.equals(field)) {
+            eventNameBuffer = value;
+        } else if (RETRY.equals(field)) {
+            if (DIGITS_ONLY.matcher(value).matches()) {
+                reconnectionTimeoutMs = Integer.parseInt(value);
+            }
+        }
+    }
+}
@@ -39,7 +39,7 @@ public final class PeekableByteArrayOutputStream extends ByteArrayOutputStream {
         if (available() == 0) {
             reset();
         }
-        return to_return;
+        return to_return & 0xFF;
     }
 
     /**
@@ -1,5 +1,6 @@
 package com.signalfx.common.proto;
 
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.MessageLite;
 import java.io.IOException;
 import java.io.InputStream;
@@ -8,67 +9,142 @@ import java.util.Iterator;
 /**
  * The idea with this class is that we can encapsulate a collection of protocol buffers and send
  * them to a stream over HTTP without having to store the entire stream as a byte array in memory.
+ *
+ * Messages are written length-delimited, as by {@link MessageLite#writeDelimitedTo}, and encoded
+ * in batches: each refill encodes as many messages as fit into a reusable buffer with a single
+ * {@link CodedOutputStream}. When the internal buffer is empty and the caller reads into an array
+ * with room for the next message, messages are encoded directly into the caller's array instead.
  */
 public final class ProtocolBufferStreamingInputStream<ProtocolBufferObject extends MessageLite>
         extends InputStream {
 
-    public static final int DEFAULT_STREAM_SIZE = 1024;
+    /**
+     * Default size of the encoding buffer, in bytes.
+     */
+    public static final int DEFAULT_STREAM_SIZE = 8192;
+
     private final Iterator<ProtocolBufferObject> protoBufferIterator;
-    private final PeekableByteArrayOutputStream currentBytes;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    // next message, taken from the iterator but not encoded yet
+    private ProtocolBufferObject pending;
+    private int pendingSize;
 
     public ProtocolBufferStreamingInputStream(
             Iterator<ProtocolBufferObject> protoBufferIterator) {
+        this(protoBufferIterator, DEFAULT_STREAM_SIZE);
+    }
+
+    /**
+     * @param protoBufferIterator
+     *         messages to stream
+     * @param bufferSize
+     *         size of the encoding buffer, in bytes; larger buffers mean fewer, larger refills.
+     *         Messages larger than the buffer grow it.
+     */
+    public ProtocolBufferStreamingInputStream(
+            Iterator<ProtocolBufferObject> protoBufferIterator, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
         this.protoBufferIterator = protoBufferIterator;
-        this.currentBytes = new PeekableByteArrayOutputStream(DEFAULT_STREAM_SIZE);
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @return whether there is a message left to encode, taking it from the iterator if needed
+     */
+    private boolean hasPending() {
+        if (pending == null && protoBufferIterator.hasNext()) {
+            pending = protoBufferIterator.next();
+            int size = pending.getSerializedSize();
+            pendingSize = CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+        }
+        return pending != null;
     }
 
     /**
-     * Fill in our byte buffer if we're out of space by reading the next protocol buffer object.
+     * Encodes as many pending messages as fit into the given array, at least one.
      *
+     * @return number of bytes encoded
      * @throws IOException
-     *         If {@link MessageLite#writeDelimitedTo(java.io.OutputStream)}
-     *         fails
+     *         If encoding fails
      */
-    private void fillBytes() throws IOException {
-        if (currentBytes.available() > 0) {
-            return;
+    private int encode(byte[] into, int off, int len) throws IOException {
+        CodedOutputStream out = CodedOutputStream.newInstance(into, off, len);
+        int written = 0;
+        while (hasPending() && pendingSize <= len - written) {
+            out.writeUInt32NoTag(pending.getSerializedSize());
+            pending.writeTo(out);
+            written += pendingSize;
+            pending = null;
         }
-        currentBytes.reset();
-        while (protoBufferIterator.hasNext() && currentBytes.size() <= 1000) {
-            protoBufferIterator.next().writeDelimitedTo(currentBytes);
+        return written;
+    }
+
+    /**
+     * Fill in our byte buffer if we're out of bytes by encoding the next protocol buffer objects.
+     *
+     * @return whether there are bytes to read
+     * @throws IOException
+     *         If encoding fails
+     */
+    private boolean fillBytes() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        position = 0;
+        limit = 0;
+        if (!hasPending()) {
+            return false;
         }
+        if (pendingSize > buffer.length) {
+            buffer = new byte[pendingSize];
+        }
+        limit = encode(buffer, 0, buffer.length);
+        return true;
     }
 
     @Override
     public int read() throws IOException {
-        fillBytes();
-        return currentBytes.read();
+        if (!fillBytes()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
     }
 
     @Override
     public int available() {
-        return currentBytes.available();
-    }
-
-    @Override
-    public void close() throws IOException {
-        super.close();
-        currentBytes.close();
+        return limit - position;
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
         int total_read = 0;
         while (len > 0) {
-            fillBytes();
-            int result = currentBytes.read(b, off, len);
-            if (result == -1) {
-                return total_read == 0 ? -1 : total_read;
+            if (position == limit && hasPending() && pendingSize <= len) {
+                // nothing buffered and the next message fits: skip the intermediate copy
+                int written = encode(b, off, len);
+                len -= written;
+                total_read += written;
+                off += written;
+                continue;
+            }
+            if (!fillBytes()) {
+                break;
             }
+            int result = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, result);
+            position += result;
             len -= result;
             total_read += result;
             off += result;
         }
-        return total_read;
+        return total_read == 0 ? -1 : total_read;
     }
 }
@@ -38,4 +38,14 @@ public class PeekableByteArrayOutputStreamTest {
         Preconditions.checkArgument(Arrays.equals(readInto, new byte[] { 5, 6, 0 }));
         Preconditions.checkArgument(bout.available() == 0);
     }
+
+    @Test
+    public void testReadUnsigned() {
+        PeekableByteArrayOutputStream bout = new PeekableByteArrayOutputStream(100);
+        bout.write(0xFF);
+        bout.write(0x80);
+        Preconditions.checkArgument(bout.read() == 0xFF);
+        Preconditions.checkArgument(bout.read() == 0x80);
+        Preconditions.checkArgument(bout.read() == -1);
+    }
 }
@@ -1,5 +1,6 @@
 package com.signalfx.metrics.metric;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
@@ -62,6 +63,56 @@ public class ProtoBufTest {
         verifyInputStream(pointsToWrite, new ProtocolBufferStreamingInputStream<DataPoint>(pointsToWrite.iterator()));
     }
 
+    @Test
+    public void testProtoStreamingBufferSizes() throws IOException {
+        List<DataPoint> pointsToWrite = new ArrayList<DataPoint>();
+        StringBuilder longSource = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            longSource.append("source-");
+        }
+        for (int i = 0; i < 1000; i++) {
+            pointsToWrite.add(DataPoint.newBuilder()
+                    .setSource(i % 100 == 0 ? longSource.toString() : "tests")
+                    .setMetric("testm" + i)
+                    .setTimestamp(System.currentTimeMillis() + i)
+                    .setValue(Datum.newBuilder().setDoubleValue(i * 0.1)).build());
+        }
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        for (DataPoint dp: pointsToWrite) {
+            dp.writeDelimitedTo(bout);
+        }
+        byte[] rawBytes = bout.toByteArray();
+
+        for (int bufferSize : new int[] { 1, 64, 1024, 65536 }) {
+            // bulk reads, partly encoded directly into the destination array
+            byte[] bulkBytes = IOUtils.toByteArray(new ProtocolBufferStreamingInputStream<DataPoint>(
+                    pointsToWrite.iterator(), bufferSize));
+            assertArrayEquals(rawBytes, bulkBytes);
+
+            // reads smaller than most messages
+            InputStream in = new ProtocolBufferStreamingInputStream<DataPoint>(
+                    pointsToWrite.iterator(), bufferSize);
+            ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+            byte[] chunk = new byte[7];
+            int read;
+            while ((read = in.read(chunk, 0, chunk.length)) != -1) {
+                chunked.write(chunk, 0, read);
+            }
+            assertArrayEquals(rawBytes, chunked.toByteArray());
+
+            // byte by byte
+            in = new ProtocolBufferStreamingInputStream<DataPoint>(
+                    pointsToWrite.iterator(), bufferSize);
+            ByteArrayOutputStream single = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                single.write(b);
+            }
+            assertArrayEquals(rawBytes, single.toByteArray());
+        }
+    }
+
     private static void verifyInputStream(List<DataPoint> originalPoints, InputStream in) throws IOException {
         List<DataPoint> pointsRead = new ArrayList<DataPoint>();
         while (true) {
@@ -1,24 +1,41 @@
 package com.signalfx.connection;
 
+import com.signalfx.connection.telemetry.FlightRecorder;
+import com.signalfx.connection.telemetry.SenderTelemetry;
+import com.signalfx.endpoint.CompositeEndpoint;
 import com.signalfx.endpoint.SignalFxReceiverEndpoint;
 import java.nio.charset.StandardCharsets;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import static com.signalfx.connection.RetryDefaults.DEFAULT_MAX_RETRIES;
@@ -33,11 +50,25 @@ public abstract class AbstractHttpReceiverConnection {
     public static final String USER_AGENT = "SignalFx-java-client/" + VERSION_NUMBER;
     public static final String DISABLE_COMPRESSION_PROPERTY = "com.signalfx.public.java.disableHttpCompression";
 
+    // context attributes holding the telemetry and retry budget of the request, for the retry
+    // handlers
+    private static final String TELEMETRY_ATTRIBUTE = "com.signalfx.connection.telemetry";
+    private static final String RETRY_BUDGET_ATTRIBUTE = "com.signalfx.connection.retryBudget";
+
     protected static final ContentType JSON_TYPE = ContentType.APPLICATION_JSON;
 
     protected final CloseableHttpClient client;
     protected final HttpHost host;
     protected final RequestConfig requestConfig;
+    private final RetryHandler retryHandler;
+    private final RetryStrategy retryStrategy;
+    private final CompositeEndpoint composite;
+    private final Map<CompositeEndpoint.Target, Route> routes;
+    private volatile CompressionStrategy compression = CompressionStrategy.DEFAULT;
+    private volatile SenderTelemetry telemetry = SenderTelemetry.NOOP;
+    private volatile CircuitBreaker circuitBreaker;
+    private volatile RetryBudget retryBudget;
+    private volatile Http2Transport http2Transport;
 
     protected AbstractHttpReceiverConnection(SignalFxReceiverEndpoint endpoint, int timeoutMs,
                                              HttpClientConnectionManager httpClientConnectionManager) {
@@ -51,10 +82,12 @@ public abstract class AbstractHttpReceiverConnection {
 
     protected AbstractHttpReceiverConnection(SignalFxReceiverEndpoint endpoint, int timeoutMs, int maxRetries,
                                              HttpClientConnectionManager httpClientConnectionManager, List<Class<? extends IOException>> nonRetryableExceptions) {
+        this.retryHandler = new RetryHandler(maxRetries, nonRetryableExceptions);
+        this.retryStrategy = new RetryStrategy(maxRetries);
         this.client = HttpClientBuilder.create()
                 .setConnectionManager(httpClientConnectionManager)
-                .setRetryHandler(new RetryHandler(maxRetries, nonRetryableExceptions))
-                .setServiceUnavailableRetryStrategy(new RetryStrategy(maxRetries))
+                .setRetryHandler(retryHandler)
+                .setServiceUnavailableRetryStrategy(retryStrategy)
                 .build();
         this.host = new HttpHost(endpoint.getHostname(), endpoint.getPort(), endpoint.getScheme());
 
@@ -65,15 +98,316 @@ public abstract class AbstractHttpReceiverConnection {
                 .setConnectTimeout(timeoutMs)
                 .setProxy(proxy)
                 .build();
+
+        if (endpoint instanceof CompositeEndpoint) {
+            this.composite = (CompositeEndpoint) endpoint;
+            this.routes = new IdentityHashMap<CompositeEndpoint.Target, Route>();
+            for (CompositeEndpoint.Target target : composite.getTargets()) {
+                SignalFxReceiverEndpoint targetEndpoint = target.getEndpoint();
+                routes.put(target, new Route(
+                        new HttpHost(targetEndpoint.getHostname(), targetEndpoint.getPort(),
+                                targetEndpoint.getScheme()),
+                        RequestConfig.copy(requestConfig)
+                                .setProxy(createHttpProxyFromSystemProperties(
+                                        targetEndpoint.getHostname()))
+                                .build()));
+            }
+        } else {
+            this.composite = null;
+            this.routes = null;
+        }
+    }
+
+    /**
+     * @return how request bodies are compressed, when they are
+     */
+    public CompressionStrategy getCompression() {
+        return compression;
+    }
+
+    /**
+     * @param compression
+     *            how request bodies are compressed, when they are; defaults to
+     *            {@link CompressionStrategy#DEFAULT}
+     */
+    public void setCompression(CompressionStrategy compression) {
+        this.compression = compression == null ? CompressionStrategy.NONE : compression;
+    }
+
+    /**
+     * @return telemetry told about the requests of this connection
+     */
+    public SenderTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * @param telemetry
+     *            telemetry told about the requests of this connection; defaults to
+     *            {@link SenderTelemetry#NOOP}
+     */
+    public void setTelemetry(SenderTelemetry telemetry) {
+        this.telemetry = telemetry == null ? SenderTelemetry.NOOP : telemetry;
+    }
+
+    /**
+     * @return breaker failing requests fast when their endpoint keeps failing, or null if there
+     *         is none
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @param circuitBreaker
+     *            breaker failing requests fast when their endpoint keeps failing, or null not to,
+     *            the default; with a {@link CompositeEndpoint}, each target has its own circuit
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @return budget limiting the retries of the requests of this connection, or null if they are
+     *         not limited
+     */
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * @param retryBudget
+     *            budget limiting the retries of the requests of this connection, usually shared
+     *            with other connections, or null not to limit them beyond the maximum number of
+     *            retries of each request, the default
+     */
+    public void setRetryBudget(RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+    }
+
+    /**
+     * @return transport sending the requests of this connection over HTTP/2, or null if they are
+     *         sent over HTTP/1.1
+     */
+    public Http2Transport getHttp2Transport() {
+        return http2Transport;
+    }
+
+    /**
+     * @param http2Transport
+     *            transport sending the requests of this connection over HTTP/2 where the endpoint
+     *            supports it, usually shared with other connections, or null to send them over
+     *            HTTP/1.1 with the connection manager of this connection, the default; requests
+     *            through a proxy are always sent over HTTP/1.1
+     */
+    public void setHttp2Transport(Http2Transport http2Transport) {
+        this.http2Transport = http2Transport;
+    }
+
+    /**
+     * Called by the retry handlers for a request they would retry: spends the retry budget of
+     * the request being executed in the given context, and tells its telemetry.
+     *
+     * @return whether the budget allows the retry
+     */
+    static boolean allowRetry(HttpContext context, int statusCode, int executionCount) {
+        Object budget = context == null ? null : context.getAttribute(RETRY_BUDGET_ATTRIBUTE);
+        Object telemetry = context == null ? null : context.getAttribute(TELEMETRY_ATTRIBUTE);
+        if (budget instanceof RetryBudget && !((RetryBudget) budget).tryRetry()) {
+            if (telemetry instanceof SenderTelemetry) {
+                ((SenderTelemetry) telemetry).retryDenied(statusCode);
+            }
+            return false;
+        }
+        FlightRecorder.retry(statusCode, executionCount);
+        if (telemetry instanceof SenderTelemetry) {
+            ((SenderTelemetry) telemetry).requestRetried(statusCode);
+        }
+        return true;
     }
 
     protected CloseableHttpResponse postToEndpoint(String auth, HttpEntity entity, String endpoint,
                                                    boolean compress)
             throws IOException {
         if (compress) {
-            entity = new GzipCompressingEntity(entity);
+            entity = compression.apply(entity, telemetry);
+        }
+        return send(auth, entity, endpoint, null);
+    }
+
+    /**
+     * Same as {@link #postToEndpoint(String, HttpEntity, String, boolean)}, but sends the request
+     * a second time when it is slow to complete, as the given policy says, and returns the first
+     * successful response. Requests whose body cannot be sent again are not hedged.
+     *
+     * @param hedging
+     *            when to hedge the request, or null not to
+     */
+    protected CloseableHttpResponse postToEndpoint(String auth, HttpEntity entity, String endpoint,
+                                                   boolean compress, HedgingPolicy hedging)
+            throws IOException {
+        if (hedging == null || (entity != null && !entity.isRepeatable())) {
+            return postToEndpoint(auth, entity, endpoint, compress);
+        }
+        if (compress) {
+            entity = compression.apply(entity, telemetry);
+        }
+
+        hedging.requestSent();
+        CompletionService<CloseableHttpResponse> completion =
+                new ExecutorCompletionService<CloseableHttpResponse>(hedging.getExecutor());
+        Attempt first = new Attempt(auth, entity, endpoint, hedging);
+        Future<CloseableHttpResponse> firstFuture = completion.submit(first);
+        Attempt second = null;
+        int pending = 1;
+        CloseableHttpResponse failed = null;
+        try {
+            long delayNanos = hedging.getDelayNanos();
+            Future<CloseableHttpResponse> done = delayNanos < 0 ? completion.take()
+                    : completion.poll(delayNanos, TimeUnit.NANOSECONDS);
+            if (done == null) {
+                if (hedging.tryHedge()) {
+                    second = new Attempt(auth, entity, endpoint, null);
+                    completion.submit(second);
+                    pending++;
+                }
+                done = completion.take();
+            }
+            while (true) {
+                pending--;
+                Attempt attempt = done == firstFuture ? first : second;
+                Attempt other = attempt == first ? second : first;
+                CloseableHttpResponse resp;
+                try {
+                    resp = done.get();
+                } catch (ExecutionException e) {
+                    if (pending > 0 && e.getCause() instanceof IOException) {
+                        done = completion.take();
+                        continue;
+                    }
+                    if (pending > 0) {
+                        other.abort();
+                    }
+                    if (failed != null) {
+                        return failed;
+                    }
+                    throw unwrap(e);
+                }
+                if (resp.getStatusLine().getStatusCode() < HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                    if (pending > 0) {
+                        other.abort();
+                    }
+                    if (attempt == second) {
+                        hedging.hedgeWon();
+                    }
+                    if (failed != null) {
+                        close(failed);
+                    }
+                    return resp;
+                }
+                if (pending == 0) {
+                    if (failed != null) {
+                        close(resp);
+                        return failed;
+                    }
+                    return resp;
+                }
+                // keep the first server error, in case the other attempt fails too
+                failed = resp;
+                done = completion.take();
+            }
+        } catch (InterruptedException e) {
+            first.abort();
+            if (second != null) {
+                second.abort();
+            }
+            if (failed != null) {
+                close(failed);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + endpoint);
+        }
+    }
+
+    private static IOException unwrap(ExecutionException e) throws IOException {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
         }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException(cause);
+    }
 
+    private static void close(CloseableHttpResponse resp) {
+        try {
+            EntityUtils.consumeQuietly(resp.getEntity());
+            resp.close();
+        } catch (IOException e) {
+            log.trace("Unable to close response", e);
+        }
+    }
+
+    /**
+     * @param attempt
+     *            hedged attempt the request is sent for, or null
+     */
+    private CloseableHttpResponse send(String auth, HttpEntity entity, String endpoint,
+                                       Attempt attempt)
+            throws IOException {
+        if (composite == null) {
+            return execute(host, requestConfig, auth, entity, endpoint, attempt);
+        }
+
+        // send the request to a target of the composite endpoint, and to the next one if it
+        // fails, as long as there are targets left and the body can be sent again
+        boolean repeatable = entity == null || entity.isRepeatable();
+        List<CompositeEndpoint.Target> tried = new ArrayList<CompositeEndpoint.Target>(2);
+        while (true) {
+            CompositeEndpoint.Target target = composite.select(tried);
+            tried.add(target);
+            boolean failOver = repeatable && tried.size() < routes.size();
+            Route route = routes.get(target);
+            composite.requestStarted(target);
+            long start = System.nanoTime();
+            CloseableHttpResponse resp;
+            try {
+                resp = execute(route.host, route.config, auth, entity, endpoint, attempt);
+            } catch (IOException e) {
+                if (attempt != null && attempt.isAborted()) {
+                    // the target is not at fault, only slower than the other attempt
+                    composite.requestCompleted(target, true, System.nanoTime() - start);
+                    throw e;
+                }
+                composite.requestCompleted(target, false, System.nanoTime() - start);
+                if (!failOver) {
+                    throw e;
+                }
+                log.debug("Failing over from {}", target, e);
+                continue;
+            } catch (RuntimeException e) {
+                composite.requestCompleted(target, false, System.nanoTime() - start);
+                throw e;
+            }
+            int statusCode = resp.getStatusLine().getStatusCode();
+            boolean success = statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR;
+            composite.requestCompleted(target, success, System.nanoTime() - start);
+            if (success || !failOver) {
+                return resp;
+            }
+            log.debug("Failing over from {} after status code {}", target, statusCode);
+            EntityUtils.consumeQuietly(resp.getEntity());
+            resp.close();
+        }
+    }
+
+    private CloseableHttpResponse execute(HttpHost host, RequestConfig requestConfig, String auth,
+                                          HttpEntity entity, String endpoint, Attempt attempt)
+            throws IOException {
         HttpPost post = new HttpPost(String.format("%s%s", host.toURI(), endpoint));
         post.setConfig(requestConfig);
         if (auth != null) {
@@ -81,13 +415,168 @@ public abstract class AbstractHttpReceiverConnection {
         }
         post.setHeader("User-Agent", USER_AGENT);
         post.setEntity(entity);
+        if (attempt != null) {
+            attempt.setRequest(post);
+        }
+
+        CircuitBreaker breaker = this.circuitBreaker;
+        CircuitBreaker.Circuit circuit = breaker == null ? null : breaker.getCircuit(host.toURI());
+        boolean probe = circuit != null && circuit.acquire();
+        boolean success = false;
 
+        SenderTelemetry telemetry = this.telemetry;
+        HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(TELEMETRY_ATTRIBUTE, telemetry);
+        RetryBudget retryBudget = this.retryBudget;
+        context.setAttribute(RETRY_BUDGET_ATTRIBUTE, retryBudget);
+        boolean compressed = entity != null && entity.getContentEncoding() != null;
+        Object event = FlightRecorder.beginHttpPost();
+        long start = System.nanoTime();
         try {
             log.trace("Talking to endpoint {}", post);
-            return client.execute(post);
+            CloseableHttpResponse resp = execute(host, post, context);
+            int statusCode = resp.getStatusLine().getStatusCode();
+            success = statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR;
+            if (success && retryBudget != null) {
+                retryBudget.requestSucceeded();
+            }
+            telemetry.requestCompleted(statusCode, System.nanoTime() - start);
+            FlightRecorder.commitHttpPost(event, endpoint, statusCode, compressed);
+            return resp;
         } catch (IOException e) {
+            if (attempt == null || !attempt.isAborted()) {
+                telemetry.requestCompleted(-1, System.nanoTime() - start);
+            } else {
+                // aborted because the other attempt of a hedged request succeeded
+                success = true;
+            }
+            FlightRecorder.commitHttpPost(event, endpoint, -1, compressed);
             log.trace("Exception trying to execute {}", post, e);
             throw e;
+        } finally {
+            if (circuit != null) {
+                circuit.release(probe, success);
+            }
+        }
+    }
+
+    /**
+     * Sends a request over HTTP/2 when the transport and endpoint allow it, with the same retries
+     * as the HTTP client, or over HTTP/1.1 otherwise, including when HTTP/2 fails for an endpoint
+     * never reached over HTTP/2 so far.
+     */
+    private CloseableHttpResponse execute(HttpHost host, HttpPost post, HttpClientContext context)
+            throws IOException {
+        Http2Transport http2 = this.http2Transport;
+        if (http2 == null || post.getConfig().getProxy() != null || !http2.supports(host)) {
+            return client.execute(post, context);
+        }
+
+        context.setAttribute(HttpCoreContext.HTTP_REQUEST, post);
+        boolean repeatable = post.getEntity() == null || post.getEntity().isRepeatable();
+        int executionCount = 1;
+        int responseCount = 1;
+        while (true) {
+            CloseableHttpResponse resp;
+            try {
+                resp = http2.execute(host, post);
+            } catch (IOException e) {
+                if (!post.isAborted() && !http2.isNegotiated(host) && repeatable) {
+                    log.debug("Unable to reach {} over HTTP/2", host, e);
+                    resp = client.execute(post, context);
+                    http2.fellBack(host);
+                    return resp;
+                }
+                if (!repeatable || !retryHandler.retryRequest(e, executionCount++, context)) {
+                    throw e;
+                }
+                log.debug("Retrying {} over HTTP/2", post, e);
+                continue;
+            }
+            if (!repeatable || !retryStrategy.retryRequest(resp, responseCount++, context)) {
+                return resp;
+            }
+            close(resp);
+        }
+    }
+
+    /**
+     * One of the attempts of a hedged request, which can be aborted once the other attempt
+     * succeeded.
+     */
+    private final class Attempt implements Callable<CloseableHttpResponse> {
+        private final String auth;
+        private final HttpEntity entity;
+        private final String endpoint;
+        // policy to record the latency of the attempt into, for the first attempt only
+        private final HedgingPolicy hedging;
+        // guarded by this
+        private HttpRequestBase request;
+        private CloseableHttpResponse response;
+        private boolean aborted;
+
+        private Attempt(String auth, HttpEntity entity, String endpoint, HedgingPolicy hedging) {
+            this.auth = auth;
+            this.entity = entity;
+            this.endpoint = endpoint;
+            this.hedging = hedging;
+        }
+
+        @Override
+        public CloseableHttpResponse call() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return completed(send(auth, entity, endpoint, this));
+            } finally {
+                if (hedging != null) {
+                    hedging.recordLatency(System.nanoTime() - start);
+                }
+            }
+        }
+
+        private synchronized CloseableHttpResponse completed(CloseableHttpResponse resp)
+                throws IOException {
+            if (aborted) {
+                close(resp);
+                throw new RequestAbortedException("Request aborted");
+            }
+            response = resp;
+            return resp;
+        }
+
+        private synchronized void setRequest(HttpRequestBase request) {
+            this.request = request;
+            if (aborted) {
+                request.abort();
+            }
+        }
+
+        private synchronized boolean isAborted() {
+            return aborted;
+        }
+
+        /**
+         * Aborts the request in flight, or closes its response if it already completed.
+         */
+        private synchronized void abort() {
+            aborted = true;
+            if (request != null) {
+                request.abort();
+            }
+            if (response != null) {
+                close(response);
+                response = null;
+            }
+        }
+    }
+
+    private static final class Route {
+        private final HttpHost host;
+        private final RequestConfig config;
+
+        private Route(HttpHost host, RequestConfig config) {
+            this.host = host;
+            this.config = config;
         }
     }
 
@@ -126,6 +615,17 @@ public abstract class AbstractHttpReceiverConnection {
      *         then null will be returned instead
      **/
     protected HttpHost createHttpProxyFromSystemProperties(String endpointHostname) {
+        return proxyFromSystemProperties(endpointHostname);
+    }
+
+    /**
+     * @param endpointHostname  the signalfx endpoint hostname
+     *
+     * @return the http proxy to reach the endpoint through, as configured by the java network
+     *         proxy system properties, or null if the endpoint is reached directly
+     * @see #createHttpProxyFromSystemProperties(String)
+     */
+    public static HttpHost proxyFromSystemProperties(String endpointHostname) {
 
         String proxyHost = System.getProperty("http.proxyHost");
         if ((proxyHost != null) && (proxyHost.trim().length() > 0)) {
@@ -0,0 +1,198 @@
+package com.signalfx.connection;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops sending requests to an endpoint that keeps failing, so that callers fail fast instead of
+ * waiting for timeouts and retries during an outage.
+ *
+ * Each endpoint has its own circuit. A circuit is closed until {@link #getFailureThreshold()}
+ * requests in a row fail, with an I/O error or a server error, after retries. It is then open:
+ * requests fail right away with a {@link CircuitBreakerOpenException} for {@link #getOpenMs()}.
+ * Then it is half-open: a single request is sent as a probe, the others still failing fast. The
+ * circuit closes if the probe succeeds, and opens again otherwise.
+ *
+ * A breaker is meant to be shared by the connections sending to the same endpoints, e.g. all
+ * connections created by a factory.
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MS = 10000;
+
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<String, Circuit>();
+    private final LongAdder rejected = new LongAdder();
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile long openMs = DEFAULT_OPEN_MS;
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * @param failureThreshold
+     *            number of failed requests in a row after which the circuit of an endpoint opens
+     * @return this breaker
+     */
+    public CircuitBreaker setFailureThreshold(int failureThreshold) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive");
+        }
+        this.failureThreshold = failureThreshold;
+        return this;
+    }
+
+    public long getOpenMs() {
+        return openMs;
+    }
+
+    /**
+     * @param openMs
+     *            time during which requests fail fast once a circuit opened, before a probe is sent
+     * @return this breaker
+     */
+    public CircuitBreaker setOpenMs(long openMs) {
+        if (openMs < 0) {
+            throw new IllegalArgumentException("openMs must not be negative");
+        }
+        this.openMs = openMs;
+        return this;
+    }
+
+    /**
+     * @param endpoint
+     *            endpoint URI, e.g. {@code https://ingest.signalfx.com:443}
+     * @return state of the circuit of the endpoint
+     */
+    public State getState(String endpoint) {
+        Circuit circuit = circuits.get(endpoint);
+        return circuit == null ? State.CLOSED : circuit.getState();
+    }
+
+    /**
+     * @return state of the circuit of each endpoint requests were sent to
+     */
+    public Map<String, State> getStates() {
+        Map<String, State> states = new HashMap<String, State>();
+        for (Map.Entry<String, Circuit> circuit : circuits.entrySet()) {
+            states.put(circuit.getKey(), circuit.getValue().getState());
+        }
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * @return number of requests that failed fast because their circuit was open
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    Circuit getCircuit(String endpoint) {
+        Circuit circuit = circuits.get(endpoint);
+        if (circuit == null) {
+            Circuit created = new Circuit(endpoint);
+            circuit = circuits.putIfAbsent(endpoint, created);
+            if (circuit == null) {
+                circuit = created;
+            }
+        }
+        return circuit;
+    }
+
+    /**
+     * The circuit of an endpoint.
+     */
+    final class Circuit {
+        private final String endpoint;
+        // guarded by this
+        private State state = State.CLOSED;
+        private int failures;
+        private long openedAt;
+        private boolean probing;
+
+        private Circuit(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+
+        /**
+         * Lets a request through, or fails it fast. Must be followed by
+         * {@link #release(boolean, boolean)} once a request let through completes.
+         *
+         * @return whether the request is the probe of a half-open circuit
+         */
+        synchronized boolean acquire() throws CircuitBreakerOpenException {
+            switch (state) {
+            case CLOSED:
+                return false;
+            case OPEN:
+                if (System.nanoTime() - openedAt >= TimeUnit.MILLISECONDS.toNanos(openMs)) {
+                    state = State.HALF_OPEN;
+                    probing = true;
+                    log.info("Probing {} after its circuit was open for {}ms", endpoint, openMs);
+                    return true;
+                }
+                break;
+            case HALF_OPEN:
+            default:
+                if (!probing) {
+                    probing = true;
+                    return true;
+                }
+                break;
+            }
+            rejected.increment();
+            throw new CircuitBreakerOpenException("Circuit to " + endpoint + " is open");
+        }
+
+        /**
+         * @param probe
+         *            what {@link #acquire()} returned
+         * @param success
+         *            whether the request succeeded
+         */
+        synchronized void release(boolean probe, boolean success) {
+            if (probe) {
+                probing = false;
+                if (success) {
+                    state = State.CLOSED;
+                    failures = 0;
+                    log.info("Closing circuit to {}", endpoint);
+                } else {
+                    open();
+                }
+            } else if (state == State.CLOSED) {
+                if (success) {
+                    failures = 0;
+                } else if (++failures >= failureThreshold) {
+                    open();
+                }
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            failures = 0;
+            log.warn("Opening circuit to {} for {}ms", endpoint, openMs);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.signalfx.connection;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request to an endpoint whose circuit is open.
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,30 @@
+package com.signalfx.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Content coding applied to request bodies, such as gzip.
+ *
+ * Implementations must be thread-safe. Custom codecs can be passed to a
+ * {@link CompressionStrategy} directly, or registered as a {@link java.util.ServiceLoader}
+ * service to be found by {@link CompressionCodecs#forEncoding(String)}. Only use codecs the
+ * endpoint accepts.
+ */
+public interface CompressionCodec {
+
+    /**
+     * @return value of the {@code Content-Encoding} header of encoded bodies, e.g. "gzip"
+     */
+    String getContentEncoding();
+
+    /**
+     * @param out
+     *            stream receiving the encoded body
+     * @return stream encoding what is written to it into {@code out}; closing it must finish the
+     *         encoding and close {@code out}
+     * @throws IOException
+     *             if the encoder fails to write its header
+     */
+    OutputStream encode(OutputStream out) throws IOException;
+}
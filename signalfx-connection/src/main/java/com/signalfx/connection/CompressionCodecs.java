@@ -0,0 +1,124 @@
+package com.signalfx.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ServiceLoader;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Built-in compression codecs, and lookup of codecs by content encoding.
+ */
+public final class CompressionCodecs {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * gzip at the default compression level, as used when no strategy is configured.
+     */
+    public static final CompressionCodec GZIP = gzip(Deflater.DEFAULT_COMPRESSION);
+
+    /**
+     * zlib-wrapped deflate at the default compression level.
+     */
+    public static final CompressionCodec DEFLATE = deflate(Deflater.DEFAULT_COMPRESSION);
+
+    private CompressionCodecs() {
+    }
+
+    /**
+     * @param level
+     *            compression level, from {@link Deflater#BEST_SPEED} (1) to
+     *            {@link Deflater#BEST_COMPRESSION} (9), or {@link Deflater#DEFAULT_COMPRESSION}
+     * @return gzip codec compressing at the given level
+     */
+    public static CompressionCodec gzip(final int level) {
+        checkLevel(level);
+        return new CompressionCodec() {
+            @Override
+            public String getContentEncoding() {
+                return "gzip";
+            }
+
+            @Override
+            public OutputStream encode(OutputStream out) throws IOException {
+                return new GZIPOutputStream(out, BUFFER_SIZE) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            }
+
+            @Override
+            public String toString() {
+                return "gzip(" + level + ")";
+            }
+        };
+    }
+
+    /**
+     * @param level
+     *            compression level, from {@link Deflater#BEST_SPEED} (1) to
+     *            {@link Deflater#BEST_COMPRESSION} (9), or {@link Deflater#DEFAULT_COMPRESSION}
+     * @return deflate codec compressing at the given level
+     */
+    public static CompressionCodec deflate(final int level) {
+        checkLevel(level);
+        return new CompressionCodec() {
+            @Override
+            public String getContentEncoding() {
+                return "deflate";
+            }
+
+            @Override
+            public OutputStream encode(OutputStream out) {
+                final Deflater deflater = new Deflater(level);
+                return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            // not ended by the stream, as it did not create it
+                            deflater.end();
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public String toString() {
+                return "deflate(" + level + ")";
+            }
+        };
+    }
+
+    /**
+     * @param contentEncoding
+     *            content encoding, e.g. "gzip"
+     * @return the built-in codec for that encoding at its default level, or else the first codec
+     *         registered as a {@link ServiceLoader} service for it, or null if there is none
+     */
+    public static CompressionCodec forEncoding(String contentEncoding) {
+        if (GZIP.getContentEncoding().equalsIgnoreCase(contentEncoding)) {
+            return GZIP;
+        }
+        if (DEFLATE.getContentEncoding().equalsIgnoreCase(contentEncoding)) {
+            return DEFLATE;
+        }
+        for (CompressionCodec codec : ServiceLoader.load(CompressionCodec.class)) {
+            if (codec.getContentEncoding().equalsIgnoreCase(contentEncoding)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    private static void checkLevel(int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION
+                && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("invalid compression level " + level);
+        }
+    }
+}
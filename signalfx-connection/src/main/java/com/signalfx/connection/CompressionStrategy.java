@@ -0,0 +1,211 @@
+package com.signalfx.connection;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+import com.signalfx.connection.telemetry.FlightRecorder;
+import com.signalfx.connection.telemetry.SenderTelemetry;
+
+/**
+ * How request bodies are compressed: with which codec, and from which size on.
+ *
+ * Small bodies cost more to compress than to send, so bodies whose length is known and below
+ * the minimum size are sent as-is. Strategies are immutable.
+ */
+public final class CompressionStrategy {
+
+    /**
+     * gzip at the default level, whatever the body size; the behavior when no strategy is
+     * configured.
+     */
+    public static final CompressionStrategy DEFAULT =
+            new CompressionStrategy(CompressionCodecs.GZIP, 0);
+
+    /**
+     * No compression.
+     */
+    public static final CompressionStrategy NONE = new CompressionStrategy(null, 0);
+
+    private final CompressionCodec codec;
+    private final long minSizeBytes;
+
+    /**
+     * @param codec
+     *            codec compressing bodies, or null not to compress
+     * @param minSizeBytes
+     *            size below which bodies of known length are not compressed
+     */
+    public CompressionStrategy(CompressionCodec codec, long minSizeBytes) {
+        if (minSizeBytes < 0) {
+            throw new IllegalArgumentException("minSizeBytes must not be negative");
+        }
+        this.codec = codec;
+        this.minSizeBytes = minSizeBytes;
+    }
+
+    /**
+     * @param level
+     *            gzip compression level, from 1 to 9, or -1 for the default level
+     * @return strategy compressing all bodies with gzip at the given level
+     */
+    public static CompressionStrategy gzip(int level) {
+        return new CompressionStrategy(CompressionCodecs.gzip(level), 0);
+    }
+
+    /**
+     * @param level
+     *            deflate compression level, from 1 to 9, or -1 for the default level
+     * @return strategy compressing all bodies with deflate at the given level
+     */
+    public static CompressionStrategy deflate(int level) {
+        return new CompressionStrategy(CompressionCodecs.deflate(level), 0);
+    }
+
+    /**
+     * @param minSizeBytes
+     *            size below which bodies of known length are not compressed
+     * @return strategy with the same codec and the given minimum size
+     */
+    public CompressionStrategy withMinSizeBytes(long minSizeBytes) {
+        return new CompressionStrategy(codec, minSizeBytes);
+    }
+
+    /**
+     * @return codec compressing bodies, or null if bodies are not compressed
+     */
+    public CompressionCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return size below which bodies of known length are not compressed
+     */
+    public long getMinSizeBytes() {
+        return minSizeBytes;
+    }
+
+    /**
+     * @param entity
+     *            request body
+     * @return the body compressed as it is written, or the body itself if it is not to be
+     *         compressed
+     */
+    public HttpEntity apply(HttpEntity entity) {
+        return apply(entity, SenderTelemetry.NOOP);
+    }
+
+    /**
+     * @param entity
+     *            request body
+     * @param telemetry
+     *            told the sizes and duration of each compression of the body
+     * @return the body compressed as it is written, or the body itself if it is not to be
+     *         compressed
+     */
+    public HttpEntity apply(HttpEntity entity, SenderTelemetry telemetry) {
+        if (codec == null || entity == null) {
+            return entity;
+        }
+        long length = entity.getContentLength();
+        if (length >= 0 && length < minSizeBytes) {
+            return entity;
+        }
+        return new CompressingEntity(entity, codec, telemetry);
+    }
+
+    @Override
+    public String toString() {
+        return codec == null ? "none" : codec + " from " + minSizeBytes + " bytes";
+    }
+
+    /**
+     * Entity compressing the entity it wraps as it is written, with unknown length.
+     */
+    private static final class CompressingEntity extends HttpEntityWrapper {
+
+        private final CompressionCodec codec;
+        private final SenderTelemetry telemetry;
+
+        CompressingEntity(HttpEntity entity, CompressionCodec codec, SenderTelemetry telemetry) {
+            super(entity);
+            this.codec = codec;
+            this.telemetry = telemetry;
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return new BasicHeader("Content-Encoding", codec.getContentEncoding());
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return true;
+        }
+
+        @Override
+        public InputStream getContent() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            Object event = FlightRecorder.beginCompress();
+            if (telemetry == SenderTelemetry.NOOP && event == null) {
+                OutputStream encoded = codec.encode(outStream);
+                try {
+                    wrappedEntity.writeTo(encoded);
+                } finally {
+                    encoded.close();
+                }
+                return;
+            }
+
+            long start = System.nanoTime();
+            CountingOutputStream out = new CountingOutputStream(outStream);
+            CountingOutputStream in = new CountingOutputStream(codec.encode(out));
+            try {
+                wrappedEntity.writeTo(in);
+            } finally {
+                in.close();
+            }
+            telemetry.payloadCompressed(in.count, out.count, System.nanoTime() - start);
+            FlightRecorder.commitCompress(event, codec.getContentEncoding(), in.count, out.count);
+        }
+    }
+
+    /**
+     * Stream counting the bytes written through it.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.signalfx.connection;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.signalfx.connection.telemetry.Histogram;
+
+/**
+ * When and how often a request is hedged: sent a second time, on another pooled connection or to
+ * another target of a {@link com.signalfx.endpoint.CompositeEndpoint}, when it has not completed
+ * within the usual latency of requests, the first successful response being used.
+ *
+ * A request is hedged once it has taken longer than {@link #getDelayPercentile()} of the requests
+ * sent so far, but never before {@link #getMinSamples()} requests completed. Hedges spend a budget
+ * that grows by {@link #getBudgetRatio()} for each request sent, up to
+ * {@link #getBudgetBurst()}, so that hedging cannot add more than that fraction of load, even
+ * when the endpoint slows down as a whole.
+ *
+ * A policy is meant to be shared by the connections sending to the same endpoint, e.g. all
+ * connections created by a factory, so that they share its latency observations and budget.
+ * Requests and hedges run on the executor of the policy, threads of a cached pool by default.
+ */
+public class HedgingPolicy {
+
+    public static final double DEFAULT_DELAY_PERCENTILE = 0.95;
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+    public static final long DEFAULT_MIN_DELAY_MS = 1;
+    public static final double DEFAULT_BUDGET_RATIO = 0.05;
+    public static final int DEFAULT_BUDGET_BURST = 10;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    // latencies in microseconds, from 100us to about 52s
+    private final Histogram latencies = Histogram.exponential(100, 2, 20);
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private volatile double delayPercentile = DEFAULT_DELAY_PERCENTILE;
+    private volatile int minSamples = DEFAULT_MIN_SAMPLES;
+    private volatile long minDelayMs = DEFAULT_MIN_DELAY_MS;
+    private volatile double budgetRatio = DEFAULT_BUDGET_RATIO;
+    private volatile int budgetBurst = DEFAULT_BUDGET_BURST;
+    private volatile ExecutorService executor;
+    private volatile TokenBucket budget = new TokenBucket(DEFAULT_BUDGET_BURST, 0, 0);
+
+    public double getDelayPercentile() {
+        return delayPercentile;
+    }
+
+    /**
+     * @param delayPercentile
+     *            percentile of the observed latencies after which a request is hedged, between 0
+     *            and 1
+     * @return this policy
+     */
+    public HedgingPolicy setDelayPercentile(double delayPercentile) {
+        if (delayPercentile <= 0 || delayPercentile > 1) {
+            throw new IllegalArgumentException("delayPercentile must be between 0 and 1");
+        }
+        this.delayPercentile = delayPercentile;
+        return this;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * @param minSamples
+     *            number of requests to observe before hedging any
+     * @return this policy
+     */
+    public HedgingPolicy setMinSamples(int minSamples) {
+        if (minSamples < 0) {
+            throw new IllegalArgumentException("minSamples must not be negative");
+        }
+        this.minSamples = minSamples;
+        return this;
+    }
+
+    public long getMinDelayMs() {
+        return minDelayMs;
+    }
+
+    /**
+     * @param minDelayMs
+     *            time before which a request is never hedged, however fast requests usually are
+     * @return this policy
+     */
+    public HedgingPolicy setMinDelayMs(long minDelayMs) {
+        if (minDelayMs < 0) {
+            throw new IllegalArgumentException("minDelayMs must not be negative");
+        }
+        this.minDelayMs = minDelayMs;
+        return this;
+    }
+
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    /**
+     * @param budgetRatio
+     *            largest fraction of requests that may be hedged, between 0 and 1
+     * @return this policy
+     */
+    public HedgingPolicy setBudgetRatio(double budgetRatio) {
+        if (budgetRatio < 0 || budgetRatio > 1) {
+            throw new IllegalArgumentException("budgetRatio must be between 0 and 1");
+        }
+        this.budgetRatio = budgetRatio;
+        return this;
+    }
+
+    public int getBudgetBurst() {
+        return budgetBurst;
+    }
+
+    /**
+     * @param budgetBurst
+     *            largest number of hedges the budget can save up for, i.e. of requests hedged in a
+     *            row
+     * @return this policy
+     */
+    public HedgingPolicy setBudgetBurst(int budgetBurst) {
+        if (budgetBurst < 1) {
+            throw new IllegalArgumentException("budgetBurst must be positive");
+        }
+        this.budgetBurst = budgetBurst;
+        this.budget = new TokenBucket(budgetBurst, 0, budget.getAvailable());
+        return this;
+    }
+
+    /**
+     * @param executor
+     *            executor running requests and their hedges; must not queue tasks, lest hedges
+     *            wait behind the requests they hedge
+     * @return this policy
+     */
+    public HedgingPolicy setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    ExecutorService getExecutor() {
+        ExecutorService executor = this.executor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = this.executor;
+                if (executor == null) {
+                    executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable,
+                                    "signalfx-hedging-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    this.executor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * @return number of requests hedged
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return number of hedged requests whose hedge succeeded first
+     */
+    public long getHedgeWinCount() {
+        return hedgesWon.sum();
+    }
+
+    /**
+     * @return time after which a request is hedged, or -1 if too few requests completed yet
+     */
+    public long getDelayNanos() {
+        if (latencies.getCount() < minSamples) {
+            return -1;
+        }
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(minDelayMs),
+                TimeUnit.MICROSECONDS.toNanos(latencies.getPercentile(delayPercentile)));
+    }
+
+    /**
+     * Grows the budget for a request about to be sent.
+     */
+    void requestSent() {
+        budget.deposit(budgetRatio);
+    }
+
+    /**
+     * @param latencyNanos
+     *            time taken by a request that was not hedged, or by the first attempt of one that
+     *            was, until it completed or was aborted
+     */
+    void recordLatency(long latencyNanos) {
+        latencies.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    }
+
+    /**
+     * @return whether the budget allows to hedge a request, in which case it is spent
+     */
+    boolean tryHedge() {
+        if (!budget.tryAcquire(1)) {
+            return false;
+        }
+        hedges.increment();
+        return true;
+    }
+
+    void hedgeWon() {
+        hedgesWon.increment();
+    }
+}
@@ -0,0 +1,297 @@
+package com.signalfx.connection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.apache.http.message.BasicHttpResponse;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends requests over HTTP/2, multiplexing the concurrent requests to an endpoint, e.g. datapoint,
+ * event and backfill uploads, as streams of a single connection instead of holding a pooled
+ * connection each.
+ *
+ * HTTP/2 is negotiated with ALPN for {@code https} endpoints, which takes Java 8u252 or later.
+ * {@code http} endpoints are reached over HTTP/1.1, unless {@link #setCleartext(boolean)} says
+ * they speak HTTP/2 with prior knowledge (h2c), as local proxies may. An endpoint that cannot be
+ * reached over HTTP/2 while it can over HTTP/1.1 is remembered, and reached over HTTP/1.1 from
+ * then on, by the connections using the transport.
+ *
+ * Request and response bodies are buffered in memory. A transport is meant to be shared by all
+ * connections sending to the same endpoints, e.g. all connections created by a factory, and
+ * closed once they are no longer used.
+ */
+public class Http2Transport implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(Http2Transport.class);
+
+    public static final long DEFAULT_CONNECT_TIMEOUT_MS = 2000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 30000;
+
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+    private final ConcurrentMap<String, Boolean> negotiated = new ConcurrentHashMap<String, Boolean>();
+    private final LongAdder fallbacks = new LongAdder();
+    private volatile boolean cleartext;
+    private volatile long connectTimeoutMs = DEFAULT_CONNECT_TIMEOUT_MS;
+    private volatile long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    // guarded by this
+    private HttpClient client;
+    private boolean closed;
+
+    public boolean isCleartext() {
+        return cleartext;
+    }
+
+    /**
+     * @param cleartext
+     *            whether {@code http} endpoints are reached over HTTP/2 with prior knowledge, rather
+     *            than over HTTP/1.1, the default
+     * @return this transport
+     */
+    public Http2Transport setCleartext(boolean cleartext) {
+        this.cleartext = cleartext;
+        return this;
+    }
+
+    public long getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    /**
+     * @param connectTimeoutMs
+     *            time to wait for a connection to be established; must be set before the first
+     *            request
+     * @return this transport
+     */
+    public Http2Transport setConnectTimeoutMs(long connectTimeoutMs) {
+        if (connectTimeoutMs <= 0) {
+            throw new IllegalArgumentException("connectTimeoutMs must be positive");
+        }
+        this.connectTimeoutMs = connectTimeoutMs;
+        return this;
+    }
+
+    public long getIdleTimeoutMs() {
+        return idleTimeoutMs;
+    }
+
+    /**
+     * @param idleTimeoutMs
+     *            time after which a connection without requests in flight is closed; must be set
+     *            before the first request
+     * @return this transport
+     */
+    public Http2Transport setIdleTimeoutMs(long idleTimeoutMs) {
+        if (idleTimeoutMs <= 0) {
+            throw new IllegalArgumentException("idleTimeoutMs must be positive");
+        }
+        this.idleTimeoutMs = idleTimeoutMs;
+        return this;
+    }
+
+    /**
+     * @return number of endpoints found not to speak HTTP/2, and reached over HTTP/1.1 instead
+     */
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * @param origin
+     *            scheme, host and port of an endpoint
+     * @return whether requests to the endpoint are sent over HTTP/2, as far as known yet
+     */
+    public boolean supports(HttpHost origin) {
+        String scheme = origin.getSchemeName();
+        if (!"https".equalsIgnoreCase(scheme) && !("http".equalsIgnoreCase(scheme) && cleartext)) {
+            return false;
+        }
+        return !Boolean.FALSE.equals(negotiated.get(origin.toURI()));
+    }
+
+    /**
+     * @return whether a request to the endpoint already succeeded over HTTP/2
+     */
+    boolean isNegotiated(HttpHost origin) {
+        return Boolean.TRUE.equals(negotiated.get(origin.toURI()));
+    }
+
+    /**
+     * Remembers that the endpoint, which failed over HTTP/2, was reached over HTTP/1.1.
+     */
+    void fellBack(HttpHost origin) {
+        if (negotiated.putIfAbsent(origin.toURI(), Boolean.FALSE) == null) {
+            fallbacks.increment();
+            log.info("Falling back to HTTP/1.1 for {}", origin.toURI());
+        }
+    }
+
+    /**
+     * Sends a request once, without retries. Aborting the request fails it with a
+     * {@link RequestAbortedException}.
+     *
+     * @param origin
+     *            scheme, host and port of the endpoint
+     * @param post
+     *            request to send, whose configuration gives its socket timeout
+     * @return response, whose body is already read
+     * @throws IOException
+     *             if the request could not be sent or its response received
+     */
+    CloseableHttpResponse execute(HttpHost origin, HttpPost post) throws IOException {
+        final Request request = getClient()
+                .newRequest(post.getURI())
+                .method(HttpMethod.POST);
+        for (Header header : post.getAllHeaders()) {
+            request.header(header.getName(), header.getValue());
+        }
+        if (post.getConfig() != null && post.getConfig().getSocketTimeout() > 0) {
+            request.idleTimeout(post.getConfig().getSocketTimeout(), TimeUnit.MILLISECONDS);
+        }
+        HttpEntity entity = post.getEntity();
+        if (entity != null) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(
+                    (int) Math.max(0, Math.min(entity.getContentLength(), Integer.MAX_VALUE)));
+            entity.writeTo(body);
+            String contentType = entity.getContentType() == null ? null
+                    : entity.getContentType().getValue();
+            request.content(new BytesContentProvider(contentType, body.toByteArray()));
+            if (entity.getContentEncoding() != null) {
+                request.header(HttpHeader.CONTENT_ENCODING, entity.getContentEncoding().getValue());
+            }
+        }
+
+        Cancellable cancellable = new Cancellable() {
+            @Override
+            public boolean cancel() {
+                return request.abort(new RequestAbortedException("Request aborted"));
+            }
+        };
+        post.setCancellable(cancellable);
+        if (post.isAborted()) {
+            cancellable.cancel();
+        }
+
+        ContentResponse response;
+        try {
+            response = request.send();
+        } catch (InterruptedException e) {
+            request.abort(e);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + post.getURI());
+        } catch (TimeoutException e) {
+            throw new SocketTimeoutException("Timed out waiting for " + post.getURI());
+        } catch (ExecutionException e) {
+            if (post.isAborted()) {
+                throw new RequestAbortedException("Request aborted", e.getCause());
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to send " + post.getURI() + " over HTTP/2", e.getCause());
+        }
+        negotiated.putIfAbsent(origin.toURI(), Boolean.TRUE);
+
+        Response resp = new Response(response.getStatus(), response.getReason());
+        for (HttpField field : response.getHeaders()) {
+            resp.addHeader(field.getName(), field.getValue());
+        }
+        ByteArrayEntity body = new ByteArrayEntity(response.getContent());
+        body.setContentType(response.getHeaders().get(HttpHeader.CONTENT_TYPE));
+        resp.setEntity(body);
+        return resp;
+    }
+
+    private synchronized HttpClient getClient() throws IOException {
+        if (closed) {
+            throw new IOException("HTTP/2 transport is closed");
+        }
+        if (client == null) {
+            QueuedThreadPool executor = new QueuedThreadPool();
+            executor.setName("signalfx-http2");
+            executor.setDaemon(true);
+            HttpClient created = new HttpClient(
+                    new HttpClientTransportOverHTTP2(new HTTP2Client()),
+                    new SslContextFactory.Client());
+            created.setExecutor(executor);
+            created.setScheduler(new ScheduledExecutorScheduler("signalfx-http2-scheduler", true));
+            created.setConnectTimeout(connectTimeoutMs);
+            created.setIdleTimeout(idleTimeoutMs);
+            created.setFollowRedirects(false);
+            // requests carry the user agent of the connections
+            created.setUserAgentField(null);
+            try {
+                created.start();
+            } catch (Exception e) {
+                throw new IOException("Unable to start HTTP/2 transport", e);
+            }
+            client = created;
+        }
+        return client;
+    }
+
+    /**
+     * Closes the connections of the transport, failing the requests in flight.
+     */
+    @Override
+    public void close() throws IOException {
+        HttpClient client;
+        synchronized (this) {
+            closed = true;
+            client = this.client;
+            this.client = null;
+        }
+        if (client != null) {
+            try {
+                client.stop();
+            } catch (Exception e) {
+                throw new IOException("Unable to stop HTTP/2 transport", e);
+            }
+        }
+    }
+
+    /**
+     * Response received over HTTP/2, with its body already read.
+     */
+    private static final class Response extends BasicHttpResponse implements CloseableHttpResponse {
+        private Response(int status, String reason) {
+            super(HTTP_2, status, reason);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.signalfx.connection;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Paces uploads so that the datapoints and bytes sent with each access token stay within a rate,
+ * e.g. the ingest quota of the organization, instead of bursting past it and being throttled by
+ * the server, as happens when a backlog is replayed after a restart.
+ *
+ * Each access token has a bucket of datapoints and one of bytes, refilled at
+ * {@link #getDataPointsPerSecond()} and {@link #getBytesPerSecond()} and holding up to
+ * {@link #getBurstSeconds()} of their rate. An upload takes what it needs from both buckets, and
+ * when they run short, waits until the rate would have allowed it, rather than being dropped;
+ * uploads larger than a bucket are let through, and the next ones wait longer.
+ *
+ * A limiter is meant to be shared by all connections sending with the same access tokens, e.g.
+ * all connections created by a factory.
+ */
+public class RateLimiter {
+
+    public static final double DEFAULT_BURST_SECONDS = 1;
+
+    private final double dataPointsPerSecond;
+    private final double bytesPerSecond;
+    private final double burstSeconds;
+    private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<String, Limit>();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder throttledNanos = new LongAdder();
+
+    /**
+     * @param dataPointsPerSecond
+     *            datapoints sent each second with an access token, or 0 not to limit them
+     * @param bytesPerSecond
+     *            serialized bytes sent each second with an access token, before compression, or 0
+     *            not to limit them
+     */
+    public RateLimiter(double dataPointsPerSecond, double bytesPerSecond) {
+        this(dataPointsPerSecond, bytesPerSecond, DEFAULT_BURST_SECONDS);
+    }
+
+    /**
+     * @param dataPointsPerSecond
+     *            datapoints sent each second with an access token, or 0 not to limit them
+     * @param bytesPerSecond
+     *            serialized bytes sent each second with an access token, before compression, or 0
+     *            not to limit them
+     * @param burstSeconds
+     *            seconds of either rate that may be sent at once after a quiet period
+     */
+    public RateLimiter(double dataPointsPerSecond, double bytesPerSecond, double burstSeconds) {
+        if (dataPointsPerSecond < 0 || bytesPerSecond < 0) {
+            throw new IllegalArgumentException("rates must not be negative");
+        }
+        if (burstSeconds <= 0) {
+            throw new IllegalArgumentException("burstSeconds must be positive");
+        }
+        this.dataPointsPerSecond = dataPointsPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+        this.burstSeconds = burstSeconds;
+    }
+
+    public double getDataPointsPerSecond() {
+        return dataPointsPerSecond;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public double getBurstSeconds() {
+        return burstSeconds;
+    }
+
+    /**
+     * @return number of uploads that waited for the rate
+     */
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    /**
+     * @return total time uploads waited for the rate, in milliseconds
+     */
+    public long getThrottledMs() {
+        return TimeUnit.NANOSECONDS.toMillis(throttledNanos.sum());
+    }
+
+    /**
+     * Waits until an upload can be sent within the rate of its access token.
+     *
+     * @param auth
+     *            access token the upload is sent with
+     * @param dataPoints
+     *            datapoints in the upload
+     * @param bytes
+     *            size of the serialized upload, or -1 if unknown, in which case only its
+     *            datapoints are limited
+     * @return time waited, in nanoseconds
+     * @throws InterruptedException
+     *             if interrupted while waiting, the upload still counting against the rate
+     */
+    public long acquire(String auth, int dataPoints, long bytes) throws InterruptedException {
+        Limit limit = getLimit(auth == null ? "" : auth);
+        long waitNanos = 0;
+        if (limit.dataPoints != null && dataPoints > 0) {
+            waitNanos = limit.dataPoints.reserve(dataPoints);
+        }
+        if (limit.bytes != null && bytes > 0) {
+            waitNanos = Math.max(waitNanos, limit.bytes.reserve(bytes));
+        }
+        if (waitNanos > 0) {
+            throttled.increment();
+            throttledNanos.add(waitNanos);
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return waitNanos;
+    }
+
+    private Limit getLimit(String auth) {
+        Limit limit = limits.get(auth);
+        if (limit == null) {
+            Limit created = new Limit();
+            limit = limits.putIfAbsent(auth, created);
+            if (limit == null) {
+                limit = created;
+            }
+        }
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter{dataPointsPerSecond=" + dataPointsPerSecond + ", bytesPerSecond="
+                + bytesPerSecond + ", burstSeconds=" + burstSeconds + "}";
+    }
+
+    /**
+     * The buckets of an access token, null for a rate not limited.
+     */
+    private final class Limit {
+        private final TokenBucket dataPoints = dataPointsPerSecond == 0 ? null
+                : new TokenBucket(dataPointsPerSecond * burstSeconds, dataPointsPerSecond);
+        private final TokenBucket bytes = bytesPerSecond == 0 ? null
+                : new TokenBucket(bytesPerSecond * burstSeconds, bytesPerSecond);
+    }
+}
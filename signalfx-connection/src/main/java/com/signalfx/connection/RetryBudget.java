@@ -0,0 +1,100 @@
+package com.signalfx.connection;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits retries to a fraction of the requests that succeed, so that retries cannot multiply the
+ * request rate when an endpoint fails as a whole.
+ *
+ * Each successful request deposits {@link #getRatio()} token in a bucket, which also refills by
+ * {@link #getMinRetriesPerSecond()} tokens each second, so that a few retries remain possible
+ * while no request succeeds; each retry spends a token. Retries are denied while the bucket is
+ * empty, the request then failing with its last response or error. The bucket holds at most
+ * {@link #getMaxBurst()} tokens, and starts full.
+ *
+ * A budget is meant to be shared by all connections created from a factory, or across factories,
+ * so that it reflects the overall health of the endpoint. Retries are not budgeted unless a budget
+ * is set, on the factories or the connections.
+ */
+public class RetryBudget {
+
+    public static final double DEFAULT_RATIO = 0.1;
+    public static final double DEFAULT_MIN_RETRIES_PER_SECOND = 1;
+    public static final int DEFAULT_MAX_BURST = 10;
+
+    private final double ratio;
+    private final double minRetriesPerSecond;
+    private final int maxBurst;
+    private final TokenBucket bucket;
+    private final LongAdder denied = new LongAdder();
+
+    public RetryBudget() {
+        this(DEFAULT_RATIO, DEFAULT_MIN_RETRIES_PER_SECOND, DEFAULT_MAX_BURST);
+    }
+
+    /**
+     * @param ratio
+     *            retries allowed for each successful request, e.g. 0.1 for one retry every ten
+     *            successful requests
+     * @param minRetriesPerSecond
+     *            retries allowed each second whatever the number of successful requests
+     * @param maxBurst
+     *            largest number of retries the budget can save up for
+     */
+    public RetryBudget(double ratio, double minRetriesPerSecond, int maxBurst) {
+        if (ratio < 0) {
+            throw new IllegalArgumentException("ratio must not be negative");
+        }
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.maxBurst = maxBurst;
+        this.bucket = new TokenBucket(maxBurst, minRetriesPerSecond);
+    }
+
+    public double getRatio() {
+        return ratio;
+    }
+
+    public double getMinRetriesPerSecond() {
+        return minRetriesPerSecond;
+    }
+
+    public int getMaxBurst() {
+        return maxBurst;
+    }
+
+    /**
+     * @return retries currently allowed
+     */
+    public double getAvailable() {
+        return bucket.getAvailable();
+    }
+
+    /**
+     * @return number of retries denied because the budget was exhausted
+     */
+    public long getDeniedCount() {
+        return denied.sum();
+    }
+
+    void requestSucceeded() {
+        bucket.deposit(ratio);
+    }
+
+    /**
+     * @return whether the budget allows a retry, in which case it is spent
+     */
+    boolean tryRetry() {
+        if (bucket.tryAcquire(1)) {
+            return true;
+        }
+        denied.increment();
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryBudget{ratio=" + ratio + ", minRetriesPerSecond=" + minRetriesPerSecond
+                + ", maxBurst=" + maxBurst + "}";
+    }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.List;
 
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.protocol.HttpContext;
 
 import static com.signalfx.connection.RetryDefaults.DEFAULT_MAX_RETRIES;
 import static com.signalfx.connection.RetryDefaults.DEFAULT_NON_RETRYABLE_EXCEPTIONS;
@@ -27,4 +28,10 @@ class RetryHandler extends DefaultHttpRequestRetryHandler {
   public RetryHandler(final int maxRetries, List<Class<? extends IOException>> clazzes) {
     super(maxRetries, true, clazzes);
   }
+
+  @Override
+  public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+    return super.retryRequest(exception, executionCount, context)
+        && AbstractHttpReceiverConnection.allowRetry(context, -1, executionCount);
+  }
 }
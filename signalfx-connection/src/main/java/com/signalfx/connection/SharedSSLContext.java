@@ -0,0 +1,27 @@
+package com.signalfx.connection;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.ssl.SSLContexts;
+
+/**
+ * Default SSL context shared by the connection pools of all clients, so that its client session
+ * cache is too: new connections to an endpoint resume the TLS session of previous ones, with an
+ * abbreviated handshake.
+ */
+public final class SharedSSLContext {
+
+    private SharedSSLContext() {
+    }
+
+    private static final class Holder {
+        private static final SSLContext INSTANCE = SSLContexts.createDefault();
+    }
+
+    /**
+     * @return the shared SSL context, created on first use
+     */
+    public static SSLContext get() {
+        return Holder.INSTANCE;
+    }
+}
@@ -0,0 +1,121 @@
+package com.signalfx.connection;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket: tokens accrue at a steady rate, and may also be deposited explicitly, up to the
+ * capacity of the bucket; spending tokens is only allowed while enough are available, unless they
+ * are reserved, which lets the bucket go into debt until enough tokens accrued again.
+ *
+ * Buckets are thread-safe.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerSecond;
+    // guarded by this
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param capacity
+     *            largest number of tokens the bucket holds
+     * @param refillPerSecond
+     *            tokens added each second, or 0 if tokens are only deposited
+     */
+    public TokenBucket(double capacity, double refillPerSecond) {
+        this(capacity, refillPerSecond, capacity);
+    }
+
+    /**
+     * @param capacity
+     *            largest number of tokens the bucket holds
+     * @param refillPerSecond
+     *            tokens added each second, or 0 if tokens are only deposited
+     * @param initialTokens
+     *            tokens the bucket starts with
+     */
+    public TokenBucket(double capacity, double refillPerSecond, double initialTokens) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (refillPerSecond < 0) {
+            throw new IllegalArgumentException("refillPerSecond must not be negative");
+        }
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.tokens = Math.min(capacity, Math.max(0, initialTokens));
+        this.refilledAt = System.nanoTime();
+    }
+
+    public double getCapacity() {
+        return capacity;
+    }
+
+    public double getRefillPerSecond() {
+        return refillPerSecond;
+    }
+
+    /**
+     * @return tokens available now, negative while the bucket is in debt
+     */
+    public synchronized double getAvailable() {
+        refill();
+        return tokens;
+    }
+
+    /**
+     * @param tokens
+     *            tokens to add, beyond the capacity of the bucket being discarded
+     */
+    public synchronized void deposit(double tokens) {
+        refill();
+        this.tokens = Math.min(capacity, this.tokens + tokens);
+    }
+
+    /**
+     * @param tokens
+     *            tokens to spend
+     * @return whether enough tokens were available, in which case they are spent
+     */
+    public synchronized boolean tryAcquire(double tokens) {
+        refill();
+        if (this.tokens < tokens) {
+            return false;
+        }
+        this.tokens -= tokens;
+        return true;
+    }
+
+    /**
+     * Spends tokens whether or not enough are available, the bucket going into debt if not: the
+     * caller is expected to wait for the returned time, so that the tokens it spent are paced at
+     * the refill rate of the bucket. Later reservations wait for the debt to be repaid first.
+     *
+     * @param tokens
+     *            tokens to spend
+     * @return time until the tokens would have been available, 0 if they were
+     */
+    public synchronized long reserve(double tokens) {
+        if (refillPerSecond == 0) {
+            throw new IllegalStateException("tokens cannot be reserved from a bucket not refilled");
+        }
+        refill();
+        this.tokens -= tokens;
+        if (this.tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-this.tokens / refillPerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (refillPerSecond > 0) {
+            double elapsedSeconds = (now - refilledAt) / (double) TimeUnit.SECONDS.toNanos(1);
+            tokens = Math.min(capacity, tokens + elapsedSeconds * refillPerSecond);
+        }
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,191 @@
+package com.signalfx.connection.telemetry;
+
+/**
+ * Emits JDK Flight Recorder events for the send and decode paths of the client, so that
+ * recordings show the time spent flushing sessions, posting and compressing payloads, retrying,
+ * decoding SignalFlow frames and messages, and reassembling ticks.
+ *
+ * The events are named {@code com.signalfx.*}. On JVMs without JFR, or when the
+ * {@value #DISABLE_PROPERTY} system property is true, every method does nothing and
+ * {@code jdk.jfr} is never loaded. Timed events are begun with a {@code begin} method, which
+ * returns null when no recording captures the event, and committed by passing what it returned to
+ * the matching {@code commit} method, which ignores null.
+ */
+public final class FlightRecorder {
+
+    public static final String DISABLE_PROPERTY =
+            "com.signalfx.public.java.disableFlightRecorderEvents";
+
+    private static final boolean ENABLED = !Boolean.getBoolean(DISABLE_PROPERTY) && isSupported();
+
+    private FlightRecorder() {
+    }
+
+    private static boolean isSupported() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorder.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return whether events are emitted when recordings capture them
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static Object beginFlush() {
+        return ENABLED ? FlightRecorderEvents.beginFlush() : null;
+    }
+
+    /**
+     * @param event
+     *            what {@link #beginFlush()} returned
+     * @param dataPoints
+     *            datapoints of the session
+     * @param events
+     *            events of the session
+     */
+    public static void commitFlush(Object event, int dataPoints, int events) {
+        if (event != null) {
+            FlightRecorderEvents.commitFlush(event, dataPoints, events);
+        }
+    }
+
+    public static Object beginHttpPost() {
+        return ENABLED ? FlightRecorderEvents.beginHttpPost() : null;
+    }
+
+    /**
+     * @param event
+     *            what {@link #beginHttpPost()} returned
+     * @param path
+     *            path of the request
+     * @param statusCode
+     *            final status code, or -1 on an I/O error
+     * @param compressed
+     *            whether the body was compressed
+     */
+    public static void commitHttpPost(Object event, String path, int statusCode,
+                                      boolean compressed) {
+        if (event != null) {
+            FlightRecorderEvents.commitHttpPost(event, path, statusCode, compressed);
+        }
+    }
+
+    public static Object beginCompress() {
+        return ENABLED ? FlightRecorderEvents.beginCompress() : null;
+    }
+
+    /**
+     * @param event
+     *            what {@link #beginCompress()} returned
+     * @param encoding
+     *            content encoding of the compressed body
+     * @param bytesIn
+     *            size of the body before compression, or -1 if unknown
+     * @param bytesOut
+     *            size of the body after compression, or -1 if unknown
+     */
+    public static void commitCompress(Object event, String encoding, long bytesIn,
+                                      long bytesOut) {
+        if (event != null) {
+            FlightRecorderEvents.commitCompress(event, encoding, bytesIn, bytesOut);
+        }
+    }
+
+    /**
+     * Emits an instant event for an attempt about to be retried.
+     *
+     * @param statusCode
+     *            status code of the attempt, or -1 on an I/O error
+     * @param executionCount
+     *            number of attempts so far
+     */
+    public static void retry(int statusCode, int executionCount) {
+        if (ENABLED) {
+            FlightRecorderEvents.retry(statusCode, executionCount);
+        }
+    }
+
+    public static Object beginFrameDecode() {
+        return ENABLED ? FlightRecorderEvents.beginFrameDecode() : null;
+    }
+
+    /**
+     * @param event
+     *            what {@link #beginFrameDecode()} returned
+     * @param channel
+     *            channel the frame is for, or null if the frame could not be decoded
+     * @param version
+     *            encoding version of the frame
+     * @param compressed
+     *            whether the frame body was compressed
+     * @param bytes
+     *            size of the frame
+     * @param series
+     *            number of series in the frame
+     */
+    public static void commitFrameDecode(Object event, String channel, int version,
+                                         boolean compressed, long bytes, int series) {
+        if (event != null) {
+            FlightRecorderEvents.commitFrameDecode(event, channel, version, compressed, bytes,
+                    series);
+        }
+    }
+
+    public static Object beginMessageDecode() {
+        return ENABLED ? FlightRecorderEvents.beginMessageDecode() : null;
+    }
+
+    /**
+     * @param event
+     *            what {@link #beginMessageDecode()} returned
+     * @param channel
+     *            channel the message was received on, if known
+     * @param type
+     *            type of the decoded message, or null if it is not supported
+     * @param bytes
+     *            size of the message data
+     */
+    public static void commitMessageDecode(Object event, String channel, String type,
+                                           long bytes) {
+        if (event != null) {
+            FlightRecorderEvents.commitMessageDecode(event, channel, type, bytes);
+        }
+    }
+
+    /**
+     * Begins the reassembly of a tick, when its first batch arrives.
+     */
+    public static Object beginTickReassembly() {
+        return ENABLED ? FlightRecorderEvents.beginTickReassembly() : null;
+    }
+
+    /**
+     * @param event
+     *            what {@link #beginTickReassembly()} returned
+     * @param channel
+     *            channel of the computation
+     * @param logicalTimestampMs
+     *            logical timestamp of the tick
+     * @param batches
+     *            number of batches reassembled
+     * @param series
+     *            number of series in the tick
+     * @param complete
+     *            whether all expected batches arrived before the tick was released
+     */
+    public static void commitTickReassembly(Object event, String channel, long logicalTimestampMs,
+                                            int batches, int series, boolean complete) {
+        if (event != null) {
+            FlightRecorderEvents.commitTickReassembly(event, channel, logicalTimestampMs, batches,
+                    series, complete);
+        }
+    }
+}
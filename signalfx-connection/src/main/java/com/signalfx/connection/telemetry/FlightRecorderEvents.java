@@ -0,0 +1,244 @@
+package com.signalfx.connection.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+/**
+ * The JDK Flight Recorder events of the client, and how to begin and commit them. Only called by
+ * {@link FlightRecorder} once it checked that the JVM supports JFR, so that this class and
+ * {@code jdk.jfr} are never loaded otherwise; nothing else may refer to this class.
+ */
+final class FlightRecorderEvents {
+
+    private static final String CATEGORY = "SignalFx";
+
+    private FlightRecorderEvents() {
+    }
+
+    @Name("com.signalfx.Flush")
+    @Label("Session Flush")
+    @Description("Datapoints and events of a session sent to SignalFx")
+    @Category({ CATEGORY, "Ingest" })
+    static final class FlushEvent extends Event {
+        @Label("Datapoints")
+        int dataPoints;
+
+        @Label("Events")
+        int events;
+    }
+
+    @Name("com.signalfx.HttpPost")
+    @Label("HTTP Post")
+    @Description("Request to a SignalFx endpoint, retries included")
+    @Category({ CATEGORY, "Ingest" })
+    static final class HttpPostEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Status Code")
+        @Description("Final status code, or -1 on an I/O error")
+        int statusCode;
+
+        @Label("Compressed")
+        boolean compressed;
+    }
+
+    @Name("com.signalfx.Compress")
+    @Label("Payload Compression")
+    @Description("Compression of a request body while it is written to the connection")
+    @Category({ CATEGORY, "Ingest" })
+    @StackTrace(false)
+    static final class CompressEvent extends Event {
+        @Label("Encoding")
+        String encoding;
+
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+    }
+
+    @Name("com.signalfx.Retry")
+    @Label("HTTP Retry")
+    @Description("Attempt of a request about to be retried")
+    @Category({ CATEGORY, "Ingest" })
+    @StackTrace(false)
+    static final class RetryEvent extends Event {
+        @Label("Status Code")
+        @Description("Status code of the attempt, or -1 on an I/O error")
+        int statusCode;
+
+        @Label("Execution Count")
+        int executionCount;
+    }
+
+    @Name("com.signalfx.FrameDecode")
+    @Label("Frame Decode")
+    @Description("Decoding of a binary SignalFlow WebSocket frame")
+    @Category({ CATEGORY, "SignalFlow" })
+    @StackTrace(false)
+    static final class FrameDecodeEvent extends Event {
+        @Label("Channel")
+        String channel;
+
+        @Label("Version")
+        int version;
+
+        @Label("Compressed")
+        boolean compressed;
+
+        @Label("Frame Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Series")
+        int series;
+    }
+
+    @Name("com.signalfx.MessageDecode")
+    @Label("Message Decode")
+    @Description("Decoding of a SignalFlow stream message into a channel message")
+    @Category({ CATEGORY, "SignalFlow" })
+    @StackTrace(false)
+    static final class MessageDecodeEvent extends Event {
+        @Label("Channel")
+        String channel;
+
+        @Label("Type")
+        String type;
+
+        @Label("Message Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.signalfx.TickReassembly")
+    @Label("Tick Reassembly")
+    @Description("Reassembly of the data batches of a tick, from its first batch to its release")
+    @Category({ CATEGORY, "SignalFlow" })
+    @StackTrace(false)
+    static final class TickReassemblyEvent extends Event {
+        @Label("Channel")
+        String channel;
+
+        @Label("Logical Timestamp")
+        @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+        long logicalTimestamp;
+
+        @Label("Batches")
+        int batches;
+
+        @Label("Series")
+        int series;
+
+        @Label("Complete")
+        @Description("Whether all the expected batches arrived before the tick was released")
+        boolean complete;
+    }
+
+    /**
+     * @return the event begun, or null if no recording captures it
+     */
+    private static Object begin(Event event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static Object beginFlush() {
+        return begin(new FlushEvent());
+    }
+
+    static void commitFlush(Object begun, int dataPoints, int events) {
+        FlushEvent event = (FlushEvent) begun;
+        event.dataPoints = dataPoints;
+        event.events = events;
+        event.commit();
+    }
+
+    static Object beginHttpPost() {
+        return begin(new HttpPostEvent());
+    }
+
+    static void commitHttpPost(Object begun, String path, int statusCode, boolean compressed) {
+        HttpPostEvent event = (HttpPostEvent) begun;
+        event.path = path;
+        event.statusCode = statusCode;
+        event.compressed = compressed;
+        event.commit();
+    }
+
+    static Object beginCompress() {
+        return begin(new CompressEvent());
+    }
+
+    static void commitCompress(Object begun, String encoding, long bytesIn, long bytesOut) {
+        CompressEvent event = (CompressEvent) begun;
+        event.encoding = encoding;
+        event.bytesIn = bytesIn;
+        event.bytesOut = bytesOut;
+        event.commit();
+    }
+
+    static void retry(int statusCode, int executionCount) {
+        RetryEvent event = new RetryEvent();
+        if (event.isEnabled()) {
+            event.statusCode = statusCode;
+            event.executionCount = executionCount;
+            event.commit();
+        }
+    }
+
+    static Object beginFrameDecode() {
+        return begin(new FrameDecodeEvent());
+    }
+
+    static void commitFrameDecode(Object begun, String channel, int version, boolean compressed,
+                                  long bytes, int series) {
+        FrameDecodeEvent event = (FrameDecodeEvent) begun;
+        event.channel = channel;
+        event.version = version;
+        event.compressed = compressed;
+        event.bytes = bytes;
+        event.series = series;
+        event.commit();
+    }
+
+    static Object beginMessageDecode() {
+        return begin(new MessageDecodeEvent());
+    }
+
+    static void commitMessageDecode(Object begun, String channel, String type, long bytes) {
+        MessageDecodeEvent event = (MessageDecodeEvent) begun;
+        event.channel = channel;
+        event.type = type;
+        event.bytes = bytes;
+        event.commit();
+    }
+
+    static Object beginTickReassembly() {
+        return begin(new TickReassemblyEvent());
+    }
+
+    static void commitTickReassembly(Object begun, String channel, long logicalTimestampMs,
+                                     int batches, int series, boolean complete) {
+        TickReassemblyEvent event = (TickReassemblyEvent) begun;
+        event.channel = channel;
+        event.logicalTimestamp = logicalTimestampMs;
+        event.batches = batches;
+        event.series = series;
+        event.complete = complete;
+        event.commit();
+    }
+}
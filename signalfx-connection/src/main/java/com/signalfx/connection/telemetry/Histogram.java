@@ -0,0 +1,160 @@
+package com.signalfx.connection.telemetry;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Histogram with fixed bucket boundaries, cheap to record into from many threads.
+ *
+ * Each value is counted in the first bucket whose upper bound it does not exceed; values above
+ * the last bound go to an overflow bucket. Percentiles are therefore estimates: the upper bound of
+ * the bucket the percentile falls into, capped by the largest value recorded.
+ */
+public final class Histogram {
+
+    private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+        @Override
+        public long applyAsLong(long left, long right) {
+            return Math.max(left, right);
+        }
+    };
+
+    private final long[] upperBounds;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(MAX, 0);
+
+    /**
+     * @param upperBounds
+     *            inclusive upper bounds of the buckets, in increasing order
+     */
+    public Histogram(long... upperBounds) {
+        if (upperBounds.length == 0) {
+            throw new IllegalArgumentException("at least one bucket is required");
+        }
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i - 1]) {
+                throw new IllegalArgumentException("bucket bounds must be increasing");
+            }
+        }
+        this.upperBounds = upperBounds.clone();
+        this.buckets = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param first
+     *            upper bound of the first bucket
+     * @param factor
+     *            ratio between the upper bounds of consecutive buckets
+     * @param count
+     *            number of buckets, not counting the overflow bucket
+     * @return histogram with exponentially growing buckets
+     */
+    public static Histogram exponential(long first, int factor, int count) {
+        if (first <= 0 || factor < 2 || count <= 0) {
+            throw new IllegalArgumentException("invalid exponential buckets");
+        }
+        long[] bounds = new long[count];
+        bounds[0] = first;
+        for (int i = 1; i < count; i++) {
+            bounds[i] = bounds[i - 1] * factor;
+        }
+        return new Histogram(bounds);
+    }
+
+    /**
+     * @param value
+     *            value to record; negative values are counted as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int index = Arrays.binarySearch(upperBounds, value);
+        buckets[index >= 0 ? index : -index - 1].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return largest value recorded, or 0 if none was
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return inclusive upper bounds of the buckets
+     */
+    public long[] getUpperBounds() {
+        return upperBounds.clone();
+    }
+
+    /**
+     * @return number of values in each bucket, the overflow bucket last
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * @param quantile
+     *            quantile, between 0 and 1
+     * @return estimate of the value below which the given quantile of the recorded values falls,
+     *         or 0 if no value was recorded
+     */
+    public long getPercentile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1");
+        }
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        long highest = getMax();
+        for (int i = 0; i < upperBounds.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBounds[i], highest);
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * Forgets all recorded values. Values recorded concurrently may be partially kept.
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+}
@@ -0,0 +1,135 @@
+package com.signalfx.connection.telemetry;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Exposes the counters and histograms of a {@link TelemetryRecorder} as read-only attributes of
+ * an MBean, read from the recorder each time they are queried. See
+ * {@link TelemetryRecorder#snapshot()} for the attribute names.
+ */
+public final class JmxTelemetryExporter implements DynamicMBean, Closeable {
+
+    public static final String DOMAIN = "com.signalfx";
+
+    private final TelemetryRecorder recorder;
+    private final MBeanServer server;
+    private final ObjectName objectName;
+
+    private JmxTelemetryExporter(TelemetryRecorder recorder, MBeanServer server,
+                                 ObjectName objectName) {
+        this.recorder = recorder;
+        this.server = server;
+        this.objectName = objectName;
+    }
+
+    /**
+     * Registers the recorder on the platform MBean server, as
+     * {@code com.signalfx:type=SenderTelemetry,name=<name>}.
+     *
+     * @param recorder
+     *            recorder to export
+     * @param name
+     *            name distinguishing this recorder from others in the same JVM
+     * @return the registered exporter, to close to unregister it
+     * @throws JMException
+     *             If the name is invalid or already registered
+     */
+    public static JmxTelemetryExporter register(TelemetryRecorder recorder, String name)
+            throws JMException {
+        return register(recorder, ManagementFactory.getPlatformMBeanServer(),
+                new ObjectName(DOMAIN + ":type=SenderTelemetry,name=" + ObjectName.quote(name)));
+    }
+
+    /**
+     * @param recorder
+     *            recorder to export
+     * @param server
+     *            server to register on
+     * @param objectName
+     *            name to register as
+     * @return the registered exporter, to close to unregister it
+     * @throws JMException
+     *             If the name is already registered
+     */
+    public static JmxTelemetryExporter register(TelemetryRecorder recorder, MBeanServer server,
+                                                ObjectName objectName) throws JMException {
+        JmxTelemetryExporter exporter = new JmxTelemetryExporter(recorder, server, objectName);
+        server.registerMBean(exporter, objectName);
+        return exporter;
+    }
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            // already unregistered
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Long value = recorder.snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Long> snapshot = recorder.snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Long value = snapshot.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Long> snapshot = recorder.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+        int i = 0;
+        for (String name : snapshot.keySet()) {
+            attributes[i++] = new MBeanAttributeInfo(name, Long.class.getName(), name, true,
+                    false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "SignalFx sender telemetry", attributes, null,
+                null, null);
+    }
+}
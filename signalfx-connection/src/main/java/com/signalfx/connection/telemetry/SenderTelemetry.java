@@ -0,0 +1,134 @@
+package com.signalfx.connection.telemetry;
+
+/**
+ * Receives measurements of each stage of sending datapoints and events: session flush, metric
+ * registration, serialization, compression, rate limiting, HTTP request and retry.
+ *
+ * Implementations are called on the sending threads, in the middle of sends, so they must be
+ * thread safe and cheap; {@link TelemetryRecorder} only updates counters and histograms.
+ * Durations are in nanoseconds.
+ */
+public interface SenderTelemetry {
+
+    /**
+     * Telemetry discarding all measurements; the default everywhere.
+     */
+    SenderTelemetry NOOP = new SenderTelemetry() {
+        @Override
+        public void sessionFlushed(int dataPoints, int events, long durationNanos) {
+        }
+
+        @Override
+        public void metricsRegistered(int metrics, boolean success, long durationNanos) {
+        }
+
+        @Override
+        public void dataPointsDropped(int dataPoints) {
+        }
+
+        @Override
+        public void payloadSerialized(int dataPoints, long bytes, long durationNanos) {
+        }
+
+        @Override
+        public void payloadCompressed(long bytesIn, long bytesOut, long durationNanos) {
+        }
+
+        @Override
+        public void requestCompleted(int statusCode, long durationNanos) {
+        }
+
+        @Override
+        public void requestRetried(int statusCode) {
+        }
+
+        @Override
+        public void retryDenied(int statusCode) {
+        }
+
+        @Override
+        public void uploadThrottled(int dataPoints, long bytes, long waitNanos) {
+        }
+    };
+
+    /**
+     * A session was closed and its datapoints and events sent, or failed to be.
+     *
+     * @param dataPoints
+     *            datapoints recorded in the session, i.e. the sender's backlog when it flushed
+     * @param events
+     *            events recorded in the session
+     * @param durationNanos
+     *            time to flush the session, registration and requests included
+     */
+    void sessionFlushed(int dataPoints, int events, long durationNanos);
+
+    /**
+     * @param metrics
+     *            metrics the session asked to register
+     * @param success
+     *            whether the registration request succeeded
+     * @param durationNanos
+     *            time of the registration request
+     */
+    void metricsRegistered(int metrics, boolean success, long durationNanos);
+
+    /**
+     * @param dataPoints
+     *            datapoints not sent because their metric could not be registered
+     */
+    void dataPointsDropped(int dataPoints);
+
+    /**
+     * @param dataPoints
+     *            datapoints in the payload
+     * @param bytes
+     *            size of the serialized payload, or -1 if it is streamed
+     * @param durationNanos
+     *            time to serialize the payload
+     */
+    void payloadSerialized(int dataPoints, long bytes, long durationNanos);
+
+    /**
+     * Called each time a compressed body is written, so once per attempt.
+     *
+     * @param bytesIn
+     *            size of the body before compression
+     * @param bytesOut
+     *            size of the body after compression
+     * @param durationNanos
+     *            time to compress the body and write it to the connection
+     */
+    void payloadCompressed(long bytesIn, long bytesOut, long durationNanos);
+
+    /**
+     * @param statusCode
+     *            final status code of the request, or -1 if it failed with an I/O error
+     * @param durationNanos
+     *            time of the request, retries included
+     */
+    void requestCompleted(int statusCode, long durationNanos);
+
+    /**
+     * @param statusCode
+     *            status code of the attempt being retried, or -1 if it failed with an I/O error
+     */
+    void requestRetried(int statusCode);
+
+    /**
+     * @param statusCode
+     *            status code of the attempt not retried because the retry budget was exhausted, or
+     *            -1 if it failed with an I/O error
+     */
+    void retryDenied(int statusCode);
+
+    /**
+     * @param dataPoints
+     *            datapoints in the upload held back by the rate limiter
+     * @param bytes
+     *            size of the serialized upload, or -1 if it is streamed
+     * @param waitNanos
+     *            time the upload waited before being sent
+     */
+    void uploadThrottled(int dataPoints, long bytes, long waitNanos);
+}
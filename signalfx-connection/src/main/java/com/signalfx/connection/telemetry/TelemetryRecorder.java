@@ -0,0 +1,171 @@
+package com.signalfx.connection.telemetry;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link SenderTelemetry} keeping {@link LongAdder} counters and fixed-bucket histograms, to be
+ * read by exporters such as {@link JmxTelemetryExporter}.
+ *
+ * Latencies are recorded in microseconds, in buckets from 16us to about 16s; sizes in buckets
+ * from 1 to about 16M. A single recorder may be shared by any number of senders and connections.
+ */
+public class TelemetryRecorder implements SenderTelemetry {
+
+    private final LongAdder sessions = new LongAdder();
+    private final LongAdder dataPoints = new LongAdder();
+    private final LongAdder events = new LongAdder();
+    private final LongAdder registrations = new LongAdder();
+    private final LongAdder registrationErrors = new LongAdder();
+    private final LongAdder droppedDataPoints = new LongAdder();
+    private final LongAdder serializedBytes = new LongAdder();
+    private final LongAdder compressedBytesIn = new LongAdder();
+    private final LongAdder compressedBytesOut = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder requestErrors = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder deniedRetries = new LongAdder();
+    private final LongAdder throttledUploads = new LongAdder();
+
+    private final Histogram flushLatency = latencyHistogram();
+    private final Histogram flushDataPoints = sizeHistogram();
+    private final Histogram registrationLatency = latencyHistogram();
+    private final Histogram serializeLatency = latencyHistogram();
+    private final Histogram dataPointsPerPost = sizeHistogram();
+    private final Histogram compressLatency = latencyHistogram();
+    private final Histogram requestLatency = latencyHistogram();
+    private final Histogram throttleLatency = latencyHistogram();
+
+    private static Histogram latencyHistogram() {
+        return Histogram.exponential(16, 2, 21);
+    }
+
+    private static Histogram sizeHistogram() {
+        return Histogram.exponential(1, 4, 13);
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @Override
+    public void sessionFlushed(int dataPoints, int events, long durationNanos) {
+        sessions.increment();
+        this.dataPoints.add(dataPoints);
+        this.events.add(events);
+        flushDataPoints.record(dataPoints);
+        flushLatency.record(micros(durationNanos));
+    }
+
+    @Override
+    public void metricsRegistered(int metrics, boolean success, long durationNanos) {
+        registrations.add(metrics);
+        if (!success) {
+            registrationErrors.increment();
+        }
+        registrationLatency.record(micros(durationNanos));
+    }
+
+    @Override
+    public void dataPointsDropped(int dataPoints) {
+        droppedDataPoints.add(dataPoints);
+    }
+
+    @Override
+    public void payloadSerialized(int dataPoints, long bytes, long durationNanos) {
+        if (bytes > 0) {
+            serializedBytes.add(bytes);
+        }
+        dataPointsPerPost.record(dataPoints);
+        serializeLatency.record(micros(durationNanos));
+    }
+
+    @Override
+    public void payloadCompressed(long bytesIn, long bytesOut, long durationNanos) {
+        compressedBytesIn.add(bytesIn);
+        compressedBytesOut.add(bytesOut);
+        compressLatency.record(micros(durationNanos));
+    }
+
+    @Override
+    public void requestCompleted(int statusCode, long durationNanos) {
+        requests.increment();
+        if (statusCode < 200 || statusCode > 299) {
+            requestErrors.increment();
+        }
+        requestLatency.record(micros(durationNanos));
+    }
+
+    @Override
+    public void requestRetried(int statusCode) {
+        retries.increment();
+    }
+
+    @Override
+    public void retryDenied(int statusCode) {
+        deniedRetries.increment();
+    }
+
+    @Override
+    public void uploadThrottled(int dataPoints, long bytes, long waitNanos) {
+        throttledUploads.increment();
+        throttleLatency.record(micros(waitNanos));
+    }
+
+    /**
+     * @return current value of each counter, by name
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new TreeMap<String, Long>();
+        counters.put("sessions", sessions.sum());
+        counters.put("datapoints", dataPoints.sum());
+        counters.put("events", events.sum());
+        counters.put("registrations", registrations.sum());
+        counters.put("registration.errors", registrationErrors.sum());
+        counters.put("datapoints.dropped", droppedDataPoints.sum());
+        counters.put("serialize.bytes", serializedBytes.sum());
+        counters.put("compress.bytes.in", compressedBytesIn.sum());
+        counters.put("compress.bytes.out", compressedBytesOut.sum());
+        counters.put("requests", requests.sum());
+        counters.put("requests.errors", requestErrors.sum());
+        counters.put("retries", retries.sum());
+        counters.put("retries.denied", deniedRetries.sum());
+        counters.put("uploads.throttled", throttledUploads.sum());
+        return counters;
+    }
+
+    /**
+     * @return each histogram, by name; latencies are in microseconds
+     */
+    public Map<String, Histogram> getHistograms() {
+        Map<String, Histogram> histograms = new TreeMap<String, Histogram>();
+        histograms.put("flush.latency.us", flushLatency);
+        histograms.put("flush.datapoints", flushDataPoints);
+        histograms.put("registration.latency.us", registrationLatency);
+        histograms.put("serialize.latency.us", serializeLatency);
+        histograms.put("serialize.datapoints", dataPointsPerPost);
+        histograms.put("compress.latency.us", compressLatency);
+        histograms.put("request.latency.us", requestLatency);
+        histograms.put("throttle.latency.us", throttleLatency);
+        return histograms;
+    }
+
+    /**
+     * @return counters, and count, sum, max, p50 and p99 of each histogram, flattened into a
+     *         single map by name
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = getCounters();
+        for (Map.Entry<String, Histogram> entry : getHistograms().entrySet()) {
+            Histogram histogram = entry.getValue();
+            snapshot.put(entry.getKey() + ".count", histogram.getCount());
+            snapshot.put(entry.getKey() + ".sum", histogram.getSum());
+            snapshot.put(entry.getKey() + ".max", histogram.getMax());
+            snapshot.put(entry.getKey() + ".p50", histogram.getPercentile(0.5));
+            snapshot.put(entry.getKey() + ".p99", histogram.getPercentile(0.99));
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,57 @@
+package com.signalfx.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.Test;
+
+import com.signalfx.endpoint.CompositeEndpoint;
+import com.signalfx.endpoint.SignalFxEndpoint;
+
+public class AbstractHttpReceiverConnectionTest {
+
+    @Test
+    public void shouldFailOverAndRecoverEjectedTargets() throws Exception {
+        int downPort;
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            downPort = socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+        LocalServer up = new LocalServer();
+        LocalServer recovered = null;
+        try {
+            CompositeEndpoint endpoint = new CompositeEndpoint(
+                    new SignalFxEndpoint("http", "localhost", downPort), up.getEndpoint())
+                    .setMaxFailures(1).setEjectionMs(200);
+            CompositeEndpoint.Target down = endpoint.getTargets().get(0);
+            LocalServer.Connection connection = new LocalServer.Connection(endpoint,
+                    new PoolingHttpClientConnectionManager());
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals(200, connection.post(new ByteArrayEntity(new byte[1])));
+            }
+            assertEquals(10, up.getRequestCount());
+            assertFalse(down.isHealthy());
+
+            recovered = new LocalServer(downPort);
+            Thread.sleep(250);
+            for (int i = 0; i < 100 && recovered.getRequestCount() == 0; i++) {
+                assertEquals(200, connection.post(new ByteArrayEntity(new byte[1])));
+            }
+            assertTrue(recovered.getRequestCount() > 0);
+            assertTrue(down.isHealthy());
+        } finally {
+            up.close();
+            if (recovered != null) {
+                recovered.close();
+            }
+        }
+    }
+}
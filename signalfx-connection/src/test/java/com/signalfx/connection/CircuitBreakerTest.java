@@ -0,0 +1,114 @@
+package com.signalfx.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.OutputStream;
+
+import org.apache.http.HttpHost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    private static final String ENDPOINT = "https://ingest.signalfx.com:443";
+
+    private final CircuitBreaker breaker = new CircuitBreaker().setFailureThreshold(3);
+    private final CircuitBreaker.Circuit circuit = breaker.getCircuit(ENDPOINT);
+
+    @Test
+    public void shouldOpenAfterFailuresInARow() throws Exception {
+        failRequests(2);
+        succeedRequest();
+        failRequests(2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT));
+        failRequests(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT));
+
+        assertRejected();
+        assertEquals(1, breaker.getRejectedCount());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("http://localhost:8080"));
+    }
+
+    @Test
+    public void shouldProbeOnceHalfOpen() throws Exception {
+        breaker.setOpenMs(0);
+        failRequests(3);
+
+        boolean probe = circuit.acquire();
+        assertTrue(probe);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(ENDPOINT));
+        assertRejected();
+
+        circuit.release(probe, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT));
+
+        probe = circuit.acquire();
+        assertTrue(probe);
+        circuit.release(probe, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(ENDPOINT));
+        assertFalse(circuit.acquire());
+    }
+
+    @Test
+    public void shouldIgnoreRequestsCompletingWhileOpen() throws Exception {
+        boolean probe = circuit.acquire();
+        failRequests(3);
+        circuit.release(probe, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(ENDPOINT));
+    }
+
+    @Test
+    public void shouldReleaseProbeFailingWithRuntimeException() throws Exception {
+        LocalServer server = new LocalServer();
+        try {
+            LocalServer.Connection connection = new LocalServer.Connection(server.getEndpoint(),
+                    new PoolingHttpClientConnectionManager());
+            CircuitBreaker breaker = new CircuitBreaker().setFailureThreshold(1).setOpenMs(0);
+            connection.setCircuitBreaker(breaker);
+            String endpoint = new HttpHost("localhost", server.getPort(), "http").toURI();
+            CircuitBreaker.Circuit circuit = breaker.getCircuit(endpoint);
+            circuit.release(circuit.acquire(), false);
+
+            try {
+                connection.post(new ByteArrayEntity(new byte[1]) {
+                    @Override
+                    public void writeTo(OutputStream out) {
+                        throw new IllegalStateException("unable to serialize");
+                    }
+                });
+                fail("expected the probe to fail");
+            } catch (IllegalStateException expected) {
+            }
+            // the failed probe opened the circuit again, rather than leaving it probing
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState(endpoint));
+
+            assertEquals(200, connection.post(new ByteArrayEntity(new byte[1])));
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(endpoint));
+            assertEquals(1, server.getRequestCount());
+        } finally {
+            server.close();
+        }
+    }
+
+    private void failRequests(int count) throws CircuitBreakerOpenException {
+        for (int i = 0; i < count; i++) {
+            circuit.release(circuit.acquire(), false);
+        }
+    }
+
+    private void succeedRequest() throws CircuitBreakerOpenException {
+        circuit.release(circuit.acquire(), true);
+    }
+
+    private void assertRejected() {
+        try {
+            circuit.acquire();
+            fail("expected the circuit to be open");
+        } catch (CircuitBreakerOpenException expected) {
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.signalfx.connection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.junit.Test;
+
+public class CompressionStrategyTest {
+
+    private static final byte[] BODY = payload(4096);
+
+    @Test
+    public void shouldCompressWithGzipAtLevel() throws IOException {
+        HttpEntity fast = CompressionStrategy.gzip(1).apply(new ByteArrayEntity(BODY));
+        HttpEntity best = CompressionStrategy.gzip(9).apply(new ByteArrayEntity(BODY));
+        assertEquals("gzip", fast.getContentEncoding().getValue());
+        assertTrue(fast.isChunked());
+        assertEquals(-1, fast.getContentLength());
+
+        byte[] fastBytes = write(fast);
+        byte[] bestBytes = write(best);
+        assertArrayEquals(BODY, read(new GZIPInputStream(new ByteArrayInputStream(fastBytes))));
+        assertArrayEquals(BODY, read(new GZIPInputStream(new ByteArrayInputStream(bestBytes))));
+        assertTrue(bestBytes.length <= fastBytes.length);
+    }
+
+    @Test
+    public void shouldCompressWithDeflate() throws IOException {
+        HttpEntity entity = CompressionStrategy.deflate(6).apply(new ByteArrayEntity(BODY));
+        assertEquals("deflate", entity.getContentEncoding().getValue());
+        byte[] bytes = write(entity);
+        assertArrayEquals(BODY, read(new InflaterInputStream(new ByteArrayInputStream(bytes))));
+    }
+
+    @Test
+    public void shouldNotCompressSmallBodies() {
+        CompressionStrategy strategy = CompressionStrategy.DEFAULT.withMinSizeBytes(1024);
+        HttpEntity small = new ByteArrayEntity(payload(100));
+        assertSame(small, strategy.apply(small));
+
+        HttpEntity large = new ByteArrayEntity(BODY);
+        assertEquals("gzip", strategy.apply(large).getContentEncoding().getValue());
+
+        // bodies of unknown length are compressed
+        HttpEntity streamed = new InputStreamEntity(new ByteArrayInputStream(payload(100)));
+        assertEquals("gzip", strategy.apply(streamed).getContentEncoding().getValue());
+    }
+
+    @Test
+    public void shouldNotCompressWithoutCodec() {
+        HttpEntity entity = new ByteArrayEntity(BODY);
+        assertSame(entity, CompressionStrategy.NONE.apply(entity));
+    }
+
+    @Test
+    public void shouldFindCodecsByEncoding() {
+        assertSame(CompressionCodecs.GZIP, CompressionCodecs.forEncoding("gzip"));
+        assertSame(CompressionCodecs.DEFLATE, CompressionCodecs.forEncoding("DEFLATE"));
+        assertNull(CompressionCodecs.forEncoding("br"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidLevel() {
+        CompressionStrategy.gzip(10);
+    }
+
+    private static byte[] payload(int size) {
+        StringBuilder text = new StringBuilder(size);
+        for (int i = 0; text.length() < size; i++) {
+            text.append("metric.").append(i % 37).append(' ');
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] write(HttpEntity entity) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,71 @@
+package com.signalfx.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.Test;
+
+public class HedgingPolicyTest {
+
+    @Test
+    public void shouldHedgeWithinBudget() {
+        HedgingPolicy policy = new HedgingPolicy().setBudgetRatio(0.5).setBudgetBurst(1);
+        assertFalse(policy.tryHedge());
+        policy.requestSent();
+        assertFalse(policy.tryHedge());
+        policy.requestSent();
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+
+        // the budget saves up for no more than its burst
+        for (int i = 0; i < 10; i++) {
+            policy.requestSent();
+        }
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+        assertEquals(2, policy.getHedgeCount());
+    }
+
+    @Test
+    public void shouldWaitForSamplesBeforeHedging() {
+        HedgingPolicy policy = new HedgingPolicy().setMinSamples(2).setMinDelayMs(1000);
+        policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(-1, policy.getDelayNanos());
+        policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), policy.getDelayNanos());
+    }
+
+    @Test
+    public void shouldAbortSlowAttemptOnceHedgeSucceeded() throws Exception {
+        LocalServer server = new LocalServer().hold(1);
+        try {
+            PoolingHttpClientConnectionManager connectionManager =
+                    new PoolingHttpClientConnectionManager();
+            LocalServer.Connection connection =
+                    new LocalServer.Connection(server.getEndpoint(), connectionManager);
+            HedgingPolicy policy = new HedgingPolicy().setMinSamples(1).setMinDelayMs(50)
+                    .setBudgetRatio(1);
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(1));
+
+            assertEquals(200, connection.post(new ByteArrayEntity(new byte[1]), policy));
+            assertEquals(1, policy.getHedgeCount());
+            assertEquals(1, policy.getHedgeWinCount());
+            assertEquals(2, server.getRequestCount());
+
+            // the first attempt, still held by the server, gave its connection back
+            long deadline = System.currentTimeMillis() + 2000;
+            while (connectionManager.getTotalStats().getLeased() > 0
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, connectionManager.getTotalStats().getLeased());
+        } finally {
+            server.close();
+        }
+    }
+}
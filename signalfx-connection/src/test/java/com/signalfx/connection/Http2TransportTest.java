@@ -0,0 +1,52 @@
+package com.signalfx.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.http.HttpHost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.Test;
+
+public class Http2TransportTest {
+
+    @Test
+    public void shouldRememberFallbacks() {
+        Http2Transport transport = new Http2Transport();
+        HttpHost https = new HttpHost("localhost", 443, "https");
+        HttpHost http = new HttpHost("localhost", 80, "http");
+        assertTrue(transport.supports(https));
+        assertFalse(transport.supports(http));
+        transport.setCleartext(true);
+        assertTrue(transport.supports(http));
+
+        transport.fellBack(https);
+        transport.fellBack(https);
+        assertFalse(transport.supports(https));
+        assertFalse(transport.isNegotiated(https));
+        assertTrue(transport.supports(http));
+        assertEquals(1, transport.getFallbackCount());
+    }
+
+    @Test
+    public void shouldFallBackOnceToHttp1() throws Exception {
+        LocalServer server = new LocalServer();
+        Http2Transport transport = new Http2Transport().setCleartext(true);
+        try {
+            LocalServer.Connection connection = new LocalServer.Connection(server.getEndpoint(),
+                    new PoolingHttpClientConnectionManager());
+            connection.setHttp2Transport(transport);
+            HttpHost origin = new HttpHost("localhost", server.getPort(), "http");
+
+            assertEquals(200, connection.post(new ByteArrayEntity(new byte[1])));
+            assertFalse(transport.supports(origin));
+            assertEquals(200, connection.post(new ByteArrayEntity(new byte[1])));
+            assertEquals(1, transport.getFallbackCount());
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            transport.close();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.signalfx.connection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import com.signalfx.endpoint.SignalFxEndpoint;
+import com.signalfx.endpoint.SignalFxReceiverEndpoint;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP/1.1 server answering {@code "OK"} to the POST requests of the tests, the first ones held
+ * until released if asked to.
+ */
+class LocalServer implements Closeable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch released = new CountDownLatch(1);
+    private volatile int heldRequests;
+
+    LocalServer() throws IOException {
+        this(0);
+    }
+
+    LocalServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    InputStream in = exchange.getRequestBody();
+                    while (in.read() != -1) {
+                    }
+                    if (!"POST".equals(exchange.getRequestMethod())) {
+                        exchange.sendResponseHeaders(400, -1);
+                        return;
+                    }
+                    if (requests.incrementAndGet() <= heldRequests) {
+                        released.await(10, TimeUnit.SECONDS);
+                    }
+                    byte[] body = "\"OK\"".getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @param heldRequests
+     *            number of requests to hold until {@link #release()}, from the first one
+     * @return this server
+     */
+    LocalServer hold(int heldRequests) {
+        this.heldRequests = heldRequests;
+        return this;
+    }
+
+    void release() {
+        released.countDown();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    SignalFxEndpoint getEndpoint() {
+        return new SignalFxEndpoint("http", "localhost", getPort());
+    }
+
+    /**
+     * @return number of POST requests received
+     */
+    int getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        release();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Connection posting to the local servers of the tests.
+     */
+    static class Connection extends AbstractHttpReceiverConnection {
+
+        Connection(SignalFxReceiverEndpoint endpoint,
+                   HttpClientConnectionManager httpClientConnectionManager) {
+            super(endpoint, 2000, httpClientConnectionManager);
+        }
+
+        int post(HttpEntity entity) throws IOException {
+            return status(postToEndpoint(null, entity, "/v2/datapoint", false));
+        }
+
+        int post(HttpEntity entity, HedgingPolicy hedging) throws IOException {
+            return status(postToEndpoint(null, entity, "/v2/datapoint", false, hedging));
+        }
+
+        private static int status(CloseableHttpResponse resp) throws IOException {
+            try {
+                EntityUtils.consume(resp.getEntity());
+                return resp.getStatusLine().getStatusCode();
+            } finally {
+                resp.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.signalfx.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    @Test
+    public void shouldCarryDebtOfEachAccessTokenOnly() throws Exception {
+        RateLimiter limiter = new RateLimiter(1000, 0, 0.01);
+        assertEquals(0, limiter.acquire("a", 10, -1));
+        long waitNanos = limiter.acquire("a", 20, -1);
+        assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(15));
+
+        // another access token has its own buckets
+        assertEquals(0, limiter.acquire("b", 10, -1));
+        // the next upload with the first one waits for the debt of the previous ones
+        assertTrue(limiter.acquire("a", 1, -1) > 0);
+        assertEquals(2, limiter.getThrottledCount());
+    }
+
+    @Test
+    public void shouldLimitBytesWhenKnown() throws Exception {
+        RateLimiter limiter = new RateLimiter(0, 1000, 0.01);
+        assertEquals(0, limiter.acquire("a", 1000, -1));
+        assertEquals(0, limiter.acquire("a", 1000, 10));
+        assertTrue(limiter.acquire("a", 1, 10) > 0);
+        assertEquals(1, limiter.getThrottledCount());
+    }
+}
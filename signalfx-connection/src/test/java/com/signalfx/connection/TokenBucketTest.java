@@ -0,0 +1,65 @@
+package com.signalfx.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    @Test
+    public void shouldSpendDepositedTokensUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(2, 0, 0);
+        assertFalse(bucket.tryAcquire(1));
+        bucket.deposit(0.5);
+        assertFalse(bucket.tryAcquire(1));
+        bucket.deposit(0.5);
+        assertTrue(bucket.tryAcquire(1));
+        assertFalse(bucket.tryAcquire(1));
+
+        bucket.deposit(5);
+        assertEquals(2, bucket.getAvailable(), 0);
+        assertTrue(bucket.tryAcquire(2));
+        assertEquals(0, bucket.getAvailable(), 0);
+    }
+
+    @Test
+    public void shouldRefillOverTime() throws Exception {
+        TokenBucket bucket = new TokenBucket(5, 100);
+        assertTrue(bucket.tryAcquire(5));
+        assertFalse(bucket.tryAcquire(1));
+
+        Thread.sleep(30);
+        assertTrue(bucket.tryAcquire(1));
+        Thread.sleep(100);
+        assertEquals(5, bucket.getAvailable(), 0);
+    }
+
+    @Test
+    public void shouldPaceReservationsAtRefillRate() {
+        TokenBucket bucket = new TokenBucket(10, 1000);
+        assertEquals(0, bucket.reserve(10));
+        long waitNanos = bucket.reserve(20);
+        assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(15));
+        assertTrue(waitNanos <= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(bucket.getAvailable() < 0);
+        // queued behind the debt of the previous reservation
+        assertTrue(bucket.reserve(1) > waitNanos);
+    }
+
+    @Test
+    public void shouldLimitRetriesToRatioOfSuccesses() {
+        RetryBudget budget = new RetryBudget(0.5, 0, 2);
+        assertTrue(budget.tryRetry());
+        assertTrue(budget.tryRetry());
+        assertFalse(budget.tryRetry());
+        budget.requestSucceeded();
+        assertFalse(budget.tryRetry());
+        budget.requestSucceeded();
+        assertTrue(budget.tryRetry());
+        assertEquals(2, budget.getDeniedCount());
+    }
+}
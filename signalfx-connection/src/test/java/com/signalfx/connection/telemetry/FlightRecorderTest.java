@@ -0,0 +1,65 @@
+package com.signalfx.connection.telemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+public class FlightRecorderTest {
+
+    @Test
+    public void shouldNotBeginEventsWithoutRecording() {
+        assertTrue(FlightRecorder.isEnabled());
+        assertNull(FlightRecorder.beginHttpPost());
+        FlightRecorder.commitHttpPost(null, "/v2/datapoint", 200, true);
+    }
+
+    @Test
+    public void shouldRecordEvents() throws Exception {
+        Recording recording = new Recording();
+        recording.enable("com.signalfx.HttpPost").withoutThreshold();
+        recording.enable("com.signalfx.Retry");
+        recording.enable("com.signalfx.TickReassembly").withoutThreshold();
+        recording.start();
+
+        FlightRecorder.commitHttpPost(FlightRecorder.beginHttpPost(), "/v2/datapoint", 200, true);
+        FlightRecorder.retry(598, 1);
+        FlightRecorder.commitTickReassembly(FlightRecorder.beginTickReassembly(), "channel-1",
+                1000, 3, 250, true);
+
+        recording.stop();
+        File file = File.createTempFile("signalfx", ".jfr");
+        Map<String, RecordedEvent> events = new HashMap<String, RecordedEvent>();
+        try {
+            recording.dump(file.toPath());
+            List<RecordedEvent> recorded = RecordingFile.readAllEvents(file.toPath());
+            for (RecordedEvent event : recorded) {
+                events.put(event.getEventType().getName(), event);
+            }
+        } finally {
+            recording.close();
+            file.delete();
+        }
+
+        RecordedEvent post = events.get("com.signalfx.HttpPost");
+        assertEquals("/v2/datapoint", post.getString("path"));
+        assertEquals(200, post.getInt("statusCode"));
+        assertTrue(post.getBoolean("compressed"));
+
+        assertEquals(598, events.get("com.signalfx.Retry").getInt("statusCode"));
+
+        RecordedEvent tick = events.get("com.signalfx.TickReassembly");
+        assertEquals("channel-1", tick.getString("channel"));
+        assertEquals(250, tick.getInt("series"));
+    }
+}
@@ -0,0 +1,56 @@
+package com.signalfx.connection.telemetry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void shouldCountValuesInBuckets() {
+        Histogram histogram = new Histogram(10, 100, 1000);
+        histogram.record(-5);
+        histogram.record(10);
+        histogram.record(11);
+        histogram.record(1000);
+        histogram.record(5000);
+
+        assertArrayEquals(new long[] { 2, 1, 1, 1 }, histogram.getBucketCounts());
+        assertEquals(5, histogram.getCount());
+        assertEquals(6021, histogram.getSum());
+        assertEquals(5000, histogram.getMax());
+    }
+
+    @Test
+    public void shouldEstimatePercentilesFromBucketBounds() {
+        Histogram histogram = Histogram.exponential(1, 2, 10);
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(64, histogram.getPercentile(0.5));
+        assertEquals(100, histogram.getPercentile(0.99));
+        assertEquals(1, histogram.getPercentile(0));
+
+        histogram.record(10000);
+        assertEquals(10000, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void shouldReset() {
+        Histogram histogram = new Histogram(1);
+        histogram.record(2);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertArrayEquals(new long[] { 0, 0 }, histogram.getBucketCounts());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnorderedBounds() {
+        new Histogram(10, 10);
+    }
+}
@@ -0,0 +1,66 @@
+package com.signalfx.connection.telemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+
+import org.junit.Test;
+
+public class TelemetryRecorderTest {
+
+    @Test
+    public void shouldAccumulateMeasurements() {
+        TelemetryRecorder recorder = new TelemetryRecorder();
+        recorder.sessionFlushed(100, 2, TimeUnit.MILLISECONDS.toNanos(3));
+        recorder.metricsRegistered(5, false, 0);
+        recorder.dataPointsDropped(100);
+        recorder.payloadSerialized(100, 4000, 1000);
+        recorder.payloadCompressed(4000, 500, 1000);
+        recorder.requestRetried(598);
+        recorder.retryDenied(598);
+        recorder.uploadThrottled(100, 4000, TimeUnit.MILLISECONDS.toNanos(5));
+        recorder.requestCompleted(200, TimeUnit.MILLISECONDS.toNanos(2));
+        recorder.requestCompleted(-1, TimeUnit.MILLISECONDS.toNanos(2));
+
+        Map<String, Long> snapshot = recorder.snapshot();
+        assertEquals(Long.valueOf(1), snapshot.get("sessions"));
+        assertEquals(Long.valueOf(100), snapshot.get("datapoints"));
+        assertEquals(Long.valueOf(1), snapshot.get("registration.errors"));
+        assertEquals(Long.valueOf(100), snapshot.get("datapoints.dropped"));
+        assertEquals(Long.valueOf(4000), snapshot.get("compress.bytes.in"));
+        assertEquals(Long.valueOf(500), snapshot.get("compress.bytes.out"));
+        assertEquals(Long.valueOf(2), snapshot.get("requests"));
+        assertEquals(Long.valueOf(1), snapshot.get("requests.errors"));
+        assertEquals(Long.valueOf(1), snapshot.get("retries"));
+        assertEquals(Long.valueOf(1), snapshot.get("retries.denied"));
+        assertEquals(Long.valueOf(1), snapshot.get("uploads.throttled"));
+        assertEquals(Long.valueOf(5000), snapshot.get("throttle.latency.us.sum"));
+        assertEquals(Long.valueOf(2), snapshot.get("request.latency.us.count"));
+        assertEquals(Long.valueOf(3000), snapshot.get("flush.latency.us.max"));
+        assertEquals(Long.valueOf(100), snapshot.get("serialize.datapoints.p99"));
+    }
+
+    @Test
+    public void shouldExportOverJmx() throws Exception {
+        TelemetryRecorder recorder = new TelemetryRecorder();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        JmxTelemetryExporter exporter = JmxTelemetryExporter.register(recorder, "test");
+        try {
+            assertEquals(0L, server.getAttribute(exporter.getObjectName(), "requests"));
+            recorder.requestCompleted(200, 0);
+            assertEquals(1L, server.getAttribute(exporter.getObjectName(), "requests"));
+            assertEquals(recorder.snapshot().size(),
+                    server.getMBeanInfo(exporter.getObjectName()).getAttributes().length);
+            assertTrue(server.isRegistered(exporter.getObjectName()));
+        } finally {
+            exporter.close();
+        }
+        assertFalse(server.isRegistered(exporter.getObjectName()));
+    }
+}
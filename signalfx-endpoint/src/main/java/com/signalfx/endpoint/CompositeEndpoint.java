@@ -0,0 +1,355 @@
+package com.signalfx.endpoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Endpoint made of several targets, e.g. regional ingest proxies, between which the requests of
+ * a connection are spread.
+ *
+ * Each request is sent to a target picked by the {@link Selection} of the endpoint among the
+ * healthy targets. A target failing {@link #getMaxFailures()} requests in a row, with an I/O
+ * error, a server error, or by answering slower than {@link #getSlowThresholdMs()}, is ejected:
+ * no request is sent to it for {@link #getEjectionMs()}, doubled on each ejection in a row up to
+ * {@link #getMaxEjectionMs()}. Once the ejection ends, a single failure ejects the target again,
+ * until a request to it succeeds. When all targets are ejected, requests are sent to the target
+ * whose ejection ends first.
+ *
+ * Connections fail requests over to another target when their target errors, as long as the
+ * request body can be sent again. Connections that only support a single endpoint use the first
+ * target, which is what {@link #getScheme()}, {@link #getHostname()} and {@link #getPort()}
+ * return.
+ */
+public class CompositeEndpoint implements SignalFxReceiverEndpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(CompositeEndpoint.class);
+
+    /**
+     * How a target is picked among the healthy targets.
+     */
+    public enum Selection {
+        /**
+         * The target with the fewest requests in flight, ties broken at random.
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * The best of two targets drawn at random, scored by their requests in flight weighted by
+         * their average latency, so that slow targets get fewer requests.
+         */
+        POWER_OF_TWO_CHOICES
+    }
+
+    public static final Selection DEFAULT_SELECTION = Selection.POWER_OF_TWO_CHOICES;
+    public static final int DEFAULT_MAX_FAILURES = 3;
+    public static final long DEFAULT_EJECTION_MS = 5000;
+    public static final long DEFAULT_MAX_EJECTION_MS = 60000;
+    public static final long DEFAULT_SLOW_THRESHOLD_MS = -1;
+
+    // weight of the latest request in the average latency of a target
+    private static final double LATENCY_DECAY = 0.2;
+
+    private final List<Target> targets;
+    private volatile Selection selection = DEFAULT_SELECTION;
+    private volatile int maxFailures = DEFAULT_MAX_FAILURES;
+    private volatile long ejectionMs = DEFAULT_EJECTION_MS;
+    private volatile long maxEjectionMs = DEFAULT_MAX_EJECTION_MS;
+    private volatile long slowThresholdMs = DEFAULT_SLOW_THRESHOLD_MS;
+
+    public CompositeEndpoint(SignalFxReceiverEndpoint... targets) {
+        this(Arrays.asList(targets));
+    }
+
+    public CompositeEndpoint(List<? extends SignalFxReceiverEndpoint> targets) {
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("At least one target is required");
+        }
+        List<Target> list = new ArrayList<Target>(targets.size());
+        for (SignalFxReceiverEndpoint target : targets) {
+            if (target == null) {
+                throw new IllegalArgumentException("Targets must not be null");
+            }
+            list.add(new Target(target));
+        }
+        this.targets = Collections.unmodifiableList(list);
+    }
+
+    public List<Target> getTargets() {
+        return targets;
+    }
+
+    public Selection getSelection() {
+        return selection;
+    }
+
+    /**
+     * @param selection
+     *            how a target is picked among the healthy targets; defaults to
+     *            {@link Selection#POWER_OF_TWO_CHOICES}
+     * @return this endpoint
+     */
+    public CompositeEndpoint setSelection(Selection selection) {
+        if (selection == null) {
+            throw new IllegalArgumentException("selection must not be null");
+        }
+        this.selection = selection;
+        return this;
+    }
+
+    public int getMaxFailures() {
+        return maxFailures;
+    }
+
+    /**
+     * @param maxFailures
+     *            number of failed requests in a row after which a target is ejected
+     * @return this endpoint
+     */
+    public CompositeEndpoint setMaxFailures(int maxFailures) {
+        if (maxFailures <= 0) {
+            throw new IllegalArgumentException("maxFailures must be positive");
+        }
+        this.maxFailures = maxFailures;
+        return this;
+    }
+
+    public long getEjectionMs() {
+        return ejectionMs;
+    }
+
+    /**
+     * @param ejectionMs
+     *            time during which no request is sent to a target ejected for the first time
+     * @return this endpoint
+     */
+    public CompositeEndpoint setEjectionMs(long ejectionMs) {
+        if (ejectionMs < 0) {
+            throw new IllegalArgumentException("ejectionMs must not be negative");
+        }
+        this.ejectionMs = ejectionMs;
+        return this;
+    }
+
+    public long getMaxEjectionMs() {
+        return maxEjectionMs;
+    }
+
+    /**
+     * @param maxEjectionMs
+     *            longest time during which no request is sent to a target ejected several times
+     *            in a row
+     * @return this endpoint
+     */
+    public CompositeEndpoint setMaxEjectionMs(long maxEjectionMs) {
+        if (maxEjectionMs < 0) {
+            throw new IllegalArgumentException("maxEjectionMs must not be negative");
+        }
+        this.maxEjectionMs = maxEjectionMs;
+        return this;
+    }
+
+    public long getSlowThresholdMs() {
+        return slowThresholdMs;
+    }
+
+    /**
+     * @param slowThresholdMs
+     *            latency above which a successful request counts as a failure of its target, or
+     *            -1 to only count errors; disabled by default
+     * @return this endpoint
+     */
+    public CompositeEndpoint setSlowThresholdMs(long slowThresholdMs) {
+        this.slowThresholdMs = slowThresholdMs;
+        return this;
+    }
+
+    /**
+     * @return the target to send a request to
+     */
+    public Target select() {
+        return select(Collections.<Target>emptyList());
+    }
+
+    /**
+     * @param excluded
+     *            targets not to send the request to, e.g. because it already failed on them
+     * @return the target to send a request to, or null if all targets are excluded
+     */
+    public Target select(Collection<Target> excluded) {
+        long now = System.nanoTime();
+        List<Target> healthy = new ArrayList<Target>(targets.size());
+        Target soonest = null;
+        for (Target target : targets) {
+            if (excluded.contains(target)) {
+                continue;
+            }
+            if (target.isHealthy(now)) {
+                healthy.add(target);
+            } else if (soonest == null || target.ejectedUntil - soonest.ejectedUntil < 0) {
+                soonest = target;
+            }
+        }
+        if (healthy.isEmpty()) {
+            return soonest;
+        }
+        if (healthy.size() == 1) {
+            return healthy.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (selection) {
+        case LEAST_OUTSTANDING:
+            int offset = random.nextInt(healthy.size());
+            Target least = null;
+            for (int i = 0; i < healthy.size(); i++) {
+                Target target = healthy.get((offset + i) % healthy.size());
+                if (least == null || target.getOutstanding() < least.getOutstanding()) {
+                    least = target;
+                }
+            }
+            return least;
+        case POWER_OF_TWO_CHOICES:
+        default:
+            int first = random.nextInt(healthy.size());
+            int second = random.nextInt(healthy.size() - 1);
+            if (second >= first) {
+                second++;
+            }
+            Target a = healthy.get(first);
+            Target b = healthy.get(second);
+            return a.score() <= b.score() ? a : b;
+        }
+    }
+
+    /**
+     * Tells the endpoint that a request is sent to one of its targets. Must be followed by
+     * {@link #requestCompleted(Target, boolean, long)} once the request completes.
+     */
+    public void requestStarted(Target target) {
+        target.outstanding.incrementAndGet();
+    }
+
+    /**
+     * @param target
+     *            target the request was sent to
+     * @param success
+     *            whether the target answered the request, with a status code other than a
+     *            server error
+     * @param latencyNanos
+     *            time taken by the request
+     */
+    public void requestCompleted(Target target, boolean success, long latencyNanos) {
+        target.outstanding.decrementAndGet();
+        long slowThresholdMs = this.slowThresholdMs;
+        boolean slow = slowThresholdMs >= 0 && latencyNanos > slowThresholdMs * 1000000L;
+        synchronized (target) {
+            target.latencyNanos = target.latencyNanos == 0 ? latencyNanos
+                    : (long) (LATENCY_DECAY * latencyNanos
+                            + (1 - LATENCY_DECAY) * target.latencyNanos);
+            if (success && !slow) {
+                target.failures = 0;
+                target.ejections = 0;
+                return;
+            }
+            target.failures++;
+            // a target back from an ejection is ejected again on its first failure
+            if (target.failures < maxFailures && target.ejections == 0) {
+                return;
+            }
+            long durationMs = Math.min(maxEjectionMs,
+                    ejectionMs << Math.min(target.ejections, 20));
+            target.ejectedUntil = System.nanoTime() + durationMs * 1000000L;
+            target.ejected = true;
+            target.ejections++;
+            target.failures = 0;
+            // start afresh once back, lest the latency it was ejected for keep it from being
+            // selected again
+            target.latencyNanos = 0;
+            log.warn("Ejecting {} for {}ms after {} requests", target.endpoint, durationMs,
+                    slow && success ? "slow" : "failed");
+        }
+    }
+
+    @Override
+    public String getScheme() {
+        return targets.get(0).endpoint.getScheme();
+    }
+
+    @Override
+    public String getHostname() {
+        return targets.get(0).endpoint.getHostname();
+    }
+
+    @Override
+    public int getPort() {
+        return targets.get(0).endpoint.getPort();
+    }
+
+    @Override
+    public String toString() {
+        return targets.toString();
+    }
+
+    /**
+     * A target of a composite endpoint, with the health the endpoint tracks for it.
+     */
+    public static final class Target {
+        private final SignalFxReceiverEndpoint endpoint;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        // guarded by this
+        private long latencyNanos;
+        private int failures;
+        private int ejections;
+        private volatile boolean ejected;
+        private volatile long ejectedUntil;
+
+        private Target(SignalFxReceiverEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public SignalFxReceiverEndpoint getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * @return number of requests in flight to the target
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * @return moving average of the latency of the requests to the target, or 0 before the
+         *         first one completes, or the first one since it was last ejected
+         */
+        public synchronized long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        /**
+         * @return whether requests are sent to the target, i.e. it is not ejected
+         */
+        public boolean isHealthy() {
+            return isHealthy(System.nanoTime());
+        }
+
+        private boolean isHealthy(long now) {
+            return !ejected || now - ejectedUntil >= 0;
+        }
+
+        private double score() {
+            return (getOutstanding() + 1) * (double) Math.max(getLatencyNanos(), 1);
+        }
+
+        @Override
+        public String toString() {
+            return endpoint.toString();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.signalfx.endpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CompositeEndpointTest {
+
+    private static final long MS = 1000000L;
+
+    private final CompositeEndpoint endpoint = new CompositeEndpoint(
+            new SignalFxEndpoint("http", "a", 80),
+            new SignalFxEndpoint("http", "b", 80),
+            new SignalFxEndpoint("http", "c", 80));
+
+    @Test
+    public void shouldActAsFirstTarget() {
+        assertEquals("http", endpoint.getScheme());
+        assertEquals("a", endpoint.getHostname());
+        assertEquals(80, endpoint.getPort());
+    }
+
+    @Test
+    public void shouldSelectLeastOutstanding() {
+        endpoint.setSelection(CompositeEndpoint.Selection.LEAST_OUTSTANDING);
+        CompositeEndpoint.Target a = endpoint.getTargets().get(0);
+        CompositeEndpoint.Target b = endpoint.getTargets().get(1);
+        CompositeEndpoint.Target c = endpoint.getTargets().get(2);
+        endpoint.requestStarted(a);
+        endpoint.requestStarted(c);
+
+        for (int i = 0; i < 100; i++) {
+            assertSame(b, endpoint.select());
+        }
+        endpoint.requestCompleted(a, true, MS);
+        assertEquals(0, a.getOutstanding());
+        assertEquals(c, endpoint.select(Arrays.asList(a, b)));
+    }
+
+    @Test
+    public void shouldPreferFastTargetsWithPowerOfTwoChoices() {
+        CompositeEndpoint.Target slow = endpoint.getTargets().get(0);
+        endpoint.requestStarted(slow);
+        endpoint.requestCompleted(slow, true, 500 * MS);
+        for (CompositeEndpoint.Target target : endpoint.getTargets().subList(1, 3)) {
+            endpoint.requestStarted(target);
+            endpoint.requestCompleted(target, true, 5 * MS);
+        }
+
+        Map<CompositeEndpoint.Target, Integer> selected =
+                new HashMap<CompositeEndpoint.Target, Integer>();
+        for (int i = 0; i < 3000; i++) {
+            CompositeEndpoint.Target target = endpoint.select();
+            Integer count = selected.get(target);
+            selected.put(target, count == null ? 1 : count + 1);
+        }
+        assertNull(selected.get(slow));
+        assertEquals(1500, selected.get(endpoint.getTargets().get(1)), 200);
+        assertEquals(1500, selected.get(endpoint.getTargets().get(2)), 200);
+    }
+
+    @Test
+    public void shouldEjectFailingTargets() throws Exception {
+        endpoint.setMaxFailures(2).setEjectionMs(200);
+        CompositeEndpoint.Target a = endpoint.getTargets().get(0);
+        fail(a);
+        assertTrue(a.isHealthy());
+        fail(a);
+        assertFalse(a.isHealthy());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(a != endpoint.select());
+        }
+
+        Thread.sleep(250);
+        assertTrue(a.isHealthy());
+        // back from its ejection, a single failure ejects it again, for longer
+        fail(a);
+        assertFalse(a.isHealthy());
+        Thread.sleep(250);
+        assertFalse(a.isHealthy());
+        Thread.sleep(250);
+        assertTrue(a.isHealthy());
+
+        endpoint.requestStarted(a);
+        endpoint.requestCompleted(a, true, MS);
+        fail(a);
+        assertTrue(a.isHealthy());
+    }
+
+    @Test
+    public void shouldEjectSlowTargets() {
+        endpoint.setMaxFailures(1).setSlowThresholdMs(100);
+        CompositeEndpoint.Target a = endpoint.getTargets().get(0);
+        endpoint.requestStarted(a);
+        endpoint.requestCompleted(a, true, 50 * MS);
+        assertTrue(a.isHealthy());
+        endpoint.requestStarted(a);
+        endpoint.requestCompleted(a, true, 150 * MS);
+        assertFalse(a.isHealthy());
+    }
+
+    @Test
+    public void shouldSelectRecoveredTargetsAgain() throws Exception {
+        endpoint.setMaxFailures(1).setSlowThresholdMs(100).setEjectionMs(100);
+        CompositeEndpoint.Target slow = endpoint.getTargets().get(0);
+        endpoint.requestStarted(slow);
+        endpoint.requestCompleted(slow, true, 1000 * MS);
+        for (CompositeEndpoint.Target target : endpoint.getTargets().subList(1, 3)) {
+            endpoint.requestStarted(target);
+            endpoint.requestCompleted(target, true, 5 * MS);
+        }
+        assertFalse(slow.isHealthy());
+
+        Thread.sleep(150);
+        assertTrue(slow.isHealthy());
+        // probed again despite the latency it was ejected for
+        boolean selected = false;
+        for (int i = 0; i < 100 && !selected; i++) {
+            selected = endpoint.select() == slow;
+        }
+        assertTrue(selected);
+        endpoint.requestStarted(slow);
+        endpoint.requestCompleted(slow, true, 5 * MS);
+        assertTrue(slow.isHealthy());
+    }
+
+    @Test
+    public void shouldSelectSoonestBackWhenAllEjected() {
+        endpoint.setMaxFailures(1).setEjectionMs(10000);
+        for (CompositeEndpoint.Target target : endpoint.getTargets()) {
+            fail(target);
+        }
+        assertSame(endpoint.getTargets().get(0), endpoint.select());
+        assertNull(endpoint.select(endpoint.getTargets()));
+        assertSame(endpoint.getTargets().get(1),
+                endpoint.select(Collections.singletonList(endpoint.getTargets().get(0))));
+    }
+
+    private void fail(CompositeEndpoint.Target target) {
+        endpoint.requestStarted(target);
+        endpoint.requestCompleted(target, false, MS);
+    }
+}
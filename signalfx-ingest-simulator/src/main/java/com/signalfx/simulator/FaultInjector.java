@@ -0,0 +1,182 @@
+package com.signalfx.simulator;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * Decides how the simulator responds to each request: how long it is delayed, and whether it
+ * fails, with an error status or a connection reset.
+ *
+ * Scripted faults, queued with {@link #failNext(int, int)}, {@link #resetNext(int)} and
+ * {@link #delayNext(int, long)}, apply to the next requests in order. Once they are exhausted,
+ * faults are drawn at random from the configured rates. Injectors are thread-safe.
+ */
+public class FaultInjector {
+
+    /**
+     * Outcome of a request whose connection is reset instead of responded to.
+     */
+    public static final int RESET = -1;
+
+    /**
+     * Outcome of a request that is accepted.
+     */
+    public static final int OK = 200;
+
+    private final Map<Integer, Double> failureRates = new LinkedHashMap<Integer, Double>();
+    private final Queue<Integer> scripted = new LinkedList<Integer>();
+    private final Queue<Long> scriptedLatencies = new LinkedList<Long>();
+    private Random random = new Random();
+    private long minLatencyMs;
+    private long maxLatencyMs;
+
+    /**
+     * @param minLatencyMs
+     *            minimum delay before responding to a request
+     * @param maxLatencyMs
+     *            maximum delay before responding to a request, delays being uniformly
+     *            distributed in between
+     * @return this injector
+     */
+    public synchronized FaultInjector setLatencyMs(long minLatencyMs, long maxLatencyMs) {
+        if (minLatencyMs < 0 || maxLatencyMs < minLatencyMs) {
+            throw new IllegalArgumentException("invalid latency range");
+        }
+        this.minLatencyMs = minLatencyMs;
+        this.maxLatencyMs = maxLatencyMs;
+        return this;
+    }
+
+    /**
+     * @param status
+     *            error status to respond with, e.g. 408, 429, 503, 504 or 598, or {@link #RESET}
+     *            to reset the connection
+     * @param rate
+     *            fraction of requests failing that way, between 0 and 1
+     * @return this injector
+     */
+    public synchronized FaultInjector setFailureRate(int status, double rate) {
+        if (status != RESET && (status < 400 || status > 599)) {
+            throw new IllegalArgumentException("not an error status: " + status);
+        }
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("rate must be between 0 and 1");
+        }
+        if (rate == 0) {
+            failureRates.remove(status);
+        } else {
+            failureRates.put(status, rate);
+        }
+        double total = 0;
+        for (double configured : failureRates.values()) {
+            total += configured;
+        }
+        if (total > 1) {
+            failureRates.remove(status);
+            throw new IllegalArgumentException("failure rates add up to more than 1");
+        }
+        return this;
+    }
+
+    /**
+     * @param seed
+     *            seed of the random draws, to reproduce a run
+     * @return this injector
+     */
+    public synchronized FaultInjector setSeed(long seed) {
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * Fails the next requests with an error status, before any random fault.
+     *
+     * @param count
+     *            number of requests to fail
+     * @param status
+     *            error status to respond with, or {@link #RESET}
+     * @return this injector
+     */
+    public synchronized FaultInjector failNext(int count, int status) {
+        for (int i = 0; i < count; i++) {
+            scripted.add(status);
+        }
+        return this;
+    }
+
+    /**
+     * Resets the connection of the next requests, before any random fault.
+     *
+     * @param count
+     *            number of requests to reset
+     * @return this injector
+     */
+    public FaultInjector resetNext(int count) {
+        return failNext(count, RESET);
+    }
+
+    /**
+     * Delays the response to the next requests, instead of the configured latency.
+     *
+     * @param count
+     *            number of requests to delay
+     * @param latencyMs
+     *            delay before responding to each of them
+     * @return this injector
+     */
+    public synchronized FaultInjector delayNext(int count, long latencyMs) {
+        for (int i = 0; i < count; i++) {
+            scriptedLatencies.add(latencyMs);
+        }
+        return this;
+    }
+
+    /**
+     * Removes all configured latency and faults.
+     */
+    public synchronized void clear() {
+        failureRates.clear();
+        scripted.clear();
+        scriptedLatencies.clear();
+        minLatencyMs = 0;
+        maxLatencyMs = 0;
+    }
+
+    /**
+     * @return delay before responding to the next request
+     */
+    public synchronized long nextLatencyMs() {
+        Long latencyMs = scriptedLatencies.poll();
+        if (latencyMs != null) {
+            return latencyMs;
+        }
+        if (maxLatencyMs == minLatencyMs) {
+            return minLatencyMs;
+        }
+        return minLatencyMs + (long) (random.nextDouble() * (maxLatencyMs - minLatencyMs + 1));
+    }
+
+    /**
+     * @return outcome of the next request: {@link #OK}, an error status or {@link #RESET}
+     */
+    public synchronized int nextOutcome() {
+        Integer status = scripted.poll();
+        if (status != null) {
+            return status;
+        }
+        if (failureRates.isEmpty()) {
+            return OK;
+        }
+        double draw = random.nextDouble();
+        for (Map.Entry<Integer, Double> failure : failureRates.entrySet()) {
+            draw -= failure.getValue();
+            if (draw < 0) {
+                return failure.getKey();
+            }
+        }
+        return OK;
+    }
+}
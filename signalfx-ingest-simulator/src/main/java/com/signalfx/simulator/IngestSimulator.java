@@ -0,0 +1,448 @@
+package com.signalfx.simulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.signalfx.endpoint.SignalFxEndpoint;
+import com.signalfx.metrics.protobuf.SignalFxProtocolBuffers;
+
+/**
+ * Local stand-in for the SignalFx ingest API, to benchmark and soak-test senders without
+ * touching production.
+ *
+ * The simulator implements {@code /v2/datapoint}, {@code /v2/event} and {@code /v1/backfill}:
+ * request bodies are decompressed when gzip or deflate encoded, decoded as protocol buffers and
+ * their datapoints or events counted. Before responding, each request goes through a
+ * {@link FaultInjector}, which may delay it, fail it with an error status (e.g. 408, 429, 503,
+ * 504 or 598) or reset its connection.
+ *
+ * Delays are spent on the server's request threads, so the number of requests delayed at once
+ * is bounded by the size of the server's thread pool.
+ *
+ * Requests are received over HTTP/1.1, and optionally over HTTP/2 with prior knowledge (h2c) on
+ * the same port.
+ */
+public class IngestSimulator implements Closeable {
+
+    protected static final Logger log = LoggerFactory.getLogger(IngestSimulator.class);
+
+    public static final String DATAPOINT_PATH = "/v2/datapoint";
+    public static final String EVENT_PATH = "/v2/event";
+    public static final String BACKFILL_PATH = "/v1/backfill";
+
+    private static final String PROTOBUF_TYPE = "application/x-protobuf";
+
+    private final Server server;
+    private final ServerConnector connector;
+    private final FaultInjector faults = new FaultInjector();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder http2Requests = new LongAdder();
+    private final Set<String> clientConnections = ConcurrentHashMap.newKeySet();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder dataPoints = new LongAdder();
+    private final LongAdder events = new LongAdder();
+    private final LongAdder backfillPoints = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+    private final LongAdder decodeErrors = new LongAdder();
+    private final ConcurrentMap<Integer, LongAdder> responses =
+            new ConcurrentHashMap<Integer, LongAdder>();
+
+    /**
+     * Creates a simulator listening on an ephemeral port.
+     */
+    public IngestSimulator() {
+        this(0);
+    }
+
+    /**
+     * @param port
+     *            port to listen on, or 0 for an ephemeral port
+     */
+    public IngestSimulator(int port) {
+        this(port, false);
+    }
+
+    /**
+     * @param port
+     *            port to listen on, or 0 for an ephemeral port
+     * @param http2
+     *            whether requests are also received over HTTP/2 with prior knowledge
+     */
+    public IngestSimulator(int port, boolean http2) {
+        this.server = new Server();
+        HttpConfiguration config = new HttpConfiguration();
+        this.connector = http2
+                ? new ServerConnector(server, new HttpConnectionFactory(config),
+                        new HTTP2CServerConnectionFactory(config))
+                : new ServerConnector(server, new HttpConnectionFactory(config));
+        connector.setPort(port);
+        server.addConnector(connector);
+        server.setHandler(new IngestHandler());
+    }
+
+    /**
+     * @return fault injector deciding the latency and failures of requests, configurable at any
+     *         time
+     */
+    public FaultInjector getFaults() {
+        return faults;
+    }
+
+    /**
+     * Starts listening.
+     *
+     * @return this simulator
+     * @throws IOException
+     *             if the server fails to start
+     */
+    public IngestSimulator start() throws IOException {
+        try {
+            server.start();
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException("failed to start ingest simulator", ex);
+        }
+        return this;
+    }
+
+    /**
+     * @return port the simulator listens on
+     */
+    public int getPort() {
+        return connector.getLocalPort();
+    }
+
+    /**
+     * @return endpoint to point senders at
+     */
+    public SignalFxEndpoint getEndpoint() {
+        return new SignalFxEndpoint("http", "localhost", getPort());
+    }
+
+    /**
+     * @return number of requests received, including failed ones
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of requests received over HTTP/2
+     */
+    public long getHttp2RequestCount() {
+        return http2Requests.sum();
+    }
+
+    /**
+     * @return number of distinct client connections requests were received on
+     */
+    public int getConnectionCount() {
+        return clientConnections.size();
+    }
+
+    /**
+     * @return number of request body bytes received, as sent on the wire
+     */
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * @return number of datapoints accepted on {@value #DATAPOINT_PATH}
+     */
+    public long getDataPointCount() {
+        return dataPoints.sum();
+    }
+
+    /**
+     * @return number of events accepted on {@value #EVENT_PATH}
+     */
+    public long getEventCount() {
+        return events.sum();
+    }
+
+    /**
+     * @return number of point values accepted on {@value #BACKFILL_PATH}
+     */
+    public long getBackfillPointCount() {
+        return backfillPoints.sum();
+    }
+
+    /**
+     * @return number of connections reset
+     */
+    public long getResetCount() {
+        return resets.sum();
+    }
+
+    /**
+     * @return number of request bodies that could not be decoded
+     */
+    public long getDecodeErrorCount() {
+        return decodeErrors.sum();
+    }
+
+    /**
+     * @param status
+     *            HTTP status
+     * @return number of responses sent with that status
+     */
+    public long getResponseCount(int status) {
+        LongAdder count = responses.get(status);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * @return number of responses sent, by HTTP status
+     */
+    public Map<Integer, Long> getResponseCounts() {
+        Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, LongAdder> count : responses.entrySet()) {
+            counts.put(count.getKey(), count.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Resets all counters to zero.
+     */
+    public void resetCounters() {
+        requests.reset();
+        http2Requests.reset();
+        clientConnections.clear();
+        bytesReceived.reset();
+        dataPoints.reset();
+        events.reset();
+        backfillPoints.reset();
+        resets.reset();
+        decodeErrors.reset();
+        responses.clear();
+    }
+
+    /**
+     * Stops listening, closing all connections.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            server.stop();
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException("failed to stop ingest simulator", ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "requests=" + getRequestCount() + " http2=" + getHttp2RequestCount()
+                + " connections=" + getConnectionCount() + " bytes=" + getBytesReceived()
+                + " datapoints=" + getDataPointCount() + " events=" + getEventCount()
+                + " backfill=" + getBackfillPointCount() + " resets=" + getResetCount()
+                + " decodeErrors=" + getDecodeErrorCount() + " responses=" + getResponseCounts();
+    }
+
+    private void respond(HttpServletResponse response, Request baseRequest, int status,
+                         String body) throws IOException {
+        responses.computeIfAbsent(status, k -> new LongAdder()).increment();
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.getWriter().write(body);
+        baseRequest.setHandled(true);
+    }
+
+    private void reset(Request baseRequest) throws IOException {
+        resets.increment();
+        EndPoint endPoint = baseRequest.getHttpChannel().getEndPoint();
+        Object transport = endPoint.getTransport();
+        if (transport instanceof SocketChannel) {
+            // discard unsent data and send a RST rather than a FIN
+            ((SocketChannel) transport).socket().setSoLinger(true, 0);
+        }
+        endPoint.close();
+        baseRequest.setHandled(true);
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * @return number of datapoints, events or point values in the body
+     */
+    private static long decode(String path, InputStream in) throws IOException {
+        if (DATAPOINT_PATH.equals(path)) {
+            return SignalFxProtocolBuffers.DataPointUploadMessage.parseFrom(in)
+                    .getDatapointsCount();
+        }
+        if (EVENT_PATH.equals(path)) {
+            return SignalFxProtocolBuffers.EventUploadMessage.parseFrom(in).getEventsCount();
+        }
+        long count = 0;
+        while (SignalFxProtocolBuffers.PointValue.parseDelimitedFrom(in) != null) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Handler of ingest requests.
+     */
+    private final class IngestHandler extends AbstractHandler {
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+            String path = request.getPathInfo() == null ? target : request.getPathInfo();
+            if (!DATAPOINT_PATH.equals(path) && !EVENT_PATH.equals(path)
+                    && !BACKFILL_PATH.equals(path)) {
+                respond(response, baseRequest, HttpServletResponse.SC_NOT_FOUND,
+                        "\"Not found\"");
+                return;
+            }
+            if (!"POST".equals(request.getMethod())) {
+                respond(response, baseRequest, HttpServletResponse.SC_METHOD_NOT_ALLOWED,
+                        "\"Method not allowed\"");
+                return;
+            }
+            requests.increment();
+            if ("HTTP/2.0".equals(request.getProtocol())) {
+                http2Requests.increment();
+            }
+            clientConnections.add(request.getRemoteAddr() + ":" + request.getRemotePort());
+
+            int outcome = faults.nextOutcome();
+            long latencyMs = faults.nextLatencyMs();
+            if (latencyMs > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(latencyMs);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (outcome == FaultInjector.RESET) {
+                reset(baseRequest);
+                return;
+            }
+
+            byte[] body = readBody(request.getInputStream());
+            bytesReceived.add(body.length);
+            if (outcome != FaultInjector.OK) {
+                respond(response, baseRequest, outcome, "\"Injected failure\"");
+                return;
+            }
+
+            String contentType = request.getContentType();
+            if (contentType == null || !contentType.startsWith(PROTOBUF_TYPE)) {
+                decodeErrors.increment();
+                respond(response, baseRequest, HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+                        "\"Unsupported content type\"");
+                return;
+            }
+
+            long count;
+            try {
+                InputStream in = new ByteArrayInputStream(body);
+                String encoding = request.getHeader("Content-Encoding");
+                if ("gzip".equalsIgnoreCase(encoding)) {
+                    in = new GZIPInputStream(in);
+                } else if ("deflate".equalsIgnoreCase(encoding)) {
+                    in = new InflaterInputStream(in);
+                }
+                count = decode(path, in);
+            } catch (InvalidProtocolBufferException ex) {
+                decodeErrors.increment();
+                respond(response, baseRequest, HttpServletResponse.SC_BAD_REQUEST,
+                        "\"Invalid protocol buffer\"");
+                return;
+            } catch (IOException ex) {
+                decodeErrors.increment();
+                respond(response, baseRequest, HttpServletResponse.SC_BAD_REQUEST,
+                        "\"Invalid body\"");
+                return;
+            }
+
+            if (DATAPOINT_PATH.equals(path)) {
+                dataPoints.add(count);
+            } else if (EVENT_PATH.equals(path)) {
+                events.add(count);
+            } else {
+                backfillPoints.add(count);
+            }
+            respond(response, baseRequest, HttpServletResponse.SC_OK, "\"OK\"");
+        }
+    }
+
+    /**
+     * Runs a simulator until killed, logging its counters every 10 seconds.
+     *
+     * Arguments are, in order and all optional: port (default 8080), latency range in
+     * milliseconds as {@code min} or {@code min-max}, then failure rates as
+     * {@code status=rate}, where status is an HTTP status or {@code reset}. For example
+     * {@code 8080 20-200 503=0.05 429=0.01 reset=0.001}.
+     *
+     * @param args
+     *            command line arguments
+     * @throws Exception
+     *             if the simulator fails to start
+     */
+    public static void main(String[] args) throws Exception {
+        IngestSimulator simulator = new IngestSimulator(args.length > 0
+                ? Integer.parseInt(args[0]) : 8080);
+        if (args.length > 1) {
+            String[] latency = args[1].split("-");
+            long min = Long.parseLong(latency[0]);
+            simulator.getFaults().setLatencyMs(min,
+                    latency.length > 1 ? Long.parseLong(latency[1]) : min);
+        }
+        for (int i = 2; i < args.length; i++) {
+            String[] failure = args[i].split("=");
+            int status = "reset".equalsIgnoreCase(failure[0])
+                    ? FaultInjector.RESET : Integer.parseInt(failure[0]);
+            simulator.getFaults().setFailureRate(status, Double.parseDouble(failure[1]));
+        }
+
+        simulator.start();
+        log.info("Ingest simulator listening on port {}", simulator.getPort());
+        while (true) {
+            TimeUnit.SECONDS.sleep(10);
+            log.info("{}", simulator);
+        }
+    }
+}
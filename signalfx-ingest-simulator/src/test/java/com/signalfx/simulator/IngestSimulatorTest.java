@@ -0,0 +1,430 @@
+package com.signalfx.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.signalfx.connection.CircuitBreaker;
+import com.signalfx.connection.CircuitBreakerOpenException;
+import com.signalfx.connection.CompressionStrategy;
+import com.signalfx.connection.HedgingPolicy;
+import com.signalfx.connection.Http2Transport;
+import com.signalfx.connection.RateLimiter;
+import com.signalfx.connection.RetryBudget;
+import com.signalfx.connection.telemetry.TelemetryRecorder;
+import com.signalfx.endpoint.CompositeEndpoint;
+import com.signalfx.metrics.SignalFxMetricsException;
+import com.signalfx.metrics.connection.DataPointReceiver;
+import com.signalfx.metrics.connection.EventReceiver;
+import com.signalfx.metrics.connection.HttpDataPointProtobufReceiverFactory;
+import com.signalfx.metrics.connection.HttpEventProtobufReceiverFactory;
+import com.signalfx.metrics.protobuf.SignalFxProtocolBuffers;
+
+public class IngestSimulatorTest {
+
+    private static final String AUTH_TOKEN = "AUTH_TOKEN";
+
+    private IngestSimulator simulator;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new IngestSimulator().start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        simulator.close();
+    }
+
+    @Test
+    public void shouldCountDataPointsEventsAndBackfill() throws Exception {
+        DataPointReceiver dataPointReceiver = new HttpDataPointProtobufReceiverFactory(
+                simulator.getEndpoint()).createDataPointReceiver();
+        dataPointReceiver.addDataPoints(AUTH_TOKEN, dataPoints(250));
+        dataPointReceiver.backfillDataPoints(AUTH_TOKEN, "metric", "gauge", "org",
+                Collections.<String, String>emptyMap(), pointValues(7));
+
+        EventReceiver eventReceiver = new HttpEventProtobufReceiverFactory(
+                simulator.getEndpoint()).createEventReceiver();
+        eventReceiver.addEvents(AUTH_TOKEN, Collections.singletonList(
+                SignalFxProtocolBuffers.Event.newBuilder().setEventType("deploy").build()));
+
+        assertEquals(3, simulator.getRequestCount());
+        assertEquals(250, simulator.getDataPointCount());
+        assertEquals(7, simulator.getBackfillPointCount());
+        assertEquals(1, simulator.getEventCount());
+        assertEquals(3, simulator.getResponseCount(200));
+        assertEquals(0, simulator.getDecodeErrorCount());
+        assertTrue(simulator.getBytesReceived() > 0);
+    }
+
+    @Test
+    public void shouldDecodeConfiguredCompression() throws Exception {
+        new HttpDataPointProtobufReceiverFactory(simulator.getEndpoint())
+                .setCompression(CompressionStrategy.deflate(1))
+                .createDataPointReceiver()
+                .addDataPoints(AUTH_TOKEN, dataPoints(100));
+        new HttpDataPointProtobufReceiverFactory(simulator.getEndpoint())
+                .setCompression(CompressionStrategy.NONE)
+                .createDataPointReceiver()
+                .addDataPoints(AUTH_TOKEN, dataPoints(100));
+
+        assertEquals(200, simulator.getDataPointCount());
+        assertEquals(0, simulator.getDecodeErrorCount());
+    }
+
+    @Test
+    public void shouldCompressEventsWhenConfigured() throws Exception {
+        TelemetryRecorder recorder = new TelemetryRecorder();
+        new HttpEventProtobufReceiverFactory(simulator.getEndpoint())
+                .setCompression(CompressionStrategy.gzip(1))
+                .setTelemetry(recorder)
+                .createEventReceiver()
+                .addEvents(AUTH_TOKEN, Collections.singletonList(
+                        SignalFxProtocolBuffers.Event.newBuilder().setEventType("deploy").build()));
+
+        assertEquals(1, simulator.getEventCount());
+        assertEquals(0, simulator.getDecodeErrorCount());
+        assertEquals(Long.valueOf(1), recorder.snapshot().get("compress.latency.us.count"));
+    }
+
+    @Test
+    public void shouldRetryInjectedRetryableStatus() throws Exception {
+        simulator.getFaults().failNext(1, 598).failNext(1, 408);
+        DataPointReceiver receiver = new HttpDataPointProtobufReceiverFactory(
+                simulator.getEndpoint()).setMaxRetries(2).createDataPointReceiver();
+        receiver.addDataPoints(AUTH_TOKEN, dataPoints(10));
+
+        assertEquals(3, simulator.getRequestCount());
+        assertEquals(1, simulator.getResponseCount(598));
+        assertEquals(1, simulator.getResponseCount(408));
+        assertEquals(10, simulator.getDataPointCount());
+    }
+
+    @Test
+    public void shouldRecordTelemetryOfEachStage() throws Exception {
+        simulator.getFaults().failNext(1, 598);
+        TelemetryRecorder recorder = new TelemetryRecorder();
+        DataPointReceiver receiver = new HttpDataPointProtobufReceiverFactory(
+                simulator.getEndpoint()).setMaxRetries(1).setTelemetry(recorder)
+                .createDataPointReceiver();
+        receiver.addDataPoints(AUTH_TOKEN, dataPoints(100));
+
+        Map<String, Long> snapshot = recorder.snapshot();
+        assertEquals(Long.valueOf(1), snapshot.get("requests"));
+        assertEquals(Long.valueOf(0), snapshot.get("requests.errors"));
+        assertEquals(Long.valueOf(1), snapshot.get("retries"));
+        assertEquals(Long.valueOf(1), snapshot.get("serialize.latency.us.count"));
+        assertEquals(Long.valueOf(2), snapshot.get("compress.latency.us.count"));
+        assertEquals(2 * snapshot.get("serialize.bytes"),
+                snapshot.get("compress.bytes.in").longValue());
+        assertTrue(snapshot.get("compress.bytes.out") < snapshot.get("compress.bytes.in"));
+    }
+
+    @Test
+    public void shouldFailOnInjectedNonRetryableStatus() throws Exception {
+        simulator.getFaults().failNext(1, 503);
+        DataPointReceiver receiver = new HttpDataPointProtobufReceiverFactory(
+                simulator.getEndpoint()).createDataPointReceiver();
+        try {
+            receiver.addDataPoints(AUTH_TOKEN, dataPoints(10));
+            fail("expected the injected 503 to fail the request");
+        } catch (SignalFxMetricsException expected) {
+        }
+
+        assertEquals(1, simulator.getRequestCount());
+        assertEquals(1, simulator.getResponseCount(503));
+        assertEquals(0, simulator.getDataPointCount());
+    }
+
+    @Test
+    public void shouldRetryAfterConnectionReset() throws Exception {
+        simulator.getFaults().resetNext(1);
+        DataPointReceiver receiver = new HttpDataPointProtobufReceiverFactory(
+                simulator.getEndpoint()).setMaxRetries(1).createDataPointReceiver();
+        receiver.addDataPoints(AUTH_TOKEN, dataPoints(10));
+
+        assertEquals(1, simulator.getResetCount());
+        assertEquals(2, simulator.getRequestCount());
+        assertEquals(10, simulator.getDataPointCount());
+    }
+
+    @Test
+    public void shouldFailOverToHealthyTarget() throws Exception {
+        IngestSimulator healthy = new IngestSimulator().start();
+        try {
+            simulator.getFaults().setFailureRate(503, 1);
+            CompositeEndpoint endpoint = new CompositeEndpoint(simulator.getEndpoint(),
+                    healthy.getEndpoint()).setMaxFailures(1);
+            DataPointReceiver receiver = new HttpDataPointProtobufReceiverFactory(endpoint)
+                    .createDataPointReceiver();
+            for (int i = 0; i < 10; i++) {
+                receiver.addDataPoints(AUTH_TOKEN, dataPoints(10));
+            }
+
+            // at most one request reached the failing target before it was ejected
+            assertTrue(simulator.getResponseCount(503) <= 1);
+            assertFalse(endpoint.getTargets().get(0).isHealthy());
+            assertEquals(0, simulator.getDataPointCount());
+            assertEquals(10, healthy.getRequestCount());
+            assertEquals(100, healthy.getDataPointCount());
+        } finally {
+            healthy.close();
+        }
+    }
+
+    @Test
+    public void shouldHedgeSlowUpload() throws Exception {
+        HedgingPolicy hedging = new HedgingPolicy().setMinSamples(5).setBudgetRatio(0.5);
+        DataPointReceiver receiver = new HttpDataPointProtobufReceiverFactory(
+                simulator.getEndpoint()).setHedging(hedging).createDataPointReceiver();
+        for (int i = 0; i < 5; i++) {
+            receiver.addDataPoints(AUTH_TOKEN, dataPoints(10));
+        }
+        assertEquals(0, hedging.getHedgeCount());
+
+        simulator.getFaults().delayNext(1, 1500);
+        long start = System.nanoTime();
+        receiver.addDataPoints(AUTH_TOKEN, dataPoints(10));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+        assertEquals(1, hedging.getHedgeCount());
+        assertEquals(1, hedging.getHedgeWinCount());
+        assertEquals(7, simulator.getRequestCount());
+    }
+
+    @Test
+    public void shouldFailFastWhileCircuitIsOpen() throws Exception {
+        simulator.getFaults().failNext(3, 503);
+        CircuitBreaker breaker = new CircuitBreaker().setFailureThreshold(3).setOpenMs(200);
+        DataPointReceiver receiver = new HttpDataPointProtobufReceiverFactory(
+                simulator.getEndpoint()).setCircuitBreaker(breaker).createDataPointReceiver();
+        for (int i = 0; i < 5; i++) {
+            try {
+                receiver.addDataPoints(AUTH_TOKEN, dataPoints(10));
+                fail("expected the request to fail");
+            } catch (SignalFxMetricsException expected) {
+                if (i >= 3) {
+                    assertTrue(expected.getCause() instanceof CircuitBreakerOpenException);
+                }
+            }
+        }
+        assertEquals(3, simulator.getRequestCount());
+        assertEquals(2, breaker.getRejectedCount());
+        assertEquals(CircuitBreaker.State.OPEN,
+                breaker.getState(simulator.getEndpoint().toString()));
+
+        Thread.sleep(250);
+        receiver.addDataPoints(AUTH_TOKEN, dataPoints(10));
+        assertEquals(CircuitBreaker.State.CLOSED,
+                breaker.getState(simulator.getEndpoint().toString()));
+        assertEquals(10, simulator.getDataPointCount());
+    }
+
+    @Test
+    public void shouldStopRetryingOnceBudgetIsSpent() throws Exception {
+        simulator.getFaults().setFailureRate(598, 1);
+        TelemetryRecorder recorder = new TelemetryRecorder();
+        HttpDataPointProtobufReceiverFactory factory = new HttpDataPointProtobufReceiverFactory(
+                simulator.getEndpoint()).setMaxRetries(3)
+                .setRetryBudget(new RetryBudget(0.1, 0, 2)).setTelemetry(recorder);
+        for (int i = 0; i < 5; i++) {
+            try {
+                factory.createDataPointReceiver().addDataPoints(AUTH_TOKEN, dataPoints(10));
+                fail("expected the request to fail");
+            } catch (SignalFxMetricsException expected) {
+            }
+        }
+
+        // 5 requests, and only the 2 retries of the budget instead of 15
+        assertEquals(7, simulator.getRequestCount());
+        assertEquals(2, recorder.snapshot().get("retries").longValue());
+        assertEquals(5, recorder.snapshot().get("retries.denied").longValue());
+        assertEquals(5, factory.getRetryBudget().getDeniedCount());
+    }
+
+    @Test
+    public void shouldNotBudgetRetriesByDefault() throws Exception {
+        simulator.getFaults().setFailureRate(598, 1);
+        HttpDataPointProtobufReceiverFactory factory = new HttpDataPointProtobufReceiverFactory(
+                simulator.getEndpoint()).setMaxRetries(3);
+        assertNull(factory.getRetryBudget());
+        for (int i = 0; i < 5; i++) {
+            try {
+                factory.createDataPointReceiver().addDataPoints(AUTH_TOKEN, dataPoints(10));
+                fail("expected the request to fail");
+            } catch (SignalFxMetricsException expected) {
+            }
+        }
+
+        // every request gets all its retries
+        assertEquals(20, simulator.getRequestCount());
+    }
+
+    @Test
+    public void shouldPaceUploadsToRate() throws Exception {
+        RateLimiter limiter = new RateLimiter(10000, 0, 0.1);
+        TelemetryRecorder recorder = new TelemetryRecorder();
+        DataPointReceiver receiver = new HttpDataPointProtobufReceiverFactory(
+                simulator.getEndpoint()).setRateLimiter(limiter).setTelemetry(recorder)
+                .createDataPointReceiver();
+        // another token has its own rate
+        receiver.addDataPoints("OTHER_TOKEN", dataPoints(500));
+        assertEquals(0, limiter.getThrottledCount());
+
+        long start = System.nanoTime();
+        // a burst of 1000 datapoints, then 1500 more paced at 10000 per second
+        for (int i = 0; i < 5; i++) {
+            receiver.addDataPoints(AUTH_TOKEN, dataPoints(500));
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(3000, simulator.getDataPointCount());
+        assertTrue("took " + elapsedMs + "ms", elapsedMs >= 140);
+        assertTrue(limiter.getThrottledCount() >= 2);
+        assertEquals(limiter.getThrottledCount(),
+                recorder.snapshot().get("uploads.throttled").longValue());
+    }
+
+    @Test
+    public void shouldMultiplexUploadsOverHttp2() throws Exception {
+        simulator.close();
+        simulator = new IngestSimulator(0, true).start();
+        simulator.getFaults().failNext(1, 598);
+        Http2Transport transport = new Http2Transport().setCleartext(true);
+        final HttpDataPointProtobufReceiverFactory dataPointFactory =
+                new HttpDataPointProtobufReceiverFactory(simulator.getEndpoint())
+                        .setHttp2Transport(transport);
+        final HttpEventProtobufReceiverFactory eventFactory =
+                new HttpEventProtobufReceiverFactory(simulator.getEndpoint())
+                        .setHttp2Transport(transport);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            // retried after the injected failure
+            dataPointFactory.createDataPointReceiver().addDataPoints(AUTH_TOKEN, dataPoints(10));
+
+            simulator.getFaults().setLatencyMs(100, 100);
+            List<Future<Void>> uploads = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 8; i++) {
+                final boolean event = i % 2 == 0;
+                uploads.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        if (event) {
+                            eventFactory.createEventReceiver().addEvents(AUTH_TOKEN,
+                                    Collections.singletonList(SignalFxProtocolBuffers.Event
+                                            .newBuilder().setEventType("deploy").build()));
+                        } else {
+                            dataPointFactory.createDataPointReceiver()
+                                    .addDataPoints(AUTH_TOKEN, dataPoints(10));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> upload : uploads) {
+                upload.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            transport.close();
+        }
+
+        assertEquals(10, simulator.getRequestCount());
+        assertEquals(10, simulator.getHttp2RequestCount());
+        assertEquals(1, simulator.getConnectionCount());
+        assertEquals(50, simulator.getDataPointCount());
+        assertEquals(4, simulator.getEventCount());
+        assertEquals(0, transport.getFallbackCount());
+    }
+
+    @Test
+    public void shouldFallBackToHttp1() throws Exception {
+        Http2Transport transport = new Http2Transport().setCleartext(true);
+        HttpDataPointProtobufReceiverFactory factory = new HttpDataPointProtobufReceiverFactory(
+                simulator.getEndpoint()).setHttp2Transport(transport);
+        try {
+            factory.createDataPointReceiver().addDataPoints(AUTH_TOKEN, dataPoints(10));
+            factory.createDataPointReceiver().addDataPoints(AUTH_TOKEN, dataPoints(10));
+        } finally {
+            transport.close();
+        }
+
+        assertEquals(20, simulator.getDataPointCount());
+        assertEquals(0, simulator.getHttp2RequestCount());
+        assertEquals(1, transport.getFallbackCount());
+        assertFalse(transport.supports(new HttpHost("localhost", simulator.getPort(), "http")));
+    }
+
+    @Test
+    public void shouldDrawFaultsFromRates() {
+        FaultInjector faults = new FaultInjector().setSeed(42)
+                .setFailureRate(429, 0.25)
+                .setFailureRate(FaultInjector.RESET, 0.25)
+                .setLatencyMs(5, 10);
+        int ok = 0;
+        int throttled = 0;
+        int reset = 0;
+        for (int i = 0; i < 10000; i++) {
+            switch (faults.nextOutcome()) {
+            case FaultInjector.OK:
+                ok++;
+                break;
+            case 429:
+                throttled++;
+                break;
+            case FaultInjector.RESET:
+                reset++;
+                break;
+            default:
+                fail("unexpected outcome");
+            }
+            long latencyMs = faults.nextLatencyMs();
+            assertTrue(latencyMs >= 5 && latencyMs <= 10);
+        }
+        assertEquals(5000, ok, 300);
+        assertEquals(2500, throttled, 300);
+        assertEquals(2500, reset, 300);
+    }
+
+    private static List<SignalFxProtocolBuffers.DataPoint> dataPoints(int count) {
+        List<SignalFxProtocolBuffers.DataPoint> dataPoints =
+                new ArrayList<SignalFxProtocolBuffers.DataPoint>(count);
+        for (int i = 0; i < count; i++) {
+            dataPoints.add(SignalFxProtocolBuffers.DataPoint.newBuilder()
+                    .setMetric("metric")
+                    .setValue(SignalFxProtocolBuffers.Datum.newBuilder().setIntValue(i))
+                    .build());
+        }
+        return dataPoints;
+    }
+
+    private static List<SignalFxProtocolBuffers.PointValue> pointValues(int count) {
+        List<SignalFxProtocolBuffers.PointValue> values =
+                new ArrayList<SignalFxProtocolBuffers.PointValue>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(SignalFxProtocolBuffers.PointValue.newBuilder()
+                    .setTimestamp(i)
+                    .setValue(SignalFxProtocolBuffers.Datum.newBuilder().setDoubleValue(i))
+                    .build());
+        }
+        return values;
+    }
+}
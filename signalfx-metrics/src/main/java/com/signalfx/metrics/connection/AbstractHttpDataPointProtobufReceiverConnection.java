@@ -2,6 +2,8 @@ package com.signalfx.metrics.connection;
 
 import com.signalfx.common.proto.ProtocolBufferStreamingInputStream;
 import com.signalfx.connection.AbstractHttpReceiverConnection;
+import com.signalfx.connection.HedgingPolicy;
+import com.signalfx.connection.RateLimiter;
 import com.signalfx.endpoint.SignalFxReceiverEndpoint;
 import com.signalfx.metrics.SignalFxMetricsException;
 import com.signalfx.metrics.protobuf.SignalFxProtocolBuffers;
@@ -17,6 +19,7 @@ import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +32,8 @@ public abstract class AbstractHttpDataPointProtobufReceiverConnection extends Ab
     protected static final ContentType PROTO_TYPE = ContentType.create("application/x-protobuf");
 
     private final boolean compress;
+    private volatile HedgingPolicy hedging;
+    private volatile RateLimiter rateLimiter;
 
     public AbstractHttpDataPointProtobufReceiverConnection(SignalFxReceiverEndpoint endpoint,
                                                            int timeoutMs,
@@ -52,6 +57,58 @@ public abstract class AbstractHttpDataPointProtobufReceiverConnection extends Ab
         this.compress = !Boolean.getBoolean(DISABLE_COMPRESSION_PROPERTY);
     }
 
+    /**
+     * @return when datapoint uploads are hedged, or null if they are not
+     */
+    public HedgingPolicy getHedging() {
+        return hedging;
+    }
+
+    /**
+     * @param hedging
+     *            when datapoint uploads are sent a second time because they are slow to complete,
+     *            or null not to hedge them, the default; backfills are never hedged
+     */
+    public void setHedging(HedgingPolicy hedging) {
+        this.hedging = hedging;
+    }
+
+    /**
+     * @return limiter pacing datapoint uploads and backfills, or null if they are not paced
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @param rateLimiter
+     *            limiter pacing datapoint uploads and backfills to a rate per access token, or null
+     *            not to pace them, the default
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Waits until the rate limiter, if any, lets the upload through.
+     */
+    private void pace(String auth, int dataPoints, long bytes) throws IOException {
+        RateLimiter rateLimiter = this.rateLimiter;
+        if (rateLimiter == null) {
+            return;
+        }
+        long waitNanos;
+        try {
+            waitNanos = rateLimiter.acquire(auth, dataPoints, bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while pacing datapoints");
+        }
+        if (waitNanos > 0) {
+            getTelemetry().uploadThrottled(dataPoints, bytes, waitNanos);
+        }
+    }
+
     @Override
     public void addDataPoints(String auth, List<SignalFxProtocolBuffers.DataPoint> dataPoints)
             throws SignalFxMetricsException {
@@ -61,10 +118,16 @@ public abstract class AbstractHttpDataPointProtobufReceiverConnection extends Ab
         try {
             CloseableHttpResponse resp = null;
             try {
+                long start = System.nanoTime();
+                HttpEntity body = getEntityForVersion(dataPoints);
+                getTelemetry().payloadSerialized(dataPoints.size(), body.getContentLength(),
+                        System.nanoTime() - start);
+                pace(auth, dataPoints.size(), body.getContentLength());
                 resp = postToEndpoint(auth,
-                        getEntityForVersion(dataPoints),
+                        body,
                         getEndpointForAddDatapoints(),
-                        compress);
+                        compress,
+                        hedging);
 
                 int code = resp.getStatusLine().getStatusCode();
                 // SignalFx may respond with various 2xx return codes for success.
@@ -112,6 +175,7 @@ public abstract class AbstractHttpDataPointProtobufReceiverConnection extends Ab
         try {
             CloseableHttpResponse resp = null;
             try {
+                pace(auth, datumPoints.size(), -1);
                 resp = postToEndpoint(auth,
                         new InputStreamEntity(
                                 new ProtocolBufferStreamingInputStream<SignalFxProtocolBuffers.PointValue>(
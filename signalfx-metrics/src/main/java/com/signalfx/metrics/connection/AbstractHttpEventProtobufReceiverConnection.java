@@ -9,6 +9,7 @@ import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.entity.ContentType;
 
 import com.signalfx.connection.AbstractHttpReceiverConnection;
+import com.signalfx.connection.CompressionStrategy;
 import com.signalfx.endpoint.SignalFxReceiverEndpoint;
 import com.signalfx.metrics.SignalFxMetricsException;
 import com.signalfx.metrics.protobuf.SignalFxProtocolBuffers;
@@ -17,16 +18,21 @@ public abstract class AbstractHttpEventProtobufReceiverConnection extends Abstra
 
     protected static final ContentType PROTO_TYPE = ContentType.create("application/x-protobuf");
 
+    private final boolean compress = !Boolean.getBoolean(DISABLE_COMPRESSION_PROPERTY);
+
     public AbstractHttpEventProtobufReceiverConnection(
             SignalFxReceiverEndpoint endpoint,
             int timeoutMs, HttpClientConnectionManager httpClientConnectionManager) {
         super(endpoint, timeoutMs, httpClientConnectionManager);
+        // events are sent uncompressed unless a strategy is set
+        setCompression(CompressionStrategy.NONE);
     }
 
     public AbstractHttpEventProtobufReceiverConnection(
             SignalFxReceiverEndpoint endpoint,
             int timeoutMs, int maxRetries, HttpClientConnectionManager httpClientConnectionManager) {
         super(endpoint, timeoutMs, maxRetries, httpClientConnectionManager);
+        setCompression(CompressionStrategy.NONE);
     }
 
     @Override
@@ -41,7 +47,7 @@ public abstract class AbstractHttpEventProtobufReceiverConnection extends Abstra
                 resp = postToEndpoint(auth,
                         getEntityForVersion(events),
                         getEndpointForAddEvents(),
-                        false);
+                        compress);
                 checkHttpResponse(resp);
             } finally {
                 if (resp != null) {
@@ -0,0 +1,139 @@
+package com.signalfx.metrics.connection;
+
+/**
+ * Sizing and connection lifetime settings of the connection pools created by
+ * {@link HttpClientConnectionManagerFactory}.
+ *
+ * Connections to SignalFx are closed by the server, or by load balancers in front of it, after
+ * some idle time, without the client noticing until it sends a request on them. The pool
+ * therefore validates connections that have been idle for a while before reusing them, and closes
+ * connections idle for longer than {@link #getMaxIdleMs()} in the background, so that requests
+ * neither fail on nor retry over stale connections.
+ *
+ * Settings are copied when a pool is created: changing a config does not affect pools already
+ * created from it.
+ */
+public class ConnectionPoolConfig {
+
+    public static final int DEFAULT_MAX_TOTAL = 20;
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+    public static final long DEFAULT_TIME_TO_LIVE_MS = -1;
+    public static final int DEFAULT_VALIDATE_AFTER_INACTIVITY_MS = 1000;
+    public static final long DEFAULT_MAX_IDLE_MS = 30000;
+    public static final int DEFAULT_WARM_UP_CONNECTIONS = 0;
+
+    private int maxTotal = DEFAULT_MAX_TOTAL;
+    private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+    private long timeToLiveMs = DEFAULT_TIME_TO_LIVE_MS;
+    private int validateAfterInactivityMs = DEFAULT_VALIDATE_AFTER_INACTIVITY_MS;
+    private long maxIdleMs = DEFAULT_MAX_IDLE_MS;
+    private int warmUpConnections = DEFAULT_WARM_UP_CONNECTIONS;
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    /**
+     * @param maxTotal
+     *            maximum number of connections in the pool, leased or not
+     * @return this config
+     */
+    public ConnectionPoolConfig setMaxTotal(int maxTotal) {
+        if (maxTotal <= 0) {
+            throw new IllegalArgumentException("maxTotal must be positive");
+        }
+        this.maxTotal = maxTotal;
+        return this;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    /**
+     * @param maxPerRoute
+     *            maximum number of connections to a single endpoint, i.e. of requests sent to it
+     *            in parallel
+     * @return this config
+     */
+    public ConnectionPoolConfig setMaxPerRoute(int maxPerRoute) {
+        if (maxPerRoute <= 0) {
+            throw new IllegalArgumentException("maxPerRoute must be positive");
+        }
+        this.maxPerRoute = maxPerRoute;
+        return this;
+    }
+
+    public long getTimeToLiveMs() {
+        return timeToLiveMs;
+    }
+
+    /**
+     * @param timeToLiveMs
+     *            time after which connections are closed instead of being reused, whatever their
+     *            activity, or -1 for no limit; useful to spread load when the endpoint resolves
+     *            to several addresses
+     * @return this config
+     */
+    public ConnectionPoolConfig setTimeToLiveMs(long timeToLiveMs) {
+        this.timeToLiveMs = timeToLiveMs;
+        return this;
+    }
+
+    public int getValidateAfterInactivityMs() {
+        return validateAfterInactivityMs;
+    }
+
+    /**
+     * @param validateAfterInactivityMs
+     *            idle time after which connections are checked to still be open before being
+     *            reused, or -1 never to check them
+     * @return this config
+     */
+    public ConnectionPoolConfig setValidateAfterInactivityMs(int validateAfterInactivityMs) {
+        this.validateAfterInactivityMs = validateAfterInactivityMs;
+        return this;
+    }
+
+    public long getMaxIdleMs() {
+        return maxIdleMs;
+    }
+
+    /**
+     * @param maxIdleMs
+     *            idle time after which connections are closed in the background, or -1 to keep
+     *            them open; should be shorter than the idle timeout of the server
+     * @return this config
+     */
+    public ConnectionPoolConfig setMaxIdleMs(long maxIdleMs) {
+        this.maxIdleMs = maxIdleMs;
+        return this;
+    }
+
+    public int getWarmUpConnections() {
+        return warmUpConnections;
+    }
+
+    /**
+     * @param warmUpConnections
+     *            number of connections to open to the endpoint as soon as the pool is created,
+     *            and to open again whenever idle eviction closed them, so that flushes do not pay
+     *            for DNS, TCP and TLS handshakes; none by default
+     * @return this config
+     */
+    public ConnectionPoolConfig setWarmUpConnections(int warmUpConnections) {
+        if (warmUpConnections < 0) {
+            throw new IllegalArgumentException("warmUpConnections must not be negative");
+        }
+        this.warmUpConnections = warmUpConnections;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolConfig{maxTotal=" + maxTotal + ", maxPerRoute=" + maxPerRoute
+                + ", timeToLiveMs=" + timeToLiveMs + ", validateAfterInactivityMs="
+                + validateAfterInactivityMs + ", maxIdleMs=" + maxIdleMs + ", warmUpConnections="
+                + warmUpConnections + "}";
+    }
+}
@@ -1,17 +1,30 @@
 package com.signalfx.metrics.connection;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLSocket;
 
+import org.apache.http.HttpHost;
+
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.config.SocketConfig;
 import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
-import org.apache.http.ssl.SSLContexts;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+
+import com.signalfx.connection.AbstractHttpReceiverConnection;
+import com.signalfx.connection.SharedSSLContext;
+import com.signalfx.endpoint.CompositeEndpoint;
+import com.signalfx.endpoint.SignalFxReceiverEndpoint;
 
 public class HttpClientConnectionManagerFactory {
 
@@ -20,18 +33,118 @@ public class HttpClientConnectionManagerFactory {
   }
 
   public static HttpClientConnectionManager withTimeoutMs(int timeoutMs) {
+    return withTimeoutMs(timeoutMs, new ConnectionPoolConfig());
+  }
+
+  /**
+   * @param timeoutMs
+   *          socket timeout of the connections
+   * @param config
+   *          size and connection lifetime settings of the pool
+   * @return a new connection pool, whose expired and idle connections are closed in the
+   *         background
+   */
+  public static PoolingHttpClientConnectionManager withTimeoutMs(int timeoutMs,
+                                                                 ConnectionPoolConfig config) {
+    return withTimeoutMs(timeoutMs, config, null);
+  }
+
+  /**
+   * @param timeoutMs
+   *          socket and connect timeout of the connections
+   * @param config
+   *          size and connection lifetime settings of the pool
+   * @param endpoint
+   *          endpoint to open the warm-up connections of the config to, or null not to open any;
+   *          each target of a {@link CompositeEndpoint} is warmed up, except those reached
+   *          through a proxy
+   * @return a new connection pool, whose expired and idle connections are closed in the
+   *         background, and whose warm-up connections are opened in the background
+   */
+  public static PoolingHttpClientConnectionManager withTimeoutMs(int timeoutMs,
+                                                                 ConnectionPoolConfig config,
+                                                                 SignalFxReceiverEndpoint endpoint) {
     PoolingHttpClientConnectionManager httpClientConnectionManager = new PoolingHttpClientConnectionManager(
         RegistryBuilder.<ConnectionSocketFactory>create()
             .register("http", PlainConnectionSocketFactory.getSocketFactory())
             .register("https", new SSLConnectionSocketFactoryWithTimeout(timeoutMs))
-            .build());
+            .build(),
+        null, null, null, config.getTimeToLiveMs(), TimeUnit.MILLISECONDS);
 
     httpClientConnectionManager.setDefaultSocketConfig(
         SocketConfig.custom().setSoTimeout(timeoutMs).build());
+    httpClientConnectionManager.setMaxTotal(config.getMaxTotal());
+    httpClientConnectionManager.setDefaultMaxPerRoute(config.getMaxPerRoute());
+    httpClientConnectionManager.setValidateAfterInactivity(config.getValidateAfterInactivityMs());
 
+    List<HttpRoute> warmRoutes = Collections.emptyList();
+    if (endpoint != null && config.getWarmUpConnections() > 0) {
+      warmRoutes = warmRoutes(endpoint);
+    }
+    if (config.getTimeToLiveMs() > 0 || config.getMaxIdleMs() >= 0 || !warmRoutes.isEmpty()) {
+      IdleConnectionEvictor.register(httpClientConnectionManager, config.getMaxIdleMs(),
+          warmRoutes, config.getWarmUpConnections(), timeoutMs);
+    }
     return httpClientConnectionManager;
   }
 
+  /**
+   * Releases a pool created by this factory once it is replaced by another one: it is shut down
+   * and no longer evicted, or, if it is still used by some receivers, its warm-up connections are
+   * no longer opened, and it is left to be collected with them.
+   *
+   * @param httpClientConnectionManager
+   *          replaced pool
+   * @param inUse
+   *          whether receivers were created with the pool
+   */
+  static void release(HttpClientConnectionManager httpClientConnectionManager, boolean inUse) {
+    if (!(httpClientConnectionManager instanceof PoolingHttpClientConnectionManager)) {
+      return;
+    }
+    PoolingHttpClientConnectionManager pool =
+        (PoolingHttpClientConnectionManager) httpClientConnectionManager;
+    if (inUse) {
+      IdleConnectionEvictor.stopWarmUp(pool);
+    } else {
+      IdleConnectionEvictor.deregister(pool);
+      pool.shutdown();
+    }
+  }
+
+  private static List<HttpRoute> warmRoutes(SignalFxReceiverEndpoint endpoint) {
+    List<SignalFxReceiverEndpoint> targets = new ArrayList<SignalFxReceiverEndpoint>();
+    if (endpoint instanceof CompositeEndpoint) {
+      for (CompositeEndpoint.Target target : ((CompositeEndpoint) endpoint).getTargets()) {
+        targets.add(target.getEndpoint());
+      }
+    } else {
+      targets.add(endpoint);
+    }
+    List<HttpRoute> routes = new ArrayList<HttpRoute>(targets.size());
+    for (SignalFxReceiverEndpoint target : targets) {
+      if (AbstractHttpReceiverConnection.proxyFromSystemProperties(target.getHostname()) == null) {
+        routes.add(new HttpRoute(
+            new HttpHost(target.getHostname(), target.getPort(), target.getScheme()),
+            null, "https".equalsIgnoreCase(target.getScheme())));
+      }
+    }
+    return routes;
+  }
+
+  /**
+   * @param httpClientConnectionManager
+   *          connection manager
+   * @return leased, available and pending connections of the manager, or null if it is not a
+   *         pool
+   */
+  public static PoolStats getPoolStats(HttpClientConnectionManager httpClientConnectionManager) {
+    if (httpClientConnectionManager instanceof ConnPoolControl) {
+      return ((ConnPoolControl<?>) httpClientConnectionManager).getTotalStats();
+    }
+    return null;
+  }
+
   /**
    * Uses STRICT_HOSTNAME_VERIFIER and sets a socket timeout before attempting the SSL handshake
    */
@@ -39,7 +152,7 @@ public class HttpClientConnectionManagerFactory {
     private final int timeoutMs;
 
     public SSLConnectionSocketFactoryWithTimeout(int timeoutMs) {
-      super(SSLContexts.createDefault(), SSLConnectionSocketFactory.STRICT_HOSTNAME_VERIFIER);
+      super(SharedSSLContext.get(), SSLConnectionSocketFactory.STRICT_HOSTNAME_VERIFIER);
       this.timeoutMs = timeoutMs;
     }
 
@@ -1,7 +1,15 @@
 package com.signalfx.metrics.connection;
 
 import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 
+import com.signalfx.connection.CircuitBreaker;
+import com.signalfx.connection.Http2Transport;
+import com.signalfx.connection.CompressionStrategy;
+import com.signalfx.connection.HedgingPolicy;
+import com.signalfx.connection.RateLimiter;
+import com.signalfx.connection.RetryBudget;
+import com.signalfx.connection.telemetry.SenderTelemetry;
 import com.signalfx.endpoint.SignalFxReceiverEndpoint;
 import com.signalfx.metrics.SignalFxMetricsException;
 
@@ -20,23 +28,68 @@ public class HttpDataPointProtobufReceiverFactory implements DataPointReceiverFa
     private HttpClientConnectionManager httpClientConnectionManager;
     private HttpClientConnectionManager explicitHttpClientConnectionManager;
     private int timeoutMs = DEFAULT_TIMEOUT_MS;
+    private ConnectionPoolConfig connectionPool = new ConnectionPoolConfig();
+    // whether receivers were created with the pool of this factory
+    private boolean poolInUse;
     private int maxRetries = DEFAULT_MAX_RETRIES;
     private List<Class<? extends IOException>> nonRetryableExceptions = DEFAULT_NON_RETRYABLE_EXCEPTIONS;
+    private CompressionStrategy compression = CompressionStrategy.DEFAULT;
+    private SenderTelemetry telemetry = SenderTelemetry.NOOP;
+    private CircuitBreaker circuitBreaker;
+    private RetryBudget retryBudget;
+    private Http2Transport http2Transport;
+    private HedgingPolicy hedging;
+    private RateLimiter rateLimiter;
 
     public HttpDataPointProtobufReceiverFactory(SignalFxReceiverEndpoint endpoint) {
         this.endpoint = endpoint;
         this.httpClientConnectionManager =
-            HttpClientConnectionManagerFactory.withTimeoutMs(DEFAULT_TIMEOUT_MS);
+            HttpClientConnectionManagerFactory.withTimeoutMs(DEFAULT_TIMEOUT_MS, connectionPool, endpoint);
         this.explicitHttpClientConnectionManager = null;
     }
 
+    /**
+     * @param timeoutMs
+     *            socket and connect timeout of the receivers created by this factory; replaces the
+     *            connection pool of this factory, shutting the replaced pool down unless receivers
+     *            were already created with it
+     * @return this factory
+     */
     public HttpDataPointProtobufReceiverFactory setTimeoutMs(int timeoutMs) {
         this.timeoutMs = timeoutMs;
-        this.httpClientConnectionManager =
-            HttpClientConnectionManagerFactory.withTimeoutMs(timeoutMs);
+        replaceHttpClientConnectionManager();
         return this;
     }
 
+    /**
+     * @param connectionPool
+     *            size and connection lifetime settings of the connection pool of this factory;
+     *            replaces the pool, shutting the replaced pool down unless receivers were already
+     *            created with it
+     * @return this factory
+     */
+    public HttpDataPointProtobufReceiverFactory setConnectionPool(ConnectionPoolConfig connectionPool) {
+        this.connectionPool = connectionPool;
+        replaceHttpClientConnectionManager();
+        return this;
+    }
+
+    private void replaceHttpClientConnectionManager() {
+        HttpClientConnectionManager replaced = this.httpClientConnectionManager;
+        this.httpClientConnectionManager =
+            HttpClientConnectionManagerFactory.withTimeoutMs(timeoutMs, connectionPool, endpoint);
+        HttpClientConnectionManagerFactory.release(replaced, poolInUse);
+        this.poolInUse = false;
+    }
+
+    /**
+     * @return leased, available and pending connections of the connection pool of this factory,
+     *         or null if the connection manager set explicitly is not a pool
+     */
+    public PoolStats getPoolStats() {
+        return HttpClientConnectionManagerFactory.getPoolStats(resolveHttpClientConnectionManager());
+    }
+
     @Deprecated
     public HttpDataPointProtobufReceiverFactory setVersion(int version) {
         return this;
@@ -52,6 +105,103 @@ public class HttpDataPointProtobufReceiverFactory implements DataPointReceiverFa
         return this;
     }
 
+    /**
+     * @param compression
+     *            how datapoint payloads sent to this endpoint are compressed, e.g.
+     *            {@code CompressionStrategy.gzip(1).withMinSizeBytes(1024)}, or null or
+     *            {@link CompressionStrategy#NONE} not to compress them; defaults to
+     *            {@link CompressionStrategy#DEFAULT}; ignored when
+     *            compression is disabled with
+     *            {@link com.signalfx.connection.AbstractHttpReceiverConnection#DISABLE_COMPRESSION_PROPERTY}
+     * @return this factory
+     */
+    public HttpDataPointProtobufReceiverFactory setCompression(CompressionStrategy compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * @param telemetry
+     *            told about serialization, compression, requests and retries of the receivers
+     *            created by this factory
+     * @return this factory
+     */
+    public HttpDataPointProtobufReceiverFactory setTelemetry(SenderTelemetry telemetry) {
+        this.telemetry = telemetry;
+        return this;
+    }
+
+    /**
+     * @param hedging
+     *            when datapoint uploads of the receivers created by this factory are sent a second
+     *            time because they are slow to complete, or null not to hedge them, the default;
+     *            the receivers share the latency observations and budget of the policy
+     * @return this factory
+     */
+    public HttpDataPointProtobufReceiverFactory setHedging(HedgingPolicy hedging) {
+        this.hedging = hedging;
+        return this;
+    }
+
+    /**
+     * @param rateLimiter
+     *            limiter pacing the datapoint uploads and backfills of the receivers created by
+     *            this factory to a rate per access token, e.g. the ingest quota of the
+     *            organization, or null not to pace them, the default
+     * @return this factory
+     */
+    public HttpDataPointProtobufReceiverFactory setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * @param circuitBreaker
+     *            breaker failing the requests of the receivers created by this factory fast when
+     *            their endpoint keeps failing, or null not to, the default; share a breaker with
+     *            the other factories sending to the same endpoint so that they open together
+     * @return this factory
+     */
+    public HttpDataPointProtobufReceiverFactory setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    /**
+     * @param retryBudget
+     *            budget limiting the retries of the receivers created by this factory, or null
+     *            not to limit them beyond the maximum number of retries of each request, the
+     *            default; share a budget with the other factories sending to the same endpoint
+     *            so that it reflects the overall health of the endpoint
+     * @return this factory
+     */
+    public HttpDataPointProtobufReceiverFactory setRetryBudget(RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+        return this;
+    }
+
+    /**
+     * @return budget limiting the retries of the receivers created by this factory, or null if
+     *         they are not limited
+     */
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * @param http2Transport
+     *            transport sending the requests of the receivers created by this factory over
+     *            HTTP/2, multiplexed on a single connection per endpoint, or null to send them over
+     *            HTTP/1.1 with the connection pool of this factory, the default; share a transport
+     *            with the other factories sending to the same endpoint so that their uploads share
+     *            its connection, and close it once no longer used
+     * @return this factory
+     */
+    public HttpDataPointProtobufReceiverFactory setHttp2Transport(Http2Transport http2Transport) {
+        this.http2Transport = http2Transport;
+        return this;
+    }
+
     public void setHttpClientConnectionManager(
             HttpClientConnectionManager httpClientConnectionManager) {
         this.explicitHttpClientConnectionManager = httpClientConnectionManager;
@@ -60,12 +210,29 @@ public class HttpDataPointProtobufReceiverFactory implements DataPointReceiverFa
     @Override
     public DataPointReceiver createDataPointReceiver() throws
             SignalFxMetricsException {
-        return new HttpDataPointProtobufReceiverConnectionV2(
-                endpoint,
-                this.timeoutMs,
-                this.maxRetries,
-                resolveHttpClientConnectionManager(),
-                this.nonRetryableExceptions);
+        HttpDataPointProtobufReceiverConnectionV2 connection =
+                new HttpDataPointProtobufReceiverConnectionV2(
+                        endpoint,
+                        this.timeoutMs,
+                        this.maxRetries,
+                        useHttpClientConnectionManager(),
+                        this.nonRetryableExceptions);
+        connection.setCompression(compression);
+        connection.setTelemetry(telemetry);
+        connection.setHedging(hedging);
+        connection.setRateLimiter(rateLimiter);
+        connection.setCircuitBreaker(circuitBreaker);
+        connection.setRetryBudget(retryBudget);
+        connection.setHttp2Transport(http2Transport);
+        return connection;
+    }
+
+    private HttpClientConnectionManager useHttpClientConnectionManager() {
+        HttpClientConnectionManager manager = resolveHttpClientConnectionManager();
+        if (manager == httpClientConnectionManager) {
+            poolInUse = true;
+        }
+        return manager;
     }
 
     private HttpClientConnectionManager resolveHttpClientConnectionManager() {
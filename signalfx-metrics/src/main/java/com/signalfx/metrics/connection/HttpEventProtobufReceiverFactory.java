@@ -1,7 +1,13 @@
 package com.signalfx.metrics.connection;
 
 import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 
+import com.signalfx.connection.CircuitBreaker;
+import com.signalfx.connection.CompressionStrategy;
+import com.signalfx.connection.Http2Transport;
+import com.signalfx.connection.RetryBudget;
+import com.signalfx.connection.telemetry.SenderTelemetry;
 import com.signalfx.endpoint.SignalFxReceiverEndpoint;
 import com.signalfx.metrics.SignalFxMetricsException;
 
@@ -14,23 +20,66 @@ public class HttpEventProtobufReceiverFactory implements EventReceiverFactory {
     private HttpClientConnectionManager httpClientConnectionManager;
     private HttpClientConnectionManager explicitHttpClientConnectionManager;
     private int timeoutMs = DEFAULT_TIMEOUT_MS;
+    private ConnectionPoolConfig connectionPool = new ConnectionPoolConfig();
+    // whether receivers were created with the pool of this factory
+    private boolean poolInUse;
     private int version = DEFAULT_VERSION;
     private int maxRetries = DEFAULT_MAX_RETRIES;
+    private CompressionStrategy compression = CompressionStrategy.NONE;
+    private SenderTelemetry telemetry = SenderTelemetry.NOOP;
+    private CircuitBreaker circuitBreaker;
+    private RetryBudget retryBudget;
+    private Http2Transport http2Transport;
 
     public HttpEventProtobufReceiverFactory(SignalFxReceiverEndpoint endpoint) {
         this.endpoint = endpoint;
         this.httpClientConnectionManager =
-            HttpClientConnectionManagerFactory.withTimeoutMs(DEFAULT_TIMEOUT_MS);
+            HttpClientConnectionManagerFactory.withTimeoutMs(DEFAULT_TIMEOUT_MS, connectionPool, endpoint);
         this.explicitHttpClientConnectionManager = null;
     }
 
+    /**
+     * @param timeoutMs
+     *            socket and connect timeout of the receivers created by this factory; replaces the
+     *            connection pool of this factory, shutting the replaced pool down unless receivers
+     *            were already created with it
+     * @return this factory
+     */
     public HttpEventProtobufReceiverFactory setTimeoutMs(int timeoutMs) {
         this.timeoutMs = timeoutMs;
-        this.httpClientConnectionManager =
-            HttpClientConnectionManagerFactory.withTimeoutMs(timeoutMs);
+        replaceHttpClientConnectionManager();
+        return this;
+    }
+
+    /**
+     * @param connectionPool
+     *            size and connection lifetime settings of the connection pool of this factory;
+     *            replaces the pool, shutting the replaced pool down unless receivers were already
+     *            created with it
+     * @return this factory
+     */
+    public HttpEventProtobufReceiverFactory setConnectionPool(ConnectionPoolConfig connectionPool) {
+        this.connectionPool = connectionPool;
+        replaceHttpClientConnectionManager();
         return this;
     }
 
+    private void replaceHttpClientConnectionManager() {
+        HttpClientConnectionManager replaced = this.httpClientConnectionManager;
+        this.httpClientConnectionManager =
+            HttpClientConnectionManagerFactory.withTimeoutMs(timeoutMs, connectionPool, endpoint);
+        HttpClientConnectionManagerFactory.release(replaced, poolInUse);
+        this.poolInUse = false;
+    }
+
+    /**
+     * @return leased, available and pending connections of the connection pool of this factory,
+     *         or null if the connection manager set explicitly is not a pool
+     */
+    public PoolStats getPoolStats() {
+        return HttpClientConnectionManagerFactory.getPoolStats(resolveHttpClientConnectionManager());
+    }
+
     public HttpEventProtobufReceiverFactory setVersion(int version) {
         this.version = version;
         return this;
@@ -41,6 +90,77 @@ public class HttpEventProtobufReceiverFactory implements EventReceiverFactory {
         return this;
     }
 
+    /**
+     * @param compression
+     *            how event payloads sent to this endpoint are compressed, e.g.
+     *            {@code CompressionStrategy.gzip(1).withMinSizeBytes(1024)}, or null or
+     *            {@link CompressionStrategy#NONE} not to compress them, the default; ignored when
+     *            compression is disabled with
+     *            {@link com.signalfx.connection.AbstractHttpReceiverConnection#DISABLE_COMPRESSION_PROPERTY}
+     * @return this factory
+     */
+    public HttpEventProtobufReceiverFactory setCompression(CompressionStrategy compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * @param telemetry
+     *            told about the requests and retries of the receivers created by this factory
+     * @return this factory
+     */
+    public HttpEventProtobufReceiverFactory setTelemetry(SenderTelemetry telemetry) {
+        this.telemetry = telemetry;
+        return this;
+    }
+
+    /**
+     * @param circuitBreaker
+     *            breaker failing the requests of the receivers created by this factory fast when
+     *            their endpoint keeps failing, or null not to, the default; share a breaker with
+     *            the other factories sending to the same endpoint so that they open together
+     * @return this factory
+     */
+    public HttpEventProtobufReceiverFactory setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    /**
+     * @param retryBudget
+     *            budget limiting the retries of the receivers created by this factory, or null
+     *            not to limit them beyond the maximum number of retries of each request, the
+     *            default; share a budget with the other factories sending to the same endpoint
+     *            so that it reflects the overall health of the endpoint
+     * @return this factory
+     */
+    public HttpEventProtobufReceiverFactory setRetryBudget(RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+        return this;
+    }
+
+    /**
+     * @return budget limiting the retries of the receivers created by this factory, or null if
+     *         they are not limited
+     */
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * @param http2Transport
+     *            transport sending the requests of the receivers created by this factory over
+     *            HTTP/2, multiplexed on a single connection per endpoint, or null to send them over
+     *            HTTP/1.1 with the connection pool of this factory, the default; share a transport
+     *            with the other factories sending to the same endpoint so that their uploads share
+     *            its connection, and close it once no longer used
+     * @return this factory
+     */
+    public HttpEventProtobufReceiverFactory setHttp2Transport(Http2Transport http2Transport) {
+        this.http2Transport = http2Transport;
+        return this;
+    }
+
     public void setHttpClientConnectionManager(
             HttpClientConnectionManager httpClientConnectionManager) {
         this.explicitHttpClientConnectionManager = httpClientConnectionManager;
@@ -50,16 +170,31 @@ public class HttpEventProtobufReceiverFactory implements EventReceiverFactory {
     public EventReceiver createEventReceiver() throws
             SignalFxMetricsException {
         if (version == 2) {
-            return new HttpEventProtobufReceiverConnectionV2(
-                endpoint,
-                this.timeoutMs,
-                this.maxRetries,
-                resolveHttpClientConnectionManager());
+            HttpEventProtobufReceiverConnectionV2 connection =
+                new HttpEventProtobufReceiverConnectionV2(
+                    endpoint,
+                    this.timeoutMs,
+                    this.maxRetries,
+                    useHttpClientConnectionManager());
+            connection.setCompression(compression);
+            connection.setTelemetry(telemetry);
+            connection.setCircuitBreaker(circuitBreaker);
+            connection.setRetryBudget(retryBudget);
+            connection.setHttp2Transport(http2Transport);
+            return connection;
         }else{
             throw new SignalFxMetricsException("Version v1 is deprecated, We encourage to use v2/event");
         }
     }
 
+    private HttpClientConnectionManager useHttpClientConnectionManager() {
+        HttpClientConnectionManager manager = resolveHttpClientConnectionManager();
+        if (manager == httpClientConnectionManager) {
+            poolInUse = true;
+        }
+        return manager;
+    }
+
     private HttpClientConnectionManager resolveHttpClientConnectionManager() {
         if (explicitHttpClientConnectionManager != null) {
             return explicitHttpClientConnectionManager;
@@ -0,0 +1,295 @@
+package com.signalfx.metrics.connection;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Closes the expired and idle connections of the pools created by
+ * {@link HttpClientConnectionManagerFactory}, and keeps the pools configured with warm-up
+ * connections topped up, from a single daemon thread shared by all pools.
+ *
+ * Pools are only weakly referenced, so that pools dropped by their factories, e.g. when their
+ * timeout changes, can still be collected.
+ *
+ * Warm-up connections are opened on the shared thread, so a route whose connections cannot be
+ * opened is not tried again until a backoff, doubling with each failure up to
+ * {@link #MAX_WARM_UP_BACKOFF_MS}, expires; an unreachable endpoint then only delays eviction by
+ * one connect timeout once in a while.
+ */
+final class IdleConnectionEvictor {
+
+    private static final Logger log = LoggerFactory.getLogger(IdleConnectionEvictor.class);
+
+    static final long INTERVAL_MS = 5000;
+    static final long MAX_WARM_UP_BACKOFF_MS = 300000;
+
+    private static final CopyOnWriteArrayList<Entry> pools = new CopyOnWriteArrayList<Entry>();
+    private static ScheduledExecutorService executor;
+
+    private IdleConnectionEvictor() {
+    }
+
+    /**
+     * @param pool
+     *            pool whose connections to evict
+     * @param maxIdleMs
+     *            idle time after which connections are closed, or -1 to only close expired
+     *            connections
+     */
+    static void register(PoolingHttpClientConnectionManager pool, long maxIdleMs) {
+        register(pool, maxIdleMs, Collections.<HttpRoute>emptyList(), 0, 0);
+    }
+
+    /**
+     * Registers a pool whose connections to some routes are opened ahead of requests: right
+     * away, and again whenever eviction closed some of them.
+     *
+     * @param pool
+     *            pool whose connections to evict
+     * @param maxIdleMs
+     *            idle time after which connections are closed, or -1 to only close expired
+     *            connections
+     * @param routes
+     *            routes to keep connections open to
+     * @param warmConnections
+     *            number of connections to keep open to each route
+     * @param connectTimeoutMs
+     *            timeout of opening each connection
+     */
+    static void register(PoolingHttpClientConnectionManager pool, long maxIdleMs,
+                         List<HttpRoute> routes, int warmConnections, int connectTimeoutMs) {
+        final Entry entry = new Entry(pool, maxIdleMs, routes, warmConnections, connectTimeoutMs);
+        pools.add(entry);
+        start();
+        if (!entry.routes.isEmpty()) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    warmUp(entry);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops evicting the connections of a pool, and opening its warm-up connections, e.g. once it
+     * is shut down.
+     */
+    static void deregister(PoolingHttpClientConnectionManager pool) {
+        for (Entry entry : pools) {
+            if (entry.pool.get() == pool) {
+                pools.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Stops opening the warm-up connections of a pool, while still evicting its connections, e.g.
+     * once it is replaced by another pool but still used by some receivers.
+     */
+    static void stopWarmUp(PoolingHttpClientConnectionManager pool) {
+        for (Entry entry : pools) {
+            if (entry.pool.get() == pool && !entry.routes.isEmpty()) {
+                pools.remove(entry);
+                pools.add(new Entry(pool, entry.maxIdleMs, Collections.<HttpRoute>emptyList(), 0, 0));
+            }
+        }
+    }
+
+    /**
+     * @return whether the connections of a pool are evicted
+     */
+    static boolean isRegistered(PoolingHttpClientConnectionManager pool) {
+        for (Entry entry : pools) {
+            if (entry.pool.get() == pool) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "signalfx-connection-evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evict();
+                warmUp();
+            }
+        }, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes the expired and idle connections of all registered pools now.
+     */
+    static void evict() {
+        Iterator<Entry> entries = pools.iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            PoolingHttpClientConnectionManager pool = entry.pool.get();
+            if (pool == null) {
+                pools.remove(entry);
+                continue;
+            }
+            try {
+                pool.closeExpiredConnections();
+                if (entry.maxIdleMs >= 0) {
+                    pool.closeIdleConnections(entry.maxIdleMs, TimeUnit.MILLISECONDS);
+                }
+            } catch (RuntimeException e) {
+                // the pool was shut down; keep evicting the others
+                pools.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Opens the missing warm-up connections of all registered pools now.
+     */
+    static void warmUp() {
+        for (Entry entry : pools) {
+            warmUp(entry);
+        }
+    }
+
+    private static void warmUp(Entry entry) {
+        for (HttpRoute route : entry.routes) {
+            warmUp(entry, route);
+        }
+    }
+
+    /**
+     * If the pool has fewer connections to the route than should be kept warm, leases as many
+     * connections as should be kept warm, opens those that are not open yet, and releases them all
+     * back to the pool, open. Skips the route while backing off from a failure to open its
+     * connections.
+     */
+    private static void warmUp(Entry entry, HttpRoute route) {
+        PoolingHttpClientConnectionManager pool = entry.pool.get();
+        if (pool == null) {
+            return;
+        }
+        Backoff backoff = entry.backoffs.get(route);
+        if (backoff != null && System.currentTimeMillis() < backoff.untilMs) {
+            return;
+        }
+        int count = Math.min(entry.warmConnections, pool.getMaxPerRoute(route));
+        PoolStats stats = pool.getStats(route);
+        if (stats.getAvailable() + stats.getLeased() >= count) {
+            return;
+        }
+        List<HttpClientConnection> leased = new ArrayList<HttpClientConnection>(count);
+        int opened = 0;
+        boolean failed = false;
+        try {
+            for (int i = 0; i < count; i++) {
+                ConnectionRequest request = pool.requestConnection(route, null);
+                HttpClientConnection connection =
+                        request.get(entry.connectTimeoutMs, TimeUnit.MILLISECONDS);
+                leased.add(connection);
+                if (!connection.isOpen()) {
+                    HttpClientContext context = HttpClientContext.create();
+                    pool.connect(connection, route, entry.connectTimeoutMs, context);
+                    pool.routeComplete(connection, route, context);
+                    opened++;
+                }
+            }
+        } catch (ConnectionPoolTimeoutException e) {
+            // the pool is busy with requests, no need to warm it up
+        } catch (IOException e) {
+            failed = true;
+            log.debug("Unable to warm up connections to {}", route, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            failed = true;
+            log.debug("Unable to warm up connections to {}", route, e);
+        } catch (RuntimeException e) {
+            // the pool was shut down
+            pools.remove(entry);
+        } finally {
+            for (HttpClientConnection connection : leased) {
+                try {
+                    pool.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+                } catch (RuntimeException e) {
+                    // the pool was shut down meanwhile
+                    pools.remove(entry);
+                }
+            }
+        }
+        if (failed) {
+            int failures = backoff == null ? 1 : backoff.failures + 1;
+            long delayMs = Math.min(INTERVAL_MS << Math.min(failures - 1, 16), MAX_WARM_UP_BACKOFF_MS);
+            entry.backoffs.put(route, new Backoff(failures, System.currentTimeMillis() + delayMs));
+        } else if (backoff != null) {
+            entry.backoffs.remove(route);
+        }
+        if (opened > 0) {
+            log.debug("Opened {} connections to {}", opened, route);
+        }
+    }
+
+    private static final class Entry {
+        private final WeakReference<PoolingHttpClientConnectionManager> pool;
+        private final long maxIdleMs;
+        private final List<HttpRoute> routes;
+        private final int warmConnections;
+        private final int connectTimeoutMs;
+        private final ConcurrentMap<HttpRoute, Backoff> backoffs =
+                new ConcurrentHashMap<HttpRoute, Backoff>();
+
+        private Entry(PoolingHttpClientConnectionManager pool, long maxIdleMs,
+                      List<HttpRoute> routes, int warmConnections, int connectTimeoutMs) {
+            this.pool = new WeakReference<PoolingHttpClientConnectionManager>(pool);
+            this.maxIdleMs = maxIdleMs;
+            this.routes = warmConnections > 0 ? routes : Collections.<HttpRoute>emptyList();
+            this.warmConnections = warmConnections;
+            this.connectTimeoutMs = connectTimeoutMs;
+        }
+    }
+
+    /**
+     * Consecutive failures to open the connections of a route, and when to try again.
+     */
+    private static final class Backoff {
+        private final int failures;
+        private final long untilMs;
+
+        private Backoff(int failures, long untilMs) {
+            this.failures = failures;
+            this.untilMs = untilMs;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.signalfx.metrics.flush;
 
 import static java.util.Objects.requireNonNull;
 
+import com.signalfx.connection.telemetry.FlightRecorder;
+import com.signalfx.connection.telemetry.SenderTelemetry;
 import com.signalfx.metrics.SignalFxMetricsException;
 import com.signalfx.metrics.auth.AuthToken;
 import com.signalfx.metrics.auth.NoAuthTokenException;
@@ -55,6 +57,7 @@ public class AggregateMetricSender {
     private final EventReceiverFactory eventReceiverFactory;
     private final AuthToken authToken;
     private final Collection<OnSendErrorHandler> onSendErrorHandlerCollection;
+    private volatile SenderTelemetry telemetry = SenderTelemetry.NOOP;
 
     public AggregateMetricSender(String defaultSourceName,
                                  DataPointReceiverFactory dataPointReceiverFactory,
@@ -88,6 +91,24 @@ public class AggregateMetricSender {
         return defaultSourceName;
     }
 
+    /**
+     * @return telemetry told about the sessions flushed by this sender
+     */
+    public SenderTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * @param telemetry
+     *            telemetry told about the sessions flushed by this sender; set it on the receiver
+     *            factories as well to measure their serialization and requests
+     * @return this sender
+     */
+    public AggregateMetricSender setTelemetry(SenderTelemetry telemetry) {
+        this.telemetry = telemetry == null ? SenderTelemetry.NOOP : telemetry;
+        return this;
+    }
+
     private void communicateError(String message, MetricErrorType code,
                                   SignalFxMetricsException signalfxMetricsException) {
         for (OnSendErrorHandler onSendErrorHandler : onSendErrorHandlerCollection) {
@@ -208,19 +229,29 @@ public class AggregateMetricSender {
 
         @Override
         public void close() {
-            final String authTokenStr;
+            SenderTelemetry telemetry = AggregateMetricSender.this.telemetry;
+            int dataPoints = pointsToFlush.size();
+            int events = eventsToFlush.size();
+            Object event = FlightRecorder.beginFlush();
+            long start = System.nanoTime();
             try {
-                authTokenStr = authToken.getAuthToken();
-            } catch (NoAuthTokenException e) {
-                communicateError("Unable to get auth token", MetricErrorType.AUTH_TOKEN_ERROR, e);
-                return;
-            }
+                final String authTokenStr;
+                try {
+                    authTokenStr = authToken.getAuthToken();
+                } catch (NoAuthTokenException e) {
+                    communicateError("Unable to get auth token", MetricErrorType.AUTH_TOKEN_ERROR, e);
+                    return;
+                }
 
-            flushDatapoints(authTokenStr);
-            flushEvents(authTokenStr);
+                flushDatapoints(authTokenStr, telemetry);
+                flushEvents(authTokenStr);
+            } finally {
+                telemetry.sessionFlushed(dataPoints, events, System.nanoTime() - start);
+                FlightRecorder.commitFlush(event, dataPoints, events);
+            }
         }
 
-        private void flushDatapoints(String authTokenStr) {
+        private void flushDatapoints(String authTokenStr, SenderTelemetry telemetry) {
             if (pointsToFlush.isEmpty()) {
                 return;
             }
@@ -235,6 +266,7 @@ public class AggregateMetricSender {
                     .createDataPointReceiver();
 
             if (!toBeRegisteredMetricPairs.isEmpty()) {
+                long start = System.nanoTime();
                 try {
                     Map<String, Boolean> registeredPairs = dataPointReceiver
                             .registerMetrics(authTokenStr, toBeRegisteredMetricPairs);
@@ -243,20 +275,30 @@ public class AggregateMetricSender {
                             registeredMetricPairs.add(i.getKey());
                         }
                     }
+                    telemetry.metricsRegistered(toBeRegisteredMetricPairs.size(), true,
+                            System.nanoTime() - start);
                 } catch (SignalFxMetricsException e) {
+                    telemetry.metricsRegistered(toBeRegisteredMetricPairs.size(), false,
+                            System.nanoTime() - start);
+                    telemetry.dataPointsDropped(pointsToFlush.size());
                     communicateError("Unable to register metrics",
                             MetricErrorType.REGISTRATION_ERROR, e);
                     return;
                 }
             }
 
+            int dropped = 0;
             Iterator<SignalFxProtocolBuffers.DataPoint> i = pointsToFlush.iterator();
             while (i.hasNext()) {
                 SignalFxProtocolBuffers.DataPoint currentEntry = i.next();
                 if (!registeredMetricPairs.contains(currentEntry.getMetric())) {
                     i.remove();
+                    dropped++;
                 }
             }
+            if (dropped > 0) {
+                telemetry.dataPointsDropped(dropped);
+            }
 
             try {
                 dataPointReceiver.addDataPoints(authTokenStr, pointsToFlush);
@@ -0,0 +1,71 @@
+package com.signalfx.metrics.flush;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.signalfx.connection.telemetry.Histogram;
+import com.signalfx.connection.telemetry.TelemetryRecorder;
+
+/**
+ * Reports the telemetry of the client through a sender, as datapoints of the client's own
+ * metrics. Schedule {@link #run()} at the reporting interval, e.g. with a
+ * {@link java.util.concurrent.ScheduledExecutorService}.
+ *
+ * Counters are sent as cumulative counters named after the counter, e.g.
+ * {@code sfxclient.requests}. Histograms are sent as the cumulative counters {@code .count} and
+ * {@code .sum}, and the gauges {@code .max}, {@code .p50} and {@code .p99}; histogram gauges cover
+ * everything recorded since the recorder was created. The report's own flush is recorded as well.
+ */
+public class TelemetryReporter implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(TelemetryReporter.class);
+
+    public static final String DEFAULT_PREFIX = "sfxclient.";
+
+    private final TelemetryRecorder recorder;
+    private final AggregateMetricSender sender;
+    private String prefix = DEFAULT_PREFIX;
+
+    public TelemetryReporter(TelemetryRecorder recorder, AggregateMetricSender sender) {
+        this.recorder = recorder;
+        this.sender = sender;
+    }
+
+    /**
+     * @param prefix
+     *            prefix of the reported metric names, {@value #DEFAULT_PREFIX} by default
+     * @return this reporter
+     */
+    public TelemetryReporter setPrefix(String prefix) {
+        this.prefix = prefix;
+        return this;
+    }
+
+    @Override
+    public void run() {
+        AggregateMetricSender.Session session = sender.createSession();
+        try {
+            for (Map.Entry<String, Long> counter : recorder.getCounters().entrySet()) {
+                session.setCumulativeCounter(prefix + counter.getKey(), counter.getValue());
+            }
+            for (Map.Entry<String, Histogram> entry : recorder.getHistograms().entrySet()) {
+                String name = prefix + entry.getKey();
+                Histogram histogram = entry.getValue();
+                session.setCumulativeCounter(name + ".count", histogram.getCount());
+                session.setCumulativeCounter(name + ".sum", histogram.getSum());
+                session.setGauge(name + ".max", histogram.getMax());
+                session.setGauge(name + ".p50", histogram.getPercentile(0.5));
+                session.setGauge(name + ".p99", histogram.getPercentile(0.99));
+            }
+        } finally {
+            try {
+                session.close();
+            } catch (IOException e) {
+                log.warn("Unable to report client telemetry", e);
+            }
+        }
+    }
+}
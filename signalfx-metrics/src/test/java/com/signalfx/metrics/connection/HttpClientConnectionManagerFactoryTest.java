@@ -0,0 +1,165 @@
+package com.signalfx.metrics.connection;
+
+import com.signalfx.endpoint.SignalFxEndpoint;
+import com.signalfx.metrics.protobuf.SignalFxProtocolBuffers;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.Collections;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpClientConnectionManagerFactoryTest {
+
+  @Test
+  public void shouldApplyPoolConfig() {
+    PoolingHttpClientConnectionManager pool = HttpClientConnectionManagerFactory.withTimeoutMs(
+        1000, new ConnectionPoolConfig()
+            .setMaxTotal(64)
+            .setMaxPerRoute(16)
+            .setValidateAfterInactivityMs(500));
+
+    assertEquals(64, pool.getMaxTotal());
+    assertEquals(16, pool.getDefaultMaxPerRoute());
+    assertEquals(500, pool.getValidateAfterInactivity());
+    pool.shutdown();
+  }
+
+  @Test
+  public void shouldEvictIdleConnections() throws Exception {
+    Server server = new Server(0);
+    server.setHandler(new OkHandler());
+    server.start();
+
+    try (AutoCloseable ignored = server::stop) {
+      URI uri = server.getURI();
+      HttpDataPointProtobufReceiverFactory factory = new HttpDataPointProtobufReceiverFactory(
+          new SignalFxEndpoint(uri.getScheme(), uri.getHost(), uri.getPort()))
+          .setConnectionPool(new ConnectionPoolConfig().setMaxIdleMs(0));
+      factory.createDataPointReceiver().addDataPoints("token", Collections.singletonList(
+          SignalFxProtocolBuffers.DataPoint.newBuilder().setSource("source").build()));
+
+      PoolStats stats = factory.getPoolStats();
+      assertEquals(0, stats.getLeased());
+      assertEquals(1, stats.getAvailable());
+      assertEquals(ConnectionPoolConfig.DEFAULT_MAX_TOTAL, stats.getMax());
+
+      Thread.sleep(10);
+      IdleConnectionEvictor.evict();
+      assertEquals(0, factory.getPoolStats().getAvailable());
+    }
+  }
+
+  @Test
+  public void shouldWarmUpConnections() throws Exception {
+    Server server = new Server(0);
+    server.setHandler(new OkHandler());
+    server.start();
+
+    try (AutoCloseable ignored = server::stop) {
+      URI uri = server.getURI();
+      HttpDataPointProtobufReceiverFactory factory = new HttpDataPointProtobufReceiverFactory(
+          new SignalFxEndpoint(uri.getScheme(), uri.getHost(), uri.getPort()))
+          .setConnectionPool(new ConnectionPoolConfig().setWarmUpConnections(3));
+      long deadline = System.currentTimeMillis() + 5000;
+      while (factory.getPoolStats().getAvailable() < 3 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(3, factory.getPoolStats().getAvailable());
+
+      // requests reuse the warm connections
+      factory.createDataPointReceiver().addDataPoints("token", Collections.singletonList(
+          SignalFxProtocolBuffers.DataPoint.newBuilder().setSource("source").build()));
+      assertEquals(3, factory.getPoolStats().getAvailable());
+
+      // connections closed by eviction are opened again
+      factory.setConnectionPool(new ConnectionPoolConfig().setWarmUpConnections(2).setMaxIdleMs(0));
+      deadline = System.currentTimeMillis() + 5000;
+      while (factory.getPoolStats().getAvailable() < 2 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Thread.sleep(10);
+      IdleConnectionEvictor.evict();
+      assertEquals(0, factory.getPoolStats().getAvailable());
+      IdleConnectionEvictor.warmUp();
+      assertEquals(2, factory.getPoolStats().getAvailable());
+    }
+  }
+
+  @Test
+  public void shouldShutDownReplacedPoolsNotInUse() throws Exception {
+    ConnectionPoolConfig config = new ConnectionPoolConfig().setMaxIdleMs(0);
+    PoolingHttpClientConnectionManager inUse = HttpClientConnectionManagerFactory.withTimeoutMs(1000, config);
+    PoolingHttpClientConnectionManager unused = HttpClientConnectionManagerFactory.withTimeoutMs(1000, config);
+    assertTrue(IdleConnectionEvictor.isRegistered(inUse));
+    assertTrue(IdleConnectionEvictor.isRegistered(unused));
+
+    HttpClientConnectionManagerFactory.release(inUse, true);
+    HttpClientConnectionManagerFactory.release(unused, false);
+
+    // receivers created with the pool keep using it
+    assertTrue(IdleConnectionEvictor.isRegistered(inUse));
+    inUse.requestConnection(new HttpRoute(new HttpHost("localhost", 80)), null).cancel();
+    inUse.shutdown();
+
+    assertFalse(IdleConnectionEvictor.isRegistered(unused));
+    try {
+      unused.requestConnection(new HttpRoute(new HttpHost("localhost", 80)), null);
+      fail("pool should be shut down");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test
+  public void shouldBackOffWarmingUpUnreachableRoutes() throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    PoolingHttpClientConnectionManager pool = HttpClientConnectionManagerFactory.withTimeoutMs(
+        1000, new ConnectionPoolConfig().setWarmUpConnections(2),
+        new SignalFxEndpoint("http", "localhost", port));
+    // nothing listens on the port yet
+    IdleConnectionEvictor.warmUp();
+    assertEquals(0, pool.getTotalStats().getAvailable());
+
+    Server server = new Server(port);
+    server.setHandler(new OkHandler());
+    server.start();
+
+    try (AutoCloseable ignored = server::stop) {
+      // the route is not tried again before its backoff expires
+      IdleConnectionEvictor.warmUp();
+      assertEquals(0, pool.getTotalStats().getAvailable());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static class OkHandler extends AbstractHandler {
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request,
+                       HttpServletResponse response) throws IOException {
+      // drain the body, so that the server keeps the connection open
+      byte[] buffer = new byte[1024];
+      while (request.getInputStream().read(buffer) >= 0) {
+      }
+      response.setStatus(HttpServletResponse.SC_OK);
+      response.getWriter().write("\"OK\"");
+      baseRequest.setHandled(true);
+    }
+  }
+}
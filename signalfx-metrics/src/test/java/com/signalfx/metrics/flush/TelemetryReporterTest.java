@@ -0,0 +1,36 @@
+package com.signalfx.metrics.flush;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.signalfx.connection.telemetry.TelemetryRecorder;
+import com.signalfx.metrics.auth.StaticAuthToken;
+import com.signalfx.metrics.connection.StaticDataPointReceiverFactory;
+import com.signalfx.metrics.connection.StoredDataPointReceiver;
+import com.signalfx.metrics.errorhandler.OnSendErrorHandler;
+
+public class TelemetryReporterTest {
+
+    @Test
+    public void shouldReportTelemetryThroughSender() throws Exception {
+        StoredDataPointReceiver receiver = new StoredDataPointReceiver();
+        TelemetryRecorder recorder = new TelemetryRecorder();
+        AggregateMetricSender sender = new AggregateMetricSender("source",
+                new StaticDataPointReceiverFactory(receiver), new StaticAuthToken("token"),
+                Collections.<OnSendErrorHandler>emptyList()).setTelemetry(recorder);
+
+        sender.createSession().setGauge("metric", 1).close();
+        recorder.requestCompleted(200, 5000000);
+        new TelemetryReporter(recorder, sender).run();
+
+        assertEquals(1, receiver.lastValueFor("source", "sfxclient.requests").getIntValue());
+        assertEquals(1, receiver.lastValueFor("source", "sfxclient.sessions").getIntValue());
+        assertEquals(1, receiver.lastValueFor("source", "sfxclient.datapoints").getIntValue());
+        assertEquals(5000, receiver.lastValueFor("source", "sfxclient.request.latency.us.max")
+                .getIntValue());
+        assertEquals(2, recorder.getCounters().get("sessions").longValue());
+    }
+}
@@ -10,6 +10,8 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.signalfx.connection.telemetry.FlightRecorder;
+
 /**
  * Abstract immutable representation for open channels that receive streaming data from a SignalFlow
  * computation.
@@ -59,7 +61,16 @@ public abstract class Channel implements Iterator<ChannelMessage>, Closeable {
             ChannelMessage message = null;
             while (message == null) {
                 StreamMessage streamMessage = this.iterator.next();
-                message = ChannelMessage.decodeStreamMessage(streamMessage);
+                Object decode = FlightRecorder.beginMessageDecode();
+                try {
+                    message = ChannelMessage.decodeStreamMessage(streamMessage);
+                } finally {
+                    if (decode != null) {
+                        FlightRecorder.commitMessageDecode(decode, name,
+                                message == null ? null : String.valueOf(message.getType()),
+                                dataSize(streamMessage));
+                    }
+                }
                 if (message == null) {
                     log.warn("Unsupported control message {}. ignoring!", streamMessage);
                 }
@@ -71,6 +82,14 @@ public abstract class Channel implements Iterator<ChannelMessage>, Closeable {
         }
     }
 
+    private static long dataSize(StreamMessage streamMessage) {
+        if (streamMessage.getRawData() != null) {
+            return streamMessage.getRawData().length;
+        }
+        String data = streamMessage.getData();
+        return data == null ? 0 : data.length();
+    }
+
     public void remove() {
         if (!isClosed()) {
             this.iterator.remove();
@@ -83,6 +102,64 @@ public abstract class Channel implements Iterator<ChannelMessage>, Closeable {
         this.isClosed = true;
     }
 
+    /**
+     * Waits for a message to be available from this channel, for at most the given time.
+     * Transports that cannot wait with a timeout return immediately, in which case
+     * {@link #hasNext()} and {@link #next()} block until a message is received.
+     *
+     * @param timeoutMs
+     *            maximum time to wait, in milliseconds
+     * @return false if no message was available within the given time, true otherwise
+     */
+    public boolean awaitNext(long timeoutMs) {
+        return true;
+    }
+
+    /**
+     * @return id of the last event received on this channel, or null if the transport does not
+     *         identify events
+     */
+    public String getLastEventId() {
+        return null;
+    }
+
+    /**
+     * @return delay requested by the server before reconnecting after this channel's connection
+     *         is lost, in milliseconds, or -1 if the server did not request one
+     */
+    public long getReconnectionDelayMs() {
+        return -1;
+    }
+
+    /**
+     * @return whether the computation should re-create this channel when its stream ends or its
+     *         connection is lost before the computation completed; false for channels whose
+     *         stream is finite, e.g. replayed, whose end completes the computation
+     */
+    public boolean isResumable() {
+        return true;
+    }
+
+    /**
+     * Told about the stream messages of a channel as its transport receives them.
+     */
+    interface Receiver {
+        void received(StreamMessage message);
+    }
+
+    /**
+     * Sets the receiver told about each stream message of this channel as soon as the transport
+     * queued it, whether or not it is consumed, including the messages already waiting. The
+     * receiver may be called by the thread receiving messages from the network, and must not
+     * block it.
+     *
+     * @return false if this channel does not queue the messages it receives, which are then
+     *         received when consumed
+     */
+    boolean setReceiver(Receiver receiver) {
+        return false;
+    }
+
     public boolean isClosed() {
         return this.isClosed;
     }
@@ -0,0 +1,18 @@
+package com.signalfx.signalflow;
+
+/**
+ * Exception thrown when the connection carrying a channel is lost before its computation ended.
+ * The computation can be resumed by re-attaching to it or re-executing it.
+ */
+public class ChannelDisconnectedException extends SignalFlowException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ChannelDisconnectedException(int code, String message) {
+        super(code, message);
+    }
+
+    public ChannelDisconnectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -91,31 +91,31 @@ public abstract class ChannelMessage {
             switch (streamMessage.getKind()) {
 
             case CONTROL:
-                message = mapper.readValue(streamMessage.getData(), ControlMessage.class);
+                message = readValue(streamMessage, ControlMessage.class);
                 break;
 
             case INFORMATION:
-                message = mapper.readValue(streamMessage.getData(), InfoMessage.class);
+                message = readValue(streamMessage, InfoMessage.class);
                 break;
 
             case METADATA:
-                message = mapper.readValue(streamMessage.getData(), MetadataMessage.class);
+                message = readValue(streamMessage, MetadataMessage.class);
                 break;
 
             case EXPIRED_TSID:
-                message = mapper.readValue(streamMessage.getData(), ExpiredTsIdMessage.class);
+                message = readValue(streamMessage, ExpiredTsIdMessage.class);
                 break;
 
             case DATA:
-                message = mapper.readValue(streamMessage.getData(), DataMessage.class);
+                message = readValue(streamMessage, DataMessage.class);
                 break;
 
             case EVENT:
-                message = mapper.readValue(streamMessage.getData(), EventMessage.class);
+                message = readValue(streamMessage, EventMessage.class);
                 break;
 
             case ERROR:
-                message = mapper.readValue(streamMessage.getData(), ErrorMessage.class);
+                message = readValue(streamMessage, ErrorMessage.class);
                 break;
             }
 
@@ -131,6 +131,20 @@ public abstract class ChannelMessage {
         }
     }
 
+    /**
+     * Decodes the JSON payload of the stream message, straight from its raw bytes when the
+     * transport provided them.
+     */
+    private static <T extends ChannelMessage> T readValue(StreamMessage streamMessage,
+                                                          Class<T> valueType)
+            throws IOException {
+        byte[] rawData = streamMessage.getRawData();
+        if (rawData != null) {
+            return mapper.readValue(rawData, valueType);
+        }
+        return mapper.readValue(streamMessage.getData(), valueType);
+    }
+
     /**
      * Base class for control messages.
      */
@@ -327,18 +341,51 @@ public abstract class ChannelMessage {
 
         protected Map<String, Number> data;
         protected long logicalTimestampMs;
+        protected long maxDelayMs;
+        protected boolean partial;
+
+        public DataMessage(long logicalTimestampMs, List<Map<String, Object>> data) {
+            this(logicalTimestampMs, data, 0);
+        }
 
         @JsonCreator
         public DataMessage(@JsonProperty("logicalTimestampMs") long logicalTimestampMs,
-                           @JsonProperty("data") List<Map<String, Object>> data) {
+                           @JsonProperty("data") List<Map<String, Object>> data,
+                           @JsonProperty("maxDelayMs") long maxDelayMs) {
             this.channelMessageType = Type.DATA_MESSAGE;
             this.logicalTimestampMs = logicalTimestampMs;
-            this.data = new HashMap<String, Number>(data.size());
+            this.maxDelayMs = maxDelayMs;
+            this.data = new HashMap<String, Number>((int) (data.size() / 0.75f) + 1);
             for (Map<String, Object> datum : data) {
                 this.data.put((String) datum.get("tsId"), (Number) datum.get("value"));
             }
         }
 
+        /**
+         * @param logicalTimestampMs
+         *            The logical timestamp of the data (millisecond precision).
+         * @param data
+         *            The data, as a map of timeseries ID to datapoint value.
+         */
+        public DataMessage(long logicalTimestampMs, Map<String, Number> data) {
+            this(logicalTimestampMs, data, 0);
+        }
+
+        /**
+         * @param logicalTimestampMs
+         *            The logical timestamp of the data (millisecond precision).
+         * @param data
+         *            The data, as a map of timeseries ID to datapoint value.
+         * @param maxDelayMs
+         *            The maximum delay the computation waited for the data, in milliseconds.
+         */
+        public DataMessage(long logicalTimestampMs, Map<String, Number> data, long maxDelayMs) {
+            this.channelMessageType = Type.DATA_MESSAGE;
+            this.logicalTimestampMs = logicalTimestampMs;
+            this.data = data;
+            this.maxDelayMs = maxDelayMs;
+        }
+
         /**
          * @return The logical timestamp of the data (millisecond precision).
          */
@@ -346,6 +393,28 @@ public abstract class ChannelMessage {
             return this.logicalTimestampMs;
         }
 
+        /**
+         * @return The maximum delay the computation waited for the data, in milliseconds, or 0 if
+         *         not provided by the stream.
+         */
+        public long getMaxDelayMs() {
+            return this.maxDelayMs;
+        }
+
+        /**
+         * @return Whether the message only holds part of the data of its logical timestamp: a
+         *         tick released before all its batches arrived, or a batch that arrived after its
+         *         tick was released, yielded on its own with the same logical timestamp and meant
+         *         to be merged into it.
+         */
+        public boolean isPartial() {
+            return this.partial;
+        }
+
+        void setPartial(boolean partial) {
+            this.partial = partial;
+        }
+
         /**
          * @return The data, as a map of timeseries ID to datapoint value.
          */
@@ -0,0 +1,96 @@
+package com.signalfx.signalflow;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Metadata store decorator that compacts the metadata it stores.
+ *
+ * Property names and string values are interned, and identical property maps are deduplicated,
+ * so that the many copies of the same dimension names and values (and of the same property maps)
+ * received across timeseries and computations are held in memory once. Interning is weak: an
+ * interned instance is collected once no store references it anymore.
+ *
+ * Stored property maps are read-only.
+ */
+public class CompactMetadataStore implements MetadataStore {
+
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+    private static final Interner<Map<String, Object>> PROPERTIES = Interners.newWeakInterner();
+
+    private final MetadataStore delegate;
+
+    public CompactMetadataStore(MetadataStore delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param delegateFactory
+     *            factory of the stores holding the compacted metadata
+     * @return factory of compact metadata stores
+     */
+    public static MetadataStoreFactory factory(final MetadataStoreFactory delegateFactory) {
+        return new MetadataStoreFactory() {
+            @Override
+            public MetadataStore createMetadataStore() {
+                return new CompactMetadataStore(delegateFactory.createMetadataStore());
+            }
+        };
+    }
+
+    /**
+     * @param properties
+     *            metadata properties
+     * @return read-only, canonical instance of the given properties, made of interned strings
+     */
+    static Map<String, Object> compact(Map<String, Object> properties) {
+        if (properties == null) {
+            return null;
+        }
+        Map<String, Object> compacted = new LinkedHashMap<String, Object>(
+                (int) Math.ceil(properties.size() / 0.75));
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            Object value = property.getValue();
+            if (value instanceof String) {
+                value = STRINGS.intern((String) value);
+            }
+            compacted.put(STRINGS.intern(property.getKey()), value);
+        }
+        return PROPERTIES.intern(Collections.unmodifiableMap(compacted));
+    }
+
+    @Override
+    public Map<String, Object> get(String tsId) {
+        return delegate.get(tsId);
+    }
+
+    @Override
+    public void put(String tsId, Map<String, Object> properties) {
+        delegate.put(STRINGS.intern(tsId), compact(properties));
+    }
+
+    @Override
+    public void remove(String tsId) {
+        delegate.remove(tsId);
+    }
+
+    @Override
+    public Collection<String> getKnownTSIDs() {
+        return delegate.getKnownTSIDs();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+}
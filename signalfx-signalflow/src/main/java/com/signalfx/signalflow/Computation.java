@@ -5,14 +5,15 @@ package com.signalfx.signalflow;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.signalfx.signalflow.ChannelMessage.ChannelAbortMessage;
 import com.signalfx.signalflow.ChannelMessage.DataMessage;
 import com.signalfx.signalflow.ChannelMessage.ErrorMessage;
@@ -24,6 +25,14 @@ import com.signalfx.signalflow.ChannelMessage.MetadataMessage;
 /**
  * A live handle to a running SignalFlow computation.
  *
+ * The batches of data streamed for each logical timestamp are yielded as a single data message
+ * per tick, once all of them arrived, or once the max delay of the computation passed. A batch
+ * arriving after its tick was yielded, e.g. because the computation sent more batches than for
+ * previous ticks, is yielded on its own as a second data message with the same logical timestamp;
+ * such messages, and ticks yielded at the max delay without all their batches, are marked
+ * {@link DataMessage#isPartial() partial}. The number of batches per tick is learned from the
+ * previous tick, so a tick with an extra batch only holds up the one after it.
+ *
  * @author dgriff
  */
 public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMessage> {
@@ -40,12 +49,17 @@ public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMe
         STATE_ABORTED;
     }
 
+    protected static final Logger log = LoggerFactory.getLogger(Computation.class);
+    public static final int DEFAULT_MAX_RECONNECT_ATTEMPTS = 5;
+    protected static final long INITIAL_RECONNECT_DELAY_MS = 500;
+    protected static final long MAX_RECONNECT_DELAY_MS = 30000;
+
     protected SignalFlowTransport transport;
     protected String program;
     protected Map<String, String> params;
     protected boolean isAttachedChannel;
 
-    private Map<String, Map<String, Object>> metadata = new HashMap<String, Map<String, Object>>();
+    private final MetadataStore metadata;
 
     private String id;
     private Channel channel;
@@ -53,17 +67,28 @@ public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMe
     private State state = State.STATE_UNKNOWN;
     private long lastLogicalTimestampMs = -1;
     private long resolution;
-    private int expectedBatches;
-    private boolean batchCountDetected;
-    private int currentBatchCount;
-    private DataMessage currentBatchMessage;
+    private final TickAssembler ticks = new TickAssembler();
+    private boolean resumed;
+    private int maxReconnectAttempts = DEFAULT_MAX_RECONNECT_ATTEMPTS;
+    private int reconnectAttempts;
+    private String lastEventId;
+    private boolean retainMetadata;
+    // set by close(), possibly from another thread than the one streaming the computation
+    private volatile boolean closed;
 
     public Computation(SignalFlowTransport transport, String program, Map<String, String> params,
                        boolean attach) {
+        this(transport, program, params, attach, new HashMetadataStore());
+    }
+
+    public Computation(SignalFlowTransport transport, String program, Map<String, String> params,
+                       boolean attach, MetadataStore metadata) {
         this.transport = transport;
         this.program = program;
         this.params = params;
         this.isAttachedChannel = attach;
+        this.metadata = metadata;
+        this.retainMetadata = !SharedMetadataDictionary.isView(metadata);
         this.channel = isAttachedChannel ? attach() : execute();
     }
 
@@ -95,13 +120,38 @@ public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMe
         return lastLogicalTimestampMs;
     }
 
+    /**
+     * Sets how many consecutive times the computation's channel is re-created, without receiving
+     * any message in between, when its connection is lost or its stream ends before the
+     * computation completed.
+     *
+     * @param maxReconnectAttempts
+     *            maximum number of consecutive reconnection attempts; 0 disables resumption
+     */
+    public void setMaxReconnectAttempts(int maxReconnectAttempts) {
+        this.maxReconnectAttempts = maxReconnectAttempts;
+    }
+
+    /**
+     * Sets whether the timeseries metadata accumulated by this computation remains available once
+     * it is closed or its stream completed and all its messages were consumed, until
+     * {@link #clearMetadata()} is called. By default it is kept, unless it is held by a
+     * {@link SharedMetadataDictionary}, in which case it is discarded then, releasing this
+     * computation's references to the metadata of the dictionary.
+     *
+     * @param retainMetadata
+     *            whether to keep metadata after the computation ended
+     */
+    public void setRetainMetadata(boolean retainMetadata) {
+        this.retainMetadata = retainMetadata;
+    }
+
     /**
      * @return sorted list of known timeseries ids
      */
     public Collection<String> getKnownTSIDs() {
-        List<String> list = new ArrayList<String>(metadata.keySet());
-        Collections.sort(list);
-        return list;
+        // copied from the store's sorted view, without sorting again
+        return new ArrayList<String>(metadata.getKnownTSIDs());
     }
 
     /**
@@ -128,6 +178,9 @@ public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMe
             parseNext();
         }
 
+        if (nextMessage == null && state == State.STATE_COMPLETED) {
+            releaseMetadata();
+        }
         return nextMessage != null;
     }
 
@@ -151,6 +204,9 @@ public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMe
             return message;
         } else {
             // no more messages can come from this channel
+            if (state == State.STATE_COMPLETED) {
+                releaseMetadata();
+            }
             throw new NoSuchElementException("no more stream messages");
         }
     }
@@ -160,13 +216,33 @@ public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMe
         throw new UnsupportedOperationException("remove not supported");
     }
 
+    /**
+     * Discards the timeseries metadata accumulated by this computation. When the metadata is held
+     * by a {@link SharedMetadataDictionary}, this releases this computation's references to it.
+     * Done automatically when the computation ends if {@link #setRetainMetadata(boolean)} says
+     * so, the default for metadata held by a dictionary.
+     */
+    public void clearMetadata() {
+        metadata.clear();
+    }
+
+    private void releaseMetadata() {
+        if (!retainMetadata) {
+            metadata.clear();
+        }
+    }
+
     /**
      * Manually close this computation and detach from its stream. This computation object cannot be
-     * restarted, used or streamed for after this method is called.
+     * restarted, used or streamed for after this method is called. May be called from another
+     * thread than the one streaming the computation, which then stops without resuming the
+     * stream.
      */
     public void close() {
+        closed = true;
         channel.close();
         nextMessage = null;
+        releaseMetadata();
     }
 
     /**
@@ -181,6 +257,9 @@ public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMe
         if (lastLogicalTimestampMs >= 0) {
             params.put("start", Long.toString(lastLogicalTimestampMs));
         }
+        if (lastEventId != null) {
+            params.put(SignalFlowTransport.LAST_EVENT_ID_PARAMETER, lastEventId);
+        }
 
         return transport.execute(program, params);
     }
@@ -193,9 +272,70 @@ public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMe
      *             if transport fails to attach to channel
      */
     private Channel attach() throws SignalFlowException {
+        if (lastEventId == null) {
+            return transport.attach(program, params);
+        }
+        HashMap<String, String> params = new HashMap<String, String>(this.params);
+        params.put(SignalFlowTransport.LAST_EVENT_ID_PARAMETER, lastEventId);
         return transport.attach(program, params);
     }
 
+    /**
+     * Re-create the channel of a computation that has not completed, after its connection was
+     * lost or its stream ended. Ticks that were already yielded and get streamed again by the new
+     * channel are suppressed.
+     *
+     * @param cause
+     *            disconnection that ended the previous channel, or null if its stream ended
+     * @throws ChannelDisconnectedException
+     *             if too many consecutive attempts have been made
+     */
+    private void reconnect(ChannelDisconnectedException cause) throws SignalFlowException {
+        if (closed) {
+            // the stream ended because the computation was closed
+            return;
+        }
+        String channelLastEventId = channel.getLastEventId();
+        long delayMs = channel.getReconnectionDelayMs();
+        channel.close();
+
+        reconnectAttempts++;
+        if (reconnectAttempts > maxReconnectAttempts) {
+            if (cause != null) {
+                throw cause;
+            }
+            throw new ChannelDisconnectedException(0,
+                    "computation stream ended before the computation completed");
+        }
+
+        if (delayMs < 0) {
+            delayMs = Math.min(INITIAL_RECONNECT_DELAY_MS << (reconnectAttempts - 1),
+                    MAX_RECONNECT_DELAY_MS);
+        }
+        log.info("reconnecting computation {} in {}ms (attempt {})", id, delayMs,
+                reconnectAttempts, cause);
+        try {
+            Thread.sleep(delayMs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SignalFlowException("interrupted while reconnecting computation", ex);
+        }
+
+        if (channelLastEventId != null) {
+            lastEventId = channelLastEventId;
+        }
+        // the new channel starts again from the last complete tick, drop any partial one
+        ticks.clear();
+        if (closed) {
+            return;
+        }
+        resumed = true;
+        channel = isAttachedChannel ? attach() : execute();
+        if (closed) {
+            channel.close();
+        }
+    }
+
     /**
      * Process the channel messages to manage computation
      *
@@ -207,15 +347,40 @@ public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMe
     private void parseNext() throws ComputationAbortedException,
             ComputationFailedException, SignalFlowException {
         nextMessage = null;
-        while (state != State.STATE_COMPLETED) {
-            if (!channel.hasNext()) {
-                if (state != State.STATE_COMPLETED) {
-                    channel.close();
-                    channel = isAttachedChannel ? attach() : execute();
+        while (state != State.STATE_COMPLETED && !closed) {
+            if (ticks.isComplete()) {
+                releaseTick();
+                break;
+            }
+
+            ChannelMessage message = null;
+            try {
+                // release a partial tick once its data is not expected anymore
+                long deadlineMs = ticks.getDeadlineMs(resolution);
+                if (deadlineMs > 0 && !channel.awaitNext(
+                        Math.max(0, deadlineMs - System.currentTimeMillis()))) {
+                    releaseTick(true);
+                    break;
+                }
+                if (channel.hasNext()) {
+                    message = channel.next();
+                }
+            } catch (ChannelDisconnectedException ex) {
+                reconnect(ex);
+                continue;
+            }
+
+            if (message == null) {
+                if (!channel.isResumable()) {
+                    // finite stream, e.g. replayed, that ended: nothing more is coming
+                    state = State.STATE_COMPLETED;
+                    releaseTick();
                     continue;
                 }
+                reconnect(null);
+                continue;
             } else {
-                ChannelMessage message = channel.next();
+                reconnectAttempts = 0;
 
                 switch (message.channelMessageType) {
                 case STREAM_START:
@@ -239,6 +404,7 @@ public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMe
 
                 case END_OF_CHANNEL:
                     state = State.STATE_COMPLETED;
+                    releaseTick();
                     break;
 
                 case METADATA_MESSAGE:
@@ -267,35 +433,39 @@ public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMe
                         resolution = ((Number) contents.get("resolutionMs")).longValue();
                     }
 
-                    batchCountDetected = true;
-                    if (currentBatchMessage != null) {
-                        setNextDataMessageToYield();
-                    }
+                    // the tick being assembled, if any, is complete
+                    releaseTick();
                     break;
 
                 case DATA_MESSAGE:
                     // Accumulate data messages and release them when we have received
                     // all batches for the same logical timestamp.
                     state = State.STATE_DATA_RECEIVED;
-                    if (!batchCountDetected) {
-                        expectedBatches++;
-                    }
-
                     DataMessage dataMessage = (DataMessage) message;
-                    if (currentBatchMessage == null) {
-                        currentBatchMessage = dataMessage;
-                        currentBatchCount = 1;
-                    } else if (dataMessage.getLogicalTimestampMs() == currentBatchMessage
-                            .getLogicalTimestampMs()) {
-                        currentBatchMessage.addData(dataMessage.getData());
-                        currentBatchCount++;
-                    } else {
-                        batchCountDetected = true;
+                    long logicalTimestampMs = dataMessage.getLogicalTimestampMs();
+                    if (logicalTimestampMs < lastLogicalTimestampMs
+                            || (logicalTimestampMs == lastLogicalTimestampMs && resumed)) {
+                        // tick already yielded before the channel was re-created
+                        break;
                     }
-
-                    if (batchCountDetected && currentBatchMessage != null
-                            && currentBatchCount == expectedBatches) {
-                        setNextDataMessageToYield();
+                    resumed = false;
+
+                    if (logicalTimestampMs == lastLogicalTimestampMs) {
+                        // late batch of a tick released early, yield it on its own, marked
+                        // partial for the consumer to merge it into the tick
+                        ticks.addLateBatch();
+                        dataMessage.setPartial(true);
+                        nextMessage = dataMessage;
+                    } else if (!ticks.isEmpty()
+                            && logicalTimestampMs != ticks.getLogicalTimestampMs()) {
+                        // first batch of the next tick, the previous tick is complete
+                        releaseTick();
+                        ticks.add(dataMessage);
+                    } else {
+                        ticks.add(dataMessage);
+                        if (ticks.isComplete()) {
+                            releaseTick();
+                        }
                     }
                     break;
 
@@ -324,14 +494,22 @@ public class Computation implements Iterable<ChannelMessage>, Iterator<ChannelMe
     }
 
     /**
-     * Set the next data message that will be returned by the iterator and reset the current batch
-     * message in which we accumulate.
+     * Set the tick being assembled, if any, as the next message that will be returned by the
+     * iterator.
+     */
+    private void releaseTick() {
+        releaseTick(false);
+    }
+
+    /**
+     * @param expired
+     *            whether the tick is released because its deadline passed
      */
-    private void setNextDataMessageToYield() {
-        DataMessage yieldMessage = currentBatchMessage;
-        currentBatchMessage = null;
-        currentBatchCount = 0;
-        lastLogicalTimestampMs = yieldMessage.getLogicalTimestampMs();
-        nextMessage = yieldMessage;
+    private void releaseTick(boolean expired) {
+        DataMessage tick = ticks.release(channel.getName(), expired);
+        if (tick != null) {
+            lastLogicalTimestampMs = tick.getLogicalTimestampMs();
+            nextMessage = tick;
+        }
     }
 }
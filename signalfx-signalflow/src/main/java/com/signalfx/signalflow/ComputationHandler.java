@@ -3,11 +3,21 @@
  */
 package com.signalfx.signalflow;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import com.signalfx.signalflow.ChannelMessage.DataMessage;
 import com.signalfx.signalflow.ChannelMessage.EventMessage;
 import com.signalfx.signalflow.ChannelMessage.ExpiredTsIdMessage;
@@ -22,6 +32,9 @@ import com.signalfx.signalflow.Computation.State;
  * subclass the onMessage methods and invoke the process method to run on current
  * thread or use executor to submit as callable in another thread.
  *
+ * Data messages can optionally be partitioned by timeseries ID and processed in parallel, see
+ * {@link #setPartitions(int)}.
+ *
  * @author dgriff
  */
 public abstract class ComputationHandler implements Callable<Computation> {
@@ -30,6 +43,7 @@ public abstract class ComputationHandler implements Callable<Computation> {
     protected Computation computation;
     private long startTimeMs;
     private long stopTimeMs;
+    private int partitions = 1;
 
     /**
      * Constructor that sets the computation
@@ -41,6 +55,27 @@ public abstract class ComputationHandler implements Callable<Computation> {
         this.computation = computation;
     }
 
+    /**
+     * Sets the number of partitions each data message is split into, by timeseries ID, before
+     * being handed to {@link #onMessage(DataMessage)}. Partitions of a data message are processed
+     * in parallel, on the thread processing the computation and on partitions - 1 worker threads,
+     * so {@link #onMessage(DataMessage)} must then be thread-safe.
+     *
+     * The data of a given timeseries always goes to the same partition and thread, and all
+     * partitions of a logical timestamp are processed before the next message of the computation
+     * is handled, preserving per-timeseries and per-timestamp ordering.
+     *
+     * @param partitions
+     *            number of partitions; 1, the default, processes data messages whole, on the
+     *            thread processing the computation
+     */
+    public void setPartitions(int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions must be positive");
+        }
+        this.partitions = partitions;
+    }
+
     /**
      * Override to process job start messages
      *
@@ -125,6 +160,13 @@ public abstract class ComputationHandler implements Callable<Computation> {
         startTimeMs = System.currentTimeMillis();
         stopTimeMs = -1;
 
+        ExecutorService[] workers = new ExecutorService[partitions - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("signalflow-partition-" + (i + 1) + "-%d")
+                    .setDaemon(true).build());
+        }
+
         try {
             // iterate computation messages and route to message handling methods
             for (ChannelMessage message : computation) {
@@ -141,7 +183,11 @@ public abstract class ComputationHandler implements Callable<Computation> {
 
                 case DATA_MESSAGE:
                     DataMessage dataMessage = (DataMessage) message;
-                    onMessage(dataMessage);
+                    if (workers.length == 0) {
+                        onMessage(dataMessage);
+                    } else {
+                        dispatch(dataMessage, workers);
+                    }
                     break;
 
                 case EVENT_MESSAGE:
@@ -164,6 +210,9 @@ public abstract class ComputationHandler implements Callable<Computation> {
                 }
             }
         } finally {
+            for (ExecutorService worker : workers) {
+                worker.shutdownNow();
+            }
             stopTimeMs = System.currentTimeMillis();
             close();
         }
@@ -171,6 +220,80 @@ public abstract class ComputationHandler implements Callable<Computation> {
         return computation;
     }
 
+    /**
+     * Splits a data message by timeseries ID and processes its partitions in parallel, returning
+     * once all partitions were processed, and throwing the first failure of any of them.
+     */
+    private void dispatch(DataMessage message, ExecutorService[] workers) {
+        List<Map<String, Number>> partitionedData = new ArrayList<Map<String, Number>>(partitions);
+        int expectedSize = message.getData().size() / partitions + 1;
+        for (int i = 0; i < partitions; i++) {
+            partitionedData.add(new HashMap<String, Number>(expectedSize * 4 / 3 + 1));
+        }
+        for (Map.Entry<String, Number> datum : message.getData().entrySet()) {
+            int partition = (datum.getKey().hashCode() & Integer.MAX_VALUE) % partitions;
+            partitionedData.get(partition).put(datum.getKey(), datum.getValue());
+        }
+
+        List<Future<?>> pending = new ArrayList<Future<?>>(workers.length);
+        for (int i = 0; i < workers.length; i++) {
+            Map<String, Number> data = partitionedData.get(i + 1);
+            if (!data.isEmpty()) {
+                final DataMessage partition = partition(message, data);
+                pending.add(workers[i].submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        onMessage(partition);
+                    }
+                }));
+            }
+        }
+        RuntimeException failure = null;
+        if (!partitionedData.get(0).isEmpty()) {
+            try {
+                onMessage(partition(message, partitionedData.get(0)));
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        // wait for all partitions, even once one failed, so that none is still being processed
+        // when this returns
+        for (int i = 0; i < pending.size(); i++) {
+            try {
+                pending.get(i).get();
+            } catch (InterruptedException e) {
+                for (Future<?> future : pending.subList(i, pending.size())) {
+                    future.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new SignalFlowException("interrupted while processing data", e);
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new SignalFlowException("failed to process data", e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return partition of a data message holding some of its data
+     */
+    private static DataMessage partition(DataMessage message, Map<String, Number> data) {
+        DataMessage partition = new DataMessage(message.getLogicalTimestampMs(), data,
+                message.getMaxDelayMs());
+        partition.setPartial(message.isPartial());
+        return partition;
+    }
+
     /**
      * closes the computation
      */
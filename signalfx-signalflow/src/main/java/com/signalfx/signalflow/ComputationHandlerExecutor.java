@@ -0,0 +1,207 @@
+package com.signalfx.signalflow;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor running {@link ComputationHandler}s, each of which blocks its thread for the life of
+ * its computation.
+ *
+ * On JDKs supporting virtual threads, each handler runs on its own virtual thread, so the number
+ * of live computations is not bounded by the cost of platform threads. On older JDKs, handlers
+ * run on a bounded pool of platform threads; handlers submitted while the pool is busy wait for
+ * a thread to become available.
+ */
+public class ComputationHandlerExecutor implements AutoCloseable {
+
+    protected static final Logger log = LoggerFactory.getLogger(ComputationHandlerExecutor.class);
+    public static final int DEFAULT_MAX_PLATFORM_THREADS = 256;
+
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final Set<ComputationHandler> activeHandlers =
+            Collections.newSetFromMap(new ConcurrentHashMap<ComputationHandler, Boolean>());
+    private final LongAdder submittedHandlers = new LongAdder();
+    private final LongAdder completedHandlers = new LongAdder();
+    private final LongAdder failedHandlers = new LongAdder();
+    private volatile boolean stopped;
+
+    /**
+     * Creates an executor using virtual threads when available, or a pool of at most
+     * {@link #DEFAULT_MAX_PLATFORM_THREADS} platform threads.
+     */
+    public ComputationHandlerExecutor() {
+        this(true, DEFAULT_MAX_PLATFORM_THREADS, 0);
+    }
+
+    /**
+     * @param useVirtualThreads
+     *            whether to run handlers on virtual threads when the JDK supports them
+     * @param maxPlatformThreads
+     *            maximum number of platform threads when virtual threads are not used
+     * @param platformThreadStackSize
+     *            stack size of the platform threads, in bytes, or 0 for the JVM default
+     */
+    public ComputationHandlerExecutor(boolean useVirtualThreads, int maxPlatformThreads,
+                                      long platformThreadStackSize) {
+        ExecutorService virtualExecutor = useVirtualThreads ? newVirtualThreadExecutor() : null;
+        this.virtualThreads = virtualExecutor != null;
+        this.executor = virtualThreads ? virtualExecutor
+                : newPlatformThreadExecutor(maxPlatformThreads, platformThreadStackSize);
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            log.debug("virtual threads unavailable, using platform threads", e);
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(int maxThreads,
+                                                             final long stackSize) {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(null, runnable,
+                        "signalflow-handler-" + count.incrementAndGet(), stackSize);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Submits a handler to process its computation.
+     *
+     * @param handler
+     *            handler to run
+     * @return future of the processed computation
+     * @throws java.util.concurrent.RejectedExecutionException
+     *             if this executor was stopped
+     */
+    public Future<Computation> submit(final ComputationHandler handler) {
+        Future<Computation> future = executor.submit(new Callable<Computation>() {
+            @Override
+            public Computation call() throws Exception {
+                activeHandlers.add(handler);
+                try {
+                    if (stopped) {
+                        handler.close();
+                        throw new IllegalStateException("executor stopped");
+                    }
+                    Computation computation = handler.process();
+                    completedHandlers.increment();
+                    return computation;
+                } catch (RuntimeException e) {
+                    failedHandlers.increment();
+                    throw e;
+                } finally {
+                    activeHandlers.remove(handler);
+                }
+            }
+        });
+        submittedHandlers.increment();
+        return future;
+    }
+
+    /**
+     * Stops accepting handlers and closes the computations of all handlers submitted so far,
+     * making them return.
+     */
+    public void stopAll() {
+        stopped = true;
+        executor.shutdown();
+        for (ComputationHandler handler : activeHandlers) {
+            try {
+                handler.close();
+            } catch (RuntimeException e) {
+                log.debug("failed to close computation handler", e);
+            }
+        }
+    }
+
+    /**
+     * Waits for all submitted handlers to return, after {@link #stopAll()} was called or once
+     * all computations completed and {@link #close()} was called.
+     *
+     * @param timeout
+     *            maximum time to wait
+     * @param unit
+     *            unit of the timeout
+     * @return true if all handlers returned, false if the timeout elapsed first
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * @return whether handlers run on virtual threads
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return number of handlers currently processing their computation
+     */
+    public int getActiveHandlers() {
+        return activeHandlers.size();
+    }
+
+    /**
+     * @return number of handlers submitted to this executor
+     */
+    public long getSubmittedHandlers() {
+        return submittedHandlers.sum();
+    }
+
+    /**
+     * @return number of handlers whose computation completed
+     */
+    public long getCompletedHandlers() {
+        return completedHandlers.sum();
+    }
+
+    /**
+     * @return number of handlers that failed
+     */
+    public long getFailedHandlers() {
+        return failedHandlers.sum();
+    }
+
+    /**
+     * Stops accepting handlers, letting the handlers already submitted run to completion.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,71 @@
+package com.signalfx.signalflow;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Unbounded metadata store, retaining the metadata of every timeseries until it expires.
+ *
+ * The sorted set of known timeseries IDs is maintained as timeseries come and go, rather than
+ * sorted on each call to {@link #getKnownTSIDs()}.
+ */
+public class HashMetadataStore implements MetadataStore {
+
+    public static final MetadataStoreFactory FACTORY = new MetadataStoreFactory() {
+        @Override
+        public MetadataStore createMetadataStore() {
+            return new HashMetadataStore();
+        }
+    };
+
+    protected final Map<String, Map<String, Object>> entries;
+    private final SortedSet<String> knownTSIDs = new ConcurrentSkipListSet<String>();
+    private final SortedSet<String> knownTSIDsView = Collections.unmodifiableSortedSet(knownTSIDs);
+
+    public HashMetadataStore() {
+        this(new HashMap<String, Map<String, Object>>());
+    }
+
+    protected HashMetadataStore(Map<String, Map<String, Object>> entries) {
+        this.entries = entries;
+    }
+
+    @Override
+    public synchronized Map<String, Object> get(String tsId) {
+        return entries.get(tsId);
+    }
+
+    @Override
+    public synchronized void put(String tsId, Map<String, Object> properties) {
+        if (entries.put(tsId, properties) == null) {
+            knownTSIDs.add(tsId);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String tsId) {
+        if (entries.remove(tsId) != null) {
+            knownTSIDs.remove(tsId);
+        }
+    }
+
+    @Override
+    public Collection<String> getKnownTSIDs() {
+        return knownTSIDsView;
+    }
+
+    @Override
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        knownTSIDs.clear();
+    }
+}
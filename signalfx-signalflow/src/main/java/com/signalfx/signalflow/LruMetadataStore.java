@@ -0,0 +1,53 @@
+package com.signalfx.signalflow;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Metadata store bounded to a maximum number of timeseries, evicting the metadata of the least
+ * recently used timeseries when full.
+ *
+ * Suited to high-churn computations whose timeseries rarely get expired explicitly. Metadata of
+ * an evicted timeseries is no longer available from its computation until the timeseries'
+ * metadata is received again.
+ */
+public class LruMetadataStore extends HashMetadataStore {
+
+    private final int maxEntries;
+
+    public LruMetadataStore(int maxEntries) {
+        super(new LinkedHashMap<String, Map<String, Object>>(16, 0.75f, true));
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param maxEntries
+     *            maximum number of timeseries retained by each store
+     * @return factory of LRU metadata stores of the given size
+     */
+    public static MetadataStoreFactory factory(final int maxEntries) {
+        return new MetadataStoreFactory() {
+            @Override
+            public MetadataStore createMetadataStore() {
+                return new LruMetadataStore(maxEntries);
+            }
+        };
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public synchronized void put(String tsId, Map<String, Object> properties) {
+        super.put(tsId, properties);
+        if (entries.size() > maxEntries) {
+            Iterator<String> eldest = entries.keySet().iterator();
+            remove(eldest.next());
+        }
+    }
+}
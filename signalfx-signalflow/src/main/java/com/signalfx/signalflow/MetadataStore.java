@@ -0,0 +1,54 @@
+package com.signalfx.signalflow;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Storage for the metadata of the timeseries output by a computation, keyed by timeseries ID.
+ *
+ * Implementations decide how much metadata is retained and how it is represented in memory. A
+ * store is owned by a single computation, which updates it from the thread iterating over its
+ * output; reads may happen from other threads.
+ */
+public interface MetadataStore {
+
+    /**
+     * @param tsId
+     *            unique identifier of timeseries
+     * @return the metadata properties of the timeseries, or null if not available
+     */
+    Map<String, Object> get(String tsId);
+
+    /**
+     * Stores the metadata properties of a timeseries, replacing any previous value.
+     *
+     * @param tsId
+     *            unique identifier of timeseries
+     * @param properties
+     *            metadata properties of the timeseries
+     */
+    void put(String tsId, Map<String, Object> properties);
+
+    /**
+     * Discards the metadata of a timeseries.
+     *
+     * @param tsId
+     *            unique identifier of timeseries
+     */
+    void remove(String tsId);
+
+    /**
+     * @return read-only, sorted view of the IDs of the timeseries currently in the store
+     */
+    Collection<String> getKnownTSIDs();
+
+    /**
+     * @return number of timeseries currently in the store
+     */
+    int size();
+
+    /**
+     * Discards all metadata.
+     */
+    void clear();
+}
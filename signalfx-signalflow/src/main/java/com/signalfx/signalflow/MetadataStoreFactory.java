@@ -0,0 +1,11 @@
+package com.signalfx.signalflow;
+
+/**
+ * A factory that creates the metadata store of each computation.
+ */
+public interface MetadataStoreFactory {
+    /**
+     * @return A newly created metadata store.
+     */
+    MetadataStore createMetadataStore();
+}
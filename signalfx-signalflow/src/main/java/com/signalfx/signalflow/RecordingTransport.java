@@ -0,0 +1,335 @@
+package com.signalfx.signalflow;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Transport recording the streams of the computations it executes or attaches to, for later
+ * replay with {@link ReplayTransport}.
+ *
+ * All operations are delegated to another transport. Every stream message received by the
+ * channels it creates is appended to a binary log, along with the time at which it was received:
+ * binary data frames verbatim (when the delegate is a {@link WebSocketTransport}), other messages
+ * as their event name and length-prefixed JSON payload. Messages are recorded as the transport
+ * receives them when its channels queue them, as {@link WebSocketTransport} channels do, whether
+ * or not they are consumed; otherwise, e.g. with {@link ServerSentEventsTransport}, which only
+ * reads the stream as it is consumed, they are recorded when consumed.
+ *
+ * Messages are handed off to a writer thread, so that a slow disk never holds up the transport
+ * receiving them; messages not written yet are held in memory meanwhile. The log is complete
+ * once this transport is closed.
+ */
+public class RecordingTransport implements SignalFlowTransport {
+
+    protected static final Logger log = LoggerFactory.getLogger(RecordingTransport.class);
+
+    static final int MAGIC = 0x53465852; // "SFXR"
+    static final byte FORMAT_VERSION = 1;
+    static final byte CHANNEL_RECORD = 0;
+    static final byte JSON_RECORD = 1;
+    static final byte BINARY_RECORD = 2;
+
+    private final SignalFlowTransport transport;
+    private final DataOutputStream out;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("signalflow-recorder-%d").setDaemon(true)
+                    .build());
+    // only used by the writer thread, once the recording is started
+    private long lastRecordNanos = System.nanoTime();
+    // guarded by this
+    private int channels;
+    private boolean closed;
+
+    /**
+     * @param transport
+     *            transport to delegate to
+     * @param file
+     *            file to write the recording to
+     * @throws SignalFlowException
+     *             if the file cannot be written
+     */
+    public RecordingTransport(SignalFlowTransport transport, File file) {
+        this(transport, open(file));
+    }
+
+    /**
+     * @param transport
+     *            transport to delegate to
+     * @param out
+     *            stream to write the recording to, closed when this transport is closed
+     * @throws SignalFlowException
+     *             if the stream cannot be written
+     */
+    public RecordingTransport(SignalFlowTransport transport, OutputStream out) {
+        this.transport = transport;
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        try {
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(FORMAT_VERSION);
+        } catch (IOException ex) {
+            throw new SignalFlowException("failed to write recording", ex);
+        }
+        if (transport instanceof WebSocketTransport) {
+            ((WebSocketTransport) transport).setRetainBinaryFrames(true);
+        }
+    }
+
+    private static OutputStream open(File file) {
+        try {
+            return new FileOutputStream(file);
+        } catch (IOException ex) {
+            throw new SignalFlowException("failed to open recording " + file, ex);
+        }
+    }
+
+    @Override
+    public Channel attach(String handle, Map<String, String> parameters) {
+        return record(transport.attach(handle, parameters));
+    }
+
+    @Override
+    public Channel execute(String program, Map<String, String> parameters) {
+        return record(transport.execute(program, parameters));
+    }
+
+    @Override
+    public Channel preflight(String program, Map<String, String> parameters) {
+        return record(transport.preflight(program, parameters));
+    }
+
+    @Override
+    public void start(String program, Map<String, String> parameters) {
+        transport.start(program, parameters);
+    }
+
+    @Override
+    public void stop(String handle, Map<String, String> parameters) {
+        transport.stop(handle, parameters);
+    }
+
+    @Override
+    public void keepalive(String handle) {
+        transport.keepalive(handle);
+    }
+
+    /**
+     * Closes the delegate transport, then waits for the pending messages to be written and
+     * closes the recording.
+     */
+    @Override
+    public void close(int code, String reason) {
+        try {
+            transport.close(code, reason);
+        } finally {
+            synchronized (this) {
+                if (!closed) {
+                    closed = true;
+                    writer.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                out.close();
+                            } catch (IOException ex) {
+                                log.warn("failed to close recording", ex);
+                            }
+                        }
+                    });
+                    writer.shutdown();
+                }
+            }
+            try {
+                writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized Channel record(Channel channel) {
+        final int id = channels++;
+        final long openedNanos = System.nanoTime();
+        write(new Runnable() {
+            @Override
+            public void run() {
+                writeHeader(CHANNEL_RECORD, id, openedNanos);
+            }
+        });
+        return new RecordingChannel(id, channel);
+    }
+
+    /**
+     * Hands a message off to the writer thread, along with the time it was received at.
+     */
+    private void record(final int channel, StreamMessage message) {
+        final long receivedNanos = System.nanoTime();
+        final byte[] frame = message.getFrame();
+        final byte[] event;
+        final byte[] data;
+        if (frame != null) {
+            // no longer needed once handed off
+            message.setFrame(null);
+            event = null;
+            data = frame;
+        } else {
+            event = message.getEvent().getBytes(StandardCharsets.UTF_8);
+            byte[] raw = message.getRawData();
+            if (raw == null) {
+                String text = message.getData();
+                raw = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+            }
+            data = raw;
+        }
+        write(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (event == null) {
+                        writeHeader(BINARY_RECORD, channel, receivedNanos);
+                    } else {
+                        writeHeader(JSON_RECORD, channel, receivedNanos);
+                        writeBytes(out, event);
+                    }
+                    writeBytes(out, data);
+                } catch (IOException ex) {
+                    log.warn("failed to record message of channel {}", channel, ex);
+                }
+            }
+        });
+    }
+
+    private synchronized void write(Runnable write) {
+        if (!closed) {
+            writer.execute(write);
+        }
+    }
+
+    private void writeHeader(byte type, int channel, long recordNanos) {
+        // records are written in the order they were handed off, which their times follow
+        long elapsedMicros = Math.max(0,
+                TimeUnit.NANOSECONDS.toMicros(recordNanos - lastRecordNanos));
+        try {
+            out.writeByte(type);
+            writeVarLong(out, channel);
+            writeVarLong(out, elapsedMicros);
+        } catch (IOException ex) {
+            log.warn("failed to write recording", ex);
+            return;
+        }
+        // advance by the recorded time only, so that truncation errors do not accumulate
+        lastRecordNanos += TimeUnit.MICROSECONDS.toNanos(elapsedMicros);
+    }
+
+    static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed variable-length integer");
+    }
+
+    /**
+     * Channel recording the stream messages of the channel it wraps.
+     */
+    private final class RecordingChannel extends Channel {
+
+        private final Channel channel;
+
+        RecordingChannel(final int id, Channel channel) {
+            super();
+            this.channel = channel;
+            final boolean queued = channel.setReceiver(new Receiver() {
+                @Override
+                public void received(StreamMessage message) {
+                    record(id, message);
+                }
+            });
+            final Iterator<StreamMessage> messages = channel.iterator;
+            this.iterator = new Iterator<StreamMessage>() {
+                @Override
+                public boolean hasNext() {
+                    return messages.hasNext();
+                }
+
+                @Override
+                public StreamMessage next() {
+                    StreamMessage message = messages.next();
+                    if (!queued) {
+                        record(id, message);
+                    }
+                    return message;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("remove from stream not supported");
+                }
+            };
+        }
+
+        @Override
+        public boolean awaitNext(long timeoutMs) {
+            return channel.awaitNext(timeoutMs);
+        }
+
+        @Override
+        public String getLastEventId() {
+            return channel.getLastEventId();
+        }
+
+        @Override
+        public long getReconnectionDelayMs() {
+            return channel.getReconnectionDelayMs();
+        }
+
+        @Override
+        public boolean isResumable() {
+            return channel.isResumable();
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            channel.close();
+        }
+    }
+}
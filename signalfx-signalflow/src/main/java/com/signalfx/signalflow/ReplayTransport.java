@@ -0,0 +1,346 @@
+package com.signalfx.signalflow;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Transport serving streams recorded by {@link RecordingTransport}, without a SignalFlow
+ * backend.
+ *
+ * Each execute, attach or preflight call returns the next recorded channel, in recording order,
+ * whatever the program or parameters. Stream messages are replayed at the pace they were recorded
+ * at, optionally sped up, or as fast as they can be consumed. Start, stop and keepalive calls are
+ * ignored. A replayed stream that ends completes its computation rather than having it
+ * reconnect, since the next recorded channel is not a continuation of the same stream.
+ *
+ * The recording is read as its messages are consumed, so that memory does not grow with its
+ * length; only the records of channels recorded at the same time as the one being consumed, and
+ * not requested yet, are held, up to a limit per channel beyond which the channel is dropped and
+ * skipped. The recording is closed when this transport is closed.
+ */
+public class ReplayTransport implements SignalFlowTransport {
+
+    /**
+     * Speed replaying stream messages as fast as they can be consumed.
+     */
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    public static final int DEFAULT_MAX_PENDING_RECORDS = 100000;
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayTransport.class);
+
+    private final DataInputStream data;
+    private final double speed;
+    private final int maxPendingRecords;
+    // guarded by this: records read but not consumed yet, by channel, null once the channel is
+    // closed or dropped, and the time each channel was opened at
+    private final List<Queue<Record>> pending = new ArrayList<Queue<Record>>();
+    private final List<Long> openedMicros = new ArrayList<Long>();
+    private long timeMicros;
+    private int served;
+    private boolean ended;
+
+    protected ReplayTransport(InputStream in, double speed) throws IOException {
+        this(in, speed, DEFAULT_MAX_PENDING_RECORDS);
+    }
+
+    protected ReplayTransport(InputStream in, double speed, int maxPendingRecords)
+            throws IOException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive");
+        }
+        if (maxPendingRecords < 1) {
+            throw new IllegalArgumentException("maxPendingRecords must be positive");
+        }
+        this.speed = speed;
+        this.maxPendingRecords = maxPendingRecords;
+
+        this.data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != RecordingTransport.MAGIC) {
+            throw new IOException("not a SignalFlow recording");
+        }
+        byte version = data.readByte();
+        if (version != RecordingTransport.FORMAT_VERSION) {
+            throw new IOException("unsupported recording format version " + version);
+        }
+    }
+
+    /**
+     * @return whether recorded channels remain to be served, reading the recording up to the next
+     *         one
+     */
+    public synchronized boolean hasRemainingChannels() {
+        while (true) {
+            while (served < pending.size() && pending.get(served) == null) {
+                // dropped before being requested
+                served++;
+            }
+            if (served < pending.size()) {
+                return true;
+            }
+            if (!readRecord()) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public Channel attach(String handle, Map<String, String> parameters) {
+        return nextChannel();
+    }
+
+    @Override
+    public Channel execute(String program, Map<String, String> parameters) {
+        return nextChannel();
+    }
+
+    @Override
+    public Channel preflight(String program, Map<String, String> parameters) {
+        return nextChannel();
+    }
+
+    @Override
+    public void start(String program, Map<String, String> parameters) {}
+
+    @Override
+    public void stop(String handle, Map<String, String> parameters) {}
+
+    @Override
+    public void keepalive(String handle) {}
+
+    @Override
+    public synchronized void close(int code, String reason) {
+        ended = true;
+        pending.clear();
+        IOUtils.closeQuietly(data);
+    }
+
+    private synchronized Channel nextChannel() {
+        if (!hasRemainingChannels()) {
+            throw new SignalFlowException("no more recorded channels to replay");
+        }
+        int id = served++;
+        return new ReplayChannel(id, openedMicros.get(id));
+    }
+
+    /**
+     * Reads the next record of the recording, queuing it for its channel.
+     *
+     * @return false at the end of the recording
+     */
+    private boolean readRecord() {
+        if (ended) {
+            return false;
+        }
+        try {
+            byte type = data.readByte();
+            int channel = (int) RecordingTransport.readVarLong(data);
+            timeMicros += RecordingTransport.readVarLong(data);
+
+            Record record = new Record();
+            record.type = type;
+            record.timeMicros = timeMicros;
+            switch (type) {
+            case RecordingTransport.CHANNEL_RECORD:
+                pending.add(new LinkedList<Record>());
+                openedMicros.add(timeMicros);
+                return true;
+            case RecordingTransport.JSON_RECORD:
+                record.event = new String(RecordingTransport.readBytes(data),
+                        StandardCharsets.UTF_8);
+                record.payload = RecordingTransport.readBytes(data);
+                break;
+            case RecordingTransport.BINARY_RECORD:
+                record.payload = RecordingTransport.readBytes(data);
+                break;
+            default:
+                throw new IOException("unsupported record type " + type);
+            }
+            if (channel >= pending.size()) {
+                throw new IOException("record for unknown channel " + channel);
+            }
+            Queue<Record> records = pending.get(channel);
+            if (records != null) {
+                records.add(record);
+                if (channel >= served && records.size() > maxPendingRecords) {
+                    log.warn("dropping recorded channel {}, not requested within {} records",
+                            channel, maxPendingRecords);
+                    pending.set(channel, null);
+                }
+            }
+            return true;
+        } catch (EOFException eof) {
+            // end of the recording, or a recording cut short
+            ended = true;
+            return false;
+        } catch (IOException ex) {
+            ended = true;
+            throw new SignalFlowException("failed to read recording", ex);
+        }
+    }
+
+    /**
+     * @return next record of the channel, or null if there is none left
+     */
+    private synchronized Record nextRecord(int channel) {
+        Queue<Record> records = pending.size() > channel ? pending.get(channel) : null;
+        while (records != null && records.isEmpty() && readRecord()) {
+            // read up to the next record of the channel
+        }
+        return records == null ? null : records.poll();
+    }
+
+    private synchronized void closeChannel(int channel) {
+        if (channel < pending.size()) {
+            pending.set(channel, null);
+        }
+    }
+
+    /**
+     * Recorded stream message.
+     */
+    private static final class Record {
+        private byte type;
+        private long timeMicros;
+        private String event;
+        private byte[] payload;
+    }
+
+    /**
+     * Channel replaying recorded stream messages.
+     */
+    private final class ReplayChannel extends Channel {
+
+        private final int id;
+
+        ReplayChannel(final int id, final long openedMicros) {
+            super();
+            this.id = id;
+            final long startNanos = System.nanoTime();
+
+            this.iterator = new Iterator<StreamMessage>() {
+                // next decoded message and the time it is due at, read ahead by hasNext()
+                private StreamMessage next;
+                private long nextMicros;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null) {
+                        Record record = nextRecord(id);
+                        if (record == null) {
+                            return false;
+                        }
+                        // undecodable frames are skipped
+                        next = record.type == RecordingTransport.JSON_RECORD
+                                ? new StreamMessage(record.event, null, record.payload)
+                                : WebSocketTransport.TransportConnection
+                                        .decodeBinaryFrame(record.payload);
+                        nextMicros = record.timeMicros;
+                    }
+                    return true;
+                }
+
+                @Override
+                public StreamMessage next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException("no more stream messages");
+                    }
+                    if (speed != MAX_SPEED) {
+                        long dueNanos = startNanos + (long) (TimeUnit.MICROSECONDS
+                                .toNanos(nextMicros - openedMicros) / speed);
+                        Uninterruptibles.sleepUninterruptibly(dueNanos - System.nanoTime(),
+                                TimeUnit.NANOSECONDS);
+                    }
+                    StreamMessage message = next;
+                    next = null;
+                    return message;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("remove from stream not supported");
+                }
+            };
+        }
+
+        @Override
+        public boolean isResumable() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            closeChannel(id);
+        }
+    }
+
+    /**
+     * Builder of replay transport instances.
+     */
+    public static class TransportBuilder {
+
+        private final File file;
+        private double speed = 1;
+        private int maxPendingRecords = DEFAULT_MAX_PENDING_RECORDS;
+
+        public TransportBuilder(File file) {
+            this.file = file;
+        }
+
+        /**
+         * @param speed
+         *            replay speed relative to the recording, e.g. 1 for the original pace, 10 for
+         *            ten times faster, or {@link ReplayTransport#MAX_SPEED}
+         * @return this builder
+         */
+        public TransportBuilder setSpeed(double speed) {
+            this.speed = speed;
+            return this;
+        }
+
+        /**
+         * @param maxPendingRecords
+         *            records held for a channel not requested yet, beyond which it is dropped
+         * @return this builder
+         */
+        public TransportBuilder setMaxPendingRecords(int maxPendingRecords) {
+            this.maxPendingRecords = maxPendingRecords;
+            return this;
+        }
+
+        public ReplayTransport build() {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                return new ReplayTransport(in, speed, maxPendingRecords);
+            } catch (IOException ex) {
+                IOUtils.closeQuietly(in);
+                throw new SignalFlowException("failed to read recording " + file, ex);
+            } catch (RuntimeException ex) {
+                IOUtils.closeQuietly(in);
+                throw ex;
+            }
+        }
+    }
+}
@@ -3,19 +3,18 @@
  */
 package com.signalfx.signalflow;
 
-import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.regex.Pattern;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
@@ -24,13 +23,21 @@ import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.signalfx.connection.AbstractHttpReceiverConnection;
+import com.signalfx.connection.SharedSSLContext;
 import com.signalfx.endpoint.SignalFxEndpoint;
 
 /**
@@ -48,12 +55,14 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
     protected static final Logger log = LoggerFactory.getLogger(ServerSentEventsTransport.class);
     public static final Integer DEFAULT_TIMEOUT = 1000;
     public static final Integer DEFAULT_MAX_RETRIES = 3;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
 
     protected final String token;
     protected final SignalFxEndpoint endpoint;
     protected final String path;
     protected Integer timeout = DEFAULT_TIMEOUT;
     protected Integer maxRetries = DEFAULT_MAX_RETRIES;
+    protected final TransportConnection connection;
 
     protected ServerSentEventsTransport(final String token, final SignalFxEndpoint endpoint,
                                         final int apiVersion, final Integer timeout) {
@@ -62,11 +71,40 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
 
     protected ServerSentEventsTransport(final String token, final SignalFxEndpoint endpoint,
                                         final int apiVersion, final Integer timeout, final Integer maxRetries) {
+        this(token, endpoint, apiVersion, timeout, maxRetries, DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    /**
+     * All requests made by this transport share a single HTTP client backed by a connection pool,
+     * so that control requests (start, stop, keepalive) reuse warm keep-alive connections and
+     * TLS sessions instead of handshaking every time. Each open channel holds on to one of the
+     * pooled connections while it streams.
+     *
+     * @param maxConnectionsPerRoute
+     *            maximum number of pooled connections to the endpoint; must accommodate the
+     *            channels expected to be open at the same time plus control requests
+     */
+    protected ServerSentEventsTransport(final String token, final SignalFxEndpoint endpoint,
+                                        final int apiVersion, final Integer timeout, final Integer maxRetries,
+                                        final int maxConnectionsPerRoute) {
         this.token = token;
         this.endpoint = endpoint;
         this.path = "/v" + apiVersion + "/signalflow";
         this.timeout = timeout;
         this.maxRetries = maxRetries;
+        this.connection = new TransportConnection(endpoint, timeout, maxRetries,
+                createConnectionManager(maxConnectionsPerRoute));
+    }
+
+    private static HttpClientConnectionManager createConnectionManager(int maxConnectionsPerRoute) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", new SSLConnectionSocketFactory(SharedSSLContext.get()))
+                        .build());
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setMaxTotal(maxConnectionsPerRoute);
+        return connectionManager;
     }
 
     @Override
@@ -75,18 +113,14 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
             log.debug("attach: [ {} ] with parameters: {}", handle, parameters);
         }
 
-        TransportConnection connection = null;
         CloseableHttpResponse response = null;
         try {
-            connection = new TransportConnection(this.endpoint, timeout, maxRetries);
-
-            response = connection.post(this.token, this.path + "/" + handle + "/attach", parameters,
-                    null);
+            response = connection.post(this.token, this.path + "/" + handle + "/attach",
+                    withoutLastEventId(parameters), null, lastEventId(parameters));
 
             return new TransportChannel(connection, response);
         } catch (Exception ex) {
             close(response);
-            close(connection);
             throw new SignalFlowException("failed to create transport channel for attach", ex);
         }
     }
@@ -98,17 +132,14 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
             log.debug("execute: [ {} ] with parameters: {}", program, parameters);
         }
 
-        TransportConnection connection = null;
         CloseableHttpResponse response = null;
         try {
-            connection = new TransportConnection(this.endpoint, timeout, maxRetries);
-
-            response = connection.post(this.token, this.path + "/execute", parameters, program);
+            response = connection.post(this.token, this.path + "/execute",
+                    withoutLastEventId(parameters), program, lastEventId(parameters));
 
             return new TransportChannel(connection, response);
         } catch (IOException ioex) {
             close(response);
-            close(connection);
             throw new SignalFlowException("failed to create transport channel for execute", ioex);
         }
     }
@@ -120,17 +151,13 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
             log.debug("preflight: [ {} ] with parameters: {}", program, parameters);
         }
 
-        TransportConnection connection = null;
         CloseableHttpResponse response = null;
         try {
-            connection = new TransportConnection(this.endpoint, timeout, maxRetries);
-
             response = connection.post(this.token, this.path + "/preflight", parameters, program);
 
             return new TransportChannel(connection, response);
         } catch (IOException ioex) {
             close(response);
-            close(connection);
             throw new SignalFlowException("failed to create transport channel for execute", ioex);
         }
     }
@@ -140,16 +167,13 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
             log.debug("start: [ {} ] with parameters: {}", program, parameters);
         }
 
-        TransportConnection connection = null;
         CloseableHttpResponse response = null;
         try {
-            connection = new TransportConnection(this.endpoint, timeout, maxRetries);
             response = connection.post(this.token, this.path + "/start", parameters, program);
         } catch (Exception ex) {
             throw new SignalFlowException("failed to start program - " + program, ex);
         } finally {
-            close(response);
-            close(connection);
+            release(response);
         }
     }
 
@@ -159,17 +183,14 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
             log.debug("stop: [ {} ] with parameters: {}", handle, parameters);
         }
 
-        TransportConnection connection = null;
         CloseableHttpResponse response = null;
         try {
-            connection = new TransportConnection(this.endpoint, timeout, maxRetries);
             response = connection.post(this.token, this.path + "/" + handle + "/stop", parameters,
                     null);
         } catch (Exception ex) {
             throw new SignalFlowException("failed to stop program - " + handle, ex);
         } finally {
-            close(response);
-            close(connection);
+            release(response);
         }
     }
 
@@ -179,23 +200,48 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
             log.debug("keepalive: [ {} ]", handle);
         }
 
-        TransportConnection connection = null;
         CloseableHttpResponse response = null;
         try {
-            connection = new TransportConnection(this.endpoint, timeout, maxRetries);
             response = connection.post(this.token, this.path + "/" + handle + "/keepalive", null,
                     null);
         } catch (Exception ex) {
             throw new SignalFlowException("failed to set keepalive for program - " + handle, ex);
         } finally {
-            close(response);
-            close(connection);
+            release(response);
         }
     }
 
     @Override
     public void close(int code, String reason) {
-        // nothing to close (separate connections are used and closed by the channel using it)
+        close(connection);
+    }
+
+    private static String lastEventId(Map<String, String> parameters) {
+        return parameters != null ? parameters.get(LAST_EVENT_ID_PARAMETER) : null;
+    }
+
+    private static Map<String, String> withoutLastEventId(Map<String, String> parameters) {
+        if ((parameters == null) || !parameters.containsKey(LAST_EVENT_ID_PARAMETER)) {
+            return parameters;
+        }
+        Map<String, String> filtered = new HashMap<String, String>(parameters);
+        filtered.remove(LAST_EVENT_ID_PARAMETER);
+        return filtered;
+    }
+
+    /**
+     * Consumes what is left of the response before closing it, so that its connection goes back
+     * to the pool to be reused.
+     */
+    private void release(CloseableHttpResponse response) {
+        if (response != null) {
+            try {
+                EntityUtils.consume(response.getEntity());
+            } catch (IOException ioex) {
+                log.debug("error consuming response", ioex);
+            }
+        }
+        close(response);
     }
 
     private void close(CloseableHttpResponse response) {
@@ -229,6 +275,7 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
         private int port = 443;
         private int timeout = 1;
         private int version = 2;
+        private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
 
         public TransportBuilder(String token) {
             this.token = token;
@@ -259,10 +306,16 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
             return this;
         }
 
+        public TransportBuilder setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
         public ServerSentEventsTransport build() {
             SignalFxEndpoint endpoint = new SignalFxEndpoint(this.protocol, this.host, this.port);
             ServerSentEventsTransport transport = new ServerSentEventsTransport(this.token,
-                    endpoint, this.version, this.timeout * 1000);
+                    endpoint, this.version, this.timeout * 1000, DEFAULT_MAX_RETRIES,
+                    this.maxConnectionsPerRoute);
             return transport;
         }
     }
@@ -282,7 +335,12 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
         }
 
         public TransportConnection(SignalFxEndpoint endpoint, int timeoutMs, int maxRetries) {
-            super(endpoint, timeoutMs, maxRetries, new BasicHttpClientConnectionManager());
+            this(endpoint, timeoutMs, maxRetries, new BasicHttpClientConnectionManager());
+        }
+
+        public TransportConnection(SignalFxEndpoint endpoint, int timeoutMs, int maxRetries,
+                                   HttpClientConnectionManager connectionManager) {
+            super(endpoint, timeoutMs, maxRetries, connectionManager);
 
             this.transportRequestConfig = RequestConfig.custom().setSocketTimeout(0)
                     .setConnectionRequestTimeout(this.requestConfig.getConnectionRequestTimeout())
@@ -295,6 +353,18 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
         public CloseableHttpResponse post(String token, String path,
                                           final Map<String, String> parameters, String body)
                 throws SignalFlowException {
+            return post(token, path, parameters, body, null);
+        }
+
+        /**
+         * @param lastEventId
+         *            id of the last event received by the channel being resumed, sent as the
+         *            Last-Event-ID header; may be null
+         */
+        public CloseableHttpResponse post(String token, String path,
+                                          final Map<String, String> parameters, String body,
+                                          String lastEventId)
+                throws SignalFlowException {
             HttpPost httpPost = null;
             try {
                 List<NameValuePair> params = new ArrayList<NameValuePair>();
@@ -312,6 +382,9 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
                 httpPost.setHeader("X-SF-TOKEN", token);
                 httpPost.setHeader("User-Agent", USER_AGENT);
                 httpPost.setHeader("Content-Type", "text/plain");
+                if (lastEventId != null) {
+                    httpPost.setHeader("Last-Event-ID", lastEventId);
+                }
                 if (body != null) {
                     HttpEntity httpEntity = new StringEntity(body);
                     httpPost.setEntity(httpEntity);
@@ -328,6 +401,7 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
                 if ((statuscode < 200) || (statuscode >= 300)) {
 
                     try {
+                        EntityUtils.consumeQuietly(response.getEntity());
                         response.close();
                     } catch (IOException ex) {
                         log.error("failed to close response", ex);
@@ -381,61 +455,111 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
         public void close() {
             super.close();
 
+            // the connection is shared with the transport, closing the response while the stream
+            // is still open discards its underlying pooled connection
             try {
                 this.response.close();
             } catch (IOException ex) {
                 log.error("failed to close response", ex);
             }
 
-            try {
-                this.connection.close();
-            } catch (IOException ex) {
-                log.error("failed to close connection", ex);
-            }
-
             this.streamParser.close();
         }
+
+        @Override
+        public String getLastEventId() {
+            return this.streamParser.getLastEventId();
+        }
+
+        @Override
+        public long getReconnectionDelayMs() {
+            return this.streamParser.getReconnectionTimeoutMs();
+        }
     }
 
+    /**
+     * Server-Sent Events stream parser.
+     *
+     * Scans the UTF-8 encoded event stream byte by byte into reusable buffers, without decoding
+     * lines into strings. Only the data payload of each event is materialized, as a byte array
+     * handed over as-is to the JSON decoder.
+     */
     public static class TransportEventStreamParser implements Iterator<StreamMessage>, Closeable {
 
         protected static final Logger log = LoggerFactory
                 .getLogger(TransportEventStreamParser.class);
 
-        private static final String EVENT = "event";
-        private static final String ID = "id";
-        private static final String DATA = "data";
-        private static final String RETRY = "retry";
+        private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+        private static final byte[] EVENT = "event".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] ID = "id".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] DATA = "data".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] RETRY = "retry".getBytes(StandardCharsets.US_ASCII);
         private static final String DEFAULT_EVENT = "message";
-        private static final String EMPTY_STRING = "";
-        private static final Pattern DIGITS_ONLY = Pattern.compile("^[\\d]+$");
 
-        private BufferedReader eventStreamReader;
+        private static final byte LF = '\n';
+        private static final byte CR = '\r';
+        private static final byte COLON = ':';
+        private static final byte SPACE = ' ';
+        private static final byte[] BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+        // well-known event names, reused instead of decoding a new string for every event
+        private static final String[] KNOWN_EVENTS;
+        private static final byte[][] KNOWN_EVENT_BYTES;
+        static {
+            StreamMessage.Kind[] kinds = StreamMessage.Kind.values();
+            KNOWN_EVENTS = new String[kinds.length];
+            KNOWN_EVENT_BYTES = new byte[kinds.length][];
+            for (int i = 0; i < kinds.length; i++) {
+                KNOWN_EVENTS[i] = kinds[i].toString();
+                KNOWN_EVENT_BYTES[i] = KNOWN_EVENTS[i].getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        private InputStream eventStream;
         private boolean endOfStreamReached = false;
 
-        private int reconnectionTimeoutMs = 1000; // default is 1 second
+        // read buffer; bytes between position and limit have not been scanned yet
+        private byte[] buffer;
+        private int position;
+        private int limit;
+        private boolean skipLineFeed = false;
+        private boolean firstRead = true;
+
+        // -1 until the stream sets a reconnection time
+        private int reconnectionTimeoutMs = -1;
         private StreamMessage nextMessage;
         private String lastEventId;
-        private String eventNameBuffer = DEFAULT_EVENT;
-        private StringBuilder dataBuffer = new StringBuilder();
+        private byte[] lastEventIdBytes;
+        private String eventName = DEFAULT_EVENT;
+        private byte[] dataBuffer = new byte[DEFAULT_BUFFER_SIZE];
+        private int dataLength;
+        private boolean hasData;
 
-        public TransportEventStreamParser(final InputStream eventStream)
-                throws UnsupportedEncodingException {
-            this.eventStreamReader = new BufferedReader(
-                    new InputStreamReader(eventStream, "UTF-8"));
+        public TransportEventStreamParser(final InputStream eventStream) {
+            this(eventStream, DEFAULT_BUFFER_SIZE);
+        }
+
+        public TransportEventStreamParser(final InputStream eventStream, int bufferSize) {
+            this.eventStream = eventStream;
+            this.buffer = new byte[bufferSize];
         }
 
         public String getLastEventId() {
             return this.lastEventId;
         }
 
+        /**
+         * @return reconnection time set by the last {@code retry} field of the stream, in
+         *         milliseconds, or -1 if the stream did not set one
+         */
         public int getReconnectionTimeoutMs() {
             return this.reconnectionTimeoutMs;
         }
 
         @Override
         public boolean hasNext() {
-            while ((endOfStreamReached == false) && (eventStreamReader != null)
+            while ((endOfStreamReached == false) && (eventStream != null)
                     && (nextMessage == null)) {
                 parseNext();
             }
@@ -445,7 +569,7 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
 
         @Override
         public StreamMessage next() {
-            while ((endOfStreamReached == false) && (eventStreamReader != null)
+            while ((endOfStreamReached == false) && (eventStream != null)
                     && (nextMessage == null)) {
                 parseNext();
             }
@@ -471,10 +595,10 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
 
         @Override
         public void close() {
-            if (this.eventStreamReader != null) {
+            if (this.eventStream != null) {
                 try {
-                    this.eventStreamReader.close();
-                    this.eventStreamReader = null;
+                    this.eventStream.close();
+                    this.eventStream = null;
                 } catch (IOException ex) {
                     log.error("failed to close event stream", ex);
                 }
@@ -482,74 +606,219 @@ public class ServerSentEventsTransport implements SignalFlowTransport {
         }
 
         private void parseNext() {
-            if (eventStreamReader != null) {
-                try {
-                    long startTime = System.currentTimeMillis();
-                    dataBuffer.setLength(0);
-
-                    String line;
-                    while ((line = eventStreamReader.readLine()) != null) {
-                        int colonIndex;
-                        if (line.trim().isEmpty()) {
-                            // message ready for dispatch
-                            break;
-                        } else if (line.startsWith(":")) {
-                            // ignore the line
-                        } else if ((colonIndex = line.indexOf(":")) != -1) {
-                            String field = line.substring(0, colonIndex);
-                            String value = line.substring(colonIndex + 1).replaceFirst(" ",
-                                    EMPTY_STRING);
-                            processField(field, value);
-                        } else {
-                            processField(line.trim(), EMPTY_STRING);
-                        }
-                    }
+            if (eventStream == null) {
+                nextMessage = null;
+                return;
+            }
 
-                    if (line == null) {
-                        // end of stream reached
+            try {
+                long startTime = System.currentTimeMillis();
+
+                boolean dispatch = false;
+                while (!dispatch) {
+                    int lineEnd = findLineEnd();
+                    if (lineEnd == -1) {
+                        // end of stream reached: an event not terminated by a blank line is
+                        // incomplete, e.g. cut short by a dropped connection, and is discarded
+                        position = limit;
+                        hasData = false;
                         endOfStreamReached = true;
                         close();
+                        break;
                     }
 
-                    if (dataBuffer.length() > 0) {
-                        String data = dataBuffer.toString();
-                        if (data.endsWith("\n")) {
-                            data = data.substring(0, data.length() - 1);
-                        }
-
-                        nextMessage = new StreamMessage(eventNameBuffer, lastEventId, data);
+                    int lineStart = position;
+                    position = lineEnd + 1;
+                    if (buffer[lineEnd] == CR) {
+                        skipLineFeed = true;
+                    }
 
+                    if (lineEnd == lineStart) {
+                        // message ready for dispatch
+                        dispatch = true;
                     } else {
-                        log.debug(eventNameBuffer.toString());
-                        eventNameBuffer = EMPTY_STRING;
-                        nextMessage = null;
+                        processLine(lineStart, lineEnd);
                     }
+                }
 
-                    log.debug("total stream message read/parse time (ms): {}",
-                            (System.currentTimeMillis() - startTime));
+                if (hasData) {
+                    // the data buffer always ends with a line feed, which is not part of the data
+                    nextMessage = new StreamMessage(eventName, lastEventId,
+                            Arrays.copyOf(dataBuffer, dataLength - 1));
+                } else {
+                    nextMessage = null;
+                }
 
-                } catch (IOException ex) {
-                    log.error("failed to parse next stream event", ex);
-                    throw new SignalFlowException("failed to parse next stream event", ex);
+                eventName = DEFAULT_EVENT;
+                dataLength = 0;
+                hasData = false;
+
+                log.debug("total stream message read/parse time (ms): {}",
+                        (System.currentTimeMillis() - startTime));
+
+            } catch (IOException ex) {
+                log.error("failed to parse next stream event", ex);
+                close();
+                throw new ChannelDisconnectedException("failed to parse next stream event", ex);
+            }
+        }
+
+        /**
+         * Finds the end of the next line, reading more of the stream as needed.
+         *
+         * @return index in the buffer of the CR or LF terminating the next line, or -1 if the
+         *         stream ended before a complete line was read
+         */
+        private int findLineEnd() throws IOException {
+            // number of bytes after the current position already scanned for a line end
+            int scanned = 0;
+            while (true) {
+                if (skipLineFeed && (position < limit)) {
+                    // second half of a CRLF line ending
+                    skipLineFeed = false;
+                    if (buffer[position] == LF) {
+                        position++;
+                    }
                 }
-            } else {
-                nextMessage = null;
+                for (int i = position + scanned; i < limit; i++) {
+                    byte b = buffer[i];
+                    if ((b == LF) || (b == CR)) {
+                        return i;
+                    }
+                }
+                scanned = limit - position;
+
+                if (!fill()) {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * Reads more of the stream into the buffer, preserving unscanned bytes.
+         *
+         * @return false if the end of the stream has been reached
+         */
+        private boolean fill() throws IOException {
+            int remaining = limit - position;
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, remaining);
+            } else if (remaining == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            position = 0;
+            limit = remaining;
+
+            int read;
+            do {
+                read = eventStream.read(buffer, limit, buffer.length - limit);
+            } while (read == 0);
+
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+
+            if (firstRead) {
+                firstRead = false;
+                while ((limit < BOM.length) && ((read = eventStream.read(buffer, limit,
+                        buffer.length - limit)) >= 0)) {
+                    limit += read;
+                }
+                if ((limit >= BOM.length) && (buffer[0] == BOM[0]) && (buffer[1] == BOM[1])
+                        && (buffer[2] == BOM[2])) {
+                    // skip the UTF-8 byte order mark
+                    position = BOM.length;
+                }
+            }
+            return true;
+        }
+
+        private void processLine(int lineStart, int lineEnd) {
+            if (buffer[lineStart] == COLON) {
+                // comment line, ignore it
+                return;
+            }
+
+            int fieldEnd = lineEnd;
+            int valueStart = lineEnd;
+            for (int i = lineStart; i < lineEnd; i++) {
+                if (buffer[i] == COLON) {
+                    fieldEnd = i;
+                    valueStart = i + 1;
+                    if ((valueStart < lineEnd) && (buffer[valueStart] == SPACE)) {
+                        valueStart++;
+                    }
+                    break;
+                }
+            }
+
+            if (fieldEquals(lineStart, fieldEnd, DATA)) {
+                appendData(valueStart, lineEnd);
+            } else if (fieldEquals(lineStart, fieldEnd, ID)) {
+                if ((lastEventIdBytes == null)
+                        || !fieldEquals(valueStart, lineEnd, lastEventIdBytes)) {
+                    lastEventIdBytes = Arrays.copyOfRange(buffer, valueStart, lineEnd);
+                    lastEventId = new String(lastEventIdBytes, StandardCharsets.UTF_8);
+                }
+            } else if (fieldEquals(lineStart, fieldEnd, EVENT)) {
+                eventName = toEventName(valueStart, lineEnd);
+            } else if (fieldEquals(lineStart, fieldEnd, RETRY)) {
+                parseRetry(valueStart, lineEnd);
             }
         }
 
-        private void processField(String field, String value) {
-            if (DATA.equals(field)) {
-                dataBuffer.append(value).append("\n");
-            } else if (ID.equals(field)) {
-                lastEventId = value;
-            } else if (EVENT.equals(field)) {
-                eventNameBuffer = value;
-            } else if (RETRY.equals(field)) {
-                if (DIGITS_ONLY.matcher(value).matches()) {
-                    // set event stream's reconnection time to integer value
-                    reconnectionTimeoutMs = Integer.parseInt(value);
+        private void appendData(int valueStart, int lineEnd) {
+            int length = lineEnd - valueStart;
+            int required = dataLength + length + 1;
+            if (required > dataBuffer.length) {
+                dataBuffer = Arrays.copyOf(dataBuffer, Math.max(required, dataBuffer.length * 2));
+            }
+            System.arraycopy(buffer, valueStart, dataBuffer, dataLength, length);
+            dataLength += length;
+            dataBuffer[dataLength++] = LF;
+            hasData = true;
+        }
+
+        private void parseRetry(int valueStart, int lineEnd) {
+            if (valueStart == lineEnd) {
+                return;
+            }
+            long value = 0;
+            for (int i = valueStart; i < lineEnd; i++) {
+                int digit = buffer[i] - '0';
+                if ((digit < 0) || (digit > 9)) {
+                    // not digits only, ignore the field
+                    return;
+                }
+                value = value * 10 + digit;
+                if (value > Integer.MAX_VALUE) {
+                    return;
+                }
+            }
+            // set event stream's reconnection time to integer value
+            reconnectionTimeoutMs = (int) value;
+        }
+
+        private String toEventName(int valueStart, int lineEnd) {
+            for (int i = 0; i < KNOWN_EVENT_BYTES.length; i++) {
+                if (fieldEquals(valueStart, lineEnd, KNOWN_EVENT_BYTES[i])) {
+                    return KNOWN_EVENTS[i];
+                }
+            }
+            return new String(buffer, valueStart, lineEnd - valueStart, StandardCharsets.UTF_8);
+        }
+
+        private boolean fieldEquals(int start, int end, byte[] expected) {
+            if ((end - start) != expected.length) {
+                return false;
+            }
+            for (int i = 0; i < expected.length; i++) {
+                if (buffer[start + i] != expected[i]) {
+                    return false;
                 }
             }
+            return true;
         }
     }
 }
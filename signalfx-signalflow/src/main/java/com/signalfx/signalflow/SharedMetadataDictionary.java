@@ -0,0 +1,173 @@
+package com.signalfx.signalflow;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Reference-counted dictionary of timeseries metadata shared by many computations.
+ *
+ * Each computation gets its own {@link MetadataStore} view of the dictionary, tracking the
+ * timeseries known to that computation, while the metadata itself is held once per dictionary
+ * however many computations output the same timeseries. The metadata of a timeseries is dropped
+ * from the dictionary once no view references it anymore, i.e. once it expired from, or was
+ * cleared from, every computation that received it.
+ *
+ * To share metadata across clients, hand the same dictionary to each of them with
+ * {@link SignalFlowClient#setMetadataStoreFactory(MetadataStoreFactory)}.
+ */
+public class SharedMetadataDictionary implements MetadataStoreFactory {
+
+    private static final class Entry {
+        private volatile Map<String, Object> properties;
+        private int references;
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    @Override
+    public MetadataStore createMetadataStore() {
+        return new View();
+    }
+
+    /**
+     * @param tsId
+     *            unique identifier of timeseries
+     * @return the metadata properties of the timeseries, or null if no computation references it
+     */
+    public Map<String, Object> get(String tsId) {
+        Entry entry = entries.get(tsId);
+        return entry == null ? null : entry.properties;
+    }
+
+    /**
+     * @return number of distinct timeseries referenced by computations
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param tsId
+     *            unique identifier of timeseries
+     * @return number of computations referencing the timeseries
+     */
+    public int getReferenceCount(String tsId) {
+        Entry entry = entries.get(tsId);
+        if (entry == null) {
+            return 0;
+        }
+        synchronized (entry) {
+            return entry.references;
+        }
+    }
+
+    /**
+     * @return whether the store is a view of a dictionary
+     */
+    static boolean isView(MetadataStore store) {
+        return store instanceof View;
+    }
+
+    private void acquire(String tsId, Map<String, Object> properties) {
+        while (true) {
+            Entry entry = entries.get(tsId);
+            if (entry == null) {
+                Entry created = new Entry();
+                created.properties = properties;
+                created.references = 1;
+                if (entries.putIfAbsent(tsId, created) == null) {
+                    return;
+                }
+                continue;
+            }
+            synchronized (entry) {
+                // a released entry is removed from the map while holding its lock
+                if (entry.references > 0) {
+                    entry.references++;
+                    update(entry, properties);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void update(String tsId, Map<String, Object> properties) {
+        Entry entry = entries.get(tsId);
+        if (entry != null) {
+            update(entry, properties);
+        }
+    }
+
+    private static void update(Entry entry, Map<String, Object> properties) {
+        // keep the instance already shared when the metadata did not change
+        if (!Objects.equals(properties, entry.properties)) {
+            entry.properties = properties;
+        }
+    }
+
+    private void release(String tsId) {
+        Entry entry = entries.get(tsId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (--entry.references == 0) {
+                entries.remove(tsId, entry);
+            }
+        }
+    }
+
+    /**
+     * Metadata store of a single computation, referencing the metadata held by the dictionary.
+     */
+    private final class View implements MetadataStore {
+
+        private final SortedSet<String> knownTSIDs = new ConcurrentSkipListSet<String>();
+        private final SortedSet<String> knownTSIDsView =
+                Collections.unmodifiableSortedSet(knownTSIDs);
+
+        @Override
+        public Map<String, Object> get(String tsId) {
+            return knownTSIDs.contains(tsId) ? SharedMetadataDictionary.this.get(tsId) : null;
+        }
+
+        @Override
+        public synchronized void put(String tsId, Map<String, Object> properties) {
+            if (knownTSIDs.add(tsId)) {
+                acquire(tsId, properties);
+            } else {
+                update(tsId, properties);
+            }
+        }
+
+        @Override
+        public synchronized void remove(String tsId) {
+            if (knownTSIDs.remove(tsId)) {
+                release(tsId);
+            }
+        }
+
+        @Override
+        public Collection<String> getKnownTSIDs() {
+            return knownTSIDsView;
+        }
+
+        @Override
+        public int size() {
+            return knownTSIDs.size();
+        }
+
+        @Override
+        public synchronized void clear() {
+            for (String tsId : knownTSIDs) {
+                release(tsId);
+            }
+            knownTSIDs.clear();
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.google.common.collect.ImmutableMap;
 public class SignalFlowClient implements AutoCloseable {
 
     private SignalFlowTransport transport;
+    private MetadataStoreFactory metadataStoreFactory = HashMetadataStore.FACTORY;
 
     /**
      * Client Constructor that uses default transport/settings
@@ -42,6 +43,21 @@ public class SignalFlowClient implements AutoCloseable {
         this.transport = transport;
     }
 
+    /**
+     * Sets the factory of the stores holding the timeseries metadata of the computations
+     * subsequently executed or attached by this client. By default, metadata is retained for
+     * every timeseries until it expires.
+     *
+     * @param metadataStoreFactory
+     *            factory of metadata stores, e.g. {@link LruMetadataStore#factory(int)} to bound
+     *            the metadata held by each computation
+     * @return this client
+     */
+    public SignalFlowClient setMetadataStoreFactory(MetadataStoreFactory metadataStoreFactory) {
+        this.metadataStoreFactory = Preconditions.checkNotNull(metadataStoreFactory);
+        return this;
+    }
+
     /**
      * Execute the given SignalFlow program and stream the output back.
      *
@@ -51,7 +67,7 @@ public class SignalFlowClient implements AutoCloseable {
      */
     public Computation execute(String program) {
         return new Computation(this.transport, program, Collections.<String, String> emptyMap(),
-                false);
+                false, metadataStoreFactory.createMetadataStore());
     }
 
     /**
@@ -142,7 +158,8 @@ public class SignalFlowClient implements AutoCloseable {
                                Long maxDelay, Boolean persistent, Boolean immediate, String timeZone) {
         Map<String, String> params = buildParams("start", start, "stop", stop, "resolution",
                 resolution, "maxDelay", maxDelay, "persistent", persistent, "immediate", immediate, "timezone", timeZone);
-        return new Computation(this.transport, program, params, false);
+        return new Computation(this.transport, program, params, false,
+                metadataStoreFactory.createMetadataStore());
     }
 
     /**
@@ -226,7 +243,8 @@ public class SignalFlowClient implements AutoCloseable {
      */
     public Computation attach(String handle, String filters, long resolution) {
         return new Computation(this.transport, handle,
-                buildParams("filters", filters, "resolution", resolution), true);
+                buildParams("filters", filters, "resolution", resolution), true,
+                metadataStoreFactory.createMetadataStore());
     }
 
     /**
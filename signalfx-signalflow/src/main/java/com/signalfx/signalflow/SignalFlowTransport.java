@@ -17,6 +17,14 @@ public interface SignalFlowTransport {
      */
     String DEFAULT_HOST = "stream.signalfx.com";
 
+    /**
+     * Parameter carrying the id of the last event received when a computation's channel is
+     * re-created after a disconnect. Transports whose protocol supports resuming from an event id
+     * (the Last-Event-ID header of Server-Sent Events) send it that way; it is never a computation
+     * parameter.
+     */
+    String LAST_EVENT_ID_PARAMETER = "lastEventId";
+
     /**
      * Attach to an existing SignalFlow computation.
      *
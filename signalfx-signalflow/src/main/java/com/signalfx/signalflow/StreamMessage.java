@@ -3,6 +3,7 @@
  */
 package com.signalfx.signalflow;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -69,6 +70,8 @@ public class StreamMessage {
     private String event;
     private String id;
     private String data;
+    private byte[] rawData;
+    private byte[] frame;
     private Kind kind;
 
     public StreamMessage() {
@@ -88,6 +91,22 @@ public class StreamMessage {
         }
     }
 
+    /**
+     * Constructs a stream message whose data payload is kept as the UTF-8 encoded bytes read off
+     * the wire. The payload is only decoded into a string if {@link #getData()} is called.
+     *
+     * @param event
+     *            event name
+     * @param id
+     *            event id, may be null
+     * @param rawData
+     *            UTF-8 encoded data payload
+     */
+    public StreamMessage(String event, String id, byte[] rawData) {
+        this(event, id, (String) null);
+        this.rawData = rawData;
+    }
+
     public Kind getKind() {
         return this.kind;
     }
@@ -113,11 +132,35 @@ public class StreamMessage {
     }
 
     public String getData() {
+        if ((data == null) && (rawData != null)) {
+            data = new String(rawData, StandardCharsets.UTF_8);
+        }
         return data;
     }
 
     public void setData(String data) {
         this.data = data;
+        this.rawData = null;
+    }
+
+    /**
+     * @return the UTF-8 encoded data payload as read from the stream, or null if this message was
+     *         constructed from a string payload
+     */
+    public byte[] getRawData() {
+        return rawData;
+    }
+
+    /**
+     * @return the binary frame this message was decoded from, when retained by the transport, or
+     *         null
+     */
+    public byte[] getFrame() {
+        return frame;
+    }
+
+    public void setFrame(byte[] frame) {
+        this.frame = frame;
     }
 
     public String toString() {
@@ -126,7 +169,7 @@ public class StreamMessage {
         builder.append(":");
         builder.append(id);
         builder.append(":");
-        builder.append(data);
+        builder.append(getData());
         return builder.toString();
     }
 }
@@ -0,0 +1,156 @@
+package com.signalfx.signalflow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.signalfx.connection.telemetry.FlightRecorder;
+import com.signalfx.signalflow.ChannelMessage.DataMessage;
+
+/**
+ * Reassembles the batches of data messages sharing a logical timestamp into a single message per
+ * tick.
+ *
+ * Ticks made of a single batch are released as that batch, without copying it. Otherwise batches
+ * are put into a map presized after the previous tick, or into the map of the first batch while
+ * the number of batches per tick is not known yet. That number is learned again at the start of
+ * each tick from the batches of the previous tick, including those that arrived after it was
+ * released, so that a duplicated or late batch only holds up the next tick. Ticks are released as
+ * soon as their last expected batch arrives; ticks released at their deadline with fewer batches
+ * are marked partial.
+ */
+class TickAssembler {
+
+    private Map<String, Number> data;
+    private int batches;
+    private int expectedBatches;
+    // batches of the last released tick, including late ones, and its number of datapoints
+    private int releasedBatches;
+    private int releasedSize;
+    private long logicalTimestampMs = -1;
+    private long maxDelayMs;
+    private long startedMs;
+    // flight recorder event of the tick being assembled, if recorded
+    private Object reassembly;
+
+    /**
+     * @return whether no tick is being assembled
+     */
+    boolean isEmpty() {
+        return batches == 0;
+    }
+
+    /**
+     * @return whether all the expected batches of the current tick were received
+     */
+    boolean isComplete() {
+        return batches > 0 && expectedBatches > 0 && batches >= expectedBatches;
+    }
+
+    /**
+     * @return whether the number of batches per tick is known
+     */
+    boolean isBatchCountKnown() {
+        return expectedBatches > 0;
+    }
+
+    /**
+     * @return logical timestamp of the tick being assembled, or -1 when empty
+     */
+    long getLogicalTimestampMs() {
+        return logicalTimestampMs;
+    }
+
+    /**
+     * @param fallbackDelayMs
+     *            delay to use when the data messages do not carry their max delay
+     * @return time at which the tick being assembled should be released even if incomplete, in
+     *         milliseconds since midnight, January 1, 1970 UTC, or -1 when there is no such time
+     */
+    long getDeadlineMs(long fallbackDelayMs) {
+        long delayMs = maxDelayMs > 0 ? maxDelayMs : fallbackDelayMs;
+        return isEmpty() || delayMs <= 0 ? -1 : startedMs + delayMs;
+    }
+
+    /**
+     * Appends a batch to the tick being assembled, starting a tick when empty.
+     *
+     * @param message
+     *            batch of the tick being assembled, or first batch of a tick
+     */
+    void add(DataMessage message) {
+        if (batches == 0) {
+            if (releasedBatches > 0) {
+                expectedBatches = releasedBatches;
+            }
+            logicalTimestampMs = message.getLogicalTimestampMs();
+            maxDelayMs = message.getMaxDelayMs();
+            startedMs = System.currentTimeMillis();
+            reassembly = FlightRecorder.beginTickReassembly();
+            if (expectedBatches > 1) {
+                data = new HashMap<String, Number>((int) (releasedSize / 0.75f) + 1);
+                data.putAll(message.getData());
+            } else {
+                data = message.getData();
+            }
+        } else {
+            data.putAll(message.getData());
+        }
+        batches++;
+    }
+
+    /**
+     * Records that a batch of an already released tick arrived, to be expected from the next
+     * ticks.
+     */
+    void addLateBatch() {
+        if (releasedBatches > 0) {
+            releasedBatches++;
+        }
+    }
+
+    /**
+     * Releases the tick being assembled.
+     *
+     * The released message, and its map, belong to the consumer, which may keep them past the
+     * next tick, so the map of each tick is a new one, or the map of its first batch.
+     *
+     * @param channelName
+     *            name of the channel the batches were received on, for the flight recorder
+     * @param expired
+     *            whether the tick is released because its deadline passed, rather than because
+     *            its batches are known to be all there
+     * @return the reassembled tick, or null when empty
+     */
+    DataMessage release(String channelName, boolean expired) {
+        if (batches == 0) {
+            return null;
+        }
+        if (reassembly != null) {
+            FlightRecorder.commitTickReassembly(reassembly, channelName, logicalTimestampMs,
+                    batches, data.size(), isComplete());
+        }
+        boolean partial = expired && expectedBatches > 0 && batches < expectedBatches;
+        if (expectedBatches == 0) {
+            expectedBatches = batches;
+        }
+        releasedBatches = batches;
+        releasedSize = data.size();
+
+        DataMessage tick = new DataMessage(logicalTimestampMs, data, maxDelayMs);
+        tick.setPartial(partial);
+        data = null;
+        clear();
+        return tick;
+    }
+
+    /**
+     * Discards the tick being assembled, keeping the learned number of batches per tick.
+     */
+    void clear() {
+        data = null;
+        batches = 0;
+        reassembly = null;
+        logicalTimestampMs = -1;
+        maxDelayMs = 0;
+    }
+}
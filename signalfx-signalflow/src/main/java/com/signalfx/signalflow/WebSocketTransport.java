@@ -39,6 +39,7 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.io.BaseEncoding;
 import com.google.common.util.concurrent.Uninterruptibles;
+import com.signalfx.connection.telemetry.FlightRecorder;
 import com.signalfx.endpoint.SignalFxEndpoint;
 import com.signalfx.signalflow.ChannelMessage.Type;
 import com.signalfx.signalflow.StreamMessage.Kind;
@@ -57,26 +58,45 @@ public class WebSocketTransport implements SignalFlowTransport {
 
     protected static final Logger log = LoggerFactory.getLogger(WebSocketTransport.class);
     public static final int DEFAULT_TIMEOUT = 1; // 1 second
+    public static final int DEFAULT_MAX_RECONNECT_ATTEMPTS = 5;
+    protected static final long INITIAL_RECONNECT_DELAY_MS = 500;
+    protected static final long MAX_RECONNECT_DELAY_MS = 30000;
 
     protected final String token;
     protected final SignalFxEndpoint endpoint;
     protected final String path;
     protected final int timeout;
     protected final boolean compress;
+    protected final int maxReconnectAttempts;
+    protected URI uri;
     protected WebSocketClient webSocketClient;
-    protected TransportConnection transportConnection;
+    protected volatile TransportConnection transportConnection;
+    protected volatile boolean closed = false;
+    protected volatile boolean retainBinaryFrames = false;
 
     protected WebSocketTransport(String token, SignalFxEndpoint endpoint, int apiVersion,
                                  int timeout, boolean compress, int maxBinaryMessageSize) {
+        this(token, endpoint, apiVersion, timeout, compress, maxBinaryMessageSize,
+                DEFAULT_MAX_RECONNECT_ATTEMPTS);
+    }
+
+    /**
+     * @param maxReconnectAttempts
+     *            number of attempts made, with exponential backoff, to re-establish the
+     *            WebSocket connection when it is used after having been lost
+     */
+    protected WebSocketTransport(String token, SignalFxEndpoint endpoint, int apiVersion,
+                                 int timeout, boolean compress, int maxBinaryMessageSize,
+                                 int maxReconnectAttempts) {
         this.token = token;
         this.endpoint = endpoint;
         this.path = "/v" + apiVersion + "/signalflow/connect";
         this.timeout = timeout;
         this.compress = compress;
+        this.maxReconnectAttempts = maxReconnectAttempts;
 
         try {
-            this.transportConnection = new TransportConnection(token);
-            URI uri = new URIBuilder(String.format("%s://%s:%s%s", endpoint.getScheme(),
+            this.uri = new URIBuilder(String.format("%s://%s:%s%s", endpoint.getScheme(),
                     endpoint.getHostname(), endpoint.getPort(), path)).build();
 
             this.webSocketClient = new WebSocketClient(new SslContextFactory());
@@ -87,8 +107,7 @@ public class WebSocketTransport implements SignalFlowTransport {
                 this.webSocketClient.setConnectTimeout(TimeUnit.SECONDS.toMillis(timeout));
             }
             this.webSocketClient.start();
-            this.webSocketClient.connect(this.transportConnection, uri);
-            this.transportConnection.awaitConnected(timeout, TimeUnit.SECONDS);
+            connect();
         } catch (Exception ex) {
             if (this.webSocketClient != null) {
                 try {
@@ -101,18 +120,75 @@ public class WebSocketTransport implements SignalFlowTransport {
         }
     }
 
+    private void connect() throws Exception {
+        TransportConnection connection = new TransportConnection(token);
+        connection.retainBinaryFrames = retainBinaryFrames;
+        this.webSocketClient.connect(connection, uri);
+        connection.awaitConnected(timeout, TimeUnit.SECONDS);
+        this.transportConnection = connection;
+    }
+
+    /**
+     * Sets whether stream messages decoded from binary frames keep the frame they were decoded
+     * from, see {@link StreamMessage#getFrame()}. Used to record streams verbatim.
+     *
+     * @param retainBinaryFrames
+     *            whether to keep binary frames
+     */
+    public void setRetainBinaryFrames(boolean retainBinaryFrames) {
+        this.retainBinaryFrames = retainBinaryFrames;
+        TransportConnection connection = this.transportConnection;
+        if (connection != null) {
+            connection.retainBinaryFrames = retainBinaryFrames;
+        }
+    }
+
+    /**
+     * Returns the WebSocket connection, first re-establishing it with exponential backoff if it
+     * was lost.
+     *
+     * @return connected transport connection
+     * @throws SignalFlowException
+     *             if the connection could not be re-established
+     */
+    protected synchronized TransportConnection getConnection() throws SignalFlowException {
+        if (closed || transportConnection.isConnected()) {
+            return transportConnection;
+        }
+
+        long delayMs = INITIAL_RECONNECT_DELAY_MS;
+        for (int attempt = 1;; attempt++) {
+            try {
+                connect();
+                log.info("WebSocket connection re-established after {} attempt(s)", attempt);
+                return transportConnection;
+            } catch (Exception ex) {
+                if (attempt >= maxReconnectAttempts) {
+                    throw new SignalFlowException("failed to re-establish websocket connection",
+                            ex);
+                }
+                log.info("failed to re-establish websocket connection, retrying in {}ms",
+                        delayMs, ex);
+                Uninterruptibles.sleepUninterruptibly(delayMs, TimeUnit.MILLISECONDS);
+                delayMs = Math.min(delayMs * 2, MAX_RECONNECT_DELAY_MS);
+            }
+        }
+    }
+
     @Override
     public Channel attach(String handle, Map<String, String> parameters) {
         log.debug("attach: [ {} ] with parameters: {}", handle, parameters);
 
-        Channel channel = new TransportChannel(transportConnection);
+        TransportConnection connection = getConnection();
+        Channel channel = new TransportChannel(connection);
 
         Map<String, String> request = new HashMap<String, String>(parameters);
+        request.remove(LAST_EVENT_ID_PARAMETER);
         request.put("type", "attach");
         request.put("handle", handle);
         request.put("compress", Boolean.toString(compress));
 
-        transportConnection.sendMessage(channel, request);
+        connection.sendMessage(channel, request);
 
         return channel;
     }
@@ -121,13 +197,15 @@ public class WebSocketTransport implements SignalFlowTransport {
     public Channel execute(String program, Map<String, String> parameters) {
         log.debug("execute: [ {} ] with parameters: {}", program, parameters);
 
-        Channel channel = new TransportChannel(transportConnection);
+        TransportConnection connection = getConnection();
+        Channel channel = new TransportChannel(connection);
         HashMap<String, String> request = new HashMap<String, String>(parameters);
+        request.remove(LAST_EVENT_ID_PARAMETER);
         request.put("type", "execute");
         request.put("program", program);
         request.put("compress", Boolean.toString(compress));
 
-        transportConnection.sendMessage(channel, request);
+        connection.sendMessage(channel, request);
 
         return channel;
     }
@@ -136,12 +214,13 @@ public class WebSocketTransport implements SignalFlowTransport {
     public Channel preflight(String program, Map<String, String> parameters) {
         log.debug("preflight: [ {} ] with parameters: {}", program, parameters);
 
-        Channel channel = new TransportChannel(transportConnection);
+        TransportConnection connection = getConnection();
+        Channel channel = new TransportChannel(connection);
         HashMap<String, String> request = new HashMap<String, String>(parameters);
         request.put("type", "preflight");
         request.put("program", program);
 
-        transportConnection.sendMessage(channel, parameters);
+        connection.sendMessage(channel, parameters);
 
         return channel;
     }
@@ -154,7 +233,7 @@ public class WebSocketTransport implements SignalFlowTransport {
         request.put("type", "start");
         request.put("program", program);
 
-        transportConnection.sendMessage(request);
+        getConnection().sendMessage(request);
     }
 
     @Override
@@ -165,20 +244,22 @@ public class WebSocketTransport implements SignalFlowTransport {
         request.put("type", "stop");
         request.put("handle", handle);
 
-        transportConnection.sendMessage(request);
+        getConnection().sendMessage(request);
     }
 
     @Override
     public void close(int code, String reason) {
+        closed = true;
         if (transportConnection.getSession() != null && transportConnection.getSession().isOpen()) {
             transportConnection.close(code, reason);
-            try {
-                webSocketClient.stop();
-            } catch (Exception e) {
-                log.warn("error while close underlying websocket client", e);
-            }
             log.debug("transport closed");
         }
+        // the client may outlive a lost connection, which it does not get stopped with
+        try {
+            webSocketClient.stop();
+        } catch (Exception e) {
+            log.warn("error while close underlying websocket client", e);
+        }
     }
 
     @Override
@@ -189,7 +270,7 @@ public class WebSocketTransport implements SignalFlowTransport {
         request.put("type", "keepalive");
         request.put("handle", handle);
 
-        transportConnection.sendMessage(request);
+        getConnection().sendMessage(request);
     }
 
     /**
@@ -205,6 +286,7 @@ public class WebSocketTransport implements SignalFlowTransport {
         private int version = 2;
         private boolean compress = true;
         private int maxBinaryMessageSize = -1;
+        private int maxReconnectAttempts = DEFAULT_MAX_RECONNECT_ATTEMPTS;
 
         public TransportBuilder(String token) {
             this.token = token;
@@ -245,10 +327,16 @@ public class WebSocketTransport implements SignalFlowTransport {
             return this;
         }
 
+        public TransportBuilder setMaxReconnectAttempts(int maxReconnectAttempts) {
+            this.maxReconnectAttempts = maxReconnectAttempts;
+            return this;
+        }
+
         public WebSocketTransport build() {
             SignalFxEndpoint endpoint = new SignalFxEndpoint(this.protocol, this.host, this.port);
             WebSocketTransport transport = new WebSocketTransport(this.token, endpoint,
-                    this.version, this.timeout, this.compress, this.maxBinaryMessageSize);
+                    this.version, this.timeout, this.compress, this.maxBinaryMessageSize,
+                    this.maxReconnectAttempts);
             return transport;
         }
     }
@@ -300,6 +388,7 @@ public class WebSocketTransport implements SignalFlowTransport {
         private final Map<String, TransportChannel> channels = Collections
                 .synchronizedMap(new HashMap<String, TransportChannel>());
         private SignalFlowException error;
+        protected volatile boolean retainBinaryFrames;
 
         protected TransportConnection(String token) {
             this.token = token;
@@ -322,7 +411,7 @@ public class WebSocketTransport implements SignalFlowTransport {
             log.debug("websocket connection closed ({} {})", code, reason);
 
             if (code != 1000) {
-                this.error = new SignalFlowException(code, reason);
+                this.error = new ChannelDisconnectedException(code, reason);
                 log.info("Lost WebSocket connection with {} ({}).", getSession().getRemoteAddress(),
                         code);
 
@@ -339,92 +428,149 @@ public class WebSocketTransport implements SignalFlowTransport {
 
         @Override
         public void onWebSocketBinary(byte[] data, int offset, int length) {
-            byte version = data[offset];
-            byte type;
-            byte flags;
-
-            // Decode message type and flags from header
-            switch (version) {
-            case 1:
-                // +--------------+--------------+--------------+--------------+
-                // | Version      | Message type | Flags        | Reserved     |
-                type = data[offset + 1];
-                flags = data[offset + 2];
-                break;
-            case 2:
-                // +--------------+--------------+--------------+--------------+
-                // |           Version           | Message type | Flags        |
-                type = data[offset + 2];
-                flags = data[offset + 3];
-                break;
-            default:
-                log.error("ignoring message with unsupported encoding version {}", version);
+            Object decode = FlightRecorder.beginFrameDecode();
+            BinaryFrame frame = BinaryFrame.decode(data, offset, length);
+            if (frame == null) {
+                FlightRecorder.commitFrameDecode(decode, null, data[offset], false, length, 0);
                 return;
             }
 
-            Kind kind;
-            try {
-                kind = Kind.fromBinaryType(type);
-            } catch (IllegalArgumentException iae) {
-                log.error("ignoring message with unsupported type {}", type);
+            if (frame.json) {
+                FlightRecorder.commitFrameDecode(decode, frame.channelName, frame.version,
+                        frame.compressed, length, 0);
+                onWebSocketText(new String(frame.body, UTF_8));
                 return;
             }
 
-            // Channel name is the 16 bytes following the binary preamble in the header.
-            String channelName = new String(data, offset + BINARY_PREAMBLE_LENGTH,
-                    MAX_CHANNEL_NAME_LENGTH, ASCII);
-            // Everything after that is the body of the message.
-            byte[] body = Arrays.copyOfRange(data, offset + BINARY_HEADER_LENGTH, offset + length);
+            StreamMessage streamMessage = frame.toStreamMessage();
+            FlightRecorder.commitFrameDecode(decode, frame.channelName, frame.version,
+                    frame.compressed, length, frame.series);
+            if (streamMessage != null) {
+                TransportChannel channel = channels.get(frame.channelName);
+                if (channel != null && !channel.isClosed()) {
+                    if (retainBinaryFrames) {
+                        streamMessage.setFrame(Arrays.copyOfRange(data, offset, offset + length));
+                    }
+                    channel.offer(streamMessage);
+                } else {
+                    log.debug("ignoring message. channel not found {}", frame.channelName);
+                }
+            }
+        }
+
+        /**
+         * Decodes a binary-encoded data frame, as received from the WebSocket connection.
+         *
+         * @param data
+         *            the frame
+         * @return the decoded data message, or null if the frame is not a supported binary data
+         *         frame
+         */
+        static StreamMessage decodeBinaryFrame(byte[] data) {
+            BinaryFrame frame = BinaryFrame.decode(data, 0, data.length);
+            return frame == null || frame.json ? null : frame.toStreamMessage();
+        }
+
+        /**
+         * Header and body of a binary WebSocket frame.
+         */
+        private static final class BinaryFrame {
+
+            private byte version;
+            private Kind kind;
+            private String channelName;
+            private boolean compressed;
+            private boolean json;
+            private int series;
+            private byte[] body;
+
+            private static BinaryFrame decode(byte[] data, int offset, int length) {
+                BinaryFrame frame = new BinaryFrame();
+                frame.version = data[offset];
+                byte type;
+                byte flags;
+
+                // Decode message type and flags from header
+                switch (frame.version) {
+                case 1:
+                    // +--------------+--------------+--------------+--------------+
+                    // | Version      | Message type | Flags        | Reserved     |
+                    type = data[offset + 1];
+                    flags = data[offset + 2];
+                    break;
+                case 2:
+                    // +--------------+--------------+--------------+--------------+
+                    // |           Version           | Message type | Flags        |
+                    type = data[offset + 2];
+                    flags = data[offset + 3];
+                    break;
+                default:
+                    log.error("ignoring message with unsupported encoding version {}",
+                            frame.version);
+                    return null;
+                }
 
-            boolean compressed = (flags & (1 << 0)) != 0;
-            if (compressed) {
-                ByteArrayInputStream bais = new ByteArrayInputStream(body);
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
                 try {
-                    GZIPInputStream gzip = new GZIPInputStream(bais);
+                    frame.kind = Kind.fromBinaryType(type);
+                } catch (IllegalArgumentException iae) {
+                    log.error("ignoring message with unsupported type {}", type);
+                    return null;
+                }
+
+                // Channel name is the 16 bytes following the binary preamble in the header.
+                frame.channelName = new String(data, offset + BINARY_PREAMBLE_LENGTH,
+                        MAX_CHANNEL_NAME_LENGTH, ASCII);
+                // Everything after that is the body of the message.
+                frame.body = Arrays.copyOfRange(data, offset + BINARY_HEADER_LENGTH,
+                        offset + length);
+
+                frame.compressed = (flags & (1 << 0)) != 0;
+                if (frame.compressed) {
+                    ByteArrayInputStream bais = new ByteArrayInputStream(frame.body);
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
                     try {
-                        IOUtils.copy(gzip, baos);
+                        GZIPInputStream gzip = new GZIPInputStream(bais);
+                        try {
+                            IOUtils.copy(gzip, baos);
+                        } finally {
+                            IOUtils.closeQuietly(gzip);
+                        }
+                        frame.body = baos.toByteArray();
+                    } catch (IOException ioe) {
+                        log.error("failed to process message", ioe);
+                        return null;
                     } finally {
-                        IOUtils.closeQuietly(gzip);
+                        IOUtils.closeQuietly(baos);
+                        IOUtils.closeQuietly(bais);
                     }
-                    body = baos.toByteArray();
-                } catch (IOException ioe) {
-                    log.error("failed to process message", ioe);
-                    return;
-                } finally {
-                    IOUtils.closeQuietly(baos);
-                    IOUtils.closeQuietly(bais);
                 }
-            }
 
-            boolean json = (flags & (1 << 1)) != 0;
-            if (json) {
-                onWebSocketText(new String(body, UTF_8));
-                return;
+                frame.json = (flags & (1 << 1)) != 0;
+                return frame;
             }
 
-            Map<String, Object> message = null;
-            switch (kind) {
-            case DATA:
-                message = decodeBinaryDataMessage(version, body);
-                break;
-            default:
-                log.error("ignoring message with unsupported binary encoding of kind {}", kind);
-                return;
-            }
+            private StreamMessage toStreamMessage() {
+                Map<String, Object> message = null;
+                switch (kind) {
+                case DATA:
+                    message = decodeBinaryDataMessage(version, body);
+                    break;
+                default:
+                    log.error("ignoring message with unsupported binary encoding of kind {}",
+                            kind);
+                    return null;
+                }
 
-            if (message != null) {
-                TransportChannel channel = channels.get(channelName);
-                if (channel != null && !channel.isClosed()) {
-                    try {
-                        StreamMessage streamMessage = new StreamMessage("data", null,
-                                objectMapper.writeValueAsString(message));
-                        channel.offer(streamMessage);
-                    } catch (JsonProcessingException ex) {
-                        log.error("failed to process message", ex);
-                    }
-                } else {
-                    log.debug("ignoring message. channel not found {}", channelName);
+                if (message == null) {
+                    return null;
+                }
+                series = ((List<?>) message.get("data")).size();
+                try {
+                    return new StreamMessage("data", null,
+                            objectMapper.writeValueAsString(message));
+                } catch (JsonProcessingException ex) {
+                    log.error("failed to process message", ex);
+                    return null;
                 }
             }
         }
@@ -544,7 +690,7 @@ public class WebSocketTransport implements SignalFlowTransport {
         }
 
         public void remove(TransportChannel channel) {
-            this.channels.remove(channel);
+            this.channels.remove(channel.getName());
         }
 
         public void close(int code, String reason) {
@@ -572,6 +718,7 @@ public class WebSocketTransport implements SignalFlowTransport {
         protected TransportConnection connection;
         protected Queue<StreamMessage> messageQueue = new ConcurrentLinkedQueue<StreamMessage>();
         protected TransportEventStreamParser parser = new TransportEventStreamParser(messageQueue);
+        private volatile Receiver receiver;
 
         public TransportChannel(TransportConnection sharedConnection) {
             super();
@@ -582,7 +729,55 @@ public class WebSocketTransport implements SignalFlowTransport {
         }
 
         public boolean offer(final StreamMessage message) {
-            return messageQueue.offer(message);
+            Receiver receiver;
+            boolean offered;
+            synchronized (messageQueue) {
+                receiver = this.receiver;
+                offered = messageQueue.offer(message);
+                messageQueue.notifyAll();
+            }
+            // outside the lock, so that consumers are not held up by the receiver
+            if (receiver != null && !(message instanceof SignalFlowExceptionStreamMessage)) {
+                receiver.received(message);
+            }
+            return offered;
+        }
+
+        /**
+         * Tells the receiver about the messages already queued, under the queue lock so that they
+         * come before those offered once it is set.
+         */
+        @Override
+        boolean setReceiver(Receiver receiver) {
+            synchronized (messageQueue) {
+                for (StreamMessage message : messageQueue) {
+                    if (!(message instanceof SignalFlowExceptionStreamMessage)) {
+                        receiver.received(message);
+                    }
+                }
+                this.receiver = receiver;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean awaitNext(long timeoutMs) {
+            long deadlineMs = System.currentTimeMillis() + timeoutMs;
+            synchronized (messageQueue) {
+                while (messageQueue.isEmpty() && !parser.isClosed) {
+                    long remainingMs = deadlineMs - System.currentTimeMillis();
+                    if (remainingMs <= 0) {
+                        return false;
+                    }
+                    try {
+                        messageQueue.wait(remainingMs);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return true;
+                    }
+                }
+            }
+            return true;
         }
 
         @Override
@@ -0,0 +1,318 @@
+package com.signalfx.signalflow;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.signalfx.signalflow.ChannelMessage.DataMessage;
+import com.signalfx.signalflow.ChannelMessage.ExpiredTsIdMessage;
+
+/**
+ * Rolling window aggregation of the output of a computation, per timeseries.
+ *
+ * Each tick fed to the aggregator yields a derived tick holding, for each timeseries of the
+ * tick, the aggregate of its values in the last N ticks, a tick being a distinct logical
+ * timestamp; a timeseries missing from some of those ticks has fewer values in its window, and
+ * values older than N ticks are never aggregated, however long ago the timeseries was last seen.
+ * Data messages sharing the logical timestamp of the previous one, e.g. late batches, belong to
+ * the same tick, and a value received again for the same tick replaces the previous one.
+ *
+ * The values of all timeseries are kept in per-series queues laid out in primitive arrays, so
+ * memory is proportional to the number of timeseries times the window size, and each value is
+ * aggregated in constant (amortized) time: sums are maintained incrementally, and minimums and
+ * maximums with monotonic deques.
+ *
+ * Aggregators are not thread-safe.
+ */
+public class WindowAggregator {
+
+    /**
+     * Enumeration of window aggregations
+     */
+    public static enum Aggregation {
+        SUM,
+        MEAN,
+        MIN,
+        MAX;
+    }
+
+    private static final int INITIAL_SERIES_CAPACITY = 64;
+
+    private final Aggregation aggregation;
+    private final int window;
+    private final boolean extremum;
+
+    private final Map<String, Integer> slots = new HashMap<String, Integer>();
+    private int[] freeSlots = new int[0];
+    private int freeSlotCount;
+    private int slotCount;
+
+    // index of the current tick, and its logical timestamp
+    private long tickIndex = -1;
+    private long logicalTimestampMs;
+
+    // per slot * window: queue of the values in the window of each series, and their tick index
+    private double[] values;
+    private long[] valueTicks;
+    // per slot * window: positions in the queue of the values that may still be the extremum
+    private int[] deque;
+    // per slot
+    private int[] heads;
+    private int[] sizes;
+    private double[] sums;
+    private long[] updates;
+    private int[] dequeHeads;
+    private int[] dequeSizes;
+
+    /**
+     * @param aggregation
+     *            aggregation computed over each window
+     * @param window
+     *            number of ticks in the window of a timeseries
+     */
+    public WindowAggregator(Aggregation aggregation, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        this.aggregation = aggregation;
+        this.window = window;
+        this.extremum = aggregation == Aggregation.MIN || aggregation == Aggregation.MAX;
+        allocate(INITIAL_SERIES_CAPACITY);
+    }
+
+    /**
+     * @return aggregation computed over each window
+     */
+    public Aggregation getAggregation() {
+        return aggregation;
+    }
+
+    /**
+     * @return number of ticks in the window of a timeseries
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * @return number of timeseries currently tracked
+     */
+    public int getSeriesCount() {
+        return slots.size();
+    }
+
+    /**
+     * Adds a tick to the windows of its timeseries.
+     *
+     * @param tick
+     *            data of a logical timestamp
+     * @return derived tick, with the window aggregate of each timeseries of the given tick
+     */
+    public DataMessage update(DataMessage tick) {
+        if (tickIndex < 0 || tick.getLogicalTimestampMs() > logicalTimestampMs) {
+            tickIndex++;
+            logicalTimestampMs = tick.getLogicalTimestampMs();
+        }
+        Map<String, Number> data = tick.getData();
+        Map<String, Number> derived = new HashMap<String, Number>((int) (data.size() / 0.75f) + 1);
+        for (Map.Entry<String, Number> datum : data.entrySet()) {
+            if (datum.getValue() != null) {
+                derived.put(datum.getKey(),
+                        update(slot(datum.getKey()), datum.getValue().doubleValue()));
+            }
+        }
+        return new DataMessage(tick.getLogicalTimestampMs(), derived, tick.getMaxDelayMs());
+    }
+
+    /**
+     * Discards the window of a timeseries, e.g. once it expired.
+     *
+     * @param tsId
+     *            unique identifier of timeseries
+     */
+    public void remove(String tsId) {
+        Integer slot = slots.remove(tsId);
+        if (slot != null) {
+            if (freeSlotCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, Math.max(16, freeSlots.length * 2));
+            }
+            freeSlots[freeSlotCount++] = slot;
+        }
+    }
+
+    /**
+     * Wraps computation output, replacing each data message by its derived tick and discarding
+     * the window of expired timeseries. Other messages are passed through.
+     *
+     * @param messages
+     *            computation output, typically a {@link Computation}
+     * @return aggregated computation output
+     */
+    public Iterable<ChannelMessage> apply(final Iterable<ChannelMessage> messages) {
+        return new Iterable<ChannelMessage>() {
+            @Override
+            public Iterator<ChannelMessage> iterator() {
+                final Iterator<ChannelMessage> iterator = messages.iterator();
+                return new Iterator<ChannelMessage>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public ChannelMessage next() {
+                        ChannelMessage message = iterator.next();
+                        if (message instanceof DataMessage) {
+                            return update((DataMessage) message);
+                        }
+                        if (message instanceof ExpiredTsIdMessage) {
+                            WindowAggregator.this.remove(((ExpiredTsIdMessage) message).getTsId());
+                        }
+                        return message;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("remove not supported");
+                    }
+                };
+            }
+        };
+    }
+
+    private int slot(String tsId) {
+        Integer slot = slots.get(tsId);
+        if (slot == null) {
+            int newSlot;
+            if (freeSlotCount > 0) {
+                newSlot = freeSlots[--freeSlotCount];
+            } else {
+                if (slotCount == sizes.length) {
+                    allocate(sizes.length * 2);
+                }
+                newSlot = slotCount++;
+            }
+            heads[newSlot] = 0;
+            sizes[newSlot] = 0;
+            sums[newSlot] = 0;
+            updates[newSlot] = 0;
+            dequeHeads[newSlot] = 0;
+            dequeSizes[newSlot] = 0;
+            slots.put(tsId, newSlot);
+            return newSlot;
+        }
+        return slot;
+    }
+
+    private double update(int slot, double value) {
+        int base = slot * window;
+        int head = heads[slot];
+        int size = sizes[slot];
+        long oldest = tickIndex - window;
+
+        // drop the values that left the window, however many ticks the series skipped
+        while (size > 0 && valueTicks[base + head] <= oldest) {
+            sums[slot] -= values[base + head];
+            head = (head + 1) % window;
+            size--;
+        }
+        if (extremum) {
+            // before their positions in the queue are reused
+            while (dequeSizes[slot] > 0
+                    && valueTicks[base + deque[base + dequeHeads[slot]]] <= oldest) {
+                dequeHeads[slot] = (dequeHeads[slot] + 1) % window;
+                dequeSizes[slot]--;
+            }
+        }
+
+        boolean replaced = size > 0 && valueTicks[base + (head + size - 1) % window] == tickIndex;
+        int position;
+        if (replaced) {
+            position = (head + size - 1) % window;
+            sums[slot] -= values[base + position];
+        } else {
+            position = (head + size) % window;
+            size++;
+        }
+        values[base + position] = value;
+        valueTicks[base + position] = tickIndex;
+        sums[slot] += value;
+        heads[slot] = head;
+        sizes[slot] = size;
+
+        if (extremum) {
+            return updateExtremum(slot, base, position, replaced);
+        }
+
+        if (++updates[slot] % window == 0) {
+            // recompute the sum once per window, so that rounding errors do not accumulate
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += values[base + (head + i) % window];
+            }
+            sums[slot] = sum;
+        }
+
+        if (aggregation == Aggregation.MEAN) {
+            return sums[slot] / size;
+        }
+        return sums[slot];
+    }
+
+    private double updateExtremum(int slot, int base, int position, boolean replaced) {
+        if (replaced) {
+            // the replaced value may have evicted values from the deque, so rebuild it
+            dequeHeads[slot] = 0;
+            dequeSizes[slot] = 0;
+            for (int i = 0; i < sizes[slot]; i++) {
+                push(slot, base, (heads[slot] + i) % window);
+            }
+        } else {
+            push(slot, base, position);
+        }
+        return values[base + deque[base + dequeHeads[slot]]];
+    }
+
+    private void push(int slot, int base, int position) {
+        boolean max = aggregation == Aggregation.MAX;
+        double value = values[base + position];
+        int head = dequeHeads[slot];
+        int size = dequeSizes[slot];
+
+        // drop values from the back that can no longer be the extremum
+        while (size > 0) {
+            double lastValue = values[base + deque[base + (head + size - 1) % window]];
+            if (max ? lastValue > value : lastValue < value) {
+                break;
+            }
+            size--;
+        }
+        deque[base + (head + size) % window] = position;
+        dequeSizes[slot] = size + 1;
+    }
+
+    private void allocate(int capacity) {
+        if (sizes == null) {
+            values = new double[capacity * window];
+            valueTicks = new long[capacity * window];
+            deque = new int[extremum ? capacity * window : 0];
+            heads = new int[capacity];
+            sizes = new int[capacity];
+            sums = new double[capacity];
+            updates = new long[capacity];
+            dequeHeads = new int[capacity];
+            dequeSizes = new int[capacity];
+            return;
+        }
+        values = Arrays.copyOf(values, capacity * window);
+        valueTicks = Arrays.copyOf(valueTicks, capacity * window);
+        deque = Arrays.copyOf(deque, extremum ? capacity * window : 0);
+        heads = Arrays.copyOf(heads, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        sums = Arrays.copyOf(sums, capacity);
+        updates = Arrays.copyOf(updates, capacity);
+        dequeHeads = Arrays.copyOf(dequeHeads, capacity);
+        dequeSizes = Arrays.copyOf(dequeSizes, capacity);
+    }
+}
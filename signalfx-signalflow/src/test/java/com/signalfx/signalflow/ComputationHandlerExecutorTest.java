@@ -0,0 +1,132 @@
+package com.signalfx.signalflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.signalfx.signalflow.ChannelMessage.JobStartMessage;
+
+public class ComputationHandlerExecutorTest {
+
+    private static Computation computation(String... messages) {
+        return new Computation(
+                new ComputationTest.StubTransport(new ComputationTest.StubChannel(false, messages)),
+                "data('cpu').publish()", Collections.<String, String> emptyMap(), false);
+    }
+
+    @Test
+    public void shouldFallBackToPlatformThreads() throws Exception {
+        boolean virtualThreadsSupported;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            virtualThreadsSupported = true;
+        } catch (NoSuchMethodException e) {
+            virtualThreadsSupported = false;
+        }
+        ComputationHandlerExecutor defaults = new ComputationHandlerExecutor();
+        assertEquals(virtualThreadsSupported, defaults.isUsingVirtualThreads());
+        defaults.close();
+
+        final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+        ComputationHandlerExecutor executor = new ComputationHandlerExecutor(false, 1, 0);
+        assertFalse(executor.isUsingVirtualThreads());
+        executor.submit(new ComputationHandler(computation(ComputationTest.STREAM_START,
+                ComputationTest.JOB_START, ComputationTest.END_OF_CHANNEL)) {
+            @Override
+            protected void onMessage(JobStartMessage message) {
+                thread.set(Thread.currentThread());
+            }
+        }).get();
+        executor.close();
+
+        assertTrue(thread.get().getName().startsWith("signalflow-handler-"));
+        assertTrue(thread.get().isDaemon());
+    }
+
+    @Test
+    public void shouldStopRunningAndQueuedHandlers() throws Exception {
+        ComputationHandlerExecutor executor = new ComputationHandlerExecutor(false, 1, 0);
+        Future<Computation> running = executor.submit(new ComputationHandler(new Computation(
+                new ComputationTest.StubTransport(new ComputationTest.OpenChannel(ComputationTest.STREAM_START,
+                        ComputationTest.JOB_START)),
+                "data('cpu').publish()", Collections.<String, String> emptyMap(), false)) {});
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getActiveHandlers() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, executor.getActiveHandlers());
+        // waits for the thread of the running handler
+        Future<Computation> queued = executor.submit(new ComputationHandler(computation(
+                ComputationTest.STREAM_START, ComputationTest.JOB_START,
+                ComputationTest.END_OF_CHANNEL)) {});
+
+        executor.stopAll();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        running.get();
+        try {
+            queued.get();
+            fail("expected the queued handler not to run");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+        try {
+            executor.submit(new ComputationHandler(computation()) {});
+            fail("expected the stopped executor to reject handlers");
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(0, executor.getActiveHandlers());
+        assertEquals(1, executor.getCompletedHandlers());
+        assertEquals(1, executor.getFailedHandlers());
+    }
+
+    @Test
+    public void shouldRunHandlersAndTrackThem() throws Exception {
+        final AtomicInteger jobs = new AtomicInteger();
+        ComputationHandlerExecutor executor = new ComputationHandlerExecutor(false, 2, 256 * 1024);
+
+        List<Future<Computation>> futures = new ArrayList<Future<Computation>>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(executor.submit(new ComputationHandler(computation(
+                    ComputationTest.STREAM_START, ComputationTest.JOB_START,
+                    ComputationTest.END_OF_CHANNEL)) {
+                @Override
+                protected void onMessage(JobStartMessage message) {
+                    jobs.incrementAndGet();
+                }
+            }));
+        }
+        Future<Computation> failed = executor.submit(new ComputationHandler(
+                computation(ComputationTest.STREAM_START, "control-message|{\"event\": "
+                        + "\"CHANNEL_ABORT\", \"abortInfo\": {\"sf_job_abortState\": \"x\"}}")) {});
+
+        for (Future<Computation> future : futures) {
+            assertEquals(Computation.State.STATE_COMPLETED, future.get().getState());
+        }
+        try {
+            failed.get();
+        } catch (ExecutionException expected) {
+        }
+        executor.close();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(5, jobs.get());
+        assertEquals(6, executor.getSubmittedHandlers());
+        assertEquals(5, executor.getCompletedHandlers());
+        assertEquals(1, executor.getFailedHandlers());
+        assertEquals(0, executor.getActiveHandlers());
+    }
+}
@@ -0,0 +1,178 @@
+package com.signalfx.signalflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.signalfx.signalflow.ChannelMessage.DataMessage;
+
+public class ComputationHandlerTest {
+
+    private static String data(long logicalTimestampMs, int series) {
+        StringBuilder data = new StringBuilder("data|{\"logicalTimestampMs\": ")
+                .append(logicalTimestampMs).append(", \"data\": [");
+        for (int i = 0; i < series; i++) {
+            data.append(i == 0 ? "" : ", ").append("{\"tsId\": \"ts").append(i)
+                    .append("\", \"value\": ").append(i).append('}');
+        }
+        return data.append("]}").toString();
+    }
+
+    @Test
+    public void shouldPartitionDataByTsId() {
+        Computation computation = new Computation(
+                new ComputationTest.StubTransport(new ComputationTest.StubChannel(false,
+                        ComputationTest.STREAM_START, ComputationTest.JOB_START, data(1000, 64),
+                        ComputationTest.RESOLUTION, data(2000, 64), data(3000, 64),
+                        ComputationTest.END_OF_CHANNEL)),
+                "data('cpu').publish()", Collections.<String, String> emptyMap(), false);
+
+        final List<Long> timestamps = Collections.synchronizedList(new ArrayList<Long>());
+        final Map<String, Set<String>> threadsByTsId =
+                Collections.synchronizedMap(new HashMap<String, Set<String>>());
+        ComputationHandler handler = new ComputationHandler(computation) {
+            @Override
+            protected void onMessage(DataMessage message) {
+                for (String tsId : message.getData().keySet()) {
+                    timestamps.add(message.getLogicalTimestampMs());
+                    synchronized (threadsByTsId) {
+                        Set<String> threads = threadsByTsId.get(tsId);
+                        if (threads == null) {
+                            threads = new HashSet<String>();
+                            threadsByTsId.put(tsId, threads);
+                        }
+                        threads.add(Thread.currentThread().getName());
+                    }
+                }
+            }
+        };
+        handler.setPartitions(4);
+        handler.process();
+
+        assertEquals(3 * 64, timestamps.size());
+        List<Long> sorted = new ArrayList<Long>(timestamps);
+        Collections.sort(sorted);
+        assertEquals(sorted, timestamps);
+
+        assertEquals(64, threadsByTsId.size());
+        Set<String> threads = new HashSet<String>();
+        for (Set<String> tsIdThreads : threadsByTsId.values()) {
+            assertEquals(1, tsIdThreads.size());
+            threads.addAll(tsIdThreads);
+        }
+        assertTrue(threads.size() > 1);
+    }
+
+    private static Computation computation(String... data) {
+        List<String> messages = new ArrayList<String>();
+        messages.add(ComputationTest.STREAM_START);
+        messages.add(ComputationTest.JOB_START);
+        messages.addAll(Arrays.asList(data));
+        messages.add(ComputationTest.END_OF_CHANNEL);
+        return new Computation(
+                new ComputationTest.StubTransport(new ComputationTest.StubChannel(false,
+                        messages.toArray(new String[messages.size()]))),
+                "data('cpu').publish()", Collections.<String, String> emptyMap(), false);
+    }
+
+    private static boolean isWorker(Thread thread) {
+        return thread.getName().startsWith("signalflow-partition-");
+    }
+
+    @Test
+    public void shouldPropagateFailureOfWorkerPartition() {
+        final Thread caller = Thread.currentThread();
+        ComputationHandler handler = new ComputationHandler(computation(data(1000, 64))) {
+            @Override
+            protected void onMessage(DataMessage message) {
+                if (Thread.currentThread() != caller) {
+                    throw new IllegalStateException("worker failed");
+                }
+            }
+        };
+        handler.setPartitions(4);
+        try {
+            handler.process();
+            fail("expected the failure of a worker partition");
+        } catch (IllegalStateException expected) {
+            assertEquals("worker failed", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldAwaitWorkerPartitionsWhenCallerPartitionFails() {
+        final AtomicInteger processed = new AtomicInteger();
+        final AtomicInteger interrupted = new AtomicInteger();
+        ComputationHandler handler = new ComputationHandler(computation(data(1000, 64))) {
+            @Override
+            protected void onMessage(DataMessage message) {
+                if (!isWorker(Thread.currentThread())) {
+                    throw new IllegalStateException("caller failed");
+                }
+                try {
+                    Thread.sleep(200);
+                    processed.incrementAndGet();
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                }
+            }
+        };
+        handler.setPartitions(4);
+        try {
+            handler.process();
+            fail("expected the failure of the caller partition");
+        } catch (IllegalStateException expected) {
+            assertEquals("caller failed", expected.getMessage());
+        }
+        // the worker partitions completed before the workers were shut down
+        assertEquals(3, processed.get());
+        assertEquals(0, interrupted.get());
+    }
+
+    @Test
+    public void shouldKeepPartialFlagAndMaxDelayOfPartitions() {
+        Computation computation = new Computation(
+                new ComputationTest.StubTransport(new ComputationTest.StubChannel(false,
+                        ComputationTest.STREAM_START, ComputationTest.JOB_START,
+                        ComputationTest.data(1000, "A", 1), ComputationTest.data(1000, "B", 1),
+                        ComputationTest.data(2000, "A", 2), ComputationTest.data(2000, "B", 2),
+                        "data|{\"logicalTimestampMs\": 2000, \"maxDelayMs\": 50, \"data\": "
+                                + "[{\"tsId\": \"C\", \"value\": 2}]}",
+                        ComputationTest.END_OF_CHANNEL)),
+                "data('cpu').publish()", Collections.<String, String> emptyMap(), false);
+
+        final Map<String, DataMessage> partitions =
+                Collections.synchronizedMap(new HashMap<String, DataMessage>());
+        ComputationHandler handler = new ComputationHandler(computation) {
+            @Override
+            protected void onMessage(DataMessage message) {
+                for (String tsId : message.getData().keySet()) {
+                    partitions.put(tsId + "@" + message.getLogicalTimestampMs(), message);
+                }
+            }
+        };
+        handler.setPartitions(4);
+        handler.process();
+
+        assertEquals(5, partitions.size());
+        assertFalse(partitions.get("A@2000").isPartial());
+        assertFalse(partitions.get("B@2000").isPartial());
+        // the late batch of the second tick
+        DataMessage late = partitions.get("C@2000");
+        assertTrue(late.isPartial());
+        assertEquals(50, late.getMaxDelayMs());
+    }
+}
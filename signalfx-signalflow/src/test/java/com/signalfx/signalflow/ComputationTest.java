@@ -0,0 +1,300 @@
+package com.signalfx.signalflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.signalfx.signalflow.ChannelMessage.DataMessage;
+
+public class ComputationTest {
+
+    static final String STREAM_START =
+            "control-message|{\"event\": \"STREAM_START\", \"timestampMs\": 1}";
+    static final String JOB_START =
+            "control-message|{\"event\": \"JOB_START\", \"handle\": \"abc\", \"timestampMs\": 1}";
+    static final String END_OF_CHANNEL =
+            "control-message|{\"event\": \"END_OF_CHANNEL\", \"timestampMs\": 1}";
+    static final String RESOLUTION = "message|{\"logicalTimestampMs\": 0, \"message\": "
+            + "{\"messageCode\": \"JOB_RUNNING_RESOLUTION\", \"contents\": {\"resolutionMs\": 1000}}}";
+
+    static String data(long logicalTimestampMs, String tsId, Number value) {
+        return "data|{\"logicalTimestampMs\": " + logicalTimestampMs + ", \"data\": [{\"tsId\": \""
+                + tsId + "\", \"value\": " + value + "}]}";
+    }
+
+    static String metadata(String tsId, String metric) {
+        return "metadata|{\"tsId\": \"" + tsId + "\", \"properties\": {\"sf_metric\": \"" + metric
+                + "\"}}";
+    }
+
+    @Test
+    public void shouldResumeAfterDisconnectWithoutDuplicateTicks() {
+        StubTransport transport = new StubTransport(
+                new StubChannel(true, STREAM_START, JOB_START, data(1000, "A", 1), RESOLUTION,
+                        data(2000, "A", 2)),
+                new StubChannel(false, STREAM_START, JOB_START, data(2000, "A", 2),
+                        data(3000, "A", 3), END_OF_CHANNEL));
+
+        Computation computation = new Computation(transport, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false);
+
+        List<Long> ticks = new ArrayList<Long>();
+        for (ChannelMessage message : computation) {
+            if (message instanceof DataMessage) {
+                ticks.add(((DataMessage) message).getLogicalTimestampMs());
+            }
+        }
+
+        assertEquals(Arrays.asList(1000L, 2000L, 3000L), ticks);
+        assertEquals(2, transport.executions.size());
+        assertEquals("2000", transport.executions.get(1).get("start"));
+        assertEquals("last-event", transport.executions.get(1)
+                .get(SignalFlowTransport.LAST_EVENT_ID_PARAMETER));
+    }
+
+    @Test(expected = ChannelDisconnectedException.class)
+    public void shouldGiveUpAfterMaxReconnectAttempts() {
+        StubTransport transport = new StubTransport(
+                new StubChannel(true, STREAM_START),
+                new StubChannel(true),
+                new StubChannel(true));
+
+        Computation computation = new Computation(transport, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false);
+        computation.setMaxReconnectAttempts(2);
+        assertTrue(computation.hasNext());
+    }
+
+    @Test
+    public void shouldStopWithoutResumingWhenClosedByAnotherThread() throws Exception {
+        StubTransport transport = new StubTransport(new OpenChannel(STREAM_START, JOB_START));
+        final Computation computation = new Computation(transport, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false);
+        assertTrue(computation.hasNext());
+        computation.next();
+
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        Thread streaming = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result.set(computation.hasNext());
+                } catch (RuntimeException e) {
+                    result.set(e);
+                }
+            }
+        };
+        streaming.start();
+        Thread.sleep(50);
+        computation.close();
+        streaming.join(5000);
+
+        assertEquals(Boolean.FALSE, result.get());
+        assertEquals(1, transport.executions.size());
+    }
+
+    private static List<DataMessage> ticks(Computation computation) {
+        List<DataMessage> ticks = new ArrayList<DataMessage>();
+        for (ChannelMessage message : computation) {
+            if (message instanceof DataMessage) {
+                ticks.add((DataMessage) message);
+            }
+        }
+        return ticks;
+    }
+
+    @Test
+    public void shouldReassembleBatchesOfEachTick() {
+        StubTransport transport = new StubTransport(new StubChannel(false, STREAM_START,
+                JOB_START, data(1000, "A", 1), data(1000, "B", 1), data(2000, "A", 2),
+                data(2000, "B", 2), data(3000, "A", 3), data(3000, "B", 3), END_OF_CHANNEL));
+
+        List<DataMessage> ticks = ticks(new Computation(transport, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false));
+
+        assertEquals(3, ticks.size());
+        for (int i = 0; i < ticks.size(); i++) {
+            assertEquals(1000L * (i + 1), ticks.get(i).getLogicalTimestampMs());
+            assertEquals(2, ticks.get(i).getData().size());
+            assertEquals(i + 1, ticks.get(i).getData().get("B").intValue());
+        }
+    }
+
+    @Test
+    public void shouldMarkLateBatchesPartial() {
+        StubTransport transport = new StubTransport(new StubChannel(false, STREAM_START,
+                JOB_START, data(1000, "A", 1), data(1000, "B", 1), data(2000, "A", 2),
+                data(2000, "B", 2), data(2000, "C", 2), data(3000, "A", 3), data(3000, "B", 3),
+                data(3000, "C", 3), END_OF_CHANNEL));
+
+        List<DataMessage> ticks = ticks(new Computation(transport, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false));
+
+        assertEquals(4, ticks.size());
+        assertEquals(2000, ticks.get(1).getLogicalTimestampMs());
+        assertEquals(2, ticks.get(1).getData().size());
+        assertFalse(ticks.get(1).isPartial());
+        // the third batch of the tick came after the tick was yielded with the two expected
+        assertEquals(2000, ticks.get(2).getLogicalTimestampMs());
+        assertEquals(Collections.singletonMap("C", 2), ticks.get(2).getData());
+        assertTrue(ticks.get(2).isPartial());
+        // the following ticks wait for the third batch
+        assertEquals(3000, ticks.get(3).getLogicalTimestampMs());
+        assertEquals(3, ticks.get(3).getData().size());
+        assertFalse(ticks.get(3).isPartial());
+    }
+
+    @Test
+    public void shouldReleasePartialTickAfterMaxDelay() {
+        final List<String> messages = Arrays.asList(STREAM_START, JOB_START,
+                "data|{\"logicalTimestampMs\": 1000, \"maxDelayMs\": 50, \"data\": "
+                        + "[{\"tsId\": \"A\", \"value\": 1}]}");
+        StubChannel channel = new StubChannel(false, messages.toArray(new String[0])) {
+            @Override
+            public boolean awaitNext(long timeoutMs) {
+                // nothing else is coming
+                return false;
+            }
+        };
+
+        Computation computation = new Computation(new StubTransport(channel),
+                "data('cpu').publish()", Collections.<String, String> emptyMap(), false);
+        computation.next();
+        ChannelMessage tick = computation.next();
+
+        assertTrue(tick instanceof DataMessage);
+        assertEquals(1000, ((DataMessage) tick).getLogicalTimestampMs());
+        assertEquals(50, ((DataMessage) tick).getMaxDelayMs());
+    }
+
+    /**
+     * Channel replaying canned "event|json" stream messages, optionally ending with a lost
+     * connection.
+     */
+    static class StubChannel extends Channel {
+
+        StubChannel(final boolean disconnect, String... messages) {
+            super();
+            final Iterator<String> remaining = Arrays.asList(messages).iterator();
+            this.iterator = new Iterator<StreamMessage>() {
+                @Override
+                public boolean hasNext() {
+                    if (!remaining.hasNext() && disconnect) {
+                        throw new ChannelDisconnectedException(1006, "connection lost");
+                    }
+                    return remaining.hasNext();
+                }
+
+                @Override
+                public StreamMessage next() {
+                    String[] message = remaining.next().split("\\|", 2);
+                    return new StreamMessage(message[0], null, message[1]);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public String getLastEventId() {
+            return "last-event";
+        }
+
+        @Override
+        public long getReconnectionDelayMs() {
+            return 0;
+        }
+    }
+
+    /**
+     * Channel handing out the given messages, then waiting for more until closed.
+     */
+    static class OpenChannel extends Channel {
+
+        OpenChannel(String... messages) {
+            super();
+            final Iterator<String> remaining = Arrays.asList(messages).iterator();
+            this.iterator = new Iterator<StreamMessage>() {
+                @Override
+                public boolean hasNext() {
+                    while (!remaining.hasNext() && !isClosed()) {
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return false;
+                        }
+                    }
+                    return remaining.hasNext();
+                }
+
+                @Override
+                public StreamMessage next() {
+                    String[] message = remaining.next().split("\\|", 2);
+                    return new StreamMessage(message[0], null, message[1]);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /**
+     * Transport handing out the given channels, one per execution.
+     */
+    static class StubTransport implements SignalFlowTransport {
+
+        final Queue<Channel> channels;
+        final List<Map<String, String>> executions = new ArrayList<Map<String, String>>();
+
+        StubTransport(Channel... channels) {
+            this.channels = new LinkedList<Channel>(Arrays.asList(channels));
+        }
+
+        @Override
+        public Channel attach(String handle, Map<String, String> parameters) {
+            return execute(handle, parameters);
+        }
+
+        @Override
+        public Channel execute(String program, Map<String, String> parameters) {
+            executions.add(parameters);
+            return channels.remove();
+        }
+
+        @Override
+        public Channel preflight(String program, Map<String, String> parameters) {
+            return execute(program, parameters);
+        }
+
+        @Override
+        public void start(String program, Map<String, String> parameters) {}
+
+        @Override
+        public void stop(String handle, Map<String, String> parameters) {}
+
+        @Override
+        public void close(int code, String reason) {}
+
+        @Override
+        public void keepalive(String handle) {}
+    }
+}
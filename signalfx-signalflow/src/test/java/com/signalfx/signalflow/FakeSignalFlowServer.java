@@ -0,0 +1,398 @@
+package com.signalfx.signalflow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.server.WebSocketHandler;
+import org.eclipse.jetty.websocket.servlet.ServletUpgradeRequest;
+import org.eclipse.jetty.websocket.servlet.ServletUpgradeResponse;
+import org.eclipse.jetty.websocket.servlet.WebSocketCreator;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Embeddable stand-in for the SignalFlow API, serving synthetic computations.
+ *
+ * Implements the WebSocket protocol on /v2/signalflow/connect (authentication, then execute
+ * requests answered with binary v1 or v2 data frames, optionally gzipped) and Server-Sent Events
+ * on /v2/signalflow/execute. Every computation outputs the configured number of series over the
+ * configured number of ticks, whatever its program.
+ *
+ * When ticks are paced, the logical timestamp of each tick is the time at which the server
+ * started sending it, so that clients can measure delivery latency.
+ */
+public class FakeSignalFlowServer implements AutoCloseable {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> MAP_TYPE_REF =
+            new TypeReference<Map<String, Object>>() {};
+    private static final BaseEncoding base64Encoder = BaseEncoding.base64Url().omitPadding();
+
+    private int seriesCount = 100;
+    private int ticks = 10;
+    private long tickIntervalMs = 0;
+    private int seriesPerFrame = 1000;
+    private int binaryVersion = 2;
+    private boolean compress;
+
+    private final AtomicInteger computations = new AtomicInteger();
+    private final ExecutorService streams = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("fake-signalflow-%d").setDaemon(true).build());
+    private Server server;
+
+    public FakeSignalFlowServer setSeriesCount(int seriesCount) {
+        this.seriesCount = seriesCount;
+        return this;
+    }
+
+    public FakeSignalFlowServer setTicks(int ticks) {
+        this.ticks = ticks;
+        return this;
+    }
+
+    /**
+     * @param tickIntervalMs
+     *            time between ticks, or 0 to send them as fast as possible
+     */
+    public FakeSignalFlowServer setTickIntervalMs(long tickIntervalMs) {
+        this.tickIntervalMs = tickIntervalMs;
+        return this;
+    }
+
+    public FakeSignalFlowServer setSeriesPerFrame(int seriesPerFrame) {
+        this.seriesPerFrame = seriesPerFrame;
+        return this;
+    }
+
+    /**
+     * @param binaryVersion
+     *            version of the WebSocket binary data frames, 1 or 2
+     */
+    public FakeSignalFlowServer setBinaryVersion(int binaryVersion) {
+        this.binaryVersion = binaryVersion;
+        return this;
+    }
+
+    /**
+     * @param compress
+     *            whether to gzip WebSocket binary frames even if the client did not ask for it
+     */
+    public FakeSignalFlowServer setCompress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    public FakeSignalFlowServer start() throws Exception {
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(0);
+        server.addConnector(connector);
+
+        WebSocketHandler webSocketHandler = new WebSocketHandler() {
+            @Override
+            public void configure(WebSocketServletFactory factory) {
+                factory.getPolicy().setIdleTimeout(TimeUnit.MINUTES.toMillis(5));
+                factory.setCreator(new WebSocketCreator() {
+                    @Override
+                    public Object createWebSocket(ServletUpgradeRequest request,
+                                                  ServletUpgradeResponse response) {
+                        return "/v2/signalflow/connect".equals(request.getRequestURI().getPath())
+                                ? new SignalFlowSocket() : null;
+                    }
+                });
+            }
+        };
+        webSocketHandler.setHandler(new ServerSentEventsHandler());
+        server.setHandler(webSocketHandler);
+        server.start();
+        return this;
+    }
+
+    public int getPort() {
+        return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    /**
+     * @return number of computations executed so far
+     */
+    public int getComputations() {
+        return computations.get();
+    }
+
+    public WebSocketTransport newWebSocketTransport() {
+        return new WebSocketTransport.TransportBuilder("token").setProtocol("ws")
+                .setHost("localhost").setPort(getPort()).build();
+    }
+
+    public ServerSentEventsTransport newServerSentEventsTransport() {
+        return new ServerSentEventsTransport.TransportBuilder("token").setProtocol("http")
+                .setHost("localhost").setPort(getPort()).build();
+    }
+
+    @Override
+    public void close() throws Exception {
+        streams.shutdownNow();
+        server.stop();
+    }
+
+    private static String tsId(int series) {
+        return base64Encoder.encode(ByteBuffer.allocate(8).putLong(series).array());
+    }
+
+    private long logicalTimestampMs(long startMs, int tick) {
+        return tickIntervalMs > 0 ? System.currentTimeMillis() : startMs + tick * 1000L;
+    }
+
+    private void awaitTick(long startMs, int tick) {
+        if (tickIntervalMs > 0) {
+            long dueMs = startMs + tick * tickIntervalMs;
+            Uninterruptibles.sleepUninterruptibly(dueMs - System.currentTimeMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Map<String, Object> controlMessage(String event) {
+        Map<String, Object> message = new LinkedHashMap<String, Object>();
+        message.put("event", event);
+        message.put("timestampMs", System.currentTimeMillis());
+        return message;
+    }
+
+    private Map<String, Object> metadataMessage(int series) {
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put("sf_metric", "fake.metric");
+        properties.put("sf_originatingMetric", "fake.metric");
+        properties.put("series", Integer.toString(series));
+        Map<String, Object> message = new LinkedHashMap<String, Object>();
+        message.put("tsId", tsId(series));
+        message.put("properties", properties);
+        return message;
+    }
+
+    private Map<String, Object> resolutionMessage(long logicalTimestampMs) {
+        Map<String, Object> contents = new HashMap<String, Object>();
+        contents.put("resolutionMs", tickIntervalMs > 0 ? tickIntervalMs : 1000);
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("messageCode", "JOB_RUNNING_RESOLUTION");
+        info.put("contents", contents);
+        Map<String, Object> message = new LinkedHashMap<String, Object>();
+        message.put("logicalTimestampMs", logicalTimestampMs);
+        message.put("message", info);
+        return message;
+    }
+
+    private byte[] binaryDataFrame(String channel, long logicalTimestampMs, int from, int to,
+                                   int tick, boolean gzip) throws IOException {
+        int count = to - from;
+        ByteBuffer body = ByteBuffer.allocate(8 + (binaryVersion == 2 ? 8 : 0) + 4 + count * 17);
+        body.putLong(logicalTimestampMs);
+        if (binaryVersion == 2) {
+            body.putLong(tickIntervalMs);
+        }
+        body.putInt(count);
+        for (int series = from; series < to; series++) {
+            body.put((byte) 0x02);
+            body.putLong(series);
+            body.putDouble(series + tick);
+        }
+        byte[] payload = body.array();
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length);
+            GZIPOutputStream out = new GZIPOutputStream(compressed);
+            out.write(payload);
+            out.close();
+            payload = compressed.toByteArray();
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(20 + payload.length);
+        if (binaryVersion == 2) {
+            frame.put(new byte[] { 2, 0, 5, (byte) (gzip ? 1 : 0) });
+        } else {
+            frame.put(new byte[] { 1, 5, (byte) (gzip ? 1 : 0), 0 });
+        }
+        byte[] name = channel.getBytes(StandardCharsets.US_ASCII);
+        frame.put(name, 0, Math.min(16, name.length));
+        frame.position(20);
+        frame.put(payload);
+        return frame.array();
+    }
+
+    private Map<String, Object> jsonDataMessage(long logicalTimestampMs, int from, int to,
+                                                int tick) {
+        List<Map<String, Object>> data = new ArrayList<Map<String, Object>>(to - from);
+        for (int series = from; series < to; series++) {
+            Map<String, Object> datum = new HashMap<String, Object>();
+            datum.put("tsId", tsId(series));
+            datum.put("value", (double) (series + tick));
+            data.add(datum);
+        }
+        Map<String, Object> message = new LinkedHashMap<String, Object>();
+        message.put("logicalTimestampMs", logicalTimestampMs);
+        message.put("data", data);
+        return message;
+    }
+
+    /**
+     * WebSocket endpoint, serving the computations executed over one connection.
+     */
+    private class SignalFlowSocket extends WebSocketAdapter {
+
+        @Override
+        public void onWebSocketText(String text) {
+            try {
+                Map<String, Object> request = objectMapper.readValue(text, MAP_TYPE_REF);
+                String type = (String) request.get("type");
+                if ("authenticate".equals(type)) {
+                    Map<String, Object> response = new HashMap<String, Object>();
+                    response.put("type", "authenticated");
+                    response.put("userId", "fake-user");
+                    response.put("orgId", "fake-org");
+                    send(response);
+                } else if ("execute".equals(type) || "attach".equals(type)) {
+                    final String channel = (String) request.get("channel");
+                    final boolean gzip = compress || "true".equals(request.get("compress"));
+                    streams.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            stream(channel, gzip);
+                        }
+                    });
+                }
+            } catch (IOException ex) {
+                getSession().close(1011, ex.getMessage());
+            }
+        }
+
+        private void stream(String channel, boolean gzip) {
+            int computation = computations.incrementAndGet();
+            try {
+                send(channel, "control-message", controlMessage("STREAM_START"));
+                Map<String, Object> jobStart = controlMessage("JOB_START");
+                jobStart.put("handle", "fake-" + computation);
+                send(channel, "control-message", jobStart);
+                for (int series = 0; series < seriesCount; series++) {
+                    send(channel, "metadata", metadataMessage(series));
+                }
+
+                long startMs = System.currentTimeMillis();
+                for (int tick = 0; tick < ticks && isConnected(); tick++) {
+                    awaitTick(startMs, tick);
+                    long logicalTimestampMs = logicalTimestampMs(startMs, tick);
+                    for (int from = 0; from < seriesCount; from += seriesPerFrame) {
+                        int to = Math.min(seriesCount, from + seriesPerFrame);
+                        send(binaryDataFrame(channel, logicalTimestampMs, from, to, tick, gzip));
+                    }
+                    if (tick == 0) {
+                        send(channel, "message", resolutionMessage(logicalTimestampMs));
+                    }
+                }
+                send(channel, "control-message", controlMessage("END_OF_CHANNEL"));
+            } catch (IOException ex) {
+                // client went away
+            }
+        }
+
+        private void send(String channel, String type, Map<String, Object> message)
+                throws IOException {
+            message.put("type", type);
+            message.put("channel", channel);
+            send(message);
+        }
+
+        private void send(Map<String, Object> message) throws IOException {
+            String text = objectMapper.writeValueAsString(message);
+            Session session = getSession();
+            synchronized (this) {
+                session.getRemote().sendString(text);
+            }
+        }
+
+        private void send(byte[] frame) throws IOException {
+            Session session = getSession();
+            synchronized (this) {
+                session.getRemote().sendBytes(ByteBuffer.wrap(frame));
+            }
+        }
+    }
+
+    /**
+     * Server-Sent Events endpoint, serving one computation per request.
+     */
+    private class ServerSentEventsHandler extends AbstractHandler {
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+            if (!"/v2/signalflow/execute".equals(target)) {
+                return;
+            }
+            baseRequest.setHandled(true);
+            int computation = computations.incrementAndGet();
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType("text/event-stream");
+            response.setCharacterEncoding("UTF-8");
+            Writer writer = response.getWriter();
+
+            event(writer, "control-message", controlMessage("STREAM_START"));
+            Map<String, Object> jobStart = controlMessage("JOB_START");
+            jobStart.put("handle", "fake-" + computation);
+            event(writer, "control-message", jobStart);
+            for (int series = 0; series < seriesCount; series++) {
+                event(writer, "metadata", metadataMessage(series));
+            }
+            writer.flush();
+
+            long startMs = System.currentTimeMillis();
+            for (int tick = 0; tick < ticks; tick++) {
+                awaitTick(startMs, tick);
+                long logicalTimestampMs = logicalTimestampMs(startMs, tick);
+                for (int from = 0; from < seriesCount; from += seriesPerFrame) {
+                    int to = Math.min(seriesCount, from + seriesPerFrame);
+                    event(writer, "data", jsonDataMessage(logicalTimestampMs, from, to, tick));
+                }
+                if (tick == 0) {
+                    event(writer, "message", resolutionMessage(logicalTimestampMs));
+                }
+                writer.flush();
+            }
+            event(writer, "control-message", controlMessage("END_OF_CHANNEL"));
+            writer.flush();
+        }
+
+        private void event(Writer writer, String event, Map<String, Object> message)
+                throws IOException {
+            writer.write("event: ");
+            writer.write(event);
+            writer.write("\ndata: ");
+            writer.write(objectMapper.writeValueAsString(message));
+            writer.write("\n\n");
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.signalfx.signalflow;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class FakeSignalFlowServerTest {
+
+    private static FakeSignalFlowServer server;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        server = new FakeSignalFlowServer().setSeriesCount(250).setSeriesPerFrame(100)
+                .setTicks(5).start();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void shouldStreamBinaryFramesOverWebSocket() {
+        server.setBinaryVersion(1).setCompress(false);
+        SignalFlowTransportThroughput.Result result = SignalFlowTransportThroughput
+                .measure(server.newWebSocketTransport(), 5, false);
+        assertEquals(5, result.ticks);
+        assertEquals(5 * 250, result.datapoints);
+    }
+
+    @Test
+    public void shouldStreamCompressedV2FramesOverWebSocket() {
+        server.setBinaryVersion(2).setCompress(true);
+        SignalFlowTransportThroughput.Result result = SignalFlowTransportThroughput
+                .measure(server.newWebSocketTransport(), 5, false);
+        assertEquals(5, result.ticks);
+        assertEquals(5 * 250, result.datapoints);
+    }
+
+    @Test
+    public void shouldStreamServerSentEvents() {
+        SignalFlowTransportThroughput.Result result = SignalFlowTransportThroughput
+                .measure(server.newServerSentEventsTransport(), 5, false);
+        assertEquals(5, result.ticks);
+        assertEquals(5 * 250, result.datapoints);
+    }
+}
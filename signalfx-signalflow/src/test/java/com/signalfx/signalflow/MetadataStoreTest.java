@@ -0,0 +1,179 @@
+package com.signalfx.signalflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MetadataStoreTest {
+
+    private static Map<String, Object> properties(String metric, String host) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(new String("sf_metric"), new String(metric));
+        properties.put(new String("host"), new String(host));
+        return properties;
+    }
+
+    @Test
+    public void shouldKeepKnownTSIDsSorted() {
+        MetadataStore store = new HashMetadataStore();
+        store.put("C", properties("cpu", "a"));
+        store.put("A", properties("cpu", "b"));
+        store.put("B", properties("cpu", "c"));
+        store.remove("C");
+
+        assertEquals(Arrays.asList("A", "B"), Arrays.asList(store.getKnownTSIDs().toArray()));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+        MetadataStore store = new LruMetadataStore(2);
+        store.put("A", properties("cpu", "a"));
+        store.put("B", properties("cpu", "b"));
+        store.get("A");
+        store.put("C", properties("cpu", "c"));
+
+        assertNull(store.get("B"));
+        assertEquals(Arrays.asList("A", "C"), Arrays.asList(store.getKnownTSIDs().toArray()));
+    }
+
+    @Test
+    public void shouldShareIdenticalMetadata() {
+        MetadataStore first = new CompactMetadataStore(new HashMetadataStore());
+        MetadataStore second = new CompactMetadataStore(new HashMetadataStore());
+        first.put("A", properties("cpu", "a"));
+        second.put("B", properties("cpu", "a"));
+        second.put("C", properties("cpu", "c"));
+
+        assertEquals(properties("cpu", "a"), first.get("A"));
+        assertSame(first.get("A"), second.get("B"));
+        assertSame(first.get("A").get("sf_metric"), second.get("C").get("sf_metric"));
+    }
+
+    @Test
+    public void shouldShareMetadataAcrossComputations() {
+        SharedMetadataDictionary dictionary = new SharedMetadataDictionary();
+        MetadataStore first = dictionary.createMetadataStore();
+        MetadataStore second = dictionary.createMetadataStore();
+        first.put("A", properties("cpu", "a"));
+        first.put("B", properties("cpu", "b"));
+        second.put("A", properties("cpu", "a"));
+
+        assertSame(first.get("A"), second.get("A"));
+        assertNull(second.get("B"));
+        assertEquals(2, dictionary.getReferenceCount("A"));
+        assertEquals(2, dictionary.size());
+
+        first.clear();
+        assertEquals(1, dictionary.getReferenceCount("A"));
+        assertEquals(0, dictionary.getReferenceCount("B"));
+        assertEquals(properties("cpu", "a"), second.get("A"));
+
+        second.remove("A");
+        assertEquals(0, dictionary.size());
+        assertNull(dictionary.get("A"));
+    }
+
+    @Test
+    public void shouldReleaseSharedMetadataWhenComputationsEnd() {
+        SharedMetadataDictionary dictionary = new SharedMetadataDictionary();
+        ComputationTest.StubTransport transport = new ComputationTest.StubTransport(
+                new ComputationTest.StubChannel(false, ComputationTest.STREAM_START,
+                        ComputationTest.JOB_START, ComputationTest.metadata("A", "cpu"),
+                        ComputationTest.data(1000, "A", 1), ComputationTest.END_OF_CHANNEL),
+                new ComputationTest.StubChannel(false, ComputationTest.STREAM_START,
+                        ComputationTest.JOB_START, ComputationTest.metadata("B", "cpu"),
+                        ComputationTest.data(1000, "B", 1), ComputationTest.data(2000, "B", 2)));
+
+        Computation completed = new Computation(transport, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false,
+                dictionary.createMetadataStore());
+        Computation closed = new Computation(transport, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false,
+                dictionary.createMetadataStore());
+        nextData(closed);
+        assertEquals("cpu", dictionary.get("B").get("sf_metric"));
+
+        nextData(completed);
+        // still available to the consumer of the last tick
+        assertEquals("cpu", completed.getMetadata("A").get("sf_metric"));
+        assertFalse(completed.hasNext());
+        assertNull(dictionary.get("A"));
+
+        closed.close();
+        assertEquals(0, dictionary.size());
+    }
+
+    @Test
+    public void shouldKeepMetadataOfDrainedComputations() {
+        ComputationTest.StubTransport transport = new ComputationTest.StubTransport(
+                new ComputationTest.StubChannel(false, ComputationTest.STREAM_START,
+                        ComputationTest.JOB_START, ComputationTest.metadata("A", "cpu"),
+                        ComputationTest.data(1000, "A", 1), ComputationTest.END_OF_CHANNEL));
+
+        Computation computation = new Computation(transport, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false);
+        while (computation.hasNext()) {
+            computation.next();
+        }
+        computation.close();
+
+        assertEquals("cpu", computation.getMetadata("A").get("sf_metric"));
+        assertEquals(Collections.singletonList("A"), new ArrayList<String>(computation.getKnownTSIDs()));
+    }
+
+    private static void nextData(Computation computation) {
+        while (!(computation.next() instanceof ChannelMessage.DataMessage)) {
+            // skip control messages
+        }
+    }
+
+    @Test
+    public void shouldBoundComputationMetadata() {
+        ComputationTest.StubTransport transport = new ComputationTest.StubTransport(
+                new ComputationTest.StubChannel(false, ComputationTest.STREAM_START,
+                        ComputationTest.JOB_START, ComputationTest.metadata("A", "cpu"),
+                        ComputationTest.metadata("B", "cpu"),
+                        ComputationTest.metadata("C", "cpu"), ComputationTest.END_OF_CHANNEL));
+
+        Computation computation = new Computation(transport, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false, new LruMetadataStore(2));
+        while (computation.hasNext()) {
+            computation.next();
+        }
+
+        assertEquals(Arrays.asList("B", "C"),
+                Arrays.asList(computation.getKnownTSIDs().toArray()));
+        assertNull(computation.getMetadata("A"));
+    }
+
+    @Test
+    public void shouldSnapshotKnownTSIDs() {
+        ComputationTest.StubTransport transport = new ComputationTest.StubTransport(
+                new ComputationTest.StubChannel(false, ComputationTest.STREAM_START,
+                        ComputationTest.JOB_START, ComputationTest.metadata("B", "cpu"),
+                        ComputationTest.metadata("A", "cpu"), ComputationTest.END_OF_CHANNEL));
+
+        Computation computation = new Computation(transport, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false);
+        computation.next();
+        computation.next();
+        Collection<String> known = computation.getKnownTSIDs();
+        while (computation.hasNext()) {
+            computation.next();
+        }
+
+        assertEquals(Collections.singletonList("B"), known);
+        assertEquals(Arrays.asList("A", "B"), computation.getKnownTSIDs());
+    }
+}
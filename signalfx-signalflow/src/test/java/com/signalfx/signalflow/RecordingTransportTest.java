@@ -0,0 +1,282 @@
+package com.signalfx.signalflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.signalfx.signalflow.ChannelMessage.DataMessage;
+
+public class RecordingTransportTest {
+
+    /**
+     * @return version 1 binary data frame with a single long value
+     */
+    private static byte[] binaryDataFrame(long logicalTimestampMs, long value) {
+        ByteBuffer frame = ByteBuffer.allocate(20 + 8 + 4 + 17);
+        frame.put(new byte[] { 1, 5, 0, 0 });
+        frame.put(Arrays.copyOf("channel-abc".getBytes(StandardCharsets.US_ASCII), 16));
+        frame.putLong(logicalTimestampMs);
+        frame.putInt(1);
+        frame.put((byte) 1);
+        frame.put(new byte[] { 0, 0, 0, 0, 0, 0, 0, 1 });
+        frame.putLong(value);
+        return frame.array();
+    }
+
+    private static List<String> replay(Computation computation) {
+        List<String> output = new ArrayList<String>();
+        for (ChannelMessage message : computation) {
+            if (message instanceof DataMessage) {
+                DataMessage data = (DataMessage) message;
+                output.add(data.getLogicalTimestampMs() + "=" + data.getData());
+            } else {
+                output.add(message.getType().toString());
+            }
+        }
+        return output;
+    }
+
+    @Test
+    public void shouldReplayRecordedStream() throws Exception {
+        final List<StreamMessage> messages = new ArrayList<StreamMessage>();
+        for (String message : Arrays.asList(ComputationTest.STREAM_START,
+                ComputationTest.JOB_START, ComputationTest.metadata("A", "cpu"),
+                ComputationTest.data(1000, "A", 1), ComputationTest.RESOLUTION)) {
+            String[] parts = message.split("\\|", 2);
+            messages.add(new StreamMessage(parts[0], null, parts[1]));
+        }
+        StreamMessage binary = new StreamMessage("data", null,
+                "{\"logicalTimestampMs\": 2000, \"data\": [{\"tsId\": \"AAAAAAAAAAE\", \"value\": 2}]}");
+        binary.setFrame(binaryDataFrame(2000, 2));
+        messages.add(binary);
+        messages.add(new StreamMessage("control-message", null,
+                "{\"event\": \"END_OF_CHANNEL\", \"timestampMs\": 1}"));
+
+        Channel channel = new Channel() {
+            {
+                this.iterator = messages.iterator();
+            }
+        };
+
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        RecordingTransport recorder = new RecordingTransport(
+                new ComputationTest.StubTransport(channel), recording);
+        List<String> live = replay(new Computation(recorder, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false));
+        recorder.close(1000, null);
+
+        ReplayTransport replayer = new ReplayTransport(
+                new ByteArrayInputStream(recording.toByteArray()), ReplayTransport.MAX_SPEED);
+        assertTrue(replayer.hasRemainingChannels());
+        List<String> replayed = replay(new Computation(replayer, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false));
+
+        assertEquals(live, replayed);
+        assertEquals(Arrays.asList("JOB_START", "METADATA_MESSAGE", "1000={A=1}",
+                "2000={AAAAAAAAAAE=2}"), replayed);
+        assertFalse(replayer.hasRemainingChannels());
+    }
+
+    private static StreamMessage message(String message) {
+        String[] parts = message.split("\\|", 2);
+        return new StreamMessage(parts[0], null, parts[1]);
+    }
+
+    private static List<String> events(Channel channel) {
+        List<String> events = new ArrayList<String>();
+        while (channel.iterator.hasNext()) {
+            events.add(channel.iterator.next().getEvent());
+        }
+        return events;
+    }
+
+    @Test
+    public void shouldRecordQueuedMessagesAsReceived() throws Exception {
+        WebSocketTransport.TransportChannel channel = new WebSocketTransport.TransportChannel(
+                new WebSocketTransport.TransportConnection("token"));
+        channel.offer(message(ComputationTest.STREAM_START));
+
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        RecordingTransport recorder = new RecordingTransport(
+                new ComputationTest.StubTransport(channel), recording);
+        Channel recorded = recorder.execute("data('cpu').publish()",
+                Collections.<String, String> emptyMap());
+        channel.offer(message(ComputationTest.JOB_START));
+        channel.offer(message(ComputationTest.data(1000, "A", 1)));
+        // closed without consuming any message
+        recorded.close();
+        recorder.close(1000, null);
+
+        ReplayTransport replayer = new ReplayTransport(
+                new ByteArrayInputStream(recording.toByteArray()), ReplayTransport.MAX_SPEED);
+        assertEquals(Arrays.asList("control-message", "control-message", "data"),
+                events(replayer.execute("data('cpu').publish()",
+                        Collections.<String, String> emptyMap())));
+    }
+
+    @Test
+    public void shouldNotHoldUpTransportWhileWriting() throws Exception {
+        WebSocketTransport.TransportChannel channel = new WebSocketTransport.TransportChannel(
+                new WebSocketTransport.TransportConnection("token"));
+        final CountDownLatch writable = new CountDownLatch(1);
+        final ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        OutputStream slowDisk = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    writable.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                recording.write(b, off, len);
+            }
+        };
+
+        RecordingTransport recorder = new RecordingTransport(
+                new ComputationTest.StubTransport(channel), slowDisk);
+        Channel recorded = recorder.execute("data('cpu').publish()",
+                Collections.<String, String> emptyMap());
+        char[] padding = new char[64 * 1024];
+        Arrays.fill(padding, ' ');
+        // larger than the write buffer, so that writing it blocks
+        channel.offer(new StreamMessage("data", null,
+                "{\"logicalTimestampMs\": 1000, \"data\": []}" + new String(padding)));
+        channel.offer(message(ComputationTest.END_OF_CHANNEL));
+
+        // both messages were queued and can be consumed while the recording is stuck
+        assertTrue(recorded.awaitNext(0));
+        assertEquals("data", recorded.iterator.next().getEvent());
+        assertEquals("control-message", recorded.iterator.next().getEvent());
+
+        writable.countDown();
+        recorded.close();
+        recorder.close(1000, null);
+        ReplayTransport replayer = new ReplayTransport(
+                new ByteArrayInputStream(recording.toByteArray()), ReplayTransport.MAX_SPEED);
+        assertEquals(Arrays.asList("data", "control-message"),
+                events(replayer.execute("data('cpu').publish()",
+                        Collections.<String, String> emptyMap())));
+    }
+
+    private static Channel channel(String... messages) {
+        final List<StreamMessage> stream = new ArrayList<StreamMessage>();
+        for (String message : messages) {
+            stream.add(message(message));
+        }
+        return new Channel() {
+            {
+                this.iterator = stream.iterator();
+            }
+        };
+    }
+
+    @Test
+    public void shouldCompleteReplayedStreamWithoutReconnecting() throws Exception {
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        RecordingTransport recorder = new RecordingTransport(new ComputationTest.StubTransport(
+                channel(ComputationTest.STREAM_START, ComputationTest.JOB_START,
+                        ComputationTest.data(1000, "A", 1)),
+                channel(ComputationTest.STREAM_START, ComputationTest.JOB_START,
+                        ComputationTest.data(5000, "B", 5), ComputationTest.END_OF_CHANNEL)),
+                recording);
+        // the first stream ended before its computation completed
+        events(recorder.execute("data('cpu').publish()", Collections.<String, String> emptyMap()));
+        events(recorder.execute("data('mem').publish()", Collections.<String, String> emptyMap()));
+        recorder.close(1000, null);
+
+        ReplayTransport replayer = new ReplayTransport(
+                new ByteArrayInputStream(recording.toByteArray()), ReplayTransport.MAX_SPEED);
+        Computation computation = new Computation(replayer, "data('cpu').publish()",
+                Collections.<String, String> emptyMap(), false);
+        assertEquals(Arrays.asList("JOB_START", "1000={A=1}"), replay(computation));
+        assertEquals(Computation.State.STATE_COMPLETED, computation.getState());
+        // the second channel is left for the next computation
+        assertTrue(replayer.hasRemainingChannels());
+    }
+
+    @Test
+    public void shouldDropChannelsNotRequestedInTime() throws Exception {
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        RecordingTransport recorder = new RecordingTransport(new ComputationTest.StubTransport(
+                channel(ComputationTest.STREAM_START, ComputationTest.JOB_START),
+                channel(ComputationTest.STREAM_START, ComputationTest.JOB_START,
+                        ComputationTest.END_OF_CHANNEL)),
+                recording);
+        Channel first = recorder.execute("data('cpu').publish()",
+                Collections.<String, String> emptyMap());
+        // the records of the second channel come first
+        events(recorder.execute("data('mem').publish()", Collections.<String, String> emptyMap()));
+        events(first);
+        recorder.close(1000, null);
+
+        ReplayTransport replayer = new ReplayTransport(
+                new ByteArrayInputStream(recording.toByteArray()), ReplayTransport.MAX_SPEED, 2);
+        assertEquals(2, events(replayer.execute("data('cpu').publish()",
+                Collections.<String, String> emptyMap())).size());
+        assertFalse(replayer.hasRemainingChannels());
+    }
+
+    @Test
+    public void shouldSkipUndecodableFramesAtEndOfStream() throws Exception {
+        final List<StreamMessage> messages = new ArrayList<StreamMessage>();
+        messages.add(message(ComputationTest.STREAM_START));
+        StreamMessage undecodable = message(ComputationTest.data(1000, "A", 1));
+        undecodable.setFrame(new byte[] { 9, 9, 9, 9 });
+        messages.add(undecodable);
+        Channel channel = new Channel() {
+            {
+                this.iterator = messages.iterator();
+            }
+        };
+
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        RecordingTransport recorder = new RecordingTransport(
+                new ComputationTest.StubTransport(channel), recording);
+        assertEquals(2, events(recorder.execute("data('cpu').publish()",
+                Collections.<String, String> emptyMap())).size());
+        recorder.close(1000, null);
+
+        ReplayTransport replayer = new ReplayTransport(
+                new ByteArrayInputStream(recording.toByteArray()), ReplayTransport.MAX_SPEED);
+        Channel replayed = replayer.execute("data('cpu').publish()",
+                Collections.<String, String> emptyMap());
+        assertEquals(Collections.singletonList("control-message"), events(replayed));
+        assertFalse(replayed.iterator.hasNext());
+    }
+
+    @Test
+    public void shouldEncodeVariableLengthIntegers() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        long[] values = { 0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE, -1 };
+        for (long value : values) {
+            RecordingTransport.writeVarLong(out, value);
+        }
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()));
+        for (long value : values) {
+            assertEquals(value, RecordingTransport.readVarLong(in));
+        }
+    }
+}
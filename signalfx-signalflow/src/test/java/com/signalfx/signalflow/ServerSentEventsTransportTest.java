@@ -0,0 +1,149 @@
+package com.signalfx.signalflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.Test;
+
+import com.signalfx.signalflow.ChannelMessage.DataMessage;
+import com.signalfx.signalflow.ServerSentEventsTransport.TransportEventStreamParser;
+
+public class ServerSentEventsTransportTest {
+
+    private static final String STREAM = "﻿: comment line\r\n"
+            + "retry: 2500\r\n"
+            + "event: control-message\r\n"
+            + "data: {\"event\": \"STREAM_START\",\r\n"
+            + "data:\"timestampMs\": 1}\r\n"
+            + "\r\n"
+            + "id: 42\n"
+            + "event: data\n"
+            + "data: {\"logicalTimestampMs\": 1000, \"data\": [{\"tsId\": \"AAAA\", \"value\": 3}]}\n"
+            + "\n"
+            + "\n"
+            + "data: unnamed\r"
+            + "\r"
+            + "event: data\n"
+            + "data: {\"logicalTimestampMs\": 2000, \"data\": []}\n"
+            + "\n";
+
+    @Test
+    public void shouldParseEventStream() {
+        verifyStream(new ByteArrayInputStream(STREAM.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void shouldParseEventStreamAcrossReadBoundaries() {
+        // a stream handing out one byte at a time exercises every partial-line code path
+        verifyStream(new ByteArrayInputStream(STREAM.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        });
+    }
+
+    @Test
+    public void shouldReuseConnectionsForControlRequests() throws Exception {
+        final Set<Integer> clientPorts = Collections.newSetFromMap(
+                new ConcurrentHashMap<Integer, Boolean>());
+        Server server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+                clientPorts.add(request.getRemotePort());
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.getWriter().write("{}");
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+
+        try (AutoCloseable ignored = server::stop) {
+            URI uri = server.getURI();
+            ServerSentEventsTransport transport = new ServerSentEventsTransport.TransportBuilder("token")
+                    .setProtocol(uri.getScheme())
+                    .setHost(uri.getHost())
+                    .setPort(uri.getPort())
+                    .build();
+            try {
+                for (int i = 0; i < 5; i++) {
+                    transport.keepalive("handle");
+                }
+                transport.stop("handle", Collections.<String, String> emptyMap());
+            } finally {
+                transport.close(1000, null);
+            }
+        }
+
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void shouldDiscardUnterminatedEventAtEndOfStream() {
+        String stream = "event: data\n"
+                + "data: {\"logicalTimestampMs\": 1000, \"data\": []}\n"
+                + "\n"
+                + "event: data\n"
+                + "data: {\"logicalTimestampMs\": 2000, \"data\": [{\"tsId\"";
+        TransportEventStreamParser parser = new TransportEventStreamParser(
+                new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)), 16);
+
+        assertTrue(parser.hasNext());
+        assertEquals(1000, ((DataMessage) ChannelMessage.decodeStreamMessage(parser.next()))
+                .getLogicalTimestampMs());
+        // the connection dropped in the middle of the second event
+        assertFalse(parser.hasNext());
+    }
+
+    private static void verifyStream(InputStream stream) {
+        TransportEventStreamParser parser = new TransportEventStreamParser(stream, 16);
+        assertEquals(-1, parser.getReconnectionTimeoutMs());
+
+        assertTrue(parser.hasNext());
+        StreamMessage start = parser.next();
+        assertEquals(StreamMessage.Kind.CONTROL, start.getKind());
+        assertNull(start.getId());
+        assertEquals("{\"event\": \"STREAM_START\",\n\"timestampMs\": 1}", start.getData());
+        assertEquals(ChannelMessage.Type.STREAM_START,
+                ChannelMessage.decodeStreamMessage(start).getType());
+        assertEquals(2500, parser.getReconnectionTimeoutMs());
+
+        StreamMessage data = parser.next();
+        assertEquals(StreamMessage.Kind.DATA, data.getKind());
+        assertEquals("42", data.getId());
+        DataMessage dataMessage = (DataMessage) ChannelMessage.decodeStreamMessage(data);
+        assertEquals(1000, dataMessage.getLogicalTimestampMs());
+        assertEquals(3, dataMessage.getData().get("AAAA").intValue());
+
+        StreamMessage unnamed = parser.next();
+        assertEquals("message", unnamed.getEvent());
+        assertEquals("unnamed", unnamed.getData());
+        assertEquals("42", parser.getLastEventId());
+
+        StreamMessage last = parser.next();
+        assertEquals(StreamMessage.Kind.DATA, last.getKind());
+        assertEquals(2000, ((DataMessage) ChannelMessage.decodeStreamMessage(last))
+                .getLogicalTimestampMs());
+
+        assertFalse(parser.hasNext());
+    }
+}
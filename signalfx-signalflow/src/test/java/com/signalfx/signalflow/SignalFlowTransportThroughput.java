@@ -0,0 +1,99 @@
+package com.signalfx.signalflow;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.signalfx.signalflow.ChannelMessage.DataMessage;
+
+/**
+ * Throughput and latency harness for the SignalFlow transports, run against a
+ * {@link FakeSignalFlowServer}.
+ *
+ * Usage: {@code SignalFlowTransportThroughput [series] [ticks] [tickIntervalMs] [binaryVersion]
+ * [compress]}. Tick delivery latency is only reported when ticks are paced.
+ */
+public class SignalFlowTransportThroughput {
+
+    /**
+     * Measurements of one computation.
+     */
+    static class Result {
+        long ticks;
+        long datapoints;
+        long elapsedNanos;
+        long[] latenciesMs;
+
+        double getDatapointsPerSecond() {
+            return datapoints * 1e9 / elapsedNanos;
+        }
+
+        long getLatencyPercentileMs(double percentile) {
+            if (latenciesMs.length == 0) {
+                return -1;
+            }
+            long[] sorted = latenciesMs.clone();
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(sorted.length - 1, percentile * sorted.length)];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d ticks, %d datapoints in %.1fms: %.0f datapoints/s, "
+                            + "tick latency p50=%dms p99=%dms", ticks, datapoints,
+                    elapsedNanos / 1e6, getDatapointsPerSecond(), getLatencyPercentileMs(0.5),
+                    getLatencyPercentileMs(0.99));
+        }
+    }
+
+    /**
+     * Runs a computation to completion over the given transport, which is closed afterwards.
+     */
+    static Result measure(SignalFlowTransport transport, int expectedTicks, boolean paced) {
+        Result result = new Result();
+        long[] latencies = new long[expectedTicks];
+        long start = System.nanoTime();
+        try {
+            Computation computation = new Computation(transport, "data('fake').publish()",
+                    Collections.<String, String> emptyMap(), false);
+            for (ChannelMessage message : computation) {
+                if (message instanceof DataMessage) {
+                    DataMessage tick = (DataMessage) message;
+                    if (paced && result.ticks < latencies.length) {
+                        latencies[(int) result.ticks] =
+                                System.currentTimeMillis() - tick.getLogicalTimestampMs();
+                    }
+                    result.ticks++;
+                    result.datapoints += tick.getData().size();
+                }
+            }
+        } finally {
+            transport.close(1000, null);
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        result.latenciesMs = paced
+                ? Arrays.copyOf(latencies, (int) Math.min(result.ticks, latencies.length))
+                : new long[0];
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int series = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long tickIntervalMs = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        int binaryVersion = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        boolean compress = args.length > 4 && Boolean.parseBoolean(args[4]);
+
+        FakeSignalFlowServer server = new FakeSignalFlowServer().setSeriesCount(series)
+                .setTicks(ticks).setTickIntervalMs(tickIntervalMs)
+                .setBinaryVersion(binaryVersion).setCompress(compress).start();
+        try {
+            boolean paced = tickIntervalMs > 0;
+            System.out.println("websocket: "
+                    + measure(server.newWebSocketTransport(), ticks, paced));
+            System.out.println("sse:       "
+                    + measure(server.newServerSentEventsTransport(), ticks, paced));
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.signalfx.signalflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.signalfx.signalflow.ChannelMessage.DataMessage;
+
+public class TickAssemblerTest {
+
+    private static DataMessage batch(long logicalTimestampMs, String tsId) {
+        Map<String, Number> data = new HashMap<String, Number>();
+        data.put(tsId, logicalTimestampMs);
+        return new DataMessage(logicalTimestampMs, data);
+    }
+
+    @Test
+    public void shouldLearnBatchCountAgainAfterExtraBatch() {
+        TickAssembler ticks = new TickAssembler();
+        ticks.add(batch(1000, "A"));
+        ticks.add(batch(1000, "B"));
+        assertFalse(ticks.isComplete());
+        // released once the next tick starts
+        assertEquals(2, ticks.release("test", false).getData().size());
+
+        ticks.add(batch(2000, "A"));
+        ticks.add(batch(2000, "B"));
+        assertTrue(ticks.isComplete());
+        ticks.release("test", false);
+        ticks.addLateBatch();
+
+        // the next tick waits for the extra batch, which does not come
+        ticks.add(batch(3000, "A"));
+        ticks.add(batch(3000, "B"));
+        assertFalse(ticks.isComplete());
+        assertFalse(ticks.release("test", false).isPartial());
+
+        // the one after is released as soon as its two batches arrived
+        ticks.add(batch(4000, "A"));
+        assertFalse(ticks.isComplete());
+        ticks.add(batch(4000, "B"));
+        assertTrue(ticks.isComplete());
+    }
+
+    @Test
+    public void shouldMarkExpiredTicksPartial() {
+        TickAssembler ticks = new TickAssembler();
+        ticks.add(batch(1000, "A"));
+        ticks.add(batch(1000, "B"));
+        ticks.release("test", false);
+
+        ticks.add(batch(2000, "A"));
+        DataMessage tick = ticks.release("test", true);
+        assertTrue(tick.isPartial());
+        assertEquals(1, tick.getData().size());
+    }
+
+    @Test
+    public void shouldReleaseSingleBatchTicksWithoutCopying() {
+        TickAssembler ticks = new TickAssembler();
+        ticks.add(batch(1000, "A"));
+        ticks.release("test", false);
+
+        DataMessage batch = batch(2000, "A");
+        ticks.add(batch);
+        assertTrue(ticks.isComplete());
+        assertSame(batch.getData(), ticks.release("test", false).getData());
+    }
+}
@@ -0,0 +1,137 @@
+package com.signalfx.signalflow;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.signalfx.signalflow.ChannelMessage.DataMessage;
+import com.signalfx.signalflow.WindowAggregator.Aggregation;
+
+public class WindowAggregatorTest {
+
+    private static DataMessage tick(long logicalTimestampMs, Object... data) {
+        Map<String, Number> values = new HashMap<String, Number>();
+        for (int i = 0; i < data.length; i += 2) {
+            values.put((String) data[i], (Number) data[i + 1]);
+        }
+        return new DataMessage(logicalTimestampMs, values);
+    }
+
+    @Test
+    public void shouldAggregateLastValuesOfEachSeries() {
+        WindowAggregator sum = new WindowAggregator(Aggregation.SUM, 3);
+        WindowAggregator mean = new WindowAggregator(Aggregation.MEAN, 3);
+
+        double[] expectedSums = { 1, 3, 6, 9, 12 };
+        double[] expectedMeans = { 1, 1.5, 2, 3, 4 };
+        for (int i = 0; i < 5; i++) {
+            DataMessage tick = tick(1000 * i, "A", i + 1, "B", 10);
+            assertEquals(expectedSums[i], sum.update(tick).getData().get("A").doubleValue(), 0);
+            assertEquals(expectedMeans[i], mean.update(tick).getData().get("A").doubleValue(), 0);
+            assertEquals(10, mean.update(tick(1000 * i, "B", 10)).getData().get("B")
+                    .doubleValue(), 0);
+        }
+        assertEquals(2, sum.getSeriesCount());
+    }
+
+    @Test
+    public void shouldTrackExtremaLikeAScan() {
+        int window = 7;
+        WindowAggregator min = new WindowAggregator(Aggregation.MIN, window);
+        WindowAggregator max = new WindowAggregator(Aggregation.MAX, window);
+        Random random = new Random(42);
+        double[] history = new double[500];
+
+        for (int i = 0; i < history.length; i++) {
+            history[i] = random.nextInt(100);
+            DataMessage tick = tick(i, "A", history[i]);
+
+            double expectedMin = Double.MAX_VALUE;
+            double expectedMax = -Double.MAX_VALUE;
+            for (int j = Math.max(0, i - window + 1); j <= i; j++) {
+                expectedMin = Math.min(expectedMin, history[j]);
+                expectedMax = Math.max(expectedMax, history[j]);
+            }
+            assertEquals(expectedMin, min.update(tick).getData().get("A").doubleValue(), 0);
+            assertEquals(expectedMax, max.update(tick).getData().get("A").doubleValue(), 0);
+        }
+    }
+
+    @Test
+    public void shouldEvictValuesOlderThanWindowWhenSeriesSkipsTicks() {
+        WindowAggregator sum = new WindowAggregator(Aggregation.SUM, 3);
+        WindowAggregator max = new WindowAggregator(Aggregation.MAX, 3);
+        for (WindowAggregator aggregator : new WindowAggregator[] { sum, max }) {
+            aggregator.update(tick(0, "A", 100, "B", 1));
+            aggregator.update(tick(1000, "A", 10, "B", 1));
+            aggregator.update(tick(2000, "B", 1));
+            aggregator.update(tick(3000, "B", 1));
+        }
+        // ticks 0 and 1000 left the window of ticks 2000 to 4000, though A had no value since
+        assertEquals(1, sum.update(tick(4000, "A", 1, "B", 1)).getData().get("A").doubleValue(),
+                0);
+        assertEquals(1, max.update(tick(4000, "A", 1, "B", 1)).getData().get("A").doubleValue(),
+                0);
+    }
+
+    @Test
+    public void shouldAggregateSeriesWithGapsLikeAScan() {
+        int window = 5;
+        WindowAggregator mean = new WindowAggregator(Aggregation.MEAN, window);
+        WindowAggregator min = new WindowAggregator(Aggregation.MIN, window);
+        Random random = new Random(42);
+        Double[] history = new Double[500];
+
+        for (int i = 0; i < history.length; i++) {
+            history[i] = random.nextInt(3) == 0 ? null : Double.valueOf(random.nextInt(100));
+            DataMessage tick = history[i] == null ? tick(i, "B", 0) : tick(i, "A", history[i]);
+            DataMessage derivedMean = mean.update(tick);
+            DataMessage derivedMin = min.update(tick);
+            if (history[i] == null) {
+                continue;
+            }
+
+            double expectedSum = 0;
+            int expectedCount = 0;
+            double expectedMin = Double.MAX_VALUE;
+            for (int j = Math.max(0, i - window + 1); j <= i; j++) {
+                if (history[j] != null) {
+                    expectedSum += history[j];
+                    expectedCount++;
+                    expectedMin = Math.min(expectedMin, history[j]);
+                }
+            }
+            assertEquals(expectedSum / expectedCount,
+                    derivedMean.getData().get("A").doubleValue(), 1e-9);
+            assertEquals(expectedMin, derivedMin.getData().get("A").doubleValue(), 0);
+        }
+    }
+
+    @Test
+    public void shouldReplaceValueReceivedAgainForSameTick() {
+        WindowAggregator sum = new WindowAggregator(Aggregation.SUM, 2);
+        WindowAggregator min = new WindowAggregator(Aggregation.MIN, 2);
+        for (WindowAggregator aggregator : new WindowAggregator[] { sum, min }) {
+            aggregator.update(tick(0, "A", 5));
+            aggregator.update(tick(1000, "A", 1));
+        }
+        // a late batch of the same tick
+        assertEquals(8, sum.update(tick(1000, "A", 3)).getData().get("A").doubleValue(), 0);
+        assertEquals(3, min.update(tick(1000, "A", 3)).getData().get("A").doubleValue(), 0);
+    }
+
+    @Test
+    public void shouldReuseWindowOfRemovedSeries() {
+        WindowAggregator sum = new WindowAggregator(Aggregation.SUM, 2);
+        sum.update(tick(0, "A", 5));
+        sum.remove("A");
+        assertEquals(0, sum.getSeriesCount());
+
+        assertEquals(1, sum.update(tick(1000, "B", 1)).getData().get("B").doubleValue(), 0);
+        assertEquals(1, sum.getSeriesCount());
+    }
+}